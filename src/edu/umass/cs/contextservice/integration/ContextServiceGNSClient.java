@@ -1,6 +1,7 @@
 package edu.umass.cs.contextservice.integration;
 
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import edu.umass.cs.contextservice.client.ContextServiceClient;
@@ -9,7 +10,12 @@ import edu.umass.cs.contextservice.client.callback.implementations.NoopUpdateRep
 import edu.umass.cs.contextservice.config.ContextServiceConfig.PrivacySchemes;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
 import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import edu.umass.cs.gnscommon.GNSProtocol;
 
@@ -17,6 +23,12 @@ import edu.umass.cs.gnscommon.GNSProtocol;
  * This class interacts with context service using context service client.
  * It also implements the ContextServiceInterface.
  *
+ * Triggers are queued on the execute path and sent by a background thread
+ * every CNS_TRIGGER_WINDOW ms. Updates of a guid that arrive within a window
+ * are merged into one trigger, the last value of each attribute wins.
+ * At most CNS_TRIGGER_QUEUE_SIZE guids wait to be sent, triggers for other guids
+ * are dropped when it is full unless they are blocking.
+ *
  * @author adipc
  *
  */
@@ -26,6 +38,12 @@ public class ContextServiceGNSClient implements ContextServiceGNSInterface {
   private final NoopCallBack csNoopCallBack;
   private final NoopUpdateReply csNoopUpdateReply;
 
+  private final long triggerWindow = Config.getGlobalInt(GNSConfig.GNSC.CNS_TRIGGER_WINDOW);
+  private final int maxPendingGuids = Config.getGlobalInt(GNSConfig.GNSC.CNS_TRIGGER_QUEUE_SIZE);
+  private final Object pendingLock = new Object();
+  // guid -> latest value of each updated attribute, guarded by pendingLock
+  private Map<String, JSONObject> pending = new LinkedHashMap<>();
+
   /**
    *
    * @param hostName
@@ -43,6 +61,15 @@ public class ContextServiceGNSClient implements ContextServiceGNSInterface {
     
     csNoopCallBack = new NoopCallBack();
     csNoopUpdateReply = new NoopUpdateReply();
+
+    Thread sender = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        sendTriggers();
+      }
+    }, "ContextServiceTriggerSender");
+    sender.setDaemon(true);
+    sender.start();
   }
   
 
@@ -78,8 +105,9 @@ public class ContextServiceGNSClient implements ContextServiceGNSInterface {
         GNSConfig.getLogger().log(Level.FINE, "Trigger to CS guid {0} userJSON {1}",
                 new Object[]{guid, userJSON});
 
-        csClient.sendUpdateWithCallBack(guid, null, userJSON, -1, 
-        		csNoopUpdateReply, csNoopCallBack);
+        if (userJSON != null) {
+          queueTrigger(guid, userJSON, blocking);
+        }
       } else {
         // single field update
         JSONObject attrValJSON = new JSONObject();
@@ -88,12 +116,70 @@ public class ContextServiceGNSClient implements ContextServiceGNSInterface {
         GNSConfig.getLogger().log(Level.FINE, "Trigger to CS guid {0} attrValJSON {1}",
                 new Object[]{guid, attrValJSON});
 
-        csClient.sendUpdateWithCallBack(guid, null, attrValJSON, -1, 
-        		csNoopUpdateReply, csNoopCallBack);
+        queueTrigger(guid, attrValJSON, blocking);
       }
     } catch (Exception | Error ex) {
       ex.printStackTrace();
     }
   }
 
+  private void queueTrigger(String guid, JSONObject attrValJSON, boolean blocking)
+          throws JSONException, InterruptedException {
+    DelayProfiler.updateCount("csTriggers", 1);
+    synchronized (pendingLock) {
+      JSONObject attrs = pending.get(guid);
+      while (attrs == null && pending.size() >= maxPendingGuids) {
+        if (!blocking) {
+          DelayProfiler.updateCount("csTriggersDropped", 1);
+          GNSConfig.getLogger().log(Level.FINE, "Trigger queue full, dropping trigger for {0}", guid);
+          return;
+        }
+        pendingLock.wait();
+        attrs = pending.get(guid);
+      }
+      if (attrs == null) {
+        pending.put(guid, attrValJSON);
+      } else {
+        // last writer wins for each attribute
+        Iterator<?> keys = attrValJSON.keys();
+        while (keys.hasNext()) {
+          String key = (String) keys.next();
+          attrs.put(key, attrValJSON.get(key));
+        }
+        DelayProfiler.updateCount("csTriggersCoalesced", 1);
+      }
+    }
+  }
+
+  private void sendTriggers() {
+    while (true) {
+      try {
+        Thread.sleep(triggerWindow);
+      } catch (InterruptedException e) {
+        return;
+      }
+      Map<String, JSONObject> batch;
+      synchronized (pendingLock) {
+        if (pending.isEmpty()) {
+          continue;
+        }
+        batch = pending;
+        pending = new LinkedHashMap<>();
+        pendingLock.notifyAll();
+      }
+      long startTime = System.currentTimeMillis();
+      for (Map.Entry<String, JSONObject> entry : batch.entrySet()) {
+        try {
+          csClient.sendUpdateWithCallBack(entry.getKey(), null, entry.getValue(), -1,
+                  csNoopUpdateReply, csNoopCallBack);
+        } catch (Exception | Error ex) {
+          GNSConfig.getLogger().log(Level.WARNING, "Unable to send trigger for {0}: {1}",
+                  new Object[]{entry.getKey(), ex});
+        }
+      }
+      DelayProfiler.updateCount("csTriggerUpdates", batch.size());
+      DelayProfiler.updateDelay("csTriggerBatch", startTime);
+    }
+  }
+
 }
@@ -22,9 +22,10 @@ public interface ContextServiceGNSInterface {
   //public void sendUpdateToCS(String GUID, JSONObject attrValPairJSON, long versionNum, boolean blocking);
 
   /**
-   * Checks and sends trigger for the gns command.
-   * Blocking if set to true indicates blocking for the context service update to complete and recv
-   * the confirmation.
+   * Checks and queues a trigger for the gns command.
+   * Triggers are sent in the background, coalesced per guid.
+   * Blocking if set to true indicates waiting for room in the queue when it is full
+   * instead of dropping the trigger.
    * Blocking should preferably set to false, as we don't want gns to block for CS udpates.
    *
    * @param jsonFormattedCommand gns formatted command
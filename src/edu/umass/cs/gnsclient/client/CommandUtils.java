@@ -358,15 +358,21 @@ public class CommandUtils {
           throws ClientException {
     try {
       JSONObject result = createCommandWithTimestampAndNonce(commandType, true, keysAndValues);
-      String canonicalJSON = CanonicalJSON.getCanonicalForm(result);
+      // Either sign the string the command will be sent as, which the
+      // CommandPacket sends as is, or the canonical JSON for older servers.
+      boolean signBytes = Config.getGlobalBoolean(GNSCC.SIGN_COMMAND_BYTES);
+      String message = signBytes ? result.toString() : CanonicalJSON.getCanonicalForm(result);
       String signatureString = null;
       long t = System.nanoTime();
       if (Config.getGlobalBoolean(GNSCC.ENABLE_SECRET_KEY)) {
-        signatureString = CryptoUtils.signDigestOfMessageSecretKey(guidEntry, canonicalJSON);
+        signatureString = CryptoUtils.signDigestOfMessageSecretKey(guidEntry, message);
       } else {
-        signatureString = CryptoUtils.signDigestOfMessage(guidEntry, canonicalJSON);
+        signatureString = CryptoUtils.signDigestOfMessage(guidEntry, message);
       }
       result.put(GNSProtocol.SIGNATURE.toString(), signatureString);
+      if (signBytes) {
+        result.put(GNSProtocol.SIGNED_COMMAND.toString(), message);
+      }
       if (edu.umass.cs.utils.Util.oneIn(10)) {
         DelayProfiler.updateDelayNano("signature", t);
       }
@@ -16,6 +16,7 @@
 package edu.umass.cs.gnsclient.client;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.Arrays;
@@ -43,9 +44,12 @@ import edu.umass.cs.gnscommon.exceptions.client.ClientException;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
 import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnscommon.packets.ResponsePacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.CacheInvalidationPacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.InternalCommandPacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.Packet;
 import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.nio.JSONPacket;
+import edu.umass.cs.nio.MessageExtractor;
 import edu.umass.cs.nio.SSLDataProcessingWorker.SSL_MODES;
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.nio.interfaces.Stringifiable;
@@ -245,6 +249,34 @@ public class GNSClient {
 
 	private boolean forceCoordinatedReads = false;
 
+	private volatile ReadCache readCache = null;
+
+	/**
+	 * Turns on caching of field reads. Synchronous reads of single fields
+	 * are answered from the cache until their TTL runs out or the active that
+	 * served them says the guid was updated. Coordinated reads and async sends
+	 * always go to an active.
+	 *
+	 * @param maxEntries
+	 *            the most values kept
+	 * @param defaultTTL
+	 *            in ms, per field TTLs can be set with
+	 *            {@link ReadCache#setFieldTTL(String, long)}
+	 * @return {@code this}
+	 */
+	public GNSClient enableReadCache(int maxEntries, long defaultTTL) {
+		this.readCache = new ReadCache(maxEntries, defaultTTL);
+		this.asyncClient.readCache = this.readCache;
+		return this;
+	}
+
+	/**
+	 * @return the read cache or null if it isn't enabled
+	 */
+	public ReadCache getReadCache() {
+		return this.readCache;
+	}
+
 	/**
 	 * Sets the value of forcing read operations to be coordinated.
 	 *
@@ -305,10 +337,29 @@ public class GNSClient {
 	 */
 	private CommandPacket sendSync(CommandPacket packet, final long timeout,
 			int retries) throws IOException, ClientException {
+		ReadCache cache = this.readCache;
+		boolean cacheable = cache != null && !isForceCoordinatedReads()
+				&& ReadCache.isCacheable(packet);
+		long invalidationCount = 0;
+		if (cacheable) {
+			String value = cache.get(packet);
+			if (value != null) {
+				PacketUtils.setResult(packet, new ResponsePacket(
+						packet.getServiceName(), packet.getRequestID(),
+						ResponseCode.NO_ERROR, value));
+				return packet;
+			}
+			invalidationCount = cache.getInvalidationCount();
+			packet.setCachedRead(true);
+		}
 		ResponsePacket response = this.sendSyncInternal(packet, timeout,
 				retries);
 		CommandUtils.checkResponse(nullToTimeoutResponse(response, packet),
 				PacketUtils.setResult(packet, response));
+		if (cacheable && response != null
+				&& response.getErrorCode() == ResponseCode.NO_ERROR) {
+			cache.put(packet, response.getReturnValue(), invalidationCount);
+		}
 		GNSClientConfig.getLogger()
 				.log(Level.FINE,
 						"{0} received response {0} for request {1}",
@@ -476,13 +527,17 @@ public class GNSClient {
 	}
 
 	private static final Set<IntegerPacketType> CLIENT_PACKET_TYPES = new HashSet<>(
-			Arrays.asList(Packet.PacketType.COMMAND_RETURN_VALUE));
+			Arrays.asList(Packet.PacketType.COMMAND_RETURN_VALUE,
+					Packet.PacketType.CACHE_INVALIDATION));
 
 	/**
 	 * Straightforward async client implementation that expects only one packet
 	 * type,
 	 * {@link edu.umass.cs.gnsserver.gnsapp.packet.Packet.PacketType#COMMAND_RETURN_VALUE}
-	 * . Public in scope so that it can be overridden for testing purposes.
+	 * , besides the
+	 * {@link edu.umass.cs.gnsserver.gnsapp.packet.Packet.PacketType#CACHE_INVALIDATION}
+	 * packets that are applied to the read cache and not passed on. Public in
+	 * scope so that it can be overridden for testing purposes.
 	 */
 	public static class AsyncClient extends
 			ReconfigurableAppClientAsync<CommandPacket> implements
@@ -491,6 +546,8 @@ public class GNSClient {
 		private static Stringifiable<String> unstringer = new StringifiableDefault<>(
 				"");
 
+		private volatile ReadCache readCache = null;
+
 		/**
 		 *
 		 * @param reconfigurators
@@ -542,6 +599,11 @@ public class GNSClient {
 					GNSClientConfig.getLogger().log(Level.FINER,
 							"{0} retrieving packet from received json {1}",
 							new Object[] { this, json });
+					if (type == Packet.PacketType.CACHE_INVALIDATION) {
+						handleCacheInvalidation(new CacheInvalidationPacket(
+								json));
+						return null;
+					}
 					if (CLIENT_PACKET_TYPES
 							.contains(Packet.getPacketType(json))) {
 						response = (Request) Packet.createInstance(json,
@@ -595,8 +657,27 @@ public class GNSClient {
 		@Override
 		public Request getRequest(byte[] bytes, NIOHeader header)
 				throws RequestParseException {
+			// Only look for invalidations if there is a cache to apply them to
+			if (this.readCache != null && JSONPacket.couldBeJSON(bytes)) {
+				try {
+					JSONObject json = new JSONObject(new String(bytes,
+							NIOHeader.CHARSET));
+					MessageExtractor.stampAddressIntoJSONObject(header.sndr,
+							header.rcvr, json);
+					return this.getRequestFromJSON(json);
+				} catch (JSONException | UnsupportedEncodingException e) {
+					throw new RequestParseException(e);
+				}
+			}
 			return GNSAppUtil.getRequestStatic(bytes, header, unstringer);
 		}
+
+		private void handleCacheInvalidation(CacheInvalidationPacket packet) {
+			ReadCache cache = this.readCache;
+			if (cache != null) {
+				cache.invalidate(packet.getGuid(), packet.getField());
+			}
+		}
 		
 		/**
 		 * Sets the maximum outstanding app requests in the {@link GNSClient},
@@ -26,6 +26,9 @@ import edu.umass.cs.gnscommon.exceptions.client.EncryptionException;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import edu.umass.cs.gnscommon.exceptions.client.ClientException;
+import edu.umass.cs.gnscommon.packets.commandreply.AccountGuidsPage;
+import edu.umass.cs.gnscommon.packets.commandreply.GuidsReadResult;
+import edu.umass.cs.gnscommon.packets.commandreply.SelectPage;
 import edu.umass.cs.gnscommon.utils.Base64;
 import java.security.KeyFactory;
 import java.security.PublicKey;
@@ -334,6 +337,32 @@ public class GNSClientCommands
     return fieldRead(targetGuid.getGuid(), fields, targetGuid);
   }
 
+  /**
+   * Reads the value of the same fields from many guids. The query is
+   * signed once using the private key of the reader guid and the guids are
+   * read by the name servers of the reader. A guid that the reader isn't
+   * allowed to read or that can't be read has an error in the result
+   * instead of values.
+   *
+   * @param targetGuids
+   * @param fields
+   * @param reader
+   * @return the values or error of each guid
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs or the result cannot be parsed
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public GuidsReadResult fieldReadMultipleGuids(List<String> targetGuids, ArrayList<String> fields,
+          GuidEntry reader) throws ClientException, IOException {
+    try {
+      return GuidsReadResult.fromJSON(gnsClient.execute(
+              GNSCommand.fieldReadMultipleGuids(targetGuids, fields, reader)).getResultJSONObject());
+    } catch (JSONException e) {
+      throw new ClientException(e);
+    }
+  }
+
   /**
    * Removes a field in the JSONObject record of the given targetGuid. The
    * writer is the guid attempting access. Signs the query using
@@ -409,6 +438,26 @@ public class GNSClientCommands
   public JSONArray selectQuery(GuidEntry reader, String query) throws ClientException, IOException {
     return gnsClient.execute(GNSCommand.selectQuery(reader, query)).getResultJSONArray();
   }
+
+  /**
+   * Returns at most {@code limit} of the guids that match the query.
+   * See {@link #selectQuery(GuidEntry, String)}.
+   *
+   * @param reader
+   * - the reader or null if the fields in the query are world readable
+   * @param query
+   * - the query
+   * @param limit
+   * - the maximum number of guids returned
+   * @return - a JSONArray of guids
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs or the list cannot be parsed
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public JSONArray selectQuery(GuidEntry reader, String query, int limit) throws ClientException, IOException {
+    return gnsClient.execute(GNSCommand.selectQuery(reader, query, limit)).getResultJSONArray();
+  }
   
   /**
    * Returns a list of all guid records that match the {@code query}.
@@ -475,6 +524,64 @@ public class GNSClientCommands
     return gnsClient.execute(GNSCommand.selectRecords(reader, query, fields)).getResultJSONArray();
   }
 
+  /**
+   * Returns the first page of the guids (or records if {@code fields} is non-null)
+   * that match the {@code query}. Pages are in guid order and hold at most
+   * {@code pageSize} results; a guid never shows up in more than one page.
+   *
+   * @param reader the reader or null
+   * @param query
+   * - the query
+   * @param fields A list of fields or null meaning return guids
+   * @param pageSize
+   * @return - the first page
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs or the page cannot be parsed
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public SelectPage selectQueryFirstPage(GuidEntry reader, String query, List<String> fields,
+          int pageSize) throws ClientException, IOException {
+    return selectQueryPage(reader, query, fields, pageSize, null);
+  }
+
+  /**
+   * Returns the page after {@code page} of a select started with 
+   * {@link #selectQueryFirstPage(GuidEntry, String, List, int)}.
+   * The select must be issued with the same reader, query, fields and page size.
+   * Nothing is kept at the servers between pages so there is nothing to expire.
+   *
+   * @param reader the reader or null
+   * @param query
+   * - the query
+   * @param fields A list of fields or null meaning return guids
+   * @param pageSize
+   * @param page the previous page
+   * @return - the next page
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if there are no more pages or the page cannot be parsed
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public SelectPage selectQueryNextPage(GuidEntry reader, String query, List<String> fields,
+          int pageSize, SelectPage page) throws ClientException, IOException {
+    if (!page.hasMore()) {
+      throw new ClientException("No more pages");
+    }
+    return selectQueryPage(reader, query, fields, pageSize, page.getAfterName());
+  }
+
+  private SelectPage selectQueryPage(GuidEntry reader, String query, List<String> fields,
+          int pageSize, String afterName) throws ClientException, IOException {
+    try {
+      return SelectPage.fromJSON(gnsClient.execute(reader == null
+              ? GNSCommand.selectQueryPaged(query, fields, pageSize, afterName)
+              : GNSCommand.selectQueryPaged(reader, query, fields, pageSize, afterName)).getResultJSONObject());
+    } catch (JSONException e) {
+      throw new ClientException(e);
+    }
+  }
+
   /**
    * Set up a context aware group guid using a query. Requires a accountGuid
    * and a publicKey which are used to set up the new guid or look it up if it
@@ -634,6 +741,50 @@ public class GNSClientCommands
     return gnsClient.execute(GNSCommand.lookupAccountRecord(accountGuid)).getResultJSONObject();
   }
 
+  /**
+   * Returns the first page of the subguids of an account guid.
+   *
+   * @param accountGuid
+   * @return - the first page
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs or the page cannot be parsed
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public AccountGuidsPage lookupAccountGuidsFirstPage(String accountGuid)
+          throws IOException, ClientException {
+    try {
+      return AccountGuidsPage.fromJSON(gnsClient.execute(
+              GNSCommand.lookupAccountGuids(accountGuid, 0)).getResultJSONObject());
+    } catch (JSONException e) {
+      throw new ClientException(e);
+    }
+  }
+
+  /**
+   * Returns the next page of the subguids of an account guid.
+   *
+   * @param accountGuid
+   * @param page the previous page
+   * @return - the next page
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if there are no more pages or the page cannot be parsed
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public AccountGuidsPage lookupAccountGuidsNextPage(String accountGuid, AccountGuidsPage page)
+          throws IOException, ClientException {
+    if (!page.hasMore()) {
+      throw new ClientException("No more pages");
+    }
+    try {
+      return AccountGuidsPage.fromJSON(gnsClient.execute(
+              GNSCommand.lookupAccountGuids(accountGuid, page.getCursor())).getResultJSONObject());
+    } catch (JSONException e) {
+      throw new ClientException(e);
+    }
+  }
+
   /**
    * Get the public key for a given alias.
    *
@@ -2389,4 +2540,4 @@ public class GNSClientCommands
   public void close() {
     gnsClient.close();
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
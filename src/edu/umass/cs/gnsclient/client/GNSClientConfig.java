@@ -57,6 +57,13 @@ public class GNSClientConfig {
      * the client.
      */
     ENABLE_SECRET_KEY(true),
+    /**
+     * If true commands are signed over the string they are sent as instead of
+     * their canonical JSON so the servers don't have to make the canonical JSON
+     * again to check the signature. Set it to false to talk to servers that
+     * don't understand this form.
+     */
+    SIGN_COMMAND_BYTES(true),
     /**
      * A secret shared between the server and client in order to circumvent
      * account verification. Must be changed using properties file if
@@ -405,6 +405,32 @@ public class GNSCommand extends CommandPacket {
             querierGUID != null ? querierGUID.getGuid() : null);
   }
 
+  /**
+   * Reads the same fields from many guids with one signature of
+   * {@code querierGUID}. The command is sent to the name servers of
+   * {@code querierGUID} which read the guids on its behalf. The name servers
+   * refuse to read more than a configured number of guids (1000 by default)
+   * in one command.
+   *
+   * @param targetGUIDs
+   * The guids being queried.
+   * @param fields
+   * The list of field keys.
+   * @param querierGUID
+   * The guid issuing the query.
+   * @return CommandPacket contains a JSONObject representation of
+   * {@link edu.umass.cs.gnscommon.packets.commandreply.GuidsReadResult}.
+   * @throws ClientException
+   */
+  public static final CommandPacket fieldReadMultipleGuids(List<String> targetGUIDs,
+          ArrayList<String> fields, GuidEntry querierGUID)
+          throws ClientException {
+    return getCommand(CommandType.ReadMultipleGuids, querierGUID,
+            GNSProtocol.GUID.toString(), querierGUID.getGuid(),
+            GNSProtocol.GUIDS.toString(), targetGUIDs,
+            GNSProtocol.FIELDS.toString(), fields);
+  }
+
   /**
    * Same as {@link #fieldRead(String, ArrayList, GuidEntry)} with
    * {@code querierGUID} set to {@code targetGUID}.
@@ -494,6 +520,24 @@ public class GNSCommand extends CommandPacket {
     return getCommand(CommandType.LookupAccountRecord, GNSProtocol.GUID.toString(), accountGUID);
   }
 
+  /**
+   * Looks up a page of the subguids of {@code accountGUID}. Use 0 as the
+   * {@code cursor} for the first page and the cursor returned with a page
+   * for the next one.
+   *
+   * @param accountGUID
+   * The account guid being queried.
+   * @param cursor
+   * @return CommandPacket contains a JSONObject representation of 
+   * {@link edu.umass.cs.gnscommon.packets.commandreply.AccountGuidsPage}.
+   * @throws ClientException
+   */
+  public static final CommandPacket lookupAccountGuids(String accountGUID, int cursor)
+          throws ClientException {
+    return getCommand(CommandType.LookupAccountGuids, GNSProtocol.GUID.toString(), accountGUID,
+            GNSProtocol.ACCOUNT_GUIDS_CURSOR.toString(), cursor);
+  }
+
   /**
    * Get the public key for a given guid.
    *
@@ -1914,6 +1958,34 @@ public class GNSCommand extends CommandPacket {
             GNSProtocol.QUERY.toString(), query);
   }
 
+  /**
+   * Selects at most {@code limit} guid records that match {@code query}.
+   * The select completes as soon as that many have been found so this is 
+   * cheaper than {@link #selectQuery(GuidEntry, String)} when only a few 
+   * matches are needed. Which of the matching guids are returned is 
+   * arbitrary. The result type of the execution result of this query is 
+   * {@link CommandResultType#LIST}.
+   *
+   * @param reader the reader or null meaning all fields accessed have to be world readable
+   * @param query
+   * The select query being issued.
+   * @param limit the maximum number of guids returned
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectQuery(GuidEntry reader, String query, int limit)
+          throws ClientException {
+    if (reader == null) {
+      return getCommand(CommandType.SelectQuery,
+              GNSProtocol.QUERY.toString(), query,
+              GNSProtocol.SELECT_LIMIT.toString(), limit);
+    }
+    return getCommand(CommandType.SelectQuery, reader,
+            GNSProtocol.GUID.toString(), reader.getGuid(),
+            GNSProtocol.QUERY.toString(), query,
+            GNSProtocol.SELECT_LIMIT.toString(), limit);
+  }
+
   /**
    * Selects all guid records that match the {@code query}.
    * The {@code fields} parameter is a list of the fields that
@@ -1981,6 +2053,76 @@ public class GNSCommand extends CommandPacket {
     );
   }
 
+  /**
+   * Selects a page of the guid records that match {@code query}.
+   * The page holds at most {@code pageSize} guids (or records if 
+   * {@code fields} is non-null) in guid order, starting after 
+   * {@code afterName}. 
+   * The result type of the execution result of this query is 
+   * {@link CommandResultType#MAP}, a JSONObject representation of 
+   * {@link edu.umass.cs.gnscommon.packets.commandreply.SelectPage}.
+   * Pass null as {@code afterName} for the first page and the after name 
+   * of the previous page for the next one.
+   * Requires all fields accessed to be world readable.
+   *
+   * The query syntax is described here:
+   * https://gns.name/wiki/index.php?title=Query_Syntax
+   *
+   * @param query
+   * The select query being issued.
+   * @param fields A list of fields or null meaning return guids
+   * @param pageSize
+   * @param afterName
+   * The last guid of the previous page or null for the first page.
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectQueryPaged(String query, List<String> fields, 
+          int pageSize, String afterName)
+          throws ClientException {
+    return getCommand(CommandType.SelectQueryPaged, null,
+            selectPageArgs(null, query, fields, pageSize, afterName));
+  }
+
+  /**
+   * Selects a page of the guid records that match {@code query}
+   * that {@code reader} can read.
+   * See {@link #selectQueryPaged(String, List, int, String)}.
+   *
+   * @param reader
+   * @param query
+   * The select query being issued.
+   * @param fields A list of fields or null meaning return guids
+   * @param pageSize
+   * @param afterName
+   * The last guid of the previous page or null for the first page.
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectQueryPaged(GuidEntry reader, String query, 
+          List<String> fields, int pageSize, String afterName)
+          throws ClientException {
+    return getCommand(CommandType.SelectQueryPaged, reader,
+            selectPageArgs(reader, query, fields, pageSize, afterName));
+  }
+
+  private static Object[] selectPageArgs(GuidEntry reader, String query, 
+          List<String> fields, int pageSize, String afterName) {
+    List<Object> args = new ArrayList<>();
+    if (reader != null) {
+      args.addAll(Arrays.asList(GNSProtocol.GUID.toString(), reader.getGuid()));
+    }
+    args.addAll(Arrays.asList(GNSProtocol.QUERY.toString(), query));
+    if (fields != null) {
+      args.addAll(Arrays.asList(GNSProtocol.FIELDS.toString(), fields));
+    }
+    args.addAll(Arrays.asList(GNSProtocol.SELECT_PAGE_SIZE.toString(), pageSize));
+    if (afterName != null) {
+      args.addAll(Arrays.asList(GNSProtocol.SELECT_AFTER_NAME.toString(), afterName));
+    }
+    return args.toArray();
+  }
+
   /**
    * Set up a context-aware group guid corresponding to the query. Requires
    * {@code accountGuid} and {@code publicKey} that are used to set up the new
@@ -0,0 +1,259 @@
+/* Copyright (1c) 2016 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (1the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * Initial developer(s): Westy */
+package edu.umass.cs.gnsclient.client;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import edu.umass.cs.gnscommon.CommandType;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.utils.Config;
+
+/**
+ * A bounded cache of field reads for {@link GNSClient}, keyed by guid, field
+ * and reader. See {@link GNSClient#enableReadCache(int, long)}.
+ * 
+ * Values stay in the cache until their TTL runs out or the active that served
+ * the read says the guid was updated. Invalidations are best effort so the TTL
+ * bounds how stale a value can get. TTLs are capped at
+ * {@link GNSConfig.GNSC#CACHED_READER_TTL} because that is how long an active
+ * keeps sending invalidations after a read.
+ * 
+ * @author westy
+ */
+public class ReadCache {
+
+	private static final Set<CommandType> CACHEABLE_TYPES = EnumSet.of(
+			CommandType.Read, CommandType.ReadUnsigned, CommandType.ReadArray,
+			CommandType.ReadArrayUnsigned, CommandType.ReadArrayOne,
+			CommandType.ReadArrayOneUnsigned);
+
+	private static class CachedValue {
+		private final String field;
+		private final String value;
+		private final long expires;
+
+		private CachedValue(String field, String value, long expires) {
+			this.field = field;
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+
+	private final int maxEntries;
+	private final long defaultTTL;
+	private final long maxTTL = Config
+			.getGlobalInt(GNSConfig.GNSC.CACHED_READER_TTL);
+	private final Map<String, Long> fieldTTLs = new ConcurrentHashMap<>();
+
+	// guid -> (type, field, reader) -> value in least recently used order,
+	// guarded by this
+	private final LinkedHashMap<String, Map<String, CachedValue>> guids = new LinkedHashMap<>(
+			16, 0.75f, true);
+	private int size = 0;
+	private long invalidationCount = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxEntries
+	 *            the most values kept
+	 * @param defaultTTL
+	 *            in ms, used for fields without their own TTL
+	 */
+	public ReadCache(int maxEntries, long defaultTTL) {
+		this.maxEntries = maxEntries;
+		this.defaultTTL = defaultTTL;
+	}
+
+	/**
+	 * Sets the TTL of one field. Fields that change often can use a shorter
+	 * one than the default, zero keeps the field out of the cache.
+	 * 
+	 * @param field
+	 * @param ttl
+	 *            in ms
+	 * @return {@code this}
+	 */
+	public ReadCache setFieldTTL(String field, long ttl) {
+		this.fieldTTLs.put(field, ttl);
+		return this;
+	}
+
+	/**
+	 * @param packet
+	 * @return true if the result of the command can be cached
+	 */
+	public static boolean isCacheable(CommandPacket packet) {
+		return CACHEABLE_TYPES.contains(packet.getCommandType())
+				&& packet.getCommand().has(GNSProtocol.FIELD.toString());
+	}
+
+	/**
+	 * @param packet
+	 *            a cacheable command
+	 * @return the cached return value of the command or null if there isn't
+	 *         one
+	 */
+	public synchronized String get(CommandPacket packet) {
+		Map<String, CachedValue> values = guids.get(packet.getServiceName());
+		CachedValue cached = values != null ? values.get(getKey(packet)) : null;
+		if (cached != null && cached.expires < System.currentTimeMillis()) {
+			values.remove(getKey(packet));
+			size--;
+			cached = null;
+		}
+		(cached != null ? hits : misses).incrementAndGet();
+		return cached != null ? cached.value : null;
+	}
+
+	/**
+	 * @return the number of invalidations so far, passed back to
+	 *         {@link #put(CommandPacket, String, long)}
+	 */
+	public synchronized long getInvalidationCount() {
+		return invalidationCount;
+	}
+
+	/**
+	 * Caches the return value of a command. The value isn't cached if an
+	 * invalidation came in while the command was outstanding because it could
+	 * be older than the update.
+	 * 
+	 * @param packet
+	 * @param value
+	 * @param invalidationCount
+	 *            the value of {@link #getInvalidationCount()} before the
+	 *            command was sent
+	 */
+	public synchronized void put(CommandPacket packet, String value,
+			long invalidationCount) {
+		String field = packet.getCommand().optString(
+				GNSProtocol.FIELD.toString());
+		Long fieldTTL = fieldTTLs.get(field);
+		long ttl = Math.min(fieldTTL != null ? fieldTTL : defaultTTL, maxTTL);
+		if (invalidationCount != this.invalidationCount || ttl <= 0) {
+			return;
+		}
+		Map<String, CachedValue> values = guids.get(packet.getServiceName());
+		if (values == null) {
+			values = new HashMap<>();
+			guids.put(packet.getServiceName(), values);
+		}
+		if (values.put(getKey(packet), new CachedValue(field, value,
+				System.currentTimeMillis() + ttl)) == null) {
+			size++;
+		}
+		// Evict the least recently used guids
+		Iterator<Map<String, CachedValue>> iterator = guids.values().iterator();
+		while (size > maxEntries && iterator.hasNext()) {
+			size -= iterator.next().size();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Removes the cached values of a guid that could have changed when a field
+	 * was updated.
+	 * 
+	 * @param guid
+	 * @param field
+	 *            the updated field or null if it could be any field, which
+	 *            is what the actives send for ACL changes and guid removals
+	 */
+	public synchronized void invalidate(String guid, String field) {
+		invalidationCount++;
+		Map<String, CachedValue> values = guids.get(guid);
+		if (values == null) {
+			return;
+		}
+		Iterator<CachedValue> iterator = values.values().iterator();
+		while (iterator.hasNext()) {
+			CachedValue cached = iterator.next();
+			if (field == null || overlaps(field, cached.field)) {
+				iterator.remove();
+				size--;
+			}
+		}
+		if (values.isEmpty()) {
+			guids.remove(guid);
+		}
+	}
+
+	/**
+	 * @return the fraction of reads that were answered from the cache
+	 */
+	public double getHitRatio() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * @return the number of reads answered from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of reads sent to an active
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of values in the cache
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private static String getKey(CommandPacket packet) {
+		JSONObject command = packet.getCommand();
+		return packet.getCommandType().getInt() + ":"
+				+ command.optString(GNSProtocol.FIELD.toString()) + ":"
+				+ command.optString(GNSProtocol.READER.toString());
+	}
+
+	// Dotted fields overlap their parents and children. Internal fields hold
+	// the ACLs and other metadata that can change what any field reads as.
+	private static boolean overlaps(String updated, String cached) {
+		return updated.equals(cached)
+				|| updated.startsWith(GNSProtocol.INTERNAL_PREFIX.toString())
+				|| cached.equals(GNSProtocol.ENTIRE_RECORD.toString())
+				|| updated.startsWith(cached + ".")
+				|| cached.startsWith(updated + ".");
+	}
+
+	@Override
+	public String toString() {
+		return ReadCache.class.getSimpleName() + "[size=" + size()
+				+ ", hitRatio=" + getHitRatio() + "]";
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsclient.client.testing;
+
+import edu.umass.cs.gnsclient.client.GNSClient;
+import edu.umass.cs.gnsclient.client.GNSClientCommands;
+import edu.umass.cs.gnsclient.client.util.GuidEntry;
+import edu.umass.cs.gnsclient.client.util.GuidUtils;
+import edu.umass.cs.gnscommon.packets.commandreply.AccountGuidsPage;
+import edu.umass.cs.gnscommon.utils.RandomString;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Account size test.
+ *
+ * Batch creates a large number of subguids (300000 by default, the default
+ * ACCOUNT_GUID_MAX_SUBGUIDS) under one account guid. After each batch it times
+ * creating and removing a single guid, which should stay flat as the account
+ * grows. At the end it times listing all the guids of the account a page at a time.
+ *
+ * Usage:
+ * ./scripts/client/runClientSingleNode edu.umass.cs.gnsclient.client.testing.AccountGuidsScaleTest -guidCnt 300000
+ */
+public class AccountGuidsScaleTest {
+
+  private static final int MAX_BATCH_SIZE = 4000;
+  private static final int SINGLE_OPS = 10;
+  private static final String DEFAULT_ACCOUNT_ALIAS = "scale@gns.name"; // REPLACE THIS WITH YOUR ACCOUNT ALIAS
+  private static final String PASSWORD = "password";
+  private static GNSClientCommands client;
+  private static GuidEntry masterGuid;
+
+  /**
+   * Creates a AccountGuidsScaleTest with the given arguments.
+   *
+   * @param accountGuidAlias
+   * @param numberToCreate
+   * @param remove remove the account and all its guids at the end
+   */
+  public AccountGuidsScaleTest(String accountGuidAlias, int numberToCreate, boolean remove) {
+    try {
+      client = new GNSClientCommands(new GNSClient());
+    } catch (IOException e) {
+      System.out.println("Unable to create client: " + e);
+      e.printStackTrace();
+      System.exit(1);
+    }
+
+    try {
+      masterGuid = GuidUtils.lookupOrCreateAccountGuid(client, accountGuidAlias, PASSWORD, true);
+    } catch (Exception e) {
+      System.out.println("Exception when we were not expecting it: " + e);
+      e.printStackTrace();
+      System.exit(1);
+    }
+
+    long startTime = System.currentTimeMillis();
+    int created = 0;
+    try {
+      while (created < numberToCreate) {
+        int numberTocreate = Math.min(numberToCreate - created, MAX_BATCH_SIZE);
+        Set<String> aliases = new HashSet<>();
+        for (int i = 0; i < numberTocreate; i++) {
+          aliases.add("scaleGUID" + RandomString.randomString(12));
+        }
+        long batchStart = System.currentTimeMillis();
+        client.guidBatchCreate(masterGuid, aliases, 2 * 60 * 1000); // set the timeout to 2 minutes
+        long batchTime = System.currentTimeMillis() - batchStart;
+        created += numberTocreate;
+        System.out.println(created + " guids: batch of " + numberTocreate + " took " + batchTime
+                + "ms, add/remove of one guid took " + timeSingleAddRemove() + "ms");
+      }
+    } catch (Exception e) {
+      System.out.println("Problem creating batch: " + e);
+    }
+    System.out.println("Creating " + created + " guids took "
+            + ((System.currentTimeMillis() - startTime) / 1000) + " seconds");
+
+    try {
+      long listStart = System.currentTimeMillis();
+      int pages = 1;
+      AccountGuidsPage page = client.lookupAccountGuidsFirstPage(masterGuid.getGuid());
+      int listed = page.getGuids().length();
+      while (page.hasMore()) {
+        page = client.lookupAccountGuidsNextPage(masterGuid.getGuid(), page);
+        listed += page.getGuids().length();
+        pages++;
+      }
+      System.out.println("Listing " + listed + " guids in " + pages + " pages took "
+              + (System.currentTimeMillis() - listStart) + "ms");
+    } catch (Exception e) {
+      System.out.println("Problem listing guids: " + e);
+    }
+
+    if (remove) {
+      try {
+        client.accountGuidRemove(masterGuid);
+      } catch (Exception e) {
+        System.out.println("Problem removing account guid: " + e);
+      }
+    }
+  }
+
+  // Average time in ms to create and then remove one guid
+  private static double timeSingleAddRemove() throws Exception {
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < SINGLE_OPS; i++) {
+      GuidEntry guidEntry = client.guidCreate(masterGuid, "singleGUID" + RandomString.randomString(12));
+      client.guidRemove(masterGuid, guidEntry.getGuid());
+    }
+    return (double) (System.currentTimeMillis() - start) / SINGLE_OPS;
+  }
+
+  /**
+   * The main routine run from the command line.
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(String args[]) throws Exception {
+    CommandLine parser = initializeOptions(args);
+    if (parser.hasOption("help")) {
+      printUsage();
+      System.exit(1);
+    }
+    String alias = parser.getOptionValue("alias");
+    int guidCnt = Integer.parseInt(parser.getOptionValue("guidCnt", "300000"));
+    new AccountGuidsScaleTest(alias != null ? alias : DEFAULT_ACCOUNT_ALIAS, guidCnt,
+            parser.hasOption("remove"));
+    System.exit(0);
+  }
+
+  // command line arguments
+  // COMMAND LINE STUFF
+  private static HelpFormatter formatter = new HelpFormatter();
+  private static Options commandLineOptions;
+
+  private static CommandLine initializeOptions(String[] args) throws ParseException {
+    Option help = new Option("help", "Prints Usage");
+    Option alias = OptionBuilder.withArgName("alias").hasArg()
+            .withDescription("the alias (HRN) to use for the account")
+            .create("alias");
+    Option guidCnt = OptionBuilder.withArgName("guidCnt").hasArg()
+            .withDescription("number of guids to create (default 300000)")
+            .create("guidCnt");
+    Option remove = new Option("remove", "remove the account and its guids at the end");
+
+    commandLineOptions = new Options();
+    commandLineOptions.addOption(alias);
+    commandLineOptions.addOption(guidCnt);
+    commandLineOptions.addOption(remove);
+    commandLineOptions.addOption(help);
+
+    CommandLineParser parser = new GnuParser();
+    return parser.parse(commandLineOptions, args);
+  }
+
+  private static void printUsage() {
+    formatter.printHelp("java -cp GNSClient.jar edu.umass.cs.gnsclient.client.testing.AccountGuidsScaleTest <options>", commandLineOptions);
+  }
+
+}
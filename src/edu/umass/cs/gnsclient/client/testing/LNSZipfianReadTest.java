@@ -0,0 +1,232 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsclient.client.testing;
+
+import edu.umass.cs.gnsclient.client.GNSClient;
+import edu.umass.cs.gnsclient.client.GNSClientCommands;
+import edu.umass.cs.gnsclient.client.GNSClientConfig;
+import edu.umass.cs.gnsclient.client.util.GuidEntry;
+import edu.umass.cs.gnsclient.client.util.GuidUtils;
+import edu.umass.cs.gnscommon.utils.RandomString;
+import edu.umass.cs.utils.Config;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Skewed read test of the local name server.
+ *
+ * Creates a number of guids (1000 by default) with a field each and then has a
+ * number of threads read the field of guids chosen with a Zipfian distribution
+ * through the local name server. It prints the reads per second and the average
+ * latency. With ENABLE_INSTRUMENTATION set the local name server logs how many
+ * of the reads it sent upstream (lnsReadsSentUpstream), coalesced
+ * (lnsReadsCoalesced) and answered from its value cache (lnsReadCacheHits).
+ *
+ * Usage:
+ * ./scripts/client/runClientSingleNode edu.umass.cs.gnsclient.client.testing.LNSZipfianReadTest -guidCnt 1000 -threads 50
+ */
+public class LNSZipfianReadTest {
+
+  private static final String DEFAULT_ACCOUNT_ALIAS = "zipfian@gns.name"; // REPLACE THIS WITH YOUR ACCOUNT ALIAS
+  private static final String PASSWORD = "password";
+  private static final String FIELD = "value";
+  private static GNSClientCommands client;
+  private static GuidEntry masterGuid;
+
+  private final String[] guids;
+  // cumulative probabilities of the guids
+  private final double[] cdf;
+  private final AtomicLong reads = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong totalLatency = new AtomicLong();
+
+  /**
+   * Creates a LNSZipfianReadTest with the given arguments.
+   *
+   * @param accountGuidAlias
+   * @param lns the address of the local name server
+   * @param guidCnt
+   * @param exponent the exponent of the Zipfian distribution
+   */
+  public LNSZipfianReadTest(String accountGuidAlias, InetSocketAddress lns, int guidCnt, double exponent) {
+    try {
+      client = new GNSClientCommands(new GNSClient());
+    } catch (IOException e) {
+      System.out.println("Unable to create client: " + e);
+      e.printStackTrace();
+      System.exit(1);
+    }
+
+    guids = new String[guidCnt];
+    try {
+      masterGuid = GuidUtils.lookupOrCreateAccountGuid(client, accountGuidAlias, PASSWORD, true);
+      for (int i = 0; i < guidCnt; i++) {
+        GuidEntry guidEntry = client.guidCreate(masterGuid, "zipfianGUID" + RandomString.randomString(12));
+        client.fieldUpdate(guidEntry, FIELD, "value" + i);
+        guids[i] = guidEntry.getGuid();
+      }
+    } catch (Exception e) {
+      System.out.println("Exception when we were not expecting it: " + e);
+      e.printStackTrace();
+      System.exit(1);
+    }
+    client.setGNSProxy(lns);
+
+    cdf = new double[guidCnt];
+    double sum = 0;
+    for (int i = 0; i < guidCnt; i++) {
+      sum += 1 / Math.pow(i + 1, exponent);
+      cdf[i] = sum;
+    }
+    for (int i = 0; i < guidCnt; i++) {
+      cdf[i] /= sum;
+    }
+  }
+
+  // Picks a guid, the first ones are the most popular
+  private String nextGuid(Random random) {
+    int index = Arrays.binarySearch(cdf, random.nextDouble());
+    return guids[Math.min(index < 0 ? -index - 1 : index, guids.length - 1)];
+  }
+
+  /**
+   * Reads with the given number of threads for the given time.
+   *
+   * @param threadCnt
+   * @param durationMillis
+   * @throws InterruptedException
+   */
+  public void run(int threadCnt, final long durationMillis) throws InterruptedException {
+    final long endTime = System.currentTimeMillis() + durationMillis;
+    Thread[] threads = new Thread[threadCnt];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          Random random = new Random();
+          while (System.currentTimeMillis() < endTime) {
+            long start = System.currentTimeMillis();
+            try {
+              // unsigned reads are the ones the local name server coalesces
+              client.fieldRead(nextGuid(random), FIELD, null);
+              totalLatency.addAndGet(System.currentTimeMillis() - start);
+              reads.incrementAndGet();
+            } catch (Exception e) {
+              failures.incrementAndGet();
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    System.out.println(reads.get() + " reads in " + (durationMillis / 1000) + " seconds, "
+            + (reads.get() * 1000 / durationMillis) + " reads/s, average latency "
+            + (reads.get() > 0 ? (double) totalLatency.get() / reads.get() : 0) + "ms, "
+            + failures.get() + " failures");
+  }
+
+  /**
+   * The main routine run from the command line.
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(String args[]) throws Exception {
+    CommandLine parser = initializeOptions(args);
+    if (parser.hasOption("help")) {
+      printUsage();
+      System.exit(1);
+    }
+    String alias = parser.getOptionValue("alias");
+    InetSocketAddress lns = new InetSocketAddress(parser.getOptionValue("lnsHost", "localhost"),
+            Integer.parseInt(parser.getOptionValue("lnsPort",
+                    Integer.toString(Config.getGlobalInt(GNSClientConfig.GNSCC.LOCAL_NAME_SERVER_PORT)))));
+    LNSZipfianReadTest test = new LNSZipfianReadTest(alias != null ? alias : DEFAULT_ACCOUNT_ALIAS, lns,
+            Integer.parseInt(parser.getOptionValue("guidCnt", "1000")),
+            Double.parseDouble(parser.getOptionValue("exponent", "0.99")));
+    test.run(Integer.parseInt(parser.getOptionValue("threads", "50")),
+            Integer.parseInt(parser.getOptionValue("duration", "30")) * 1000L);
+    System.exit(0);
+  }
+
+  // command line arguments
+  // COMMAND LINE STUFF
+  private static HelpFormatter formatter = new HelpFormatter();
+  private static Options commandLineOptions;
+
+  private static CommandLine initializeOptions(String[] args) throws ParseException {
+    Option help = new Option("help", "Prints Usage");
+    Option alias = OptionBuilder.withArgName("alias").hasArg()
+            .withDescription("the alias (HRN) to use for the account")
+            .create("alias");
+    Option lnsHost = OptionBuilder.withArgName("lnsHost").hasArg()
+            .withDescription("the host of the local name server (default localhost)")
+            .create("lnsHost");
+    Option lnsPort = OptionBuilder.withArgName("lnsPort").hasArg()
+            .withDescription("the port of the local name server (default LOCAL_NAME_SERVER_PORT)")
+            .create("lnsPort");
+    Option guidCnt = OptionBuilder.withArgName("guidCnt").hasArg()
+            .withDescription("number of guids to read (default 1000)")
+            .create("guidCnt");
+    Option exponent = OptionBuilder.withArgName("exponent").hasArg()
+            .withDescription("exponent of the Zipfian distribution (default 0.99)")
+            .create("exponent");
+    Option threads = OptionBuilder.withArgName("threads").hasArg()
+            .withDescription("number of reading threads (default 50)")
+            .create("threads");
+    Option duration = OptionBuilder.withArgName("duration").hasArg()
+            .withDescription("seconds to read for (default 30)")
+            .create("duration");
+
+    commandLineOptions = new Options();
+    commandLineOptions.addOption(alias);
+    commandLineOptions.addOption(lnsHost);
+    commandLineOptions.addOption(lnsPort);
+    commandLineOptions.addOption(guidCnt);
+    commandLineOptions.addOption(exponent);
+    commandLineOptions.addOption(threads);
+    commandLineOptions.addOption(duration);
+    commandLineOptions.addOption(help);
+
+    CommandLineParser parser = new GnuParser();
+    return parser.parse(commandLineOptions, args);
+  }
+
+  private static void printUsage() {
+    formatter.printHelp("java -cp GNSClient.jar edu.umass.cs.gnsclient.client.testing.LNSZipfianReadTest <options>", commandLineOptions);
+  }
+
+}
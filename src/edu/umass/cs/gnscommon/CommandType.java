@@ -321,6 +321,23 @@ public enum CommandType {
           + "Fields can use dot notation to access subfields.",
           new String[]{GNSProtocol.GUID.toString(),
             GNSProtocol.FIELDS.toString()}, new String[]{}),
+  /**
+   * Reads the same fields from many guids with one signature.
+   */
+  ReadMultipleGuids(165, CommandCategory.READ, "edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.data.ReadMultipleGuids",
+          CommandResultType.MAP, true, false,
+          "Returns the values of the fields for each of the GUIDS after "
+          + "authenticating that the GUID making the request has access authority to them. "
+          + "The request is signed once by GUID and sent to its name servers which read the "
+          + "other guids on their behalf. "
+          + "The return value is a JSONObject containing the VALUES of the guids that could be read "
+          + "and the ERRORS response codes of those that couldn't. "
+          + "Fields can use dot notation to access subfields.",
+          new String[]{GNSProtocol.GUID.toString(),
+            GNSProtocol.GUIDS.toString(),
+            GNSProtocol.FIELDS.toString(),
+            GNSProtocol.SIGNATURE.toString(),
+            GNSProtocol.SIGNATUREFULLMESSAGE.toString()}, new String[]{}),
   /**
    *
    */
@@ -852,11 +869,31 @@ public enum CommandType {
          CommandResultType.LIST, false, false,
          "Returns the guids of all records that satisfy the query. "
          + "For details see http://gns.name/wiki/index.php/Query_Syntax "
-         + "Values are returned as a JSON array of guids.",
+         + "Values are returned as a JSON array of guids. "
+         + "If a limit is given at most that many guids are returned.",
          new String[]{GNSProtocol.QUERY.toString()},
          // optional parameters
          new String[]{GNSProtocol.GUID.toString(), // the reader
            GNSProtocol.FIELDS.toString(),
+           GNSProtocol.SELECT_LIMIT.toString(),
+           GNSProtocol.SIGNATURE.toString(),
+           GNSProtocol.SIGNATUREFULLMESSAGE.toString()}),
+ /**
+  * A select query that returns its results a page at a time.
+  */
+ SelectQueryPaged(323, CommandCategory.SELECT, "edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select.SelectQueryPaged",
+         CommandResultType.MAP, false, false,
+         "Returns a page of at most page size of the guids (or records if fields are given) that satisfy the query "
+         + "in guid order, starting after the AFTER_NAME guid if one is given. "
+         + "For details see http://gns.name/wiki/index.php/Query_Syntax "
+         + "The return value is a JSONObject containing the RECORDS of the page and, if there are more, "
+         + "the AFTER_NAME to pass for the next page.",
+         new String[]{GNSProtocol.QUERY.toString(),
+           GNSProtocol.SELECT_PAGE_SIZE.toString()},
+         // optional parameters
+         new String[]{GNSProtocol.GUID.toString(), // the reader
+           GNSProtocol.FIELDS.toString(),
+           GNSProtocol.SELECT_AFTER_NAME.toString(),
            GNSProtocol.SIGNATURE.toString(),
            GNSProtocol.SIGNATUREFULLMESSAGE.toString()}),
  
@@ -950,6 +987,17 @@ public enum CommandType {
           new String[]{GNSProtocol.GUID.toString(),
             GNSProtocol.GUIDCNT.toString()},
           new String[]{}),
+  /**
+   * Returns the subguids of an account a page at a time.
+   */
+  LookupAccountGuids(425, CommandCategory.READ, "edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.account.LookupAccountGuids",
+          CommandResultType.MAP, true, false,
+          "Returns a page of the subguids of the account guid. "
+          + "The return value is a JSONObject containing the GUIDS of the page and a CURSOR "
+          + "to pass as the account guids cursor to get the next page if there are more. "
+          + "Returns +BADACCOUNT+ if the guid is not an account guid.",
+          new String[]{GNSProtocol.GUID.toString()},
+          new String[]{GNSProtocol.ACCOUNT_GUIDS_CURSOR.toString()}),
   /**
    *
    */
@@ -1840,6 +1888,7 @@ public enum CommandType {
     ReadSecured.setChain(ReadUnsigned);
     ReadUnsigned.setChain();
     ReadMultiField.setChain(ReadUnsigned);
+    ReadMultipleGuids.setChain(ReadUnsigned);
     ReadMultiFieldUnsigned.setChain(ReadUnsigned);
     ReadArray.setChain(ReadUnsigned);
     ReadArrayOne.setChain(ReadUnsigned);
@@ -1900,6 +1949,7 @@ public enum CommandType {
     SelectQuery.setChain();
     SelectAndNotify.setChain();
     SelectNotificationStatus.setChain();
+    SelectQueryPaged.setChain();
     
     //
     AddGuid.setChain(LookupGuid, ReplaceUserJSONUnsigned, ReadUnsigned); // what else?
@@ -1918,6 +1968,7 @@ public enum CommandType {
     // insofar as whether they go remote or not.
     LookupAccountRecord.setChain();
     LookupRandomGuids.setChain();
+    LookupAccountGuids.setChain();
     LookupGuid.setChain();
     LookupPrimaryGuid.setChain(ReadUnsigned);
     LookupGuidRecord.setChain();
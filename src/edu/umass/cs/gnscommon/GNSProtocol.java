@@ -325,6 +325,10 @@ public enum GNSProtocol {
    * Represents the number of guids in a command.
    */
   GUIDCNT("guidCnt"),
+  /**
+   * The guids being read in a multiple guid read command.
+   */
+  GUIDS("guids"),
   /**
    * Represents the ACL field in GUID info's meta data
    */
@@ -448,6 +452,17 @@ public enum GNSProtocol {
    * If this exists in a command it indicates that coordinated reads should be used.
    */
   FORCE_COORDINATE_READS("COORDREAD"),
+  /**
+   * If this exists in a command it indicates that the client caches the result of the read
+   * and wants to be told when the guid is updated.
+   */
+  CACHED_READ("CACHEDREAD"),
+  /**
+   * The exact string of the command that the signature of a command packet was made over.
+   * Sent in place of the command so the server can verify the signature without
+   * making the canonical JSON of the command again.
+   */
+  SIGNED_COMMAND("SIGNEDQVAL"),
   /**
    * This member was not documented by it's creator.
    */
@@ -556,6 +571,22 @@ public enum GNSProtocol {
    * The key field for the select notification handle. 
    */
   SELECT_NOTIFICATION_HANDLE("select_notification_handle"),
+  /**
+   * The maximum number of records each name server returns in a page of a paged select.
+   */
+  SELECT_PAGE_SIZE("select_page_size"),
+  /**
+   * The maximum number of guids a select returns.
+   */
+  SELECT_LIMIT("select_limit"),
+  /**
+   * The last guid of the previous page of a paged select.
+   */
+  SELECT_AFTER_NAME("select_after_name"),
+  /**
+   * The key field for the cursor used to get the next page of the guids of an account.
+   */
+  ACCOUNT_GUIDS_CURSOR("account_guids_cursor"),
   /** The set of actives field in a command. This is mainly used to specify
    *  the initial set of actives while creating an account or a guid.
    */
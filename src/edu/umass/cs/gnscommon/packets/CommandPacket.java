@@ -82,11 +82,24 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
    */
   private final JSONObject command;
 
+  /**
+   * The exact string the signature of the command was made over if the client
+   * signed it that way, otherwise null. Serialized in place of the command so
+   * the servers can check the signature without making the canonical JSON of
+   * the command.
+   */
+  private final String signedCommand;
+
   /**
    * True means that this request should be forcibly coordinated.
    */
   private boolean forceCoordination = false;
 
+  /**
+   * True means that the client caches the result of this read.
+   */
+  private boolean cachedRead = false;
+
   // never serialized
   private Object result = null;
 
@@ -115,7 +128,21 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
   public CommandPacket(long requestId, JSONObject command, boolean validate) {
     this.setType(Packet.PacketType.COMMAND);
     this.clientRequestId = requestId;
-    this.command = command;
+    // The client puts the string it signed in the command, see CommandUtils.createAndSignCommand.
+    // The command passed in is left as it is.
+    Object signed = command.opt(GNSProtocol.SIGNED_COMMAND.toString());
+    JSONObject signedJSON = null;
+    if (signed instanceof String) {
+      try {
+        signedJSON = fromSignedCommand((String) signed,
+                command.optString(GNSProtocol.SIGNATURE.toString(), null));
+      } catch (JSONException e) {
+        // Treat it as an old style command, whose signature is checked against the canonical JSON
+      }
+    }
+    this.signedCommand = signedJSON != null ? (String) signed : null;
+    this.command = signedJSON != null ? signedJSON
+            : signed != null ? withoutSignedCommand(command) : command;
     if (validate) {
       validateCommandType();
     }
@@ -125,6 +152,23 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     // after receiving a command from NIO. 
   }
 
+  // A copy of the command without the string it was signed over.
+  private static JSONObject withoutSignedCommand(JSONObject command) {
+    JSONObject copy = new JSONObject();
+    Iterator<?> keyIter = command.keys();
+    while (keyIter.hasNext()) {
+      String key = (String) keyIter.next();
+      if (!GNSProtocol.SIGNED_COMMAND.toString().equals(key)) {
+        try {
+          copy.put(key, command.get(key));
+        } catch (JSONException e) {
+          // can't happen as the key and value come from a JSONObject
+        }
+      }
+    }
+    return copy;
+  }
+
   /**
    * Creates a CommandPacket instance from a JSONObject.
    *
@@ -135,10 +179,13 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
 	  // for setting the  client address in BasicPacketWithClientAddress
 	  super(json);
     this.type = Packet.getPacketType(json);
+    this.signedCommand = json.optString(GNSProtocol.SIGNED_COMMAND.toString(), null);
 
     if (!SUPPORT_OLD_PROTOCOL) {
       this.clientRequestId = json.getLong(QID);
-      this.command = json.getJSONObject(COMMAND);
+      this.command = this.signedCommand != null
+              ? fromSignedCommand(this.signedCommand, json.optString(GNSProtocol.SIGNATURE.toString(), null))
+              : json.getJSONObject(COMMAND);
     } else {
       if (json.has(QID)) {
         this.clientRequestId = json.getLong(QID);
@@ -147,7 +194,10 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
       } else {
         throw new JSONException("Packet missing field " + QID);
       }
-      if (json.has(COMMAND)) {
+      if (this.signedCommand != null) {
+        this.command = fromSignedCommand(this.signedCommand,
+                json.optString(GNSProtocol.SIGNATURE.toString(), null));
+      } else if (json.has(COMMAND)) {
         this.command = json.getJSONObject(COMMAND);
       } else if (json.has(OLD_COMMAND_PACKET_COMMAND)) {
         this.command = json.getJSONObject(OLD_COMMAND_PACKET_COMMAND);
@@ -158,6 +208,7 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
 
     this.forceCoordination = json.has(GNSProtocol.FORCE_COORDINATE_READS.toString())
             ? json.getBoolean(GNSProtocol.FORCE_COORDINATE_READS.toString()) : false;
+    this.cachedRead = json.optBoolean(GNSProtocol.CACHED_READ.toString(), false);
 
     validateCommandType();
   }
@@ -198,6 +249,17 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     		+ "constructor should not be used."));
   }
 
+  // The command is always made from the signed string so that it can't hold
+  // anything other than what the signature was made over.
+  private static JSONObject fromSignedCommand(String signedCommand, String signature)
+          throws JSONException {
+    JSONObject json = new JSONObject(signedCommand);
+    if (signature != null) {
+      json.put(GNSProtocol.SIGNATURE.toString(), signature);
+    }
+    return json;
+  }
+
   /**
    * Checks that the command type of the packet is not MUTUAL_AUTH
    * as those should be an AdminCommandPacket instead.
@@ -281,6 +343,10 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
    */
   @Override
   public final byte[] toBytes() {
+    // The byteified forms encode the command again which would lose the signed string
+    if (this.signedCommand != null) {
+      return toJSONBytes();
+    }
     try {
       switch (byteMode) {
         /* There is little point in using JSON just for this.command instead
@@ -436,10 +502,21 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     JSONObject json = new JSONObject();
     Packet.putPacketType(json, getType());
     json.put(QID, this.clientRequestId);
-    json.put(COMMAND, this.command);
+    if (this.signedCommand != null) {
+      // The signature goes next to the string it was made over instead of the command
+      json.put(GNSProtocol.SIGNED_COMMAND.toString(), this.signedCommand);
+      if (this.command.has(GNSProtocol.SIGNATURE.toString())) {
+        json.put(GNSProtocol.SIGNATURE.toString(), this.command.get(GNSProtocol.SIGNATURE.toString()));
+      }
+    } else {
+      json.put(COMMAND, this.command);
+    }
     if (this.forceCoordination) {
       json.put(GNSProtocol.FORCE_COORDINATE_READS.toString(), this.forceCoordination);
     }
+    if (this.cachedRead) {
+      json.put(GNSProtocol.CACHED_READ.toString(), this.cachedRead);
+    }
     return json;
   }
 
@@ -472,6 +549,16 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     return command;
   }
 
+  /**
+   * Returns the exact string the signature of the command was made over.
+   *
+   * @return the signed string or null if the command isn't signed or was signed
+   * over its canonical JSON
+   */
+  public String getSignedCommand() {
+    return signedCommand;
+  }
+
   /**
    * The service name is the name of the GNSProtocol.GUID.toString()/HRN that is being written to or
    * read.
@@ -560,6 +647,26 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     return this;
   }
 
+  /**
+   * Marks a read as one whose result the client caches. The active that
+   * serves it will tell the client when the guid is updated.
+   * This isn't part of the signed command.
+   *
+   * @param cachedRead
+   * @return {@code this}
+   */
+  public CommandPacket setCachedRead(boolean cachedRead) {
+    this.cachedRead = cachedRead && getCommandType().isRead();
+    return this;
+  }
+
+  /**
+   * @return true if the client caches the result of this read
+   */
+  public boolean isCachedRead() {
+    return this.cachedRead;
+  }
+
   /* ********************** Start of result-related methods **************** */
   /**
    * Waits till this command has finished execution.
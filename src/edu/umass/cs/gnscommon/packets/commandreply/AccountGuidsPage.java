@@ -0,0 +1,103 @@
+package edu.umass.cs.gnscommon.packets.commandreply;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * One page of the guids of an account. Contains the guids of the page 
+ * and, if there are more guids, the cursor that is used to ask for the 
+ * next page. 
+ * 
+ * @author westy
+ *
+ */
+public class AccountGuidsPage
+{
+	/**
+	 * The keys for serialization of this object into a JSONObject.
+	 */
+	public static enum Keys
+	{
+		/**
+		 * The guids in this page. 
+		 */
+		GUIDS,
+		/**
+		 * The cursor for the next page.
+		 * Not present when this is the last page.
+		 */
+		CURSOR,
+	}
+	
+	private final JSONArray guids;
+	
+	private final int cursor;
+	
+	/**
+	 * The constructor. 
+	 * @param guids
+	 * @param cursor
+	 * The cursor for the next page or -1 if this is the last page.
+	 */
+	public AccountGuidsPage(JSONArray guids, int cursor)
+	{
+		this.guids = guids;
+		this.cursor = cursor;
+	}
+	
+	/**
+	 * 
+	 * @return The guids in this page. 
+	 */
+	public JSONArray getGuids()
+	{
+		return this.guids;
+	}
+	
+	/**
+	 * 
+	 * @return The cursor for the next page or -1 if this is the last page.
+	 */
+	public int getCursor()
+	{
+		return this.cursor;
+	}
+	
+	/**
+	 * 
+	 * @return True if there are more pages.
+	 */
+	public boolean hasMore()
+	{
+		return this.cursor >= 0;
+	}
+	
+	/**
+	 * Serializes this object into a JSONObject
+	 * @return The serialized JSONObject
+	 * @throws JSONException
+	 */
+	public JSONObject toJSONObject() throws JSONException
+	{
+		JSONObject json = new JSONObject();
+		json.put(Keys.GUIDS.toString(), guids);
+		if(hasMore())
+		{
+			json.put(Keys.CURSOR.toString(), cursor);
+		}
+		return json;
+	}
+	
+	/**
+	 * Constructs an object of this class using the supplied JSONObject.
+	 * @param json
+	 * @return The object constructed using the supplied JSONObject
+	 * @throws JSONException
+	 */
+	public static AccountGuidsPage fromJSON(JSONObject json) throws JSONException
+	{
+		return new AccountGuidsPage(json.getJSONArray(Keys.GUIDS.toString()), 
+				json.optInt(Keys.CURSOR.toString(), -1));
+	}
+}
@@ -0,0 +1,141 @@
+package edu.umass.cs.gnscommon.packets.commandreply;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gnscommon.ResponseCode;
+
+/**
+ * The result of reading the same fields from many guids. Contains the
+ * values of each guid that could be read and the response code of
+ * each guid that couldn't.
+ *
+ * @author westy
+ *
+ */
+public class GuidsReadResult
+{
+	/**
+	 * The keys for serialization of this object into a JSONObject.
+	 */
+	public static enum Keys
+	{
+		/**
+		 * A JSONObject from each guid that was read to its values.
+		 */
+		VALUES,
+		/**
+		 * A JSONObject from each guid that couldn't be read to its response code.
+		 */
+		ERRORS,
+	}
+
+	private final JSONObject values;
+
+	private final JSONObject errors;
+
+	/**
+	 * Creates an empty result.
+	 */
+	public GuidsReadResult()
+	{
+		this(new JSONObject(), new JSONObject());
+	}
+
+	/**
+	 * The constructor.
+	 * @param values
+	 * @param errors
+	 */
+	public GuidsReadResult(JSONObject values, JSONObject errors)
+	{
+		this.values = values;
+		this.errors = errors;
+	}
+
+	/**
+	 * Adds the values of a guid.
+	 * @param guid
+	 * @param guidValues
+	 * @throws JSONException
+	 */
+	public void putValues(String guid, JSONObject guidValues) throws JSONException
+	{
+		this.values.put(guid, guidValues);
+	}
+
+	/**
+	 * Adds the response code of a guid that couldn't be read.
+	 * @param guid
+	 * @param code
+	 * @throws JSONException
+	 */
+	public void putError(String guid, ResponseCode code) throws JSONException
+	{
+		this.errors.put(guid, code.getCodeValue());
+	}
+
+	/**
+	 *
+	 * @return A JSONObject from each guid that was read to its values.
+	 */
+	public JSONObject getValues()
+	{
+		return this.values;
+	}
+
+	/**
+	 *
+	 * @param guid
+	 * @return The values of the guid or null if it wasn't read.
+	 */
+	public JSONObject getValues(String guid)
+	{
+		return this.values.optJSONObject(guid);
+	}
+
+	/**
+	 *
+	 * @param guid
+	 * @return The response code of the guid or null if it was read.
+	 */
+	public ResponseCode getError(String guid)
+	{
+		return this.errors.has(guid)
+				? ResponseCode.getResponseCode(this.errors.optInt(guid)) : null;
+	}
+
+	/**
+	 *
+	 * @return A JSONObject from each guid that couldn't be read to its response code.
+	 */
+	public JSONObject getErrors()
+	{
+		return this.errors;
+	}
+
+	/**
+	 * Serializes this object into a JSONObject
+	 * @return The serialized JSONObject
+	 * @throws JSONException
+	 */
+	public JSONObject toJSONObject() throws JSONException
+	{
+		JSONObject json = new JSONObject();
+		json.put(Keys.VALUES.toString(), values);
+		json.put(Keys.ERRORS.toString(), errors);
+		return json;
+	}
+
+	/**
+	 * Constructs an object of this class using the supplied JSONObject.
+	 * @param json
+	 * @return The object constructed using the supplied JSONObject
+	 * @throws JSONException
+	 */
+	public static GuidsReadResult fromJSON(JSONObject json) throws JSONException
+	{
+		return new GuidsReadResult(json.getJSONObject(Keys.VALUES.toString()),
+				json.getJSONObject(Keys.ERRORS.toString()));
+	}
+}
@@ -0,0 +1,105 @@
+package edu.umass.cs.gnscommon.packets.commandreply;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * One page of the results of a paged select. Contains the records (or guids) 
+ * of the page in guid order and, if there are more results, the last guid 
+ * of the page which is used to ask for the next page. 
+ * 
+ * @author westy
+ *
+ */
+public class SelectPage
+{
+	/**
+	 * The keys for serialization of this object into a JSONObject.
+	 */
+	public static enum Keys
+	{
+		/**
+		 * The records or guids in this page. 
+		 */
+		RECORDS,
+		/**
+		 * The last guid of this page, the next page starts after it.
+		 * Not present when this is the last page.
+		 */
+		AFTER_NAME,
+	}
+	
+	private final JSONArray records;
+	
+	private final String afterName;
+	
+	/**
+	 * The constructor. 
+	 * @param records
+	 * @param afterName
+	 * The guid the next page starts after or null if this is the last page.
+	 */
+	public SelectPage(JSONArray records, String afterName)
+	{
+		this.records = records;
+		this.afterName = afterName;
+	}
+	
+	/**
+	 * 
+	 * @return The records or guids in this page. 
+	 */
+	public JSONArray getRecords()
+	{
+		return this.records;
+	}
+	
+	/**
+	 * 
+	 * @return The guid the next page starts after or null if this is the last page.
+	 */
+	public String getAfterName()
+	{
+		return this.afterName;
+	}
+	
+	/**
+	 * 
+	 * @return True if there are more pages.
+	 */
+	public boolean hasMore()
+	{
+		return this.afterName != null;
+	}
+	
+	/**
+	 * Serializes this object into a JSONObject
+	 * @return The serialized JSONObject
+	 * @throws JSONException
+	 */
+	public JSONObject toJSONObject() throws JSONException
+	{
+		JSONObject json = new JSONObject();
+		json.put(Keys.RECORDS.toString(), records);
+		if(hasMore())
+		{
+			json.put(Keys.AFTER_NAME.toString(), afterName);
+		}
+		return json;
+	}
+	
+	/**
+	 * Constructs an object of this class using the supplied JSONObject.
+	 * @param json
+	 * @return The object constructed using the supplied JSONObject
+	 * @throws JSONException
+	 */
+	public static SelectPage fromJSON(JSONObject json) throws JSONException
+	{
+		JSONArray records = json.getJSONArray(Keys.RECORDS.toString());
+		String afterName = json.has(Keys.AFTER_NAME.toString()) ?
+				json.getString(Keys.AFTER_NAME.toString()) : null;
+		return new SelectPage(records, afterName);
+	}
+}
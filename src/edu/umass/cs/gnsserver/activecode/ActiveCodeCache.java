@@ -0,0 +1,210 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.activecode;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.json.JSONException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.database.ColumnFieldType;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ShaOneHashFunction;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+import edu.umass.cs.utils.DelayProfiler;
+
+/**
+ * A cache of the active code of guids, keyed by guid and action, so that
+ * running active code doesn't need a DB read of the code field on every
+ * request. Guids without code for an action are cached too.
+ *
+ * Each entry also holds a hash of the code, which clients send to their workers
+ * in place of code they have already sent.
+ *
+ * {@link #invalidate} is called by the record map whenever a guid record is
+ * created, removed or has one of its code fields updated on this replica.
+ * Version numbers per stripe of guids make sure code read before such an update
+ * is never cached after it.
+ *
+ * @author westy
+ */
+public class ActiveCodeCache {
+
+  // Must be a power of 2.
+  private static final int VERSION_STRIPES = 1024;
+
+  private static final Object LOCK = new Object();
+  private static volatile ActiveCodeCache instance = null;
+
+  /**
+   * The code of a guid for an action.
+   */
+  public static class CachedCode {
+
+    private final String code;
+    private final String hash;
+
+    private CachedCode(String code) {
+      this.code = code;
+      this.hash = code != null
+              ? DatatypeConverter.printHexBinary(ShaOneHashFunction.getInstance().hash(code))
+              : null;
+    }
+
+    /**
+     * Returns the code.
+     *
+     * @return the code or null if there is none
+     */
+    public String getCode() {
+      return code;
+    }
+
+    /**
+     * Returns the hex SHA-1 hash of the code.
+     *
+     * @return the hash or null if there is no code
+     */
+    public String getHash() {
+      return hash;
+    }
+  }
+
+  private static final CachedCode NO_CODE = new CachedCode(null);
+
+  private final Cache<String, CachedCode> codes;
+  private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+  private ActiveCodeCache(int size) {
+    this.codes = CacheBuilder.newBuilder().maximumSize(size).build();
+  }
+
+  private static ActiveCodeCache getInstance() {
+    ActiveCodeCache cache = instance;
+    if (cache == null && ActiveCodeConfig.activeCodeCacheSize > 0) {
+      synchronized (LOCK) {
+        cache = instance;
+        if (cache == null) {
+          cache = new ActiveCodeCache(ActiveCodeConfig.activeCodeCacheSize);
+          instance = cache;
+        }
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Returns true if the field is one that holds active code.
+   *
+   * @param field
+   * @return true if updating the field needs to invalidate cached code
+   */
+  public static boolean isCodeField(String field) {
+    int dot = field.indexOf('.');
+    String topLevel = dot < 0 ? field : field.substring(0, dot);
+    return ActiveCode.ON_READ.equals(topLevel) || ActiveCode.ON_WRITE.equals(topLevel);
+  }
+
+  /**
+   * Drops the cached code of the guid. Does nothing if the cache hasn't been used.
+   *
+   * @param guid
+   */
+  public static void invalidate(String guid) {
+    ActiveCodeCache cache = instance;
+    if (cache != null && guid != null) {
+      cache.versions.incrementAndGet(stripe(guid));
+      cache.codes.invalidateAll(Arrays.asList(key(guid, ActiveCode.READ_ACTION),
+              key(guid, ActiveCode.WRITE_ACTION)));
+    }
+  }
+
+  /**
+   * Returns the code of the guid for the action, reading it from the
+   * DB if it isn't cached.
+   *
+   * @param db
+   * @param guid
+   * @param action one of the actions in {@link ActiveCode}
+   * @return the code, whose {@link CachedCode#getCode()} is null if there is none
+   * @throws RecordNotFoundException
+   * @throws FailedDBOperationException
+   * @throws FieldNotFoundException
+   * @throws IllegalArgumentException if the action isn't one of those in {@link ActiveCode}
+   */
+  public static CachedCode lookup(BasicRecordMap db, String guid, String action)
+          throws RecordNotFoundException, FailedDBOperationException, FieldNotFoundException,
+          IllegalArgumentException {
+    ActiveCodeCache cache = getInstance();
+    if (cache == null) {
+      return read(db, guid, action);
+    }
+    String key = key(guid, action);
+    CachedCode cached = cache.codes.getIfPresent(key);
+    DelayProfiler.updateCount(cached != null ? "activeCodeCacheHits" : "activeCodeCacheMisses", 1);
+    if (cached != null) {
+      return cached;
+    }
+    long version = cache.versions.get(stripe(guid));
+    cached = read(db, guid, action);
+    if (cache.versions.get(stripe(guid)) == version) {
+      cache.codes.put(key, cached);
+      // An update might have happened between the check and the put.
+      if (cache.versions.get(stripe(guid)) != version) {
+        cache.codes.invalidate(key);
+      }
+    }
+    return cached;
+  }
+
+  private static CachedCode read(BasicRecordMap db, String guid, String action)
+          throws RecordNotFoundException, FailedDBOperationException, FieldNotFoundException,
+          IllegalArgumentException {
+    String field = ActiveCode.getCodeField(action);
+    ValuesMap codeMap = NameRecord.getNameRecordMultiUserFields(db, guid,
+            ColumnFieldType.USER_JSON, field).getValuesMap();
+    if (codeMap == null || !codeMap.has(field)) {
+      return NO_CODE;
+    }
+    try {
+      return new CachedCode(codeMap.getString(field));
+    } catch (JSONException e) {
+      return NO_CODE;
+    }
+  }
+
+  private static String key(String guid, String action) {
+    return guid + "/" + action;
+  }
+
+  private static int stripe(String guid) {
+    return guid.hashCode() & (VERSION_STRIPES - 1);
+  }
+}
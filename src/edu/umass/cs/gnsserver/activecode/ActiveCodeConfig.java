@@ -86,6 +86,38 @@ public class ActiveCodeConfig {
 	   */
 	  public static boolean activeCodeEnableDebugging = false;
 	  
+	  /**
+	   * True if non-blocking clients talk to their workers through memory-mapped
+	   * ring buffers instead of named pipes. Only used when named pipes are available.
+	   */
+	  public static boolean activeMappedChannelEnabled = false;
+	  
+	  /**
+	   * Size in bytes of each memory-mapped ring buffer, a request can use at most half of it
+	   */
+	  public static int activeMappedChannelSize = 4*1024*1024;
+	  
+	  /**
+	   * Number of guids whose code (or the lack of it) is cached on the name server, 0 to read the code from the DB on every request
+	   */
+	  public static int activeCodeCacheSize = 10000;
+	  
+	  /**
+	   * Number of compiled scripts and guid contexts a worker caches
+	   */
+	  public static int activeWorkerCodeCacheSize = 1000;
+	  
+	  /**
+	   * Number of workers the pool can grow to under load, 0 to keep {@link #activeCodeWorkerCount} workers
+	   */
+	  public static int activeCodeMaxWorkerCount = 0;
+	  
+	  /**
+	   * Number of active code requests in flight beyond which new requests are rejected,
+	   * 0 for 10 times the worker threads of the largest pool
+	   */
+	  public static int activeMaxPendingRequests = 0;
+	  
 	  
 	  private static final String ACTIVE_CODE_WORKER_COUNT = "ACTIVE_CODE_WORKER_COUNT";
 	  
@@ -109,6 +141,18 @@ public class ActiveCodeConfig {
 	  
 	  private static final String ACTIVE_CODE_ENABLE_DEBUGGING = "ACTIVE_CODE_ENABLE_DEBUGGING";
 	  
+	  private static final String ACTIVE_MAPPED_CHANNEL_ENABLED = "ACTIVE_MAPPED_CHANNEL_ENABLED";
+	  
+	  private static final String ACTIVE_MAPPED_CHANNEL_SIZE = "ACTIVE_MAPPED_CHANNEL_SIZE";
+	  
+	  private static final String ACTIVE_CODE_CACHE_SIZE = "ACTIVE_CODE_CACHE_SIZE";
+	  
+	  private static final String ACTIVE_WORKER_CODE_CACHE_SIZE = "ACTIVE_WORKER_CODE_CACHE_SIZE";
+	  
+	  private static final String ACTIVE_CODE_MAX_WORKER_COUNT = "ACTIVE_CODE_MAX_WORKER_COUNT";
+	  
+	  private static final String ACTIVE_MAX_PENDING_REQUESTS = "ACTIVE_MAX_PENDING_REQUESTS";
+	  
 	
 	/**
 	 * @param allValues
@@ -158,6 +202,30 @@ public class ActiveCodeConfig {
 		    	activeCodeTrustedMode = Boolean.parseBoolean(allValues.getProperty(ACTIVE_CODE_TRUSTED_MODE));
 		    }
 		    
+		    if(allValues.containsKey(ACTIVE_MAPPED_CHANNEL_ENABLED)) {
+		    	activeMappedChannelEnabled = Boolean.parseBoolean(allValues.getProperty(ACTIVE_MAPPED_CHANNEL_ENABLED));
+		    }
+		    
+		    if(allValues.containsKey(ACTIVE_MAPPED_CHANNEL_SIZE)) {
+		    	activeMappedChannelSize = Integer.parseInt(allValues.getProperty(ACTIVE_MAPPED_CHANNEL_SIZE));
+		    }
+		    
+		    if(allValues.containsKey(ACTIVE_CODE_CACHE_SIZE)) {
+		    	activeCodeCacheSize = Integer.parseInt(allValues.getProperty(ACTIVE_CODE_CACHE_SIZE));
+		    }
+		    
+		    if(allValues.containsKey(ACTIVE_WORKER_CODE_CACHE_SIZE)) {
+		    	activeWorkerCodeCacheSize = Integer.parseInt(allValues.getProperty(ACTIVE_WORKER_CODE_CACHE_SIZE));
+		    }
+		    
+		    if(allValues.containsKey(ACTIVE_CODE_MAX_WORKER_COUNT)) {
+		    	activeCodeMaxWorkerCount = Integer.parseInt(allValues.getProperty(ACTIVE_CODE_MAX_WORKER_COUNT));
+		    }
+		    
+		    if(allValues.containsKey(ACTIVE_MAX_PENDING_REQUESTS)) {
+		    	activeMaxPendingRequests = Integer.parseInt(allValues.getProperty(ACTIVE_MAX_PENDING_REQUESTS));
+		    }
+		    
 	  }
 	 
 	/**
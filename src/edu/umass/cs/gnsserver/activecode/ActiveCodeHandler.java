@@ -40,11 +40,10 @@ import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
 import edu.umass.cs.gnscommon.utils.Base64;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveException;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveHandler;
-import edu.umass.cs.gnsserver.database.ColumnFieldType;
+import edu.umass.cs.gnsserver.activecode.prototype.ActiveScheduler;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.InternalField;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
-import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
@@ -131,6 +130,7 @@ public class ActiveCodeHandler {
   /**
    * @param header
    * @param code
+   * @param codeHash
    * @param guid
    * @param accessor
    * @param action
@@ -139,10 +139,10 @@ public class ActiveCodeHandler {
    * @return executed result
    * @throws InternalRequestException
    */
-  private static JSONObject runCode(InternalRequestHeader header, String code, String guid, String accessor, 
+  private static JSONObject runCode(InternalRequestHeader header, String code, String codeHash, String guid, String accessor, 
           String action, JSONObject value, int activeCodeTTL) throws InternalRequestException {
     try {
-      return handler.runCode(header, guid, accessor, code, value, activeCodeTTL);
+      return handler.runCode(header, guid, accessor, action, code, codeHash, value, activeCodeTTL);
     } catch (ActiveException e) {
       ActiveCodeHandler.getLogger().log(Level.INFO, "ActiveGNS request execution failed", e);
       /**
@@ -236,30 +236,17 @@ public class ActiveCodeHandler {
     }
     JSONObject newResult = value;
     if (field == null || !InternalField.isInternalField(field)) {
-      NameRecord activeCodeNameRecord = null;
+      ActiveCodeCache.CachedCode cachedCode;
       try {
-        activeCodeNameRecord = NameRecord.getNameRecordMultiUserFields(db, guid,
-                ColumnFieldType.USER_JSON, ActiveCode.getCodeField(action));
-      } catch (RecordNotFoundException | FailedDBOperationException | IllegalArgumentException e) {
+        cachedCode = ActiveCodeCache.lookup(db, guid, action);
+      } catch (RecordNotFoundException | FailedDBOperationException | FieldNotFoundException
+              | IllegalArgumentException e) {
         e.printStackTrace();
         return value;
       }
 
-      ValuesMap codeMap = null;
-      try {
-        codeMap = activeCodeNameRecord.getValuesMap();
-      } catch (FieldNotFoundException e) {
-        e.printStackTrace();
-        return value;
-      }
-
-      if (codeMap != null && value != null) {
-        String code;
-        try {
-          code = codeMap.getString(ActiveCode.getCodeField(action));
-        } catch (JSONException | IllegalArgumentException e) {
-          return value;
-        }
+      if (cachedCode.getCode() != null && value != null) {
+        String code = cachedCode.getCode();
         // Prepare values for query
         String accessorGuid = header == null ? guid : header.getOriginatingGUID();
         if(header.getSourceAddress() != null){
@@ -270,13 +257,13 @@ public class ActiveCodeHandler {
 			}
         }
         // Run code
-        newResult = runCode(header, code, guid, accessorGuid, action, value, header.getTTL());
+        newResult = runCode(header, code, cachedCode.getHash(), guid, accessorGuid, action, value, header.getTTL());
         
         // Strip the appended fields
         if(newResult.has(SOURCE_IP_FIELD)){
         	newResult.remove(SOURCE_IP_FIELD);
         }
-      }else if(codeMap == null){
+      }else if(cachedCode.getCode() == null){
     	  ActiveCodeHandler.getLogger().log(DEBUG_LEVEL,
                   "OOOOOOOOOOOOO no code to run:[guid:{0},field:{1},action:{2},value:{3},header:{4}]",
                   new Object[]{guid, field, action, value, header});
@@ -289,6 +276,13 @@ public class ActiveCodeHandler {
     return newResult;
   }
 
+  /**
+   * @return the scheduler of the active code workers, null until this handler is created
+   */
+  public static ActiveScheduler getScheduler() {
+    return handler != null ? handler.getScheduler() : null;
+  }
+
   /**
    * @return LOGGER
    */
@@ -320,12 +314,12 @@ public class ActiveCodeHandler {
 
     String noop_code = new String(Files.readAllBytes(Paths.get("./scripts/activeCode/noop.js")));
     String noop_code64 = Base64.encodeToString(noop_code.getBytes("utf-8"), true);
-    ActiveCodeHandler.runCode(null, noop_code64, guid1, field1, read_action, valuesMap, 100);
+    ActiveCodeHandler.runCode(null, noop_code64, null, guid1, field1, read_action, valuesMap, 100);
 
     int n = 1000000;
     long t = System.currentTimeMillis();
     for (int i = 0; i < n; i++) {
-      ActiveCodeHandler.runCode(null, noop_code64, guid1, field1, read_action, valuesMap, 100);
+      ActiveCodeHandler.runCode(null, noop_code64, null, guid1, field1, read_action, valuesMap, 100);
     }
     long elapsed = System.currentTimeMillis() - t;
     System.out.println(String.format("it takes %d ms, avg_latency = %f us", elapsed, elapsed * 1000.0 / n));
@@ -10,7 +10,6 @@ import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import javax.script.ScriptException;
@@ -40,8 +39,6 @@ import edu.umass.cs.utils.DelayProfiler;
  */
 public class ActiveHandler {
 	
-	private static Client[] clientPool;
-	
 	private final static String cfilePrefix = "/tmp/client_";
 	private final static String sfilePrefix = "/tmp/server_";
 	private final String suffix;
@@ -55,8 +52,7 @@ public class ActiveHandler {
 	 */
 	public boolean pipeEnable = true;
 	
-	private final int numProcess;
-	final AtomicInteger counter = new AtomicInteger();
+	private final ActiveScheduler scheduler;
 	
 	
 	/**
@@ -67,9 +63,8 @@ public class ActiveHandler {
 	 * @param numThread 
 	 * @param blocking blocking client or not
 	 */
-	public ActiveHandler(String nodeID, ActiveDBInterface app, int numProcess, int numThread, boolean blocking){
+	public ActiveHandler(final String nodeID, final ActiveDBInterface app, int numProcess, final int numThread, final boolean blocking){
 		this.suffix = nodeID;
-		this.numProcess = numProcess;
 		
 		final String fileTestForPipe = "/tmp/test";
 		try {
@@ -84,27 +79,32 @@ public class ActiveHandler {
 		//FIXME: initialize Querier here, instead of initialize a query in each client
 		runner = new ActiveTrustedRunner(null);
 		
-		// initialize single clients and workers
-		clientPool = new Client[numProcess];
-		for (int i=0; i<numProcess; i++){
-			if(blocking){
-				
-				if(pipeEnable){
-					clientPool[i] = new ActiveBlockingClient(nodeID, app, cfilePrefix+i+suffix, sfilePrefix+i+suffix, i, numThread);
-				}else{
-					clientPool[i] = new ActiveBlockingClient(nodeID, app, clientStartPort+i, workerStartPort+i, i, numThread);
+		// initialize the pool of clients and workers, which can grow up to maxProcess workers
+		final int threads = blocking ? 1 : numThread;
+		int maxProcess = Math.max(numProcess, ActiveCodeConfig.activeCodeMaxWorkerCount);
+		int maxPending = ActiveCodeConfig.activeMaxPendingRequests > 0 ? 
+				ActiveCodeConfig.activeMaxPendingRequests : 10*maxProcess*threads;
+		scheduler = new ActiveScheduler(new ActiveScheduler.ClientFactory(){
+			@Override
+			public Client createClient(int i) {
+				if(blocking){
+					if(pipeEnable){
+						return new ActiveBlockingClient(nodeID, app, cfilePrefix+i+suffix, sfilePrefix+i+suffix, i, numThread);
+					}else{
+						return new ActiveBlockingClient(nodeID, app, clientStartPort+i, workerStartPort+i, i, numThread);
+					}
 				}
-			}else{
-				
+				ActiveNonBlockingClient client;
 				if(pipeEnable){
-					clientPool[i] = new ActiveNonBlockingClient(nodeID, app, cfilePrefix+i+suffix, sfilePrefix+i+suffix, i, numThread);
+					client = new ActiveNonBlockingClient(nodeID, app, cfilePrefix+i+suffix, sfilePrefix+i+suffix, i, numThread);
 				} else {
-					clientPool[i] = new ActiveNonBlockingClient(nodeID, app, clientStartPort+i, workerStartPort+i, i, numThread);
+					client = new ActiveNonBlockingClient(nodeID, app, clientStartPort+i, workerStartPort+i, i, numThread);
 				}
-				new Thread((ActiveNonBlockingClient) clientPool[i]).start();
+				new Thread(client).start();
+				return client;
 			}
-		}
-		ActiveCodeHandler.getLogger().log(Level.INFO, "ActiveHandler has been started with "+numProcess+"("+numThread+" threads) "
+		}, numProcess, maxProcess, threads, maxPending);
+		ActiveCodeHandler.getLogger().log(Level.INFO, "ActiveHandler has been started with "+numProcess+"(up to "+maxProcess+", "+numThread+" threads) "
 				+(blocking?"blocking":"nonblocking")+" worker processes.");
 	}
 	
@@ -122,11 +122,7 @@ public class ActiveHandler {
 	 * Shutdown all the client and its corresponding workers
 	 */
 	private void shutdown(){
-		for(int i=0; i<numProcess; i++){
-			if(clientPool[i] != null){
-				clientPool[i].shutdown();
-			}
-		}
+		scheduler.shutdown();
 	}
 	
 	/**
@@ -145,6 +141,27 @@ public class ActiveHandler {
 	 */
 	public JSONObject runCode(InternalRequestHeader header, String guid, 
 			String accessor, String code, JSONObject value, int ttl) throws ActiveException{
+		return runCode(header, guid, accessor, null, code, null, value, ttl);
+	}
+	
+	/**
+	 * Same as {@link #runCode(InternalRequestHeader, String, String, String, JSONObject, int)}
+	 * with the action the code runs for and the hash of the code, which lets a client 
+	 * send the code to its worker only once.
+	 * 
+	 * @param header 
+	 * @param guid
+	 * @param accessor
+	 * @param action can be null
+	 * @param code
+	 * @param codeHash can be null
+	 * @param value
+	 * @param ttl
+	 * @return executed result
+	 * @throws ActiveException 
+	 */
+	public JSONObject runCode(InternalRequestHeader header, String guid, 
+			String accessor, String action, String code, String codeHash, JSONObject value, int ttl) throws ActiveException{
 		if(ActiveCodeConfig.activeCodeTrustedMode){
 			String result = null;
 			try {
@@ -161,7 +178,15 @@ public class ActiveHandler {
 			}
 			return value;
 		}
-		return clientPool[counter.getAndIncrement()%numProcess].runCode(header, guid, accessor, code, value, ttl, 2000);
+		return scheduler.runCode(header, guid, accessor, action, code, codeHash, value, ttl, 2000);
+	}
+	
+	/**
+	 * @return the scheduler that sends requests to the workers, which has the 
+	 * CPU time and requests in flight of each guid and the number of rejections
+	 */
+	public ActiveScheduler getScheduler(){
+		return scheduler;
 	}
 	
 	/***************** Test methods ****************/	
@@ -205,7 +230,7 @@ public class ActiveHandler {
 		long t1 = System.currentTimeMillis();
 		
 		for(int i=0; i<n; i++){
-			tasks.add(executor.submit(new ActiveTask(clientPool[i%numProcess], guid, field, noop_code, value, 0)));
+			tasks.add(executor.submit(new ActiveTask(handler.scheduler, guid, field, noop_code, value, 0)));
 		}
 		for(Future<JSONObject> task:tasks){
 			task.get();
@@ -24,6 +24,12 @@ public class ActiveMessage implements Message{
 	private final static String CHARSET = "ISO-8859-1";
 	private final static AtomicLong counter = new AtomicLong();
 	
+	/**
+	 * The error a worker sends back for a request that only carries the hash 
+	 * of code it doesn't have, the request needs to be sent again with the code.
+	 */
+	public final static String CODE_MISS = "CODE_MISS";
+	
 	/**
 	 * Message type
 	 */
@@ -34,9 +40,12 @@ public class ActiveMessage implements Message{
 	private String guid;
 	private String accessor;
 	private String code;
+	private String codeHash;
+	private String action;
 	private String value;
 	private String targetGuid;
 	private String error;
+	private long cpuTime;
 
 	/**
 	 * This enum represents the type of this ActiveMessage
@@ -118,7 +127,25 @@ public class ActiveMessage implements Message{
 	 * @param budget 
 	 */
 	public ActiveMessage(String guid, String accessor, String code, String value, int ttl, long budget){
+		this(guid, accessor, null, code, null, value, ttl, budget);
+	}
+	
+	/**
+	 * This is a REQUEST message that identifies its code by a hash.
+	 * The code can be empty if the worker has already been sent the code with this hash.
+	 * @param guid
+	 * @param accessor
+	 * @param action the action the code runs for, can be null
+	 * @param code
+	 * @param codeHash can be null if the code is not empty
+	 * @param value
+	 * @param ttl
+	 * @param budget 
+	 */
+	public ActiveMessage(String guid, String accessor, String action, String code, String codeHash, String value, int ttl, long budget){
 		this(Type.REQUEST, counter.getAndIncrement(), ttl, budget, guid, accessor, code, value, null, null);
+		this.action = action;
+		this.codeHash = codeHash;
 	}
 	
 	/**
@@ -191,6 +218,34 @@ public class ActiveMessage implements Message{
 	public String getCode() {
 		return code;
 	}
+	
+	/**
+	 * @return the CPU time in nanoseconds the worker spent on the request of this RESPONSE
+	 */
+	public long getCpuTime() {
+		return cpuTime;
+	}
+	
+	/**
+	 * @param cpuTime the CPU time in nanoseconds the worker spent on the request
+	 */
+	public void setCpuTime(long cpuTime) {
+		this.cpuTime = cpuTime;
+	}
+	
+	/**
+	 * @return the hash of the code, null if the request is identified by its code
+	 */
+	public String getCodeHash() {
+		return codeHash;
+	}
+	
+	/**
+	 * @return the action the code of this request runs for, null if it wasn't given
+	 */
+	public String getAction() {
+		return action;
+	}
 
 	/**
 	 * @return value
@@ -228,16 +283,18 @@ public class ActiveMessage implements Message{
 		int length = 0;
 		switch(type){
 		case REQUEST:
-			length = 6*Integer.BYTES // type, ttl, guid length, accessor length, code length, valuesMap size 
+			length = 8*Integer.BYTES // type, ttl, guid length, accessor length, code length, code hash length, action length, valuesMap size 
 			+ 2*Long.BYTES // id, budget
 			+ guid.length() // guid
 			+ (accessor!=null?accessor.length():0) // accessor
-			+ code.length();
+			+ code.length()
+			+ (codeHash!=null?codeHash.length():0)
+			+ (action!=null?action.length():0);
 			break;
 			
 		case RESPONSE:
 			length = 3*Integer.BYTES // type, ttl, error length
-			+ Long.BYTES // id
+			+ 2*Long.BYTES // id, cpu time
 			+ (error != null?error.length():0);
 			break;
 			
@@ -313,6 +370,18 @@ public class ActiveMessage implements Message{
 			bbuf.put(codeBytes);
 			exactLength += (Integer.BYTES + codeBytes.length);
 			
+			// put code hash, can be null
+			byte[] codeHashBytes = (codeHash!=null)?codeHash.getBytes(CHARSET):new byte[0];
+			bbuf.putInt(codeHashBytes.length);
+			bbuf.put(codeHashBytes);
+			exactLength += (Integer.BYTES + codeHashBytes.length);
+			
+			// put action, can be null
+			byte[] actionBytes = (action!=null)?action.getBytes(CHARSET):new byte[0];
+			bbuf.putInt(actionBytes.length);
+			bbuf.put(actionBytes);
+			exactLength += (Integer.BYTES + actionBytes.length);
+			
 			// put valuesMapString, can be null
 			assert(valuesMapString != null):"valuesMapString can't be null for active request";
 			valuesMapBytes = valuesMapString.getBytes(CHARSET);
@@ -386,6 +455,9 @@ public class ActiveMessage implements Message{
 			bbuf.putInt( (error==null)?0:errorBytes.length );
 			bbuf.put(errorBytes);
 			exactLength += (Integer.BYTES + ((error==null)? 0:errorBytes.length));
+			
+			bbuf.putLong(cpuTime);
+			exactLength += Long.BYTES;
 			break;
 		default:
 			break;
@@ -446,6 +518,22 @@ public class ActiveMessage implements Message{
 			codeBytes = new byte[length];
 			bbuf.get(codeBytes);
 			code = new String(codeBytes, CHARSET);
+			
+			// get code hash
+			length = bbuf.getInt();
+			if(length>0){
+				byte[] codeHashBytes = new byte[length];
+				bbuf.get(codeHashBytes);
+				codeHash = new String(codeHashBytes, CHARSET);
+			}
+			
+			// get action
+			length = bbuf.getInt();
+			if(length>0){
+				byte[] actionBytes = new byte[length];
+				bbuf.get(actionBytes);
+				action = new String(actionBytes, CHARSET);
+			}
 						
 			// get valuesMap
 			length = bbuf.getInt();
@@ -511,6 +599,7 @@ public class ActiveMessage implements Message{
 				error = new String(errorBytes, CHARSET);
 			}
 			
+			cpuTime = bbuf.getLong();
 			break;
 		default:
 			break;
@@ -0,0 +1,466 @@
+package edu.umass.cs.gnsserver.activecode.prototype;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.json.JSONObject;
+
+import edu.umass.cs.gnsserver.activecode.ActiveCodeHandler;
+import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Client;
+import edu.umass.cs.gnsserver.activecode.prototype.interfaces.CpuAccounting;
+import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
+import edu.umass.cs.utils.DelayProfiler;
+
+/**
+ * This class dispatches requests to a pool of clients, each with its own
+ * worker process, and decides which requests to admit.
+ *
+ * <p>Every request goes to the client with the fewest requests in flight.
+ * The pool grows by one worker when the requests in flight have filled
+ * most of the worker threads for a while, up to the maximum number of
+ * workers, and shrinks back to the minimum when the workers have been
+ * mostly idle for a while. A worker that is removed gets no new requests
+ * and is shut down once its requests are done.
+ *
+ * <p>Workers report the CPU time each request used, which is charged to the
+ * token bucket of the request's guid. Buckets are refilled with an equal share
+ * of the CPU of this host among the guids that ran code recently. As long as
+ * there are idle worker threads every request is admitted. Once all of them
+ * are busy, requests of guids that have used up their share are rejected, so
+ * a guid with heavy code can't starve the others. Beyond a maximum number of
+ * requests in flight every request is rejected.
+ *
+ * <p>The requests in flight, the workers, rejections and the CPU time and
+ * requests in flight of the busiest guids are available from {@link #getStats()}
+ * and are logged at FINE, rejections and pool changes are also counted in
+ * DelayProfiler. The same numbers can be read one at a time from the getters,
+ * for instance {@link #getCpuTimes()} and {@link #getInFlight(String)}.
+ *
+ * @author westy
+ *
+ */
+public class ActiveScheduler implements Client, CpuAccounting {
+
+	/**
+	 * Creates the client of a worker.
+	 */
+	public interface ClientFactory {
+		/**
+		 * @param id a number not used by any other client of this scheduler
+		 * @return a started client
+		 */
+		public Client createClient(int id);
+	}
+
+	private final static long TICK_MS = 100;
+	// Ticks between decisions to grow or shrink the pool
+	private final static int SCALE_TICKS = 10;
+	// Fraction of the worker threads in use above which the pool grows...
+	private final static double GROW_LOAD = 0.8;
+	// ... after this many decisions in a row
+	private final static int GROW_AFTER = 2;
+	// Fraction of the worker threads in use below which the pool shrinks...
+	private final static double SHRINK_LOAD = 0.25;
+	// ... after this many decisions in a row
+	private final static int SHRINK_AFTER = 30;
+	// A guid shares the CPU if it has run code within this time
+	private final static long ACTIVE_GUID_MS = 10000;
+	// A guid's bucket is dropped if it hasn't run code within this time
+	private final static long IDLE_GUID_MS = 60000;
+	// Number of guids in the stats
+	private final static int TOP_GUIDS = 10;
+
+	private static class Worker {
+		final Client client;
+		final int id;
+		final AtomicInteger inFlight = new AtomicInteger();
+		// Set before the worker is put on the retiring list
+		volatile boolean retired = false;
+
+		Worker(Client client, int id){
+			this.client = client;
+			this.id = id;
+		}
+	}
+
+	/**
+	 * The token bucket and the CPU time used by a guid, in nanoseconds,
+	 * and the number of its requests in flight.
+	 */
+	private static class GuidAccount {
+		private long tokens;
+		private long cpuTime;
+		private long lastUsed;
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		GuidAccount(long tokens){
+			this.tokens = tokens;
+			this.lastUsed = System.currentTimeMillis();
+		}
+
+		synchronized void charge(long cpuTime){
+			this.tokens -= cpuTime;
+			this.cpuTime += cpuTime;
+		}
+
+		synchronized boolean admit(){
+			lastUsed = System.currentTimeMillis();
+			return tokens > 0;
+		}
+
+		synchronized void refill(long amount, long burst){
+			tokens = Math.min(burst, tokens + amount);
+		}
+
+		synchronized long getCpuTime(){
+			return cpuTime;
+		}
+
+		synchronized long getLastUsed(){
+			return lastUsed;
+		}
+	}
+
+	private final ClientFactory factory;
+	private final int minWorkers;
+	private final int maxWorkers;
+	private final int threadsPerWorker;
+	private final int maxPending;
+	private final long cpuCapacity;
+
+	private final List<Worker> workers = new CopyOnWriteArrayList<Worker>();
+	// Removed from the pool, shut down once their requests are done
+	private final List<Worker> retiring = new CopyOnWriteArrayList<Worker>();
+	private final AtomicInteger nextId = new AtomicInteger();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicBoolean isStarting = new AtomicBoolean();
+
+	private final ConcurrentHashMap<String, GuidAccount> accounts = new ConcurrentHashMap<String, GuidAccount>();
+	private volatile long share;
+
+	private final AtomicInteger rejectedOverShare = new AtomicInteger();
+	private final AtomicInteger rejectedQueueFull = new AtomicInteger();
+
+	private final ScheduledExecutorService timer;
+	private long lastTick = System.nanoTime();
+	private int ticks = 0;
+	private int busyDecisions = 0;
+	private int idleDecisions = 0;
+
+	/**
+	 * @param factory
+	 * @param minWorkers the number of workers started right away and kept
+	 * @param maxWorkers the number of workers the pool can grow to
+	 * @param threadsPerWorker the number of requests a worker can run at once
+	 * @param maxPending the number of requests in flight beyond which all requests are rejected
+	 */
+	public ActiveScheduler(ClientFactory factory, int minWorkers, int maxWorkers, int threadsPerWorker, int maxPending){
+		this.factory = factory;
+		this.minWorkers = Math.max(1, minWorkers);
+		this.maxWorkers = Math.max(this.minWorkers, maxWorkers);
+		this.threadsPerWorker = Math.max(1, threadsPerWorker);
+		this.maxPending = maxPending;
+		this.cpuCapacity = TimeUnit.SECONDS.toNanos(Runtime.getRuntime().availableProcessors());
+		this.share = cpuCapacity;
+
+		for(int i=0; i<this.minWorkers; i++){
+			addWorker();
+		}
+
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ActiveScheduler");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		timer.scheduleAtFixedRate(new Runnable(){
+			@Override
+			public void run() {
+				try {
+					tick();
+				} catch (RuntimeException e) {
+					ActiveCodeHandler.getLogger().log(Level.WARNING, "ActiveScheduler tick failed", e);
+				}
+			}
+		}, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+	}
+
+	private void addWorker(){
+		int id = nextId.getAndIncrement();
+		Client client = factory.createClient(id);
+		client.setCpuAccounting(this);
+		workers.add(new Worker(client, id));
+	}
+
+	private int getCapacity(){
+		return workers.size()*threadsPerWorker;
+	}
+
+	@Override
+	public JSONObject runCode(InternalRequestHeader header, String guid, String accessor,
+			String code, JSONObject valuesMap, int ttl, long budget) throws ActiveException {
+		return runCode(header, guid, accessor, null, code, null, valuesMap, ttl, budget);
+	}
+
+	@Override
+	public JSONObject runCode(InternalRequestHeader header, String guid, String accessor,
+			String action, String code, String codeHash, JSONObject valuesMap, int ttl, long budget) throws ActiveException {
+		GuidAccount account = admit(guid);
+		account.inFlight.incrementAndGet();
+		inFlight.incrementAndGet();
+		Worker worker = pickWorker();
+		try {
+			return worker.client.runCode(header, guid, accessor, action, code, codeHash, valuesMap, ttl, budget);
+		} finally {
+			worker.inFlight.decrementAndGet();
+			inFlight.decrementAndGet();
+			account.inFlight.decrementAndGet();
+		}
+	}
+
+	private GuidAccount admit(String guid) throws ActiveException {
+		int pending = inFlight.get();
+		if(maxPending > 0 && pending >= maxPending){
+			rejectedQueueFull.incrementAndGet();
+			DelayProfiler.updateCount("activeRejectedQueueFull", 1);
+			throw new ActiveException("Too many active code requests pending: "+pending);
+		}
+		GuidAccount account = accounts.get(guid);
+		if(account == null){
+			// a new guid starts with a full bucket
+			account = new GuidAccount(share);
+			GuidAccount existing = accounts.putIfAbsent(guid, account);
+			if(existing != null){
+				account = existing;
+			}
+		}
+		if(!account.admit() && pending >= getCapacity()){
+			rejectedOverShare.incrementAndGet();
+			DelayProfiler.updateCount("activeRejectedOverShare", 1);
+			throw new ActiveException("Active code of "+guid+" has used up its share of CPU time");
+		}
+		return account;
+	}
+
+	/**
+	 * Picks the worker with the fewest requests in flight and counts the request
+	 * against it. The count goes up before the worker is checked for having been
+	 * retired, so a worker is never shut down between being picked and being used:
+	 * either the retired flag is seen here and another worker is picked, or the
+	 * count is seen by the timer and the worker is left running.
+	 */
+	private Worker pickWorker(){
+		while(true){
+			Worker best = null;
+			for(Worker worker : workers){
+				if(best == null || worker.inFlight.get() < best.inFlight.get()){
+					best = worker;
+				}
+			}
+			best.inFlight.incrementAndGet();
+			if(!best.retired){
+				return best;
+			}
+			best.inFlight.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void charge(String guid, long cpuTime) {
+		GuidAccount account = accounts.get(guid);
+		if(account != null){
+			account.charge(cpuTime);
+		}
+	}
+
+	private void tick(){
+		long now = System.nanoTime();
+		long elapsed = now - lastTick;
+		lastTick = now;
+
+		// split the CPU among the guids that ran code recently and refill their buckets
+		long nowMs = System.currentTimeMillis();
+		int active = 0;
+		for(Iterator<GuidAccount> it = accounts.values().iterator(); it.hasNext(); ){
+			GuidAccount account = it.next();
+			long lastUsed = account.getLastUsed();
+			if(nowMs - lastUsed > IDLE_GUID_MS && account.inFlight.get() == 0){
+				it.remove();
+			} else if(nowMs - lastUsed <= ACTIVE_GUID_MS){
+				active++;
+			}
+		}
+		share = cpuCapacity/Math.max(1, active);
+		long refill = (long) (share*(elapsed/1e9));
+		for(GuidAccount account : accounts.values()){
+			// at most a second's worth of CPU can be saved up
+			account.refill(refill, share);
+		}
+
+		for(Worker worker : retiring){
+			if(worker.inFlight.get() == 0){
+				retiring.remove(worker);
+				worker.client.shutdown();
+			}
+		}
+
+		if(++ticks % SCALE_TICKS == 0){
+			scale();
+		}
+		if(ticks % (SCALE_TICKS*10) == 0){
+			ActiveCodeHandler.getLogger().log(Level.FINE, "{0}", new Object[]{getStats()});
+		}
+	}
+
+	private void scale(){
+		double load = inFlight.get()/(double) getCapacity();
+		busyDecisions = (load >= GROW_LOAD) ? busyDecisions+1 : 0;
+		idleDecisions = (load < SHRINK_LOAD) ? idleDecisions+1 : 0;
+
+		if(busyDecisions >= GROW_AFTER && workers.size() < maxWorkers && !isStarting.getAndSet(true)){
+			busyDecisions = 0;
+			// starting a worker takes a while, don't hold up the timer
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						addWorker();
+						DelayProfiler.updateCount("activeWorkersAdded", 1);
+						ActiveCodeHandler.getLogger().log(Level.INFO,
+								"ActiveScheduler added a worker, {0} workers", new Object[]{workers.size()});
+					} finally {
+						isStarting.set(false);
+					}
+				}
+			}).start();
+		} else if(idleDecisions >= SHRINK_AFTER && workers.size() > minWorkers){
+			idleDecisions = 0;
+			Worker worker = workers.remove(workers.size()-1);
+			worker.retired = true;
+			retiring.add(worker);
+			DelayProfiler.updateCount("activeWorkersRemoved", 1);
+			ActiveCodeHandler.getLogger().log(Level.INFO,
+					"ActiveScheduler removed worker {0}, {1} workers", new Object[]{worker.id, workers.size()});
+		}
+	}
+
+	/**
+	 * @return the number of requests in flight
+	 */
+	public int getInFlight(){
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the number of workers requests are sent to
+	 */
+	public int getWorkerCount(){
+		return workers.size();
+	}
+
+	/**
+	 * @return the number of requests in flight beyond what the worker threads can run at once
+	 */
+	public int getQueued(){
+		return Math.max(0, inFlight.get()-getCapacity());
+	}
+
+	/**
+	 * @return the number of requests rejected because their guid had used up its share of CPU time
+	 */
+	public int getRejectedOverShare(){
+		return rejectedOverShare.get();
+	}
+
+	/**
+	 * @return the number of requests rejected because too many were in flight
+	 */
+	public int getRejectedQueueFull(){
+		return rejectedQueueFull.get();
+	}
+
+	/**
+	 * @param guid
+	 * @return the CPU time in nanoseconds the code of the guid has used recently
+	 */
+	public long getCpuTime(String guid){
+		GuidAccount account = accounts.get(guid);
+		return account != null ? account.getCpuTime() : 0;
+	}
+
+	/**
+	 * @param guid
+	 * @return the number of requests of the guid in flight
+	 */
+	public int getInFlight(String guid){
+		GuidAccount account = accounts.get(guid);
+		return account != null ? account.inFlight.get() : 0;
+	}
+
+	/**
+	 * @return the CPU time in nanoseconds the code of each guid that ran code recently has used
+	 */
+	public Map<String, Long> getCpuTimes(){
+		Map<String, Long> cpuTimes = new HashMap<String, Long>();
+		for(Map.Entry<String, GuidAccount> entry : accounts.entrySet()){
+			cpuTimes.put(entry.getKey(), entry.getValue().getCpuTime());
+		}
+		return cpuTimes;
+	}
+
+	/**
+	 * @return the state of the pool, rejections and the guids that have used the most CPU
+	 */
+	public String getStats(){
+		List<Map.Entry<String, GuidAccount>> entries = new ArrayList<Map.Entry<String, GuidAccount>>(accounts.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, GuidAccount>>(){
+			@Override
+			public int compare(Map.Entry<String, GuidAccount> a, Map.Entry<String, GuidAccount> b) {
+				return Long.compare(b.getValue().getCpuTime(), a.getValue().getCpuTime());
+			}
+		});
+		StringBuilder sb = new StringBuilder();
+		sb.append("workers=").append(workers.size())
+			.append(" retiring=").append(retiring.size())
+			.append(" inFlight=").append(inFlight.get())
+			.append(" queued=").append(getQueued())
+			.append(" guids=").append(accounts.size())
+			.append(" shareMs=").append(TimeUnit.NANOSECONDS.toMillis(share))
+			.append(" rejectedOverShare=").append(rejectedOverShare.get())
+			.append(" rejectedQueueFull=").append(rejectedQueueFull.get())
+			.append(" cpuMs/inFlight={");
+		for(int i=0; i<Math.min(TOP_GUIDS, entries.size()); i++){
+			sb.append(i > 0 ? "," : "").append(entries.get(i).getKey()).append(":")
+				.append(TimeUnit.NANOSECONDS.toMillis(entries.get(i).getValue().getCpuTime()))
+				.append("/").append(entries.get(i).getValue().inFlight.get());
+		}
+		return sb.append("}").toString();
+	}
+
+	@Override
+	public void shutdown() {
+		timer.shutdownNow();
+		for(Worker worker : workers){
+			worker.client.shutdown();
+		}
+		for(Worker worker : retiring){
+			worker.client.shutdown();
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package edu.umass.cs.gnsserver.activecode.prototype.channels;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
+import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage.Type;
+import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
+
+/**
+ * Compares the round-trip latency and the requests per second of one
+ * worker for the {@link ActiveNamedPipe}, {@link ActiveDatagramChannel}
+ * and {@link ActiveMappedChannel}.
+ *
+ * <p>For each channel a worker process is started that answers every
+ * request with a response of the same id from a pool of threads, as
+ * ActiveNonBlockingWorker does. The given number of client threads each
+ * keep one request outstanding for the given number of seconds.
+ * The requests carry a value of the given size, which has to stay below
+ * {@link ActiveDatagramChannel#maxPacketSize} for the datagram channel.
+ *
+ * <p>Typical incantation:
+ *
+ * <p>java -cp jars/GNS.jar edu.umass.cs.gnsserver.activecode.prototype.channels.ActiveChannelThroughputTest 8 10 512
+ *
+ * @author westy
+ *
+ */
+public class ActiveChannelThroughputTest {
+
+	private final static String cfile = "/tmp/channel_test_client";
+	private final static String sfile = "/tmp/channel_test_server";
+	private final static int clientPort = 51000;
+	private final static int serverPort = 61000;
+	private final static int ringSize = 4*1024*1024;
+
+	// Request ids are the sending thread times this plus a sequence number
+	private final static long ID_RANGE = 1L << 40;
+
+	/**
+	 * @param args number of client threads, seconds per channel, bytes of value in a request
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length > 0 && args[0].equals("worker")){
+			runWorker(args[1], Integer.parseInt(args[2]));
+			return;
+		}
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int valueSize = args.length > 2 ? Integer.parseInt(args[2]) : 512;
+
+		for(String kind : new String[]{"pipe", "udp", "mapped"}){
+			// a short run first to warm up both sides
+			measure(kind, threads, Math.max(1, seconds/5), valueSize, false);
+			measure(kind, threads, seconds, valueSize, true);
+		}
+	}
+
+	private static void measure(String kind, int threads, int seconds, int valueSize, boolean report)
+			throws Exception {
+		Process worker = null;
+		if(!kind.equals("udp")){
+			Runtime.getRuntime().exec(new String[]{"mkfifo", cfile}).waitFor();
+			Runtime.getRuntime().exec(new String[]{"mkfifo", sfile}).waitFor();
+		}
+		if(kind.equals("mapped")){
+			ActiveMappedChannel.createRing(cfile, ringSize);
+			ActiveMappedChannel.createRing(sfile, ringSize);
+		}
+		worker = startWorker(kind, threads);
+
+		Channel channel;
+		switch(kind){
+		case "pipe":
+			channel = new ActiveNamedPipe(cfile, sfile);
+			break;
+		case "udp":
+			channel = new ActiveDatagramChannel(clientPort, serverPort);
+			break;
+		default:
+			channel = new ActiveMappedChannel(cfile, sfile);
+		}
+		try {
+			run(kind, channel, threads, seconds, valueSize, report);
+		} finally {
+			channel.close();
+			worker.destroyForcibly().waitFor();
+			new File(cfile).delete();
+			new File(sfile).delete();
+			ActiveMappedChannel.deleteRing(cfile);
+			ActiveMappedChannel.deleteRing(sfile);
+		}
+	}
+
+	private static void run(String kind, final Channel channel, int threads, int seconds, int valueSize,
+			boolean report) throws Exception {
+		char[] chars = new char[valueSize];
+		Arrays.fill(chars, 'x');
+		final String value = new String(chars);
+		final String code = "function run(value, accessor, querier) { return value; }";
+
+		final List<BlockingQueue<ActiveMessage>> responses = new ArrayList<BlockingQueue<ActiveMessage>>();
+		for(int i=0; i<threads; i++){
+			responses.add(new ArrayBlockingQueue<ActiveMessage>(1));
+		}
+		Thread receiver = new Thread(new Runnable(){
+			@Override
+			public void run() {
+				try {
+					ActiveMessage response;
+					while((response = (ActiveMessage) channel.receiveMessage()) != null){
+						responses.get((int) (response.getId()/ID_RANGE)).offer(response);
+					}
+				} catch (IOException e) {
+					// closed at the end of the run
+				}
+			}
+		});
+		receiver.setDaemon(true);
+		receiver.start();
+
+		final long endTime = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		final long[][] latencies = new long[threads][];
+		final int[] timeouts = new int[threads];
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for(int i=0; i<threads; i++){
+			final int index = i;
+			executor.submit(new Runnable(){
+				@Override
+				public void run() {
+					long[] micros = new long[1024];
+					int count = 0;
+					long seq = 0;
+					BlockingQueue<ActiveMessage> queue = responses.get(index);
+					try {
+						while(System.nanoTime() < endTime){
+							ActiveMessage request = new ActiveMessage(Type.REQUEST, index*ID_RANGE + seq++,
+									0, 0, "guid", "accessor", code, value, null, null);
+							long start = System.nanoTime();
+							channel.sendMessage(request);
+							ActiveMessage response;
+							// skip a response that arrived after its request timed out
+							do {
+								response = queue.poll(1, TimeUnit.SECONDS);
+							} while(response != null && response.getId() != request.getId());
+							if(response == null){
+								timeouts[index]++;
+								continue;
+							}
+							if(count == micros.length){
+								micros = Arrays.copyOf(micros, count*2);
+							}
+							micros[count++] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+						}
+					} catch (IOException | InterruptedException e) {
+						e.printStackTrace();
+					}
+					latencies[index] = Arrays.copyOf(micros, count);
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+
+		if(!report){
+			return;
+		}
+		int total = 0;
+		int timedOut = 0;
+		for(int i=0; i<threads; i++){
+			total += latencies[i] != null ? latencies[i].length : 0;
+			timedOut += timeouts[i];
+		}
+		long[] all = new long[total];
+		int offset = 0;
+		for(long[] micros : latencies){
+			if(micros != null){
+				System.arraycopy(micros, 0, all, offset, micros.length);
+				offset += micros.length;
+			}
+		}
+		Arrays.sort(all);
+		System.out.println(String.format("%-7s threads=%d value=%dB req/s=%.0f p50=%dus p99=%dus max=%dus timeouts=%d",
+				kind, threads, valueSize, total/(double) seconds, percentile(all, 50), percentile(all, 99),
+				all.length > 0 ? all[all.length-1] : 0, timedOut));
+	}
+
+	private static long percentile(long[] sorted, int percent) {
+		if(sorted.length == 0){
+			return 0;
+		}
+		int index = (int) Math.ceil(percent/100.0*sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length-1))];
+	}
+
+	private static Process startWorker(String kind, int threads) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add("java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ActiveChannelThroughputTest.class.getName());
+		command.add("worker");
+		command.add(kind);
+		command.add(""+threads);
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(Redirect.INHERIT);
+		builder.redirectOutput(Redirect.INHERIT);
+		return builder.start();
+	}
+
+	/**
+	 * Answers every request with its value, the other end of a run.
+	 */
+	private static void runWorker(String kind, int threads) throws IOException {
+		final Channel channel;
+		switch(kind){
+		case "pipe":
+			channel = new ActiveNamedPipe(sfile, cfile);
+			break;
+		case "udp":
+			channel = new ActiveDatagramChannel(serverPort, clientPort);
+			break;
+		default:
+			channel = new ActiveMappedChannel(sfile, cfile);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ActiveMessage msg;
+		while((msg = (ActiveMessage) channel.receiveMessage()) != null){
+			final ActiveMessage request = msg;
+			executor.submit(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						channel.sendMessage(new ActiveMessage(request.getId(), request.getValue(), null));
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+		}
+		executor.shutdownNow();
+		channel.close();
+	}
+}
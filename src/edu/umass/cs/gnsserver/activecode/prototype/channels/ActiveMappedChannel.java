@@ -0,0 +1,353 @@
+package edu.umass.cs.gnsserver.activecode.prototype.channels;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.json.JSONException;
+
+import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
+import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
+import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Message;
+
+/**
+ * This is a Channel over two memory-mapped ring buffers, one
+ * for each direction, shared by a client and its worker.
+ *
+ * <p>Any number of threads can send at the same time. A sender
+ * reserves a slot in the ring with a CAS on the tail, copies the
+ * serialized message into the mapping and then commits the slot
+ * by writing its length. Messages are read in place from the mapping
+ * by the single receiving thread, so no framing buffer is allocated on
+ * either side. Consumed slots are zeroed and handed back to the senders
+ * in batches.
+ *
+ * <p>The named pipes the {@link ActiveNamedPipe} would use are kept as
+ * doorbells. The receiver spins for a while on an empty ring, then sets a
+ * flag in the ring and blocks on its pipe. A sender only writes a byte to
+ * the pipe if it sees that flag, so a burst of messages costs at most one
+ * wakeup. As with {@link ActiveNamedPipe}, {@link #receiveMessage()} returns
+ * null once the other end has closed its pipe, e.g., because the worker
+ * crashed.
+ *
+ * <p>Rings are created by the client with {@link #createRing(String, int)}
+ * before it starts the worker, the worker maps the existing files.
+ *
+ * <pre>
+ *   Ring file:
+ *     capacity       (4 bytes at 0)
+ *     read position  (8 bytes at 64, written by the receiver)
+ *     waiting flag   (4 bytes at 128, set by a blocked receiver)
+ *     data           (capacity bytes at 256)
+ *   Slot (8-byte aligned):
+ *     length         (4 bytes, 0 until committed, -1 for padding to the end of the ring)
+ *     message        (length bytes)
+ * </pre>
+ *
+ * @author westy
+ *
+ */
+public class ActiveMappedChannel implements Channel {
+
+	private final static int CAPACITY_OFFSET = 0;
+	private final static int READ_POSITION_OFFSET = 64;
+	private final static int WAITING_OFFSET = 128;
+	private final static int DATA_OFFSET = 256;
+
+	private final static int SLOT_HEADER = Integer.BYTES;
+	private final static int PADDING = -1;
+
+	// Empty polls of the ring before the receiver blocks on the doorbell, spinning only takes the CPU from the sender on a single core
+	private final static int SPIN_TRIES = Runtime.getRuntime().availableProcessors() > 1 ? 20000 : 0;
+
+	private final static String RING_SUFFIX = ".ring";
+	// Put the rings on tmpfs when there is one so the pages are never written back
+	private final static File SHM_DIR = new File("/dev/shm");
+
+	/**
+	 * Only used for its memory barriers, the rings are shared with
+	 * another process so the accesses to the mapping can't be volatile.
+	 */
+	private static volatile int fence;
+
+	private final MappedByteBuffer readRing;
+	private final int readCapacity;
+	private long readPosition;
+	// Consumed but not yet handed back to the senders
+	private long releasedPosition;
+	private final byte[] zeroes = new byte[8192];
+
+	private final MappedByteBuffer writeRing;
+	private final int writeCapacity;
+	private final AtomicLong writeTail;
+
+	private InputStream reader;
+	private OutputStream writer;
+	private final byte[] doorbellBuffer = new byte[64];
+
+	private volatile boolean closed = false;
+
+	/**
+	 * @param ifile the pipe to receive from, its ring must exist
+	 * @param ofile the pipe to send to, its ring must exist
+	 * @throws IOException if a ring can't be mapped
+	 */
+	public ActiveMappedChannel(String ifile, String ofile) throws IOException {
+		readRing = map(getRingFile(ifile));
+		readCapacity = readRing.getInt(CAPACITY_OFFSET);
+		readPosition = readRing.getLong(READ_POSITION_OFFSET);
+		releasedPosition = readPosition;
+
+		writeRing = map(getRingFile(ofile));
+		writeCapacity = writeRing.getInt(CAPACITY_OFFSET);
+		writeTail = new AtomicLong(writeRing.getLong(READ_POSITION_OFFSET));
+
+		// Same as ActiveNamedPipe, open the reader in another thread as both ends open their writer first
+		Thread t = new Thread(new Runnable() {
+			public void run()
+			{
+				try {
+					reader = new FileInputStream(new File(ifile));
+				} catch (FileNotFoundException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		t.start();
+
+		try {
+			writer = new FileOutputStream(new File(ofile));
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		}
+		try {
+			t.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Creates an empty ring for the pipe, replacing any ring left
+	 * behind by a previous worker.
+	 *
+	 * @param file the pipe
+	 * @param capacity the size of the ring in bytes
+	 * @throws IOException
+	 */
+	public static void createRing(String file, int capacity) throws IOException {
+		File ring = getRingFile(file);
+		// A new file, so a worker that is still dying can't touch the new ring
+		ring.delete();
+		try (RandomAccessFile raf = new RandomAccessFile(ring, "rw")) {
+			raf.setLength(DATA_OFFSET + align(capacity));
+			raf.getChannel().map(MapMode.READ_WRITE, 0, DATA_OFFSET).putInt(CAPACITY_OFFSET, align(capacity));
+		}
+	}
+
+	/**
+	 * Deletes the ring of the pipe.
+	 *
+	 * @param file the pipe
+	 */
+	public static void deleteRing(String file) {
+		getRingFile(file).delete();
+	}
+
+	private static File getRingFile(String file) {
+		File pipe = new File(file);
+		if (SHM_DIR.isDirectory()) {
+			return new File(SHM_DIR, pipe.getName() + RING_SUFFIX);
+		}
+		return new File(file + RING_SUFFIX);
+	}
+
+	private static MappedByteBuffer map(File ring) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(ring, "rw");
+				FileChannel fc = raf.getChannel()) {
+			// The mapping stays valid after the file is closed
+			return fc.map(MapMode.READ_WRITE, 0, fc.size());
+		}
+	}
+
+	private static int align(int length) {
+		return (length + 7) & ~7;
+	}
+
+	private static void fullFence() {
+		fence = 0;
+		if (fence != 0) {
+			// never happens, only here so the read isn't dropped
+			fence = 0;
+		}
+	}
+
+	@Override
+	public void sendMessage(Message msg) throws IOException {
+		byte[] buf = msg.toBytes();
+		int size = align(SLOT_HEADER + buf.length);
+		if (size > writeCapacity / 2) {
+			throw new IOException("Message size "+buf.length+" is too large for this channel.");
+		}
+
+		// reserve a slot, wrapping to the start of the ring if the end is too short
+		long tail;
+		long start;
+		long end;
+		while (true) {
+			tail = writeTail.get();
+			int offset = (int) (tail % writeCapacity);
+			start = (offset + size > writeCapacity) ? tail + (writeCapacity - offset) : tail;
+			end = start + size;
+			if (end - writeRing.getLong(READ_POSITION_OFFSET) > writeCapacity) {
+				// the receiver is behind
+				if (closed) {
+					throw new IOException("Channel is closed.");
+				}
+				fullFence();
+				Thread.yield();
+				continue;
+			}
+			if (writeTail.compareAndSet(tail, end)) {
+				break;
+			}
+		}
+
+		int offset = (int) (start % writeCapacity);
+		ByteBuffer slot = writeRing.duplicate();
+		slot.position(DATA_OFFSET + offset + SLOT_HEADER);
+		slot.put(buf);
+		fullFence();
+		// commit
+		writeRing.putInt(DATA_OFFSET + offset, buf.length);
+		if (start != tail) {
+			writeRing.putInt(DATA_OFFSET + (int) (tail % writeCapacity), PADDING);
+		}
+		fullFence();
+
+		if (writeRing.getInt(WAITING_OFFSET) != 0) {
+			ringDoorbell();
+		}
+	}
+
+	private void ringDoorbell() throws IOException {
+		OutputStream out = writer;
+		if (out == null) {
+			throw new IOException("Channel is not connected.");
+		}
+		synchronized (out) {
+			out.write(1);
+			out.flush();
+		}
+	}
+
+	@Override
+	public Message receiveMessage() throws IOException {
+		int tries = 0;
+		while (!closed) {
+			int offset = (int) (readPosition % readCapacity);
+			int length = readRing.getInt(DATA_OFFSET + offset);
+			if (length == PADDING) {
+				readPosition += readCapacity - offset;
+				continue;
+			}
+			if (length > 0) {
+				fullFence();
+				ByteBuffer slot = readRing.duplicate();
+				slot.position(DATA_OFFSET + offset + SLOT_HEADER);
+				slot.limit(DATA_OFFSET + offset + SLOT_HEADER + length);
+				readPosition += align(SLOT_HEADER + length);
+				ActiveMessage am = null;
+				try {
+					am = new ActiveMessage(slot.slice());
+				} catch (JSONException e) {
+					e.printStackTrace();
+				}
+				if (readPosition - releasedPosition >= readCapacity / 4) {
+					release();
+				}
+				if (am != null) {
+					return am;
+				}
+				continue;
+			}
+
+			// the ring is empty, give back what has been read as a batch
+			release();
+			if (++tries < SPIN_TRIES) {
+				if (tries % 1000 == 0) {
+					Thread.yield();
+				}
+				fullFence();
+				continue;
+			}
+
+			readRing.putInt(WAITING_OFFSET, 1);
+			fullFence();
+			if (readRing.getInt(DATA_OFFSET + offset) == 0 && !awaitDoorbell()) {
+				// the other end has closed its pipe
+				return null;
+			}
+			readRing.putInt(WAITING_OFFSET, 0);
+			tries = 0;
+		}
+		return null;
+	}
+
+	private boolean awaitDoorbell() throws IOException {
+		InputStream in = reader;
+		if (in == null) {
+			// not connected yet or the pipe could not be opened
+			LockSupport.parkNanos(1000000);
+			return !closed;
+		}
+		return in.read(doorbellBuffer) >= 0;
+	}
+
+	/**
+	 * Zeroes the slots that have been read so that stale bytes are
+	 * never taken for a committed length, then publishes the read
+	 * position to the senders.
+	 */
+	private void release() {
+		if (releasedPosition == readPosition) {
+			return;
+		}
+		ByteBuffer data = readRing.duplicate();
+		long position = releasedPosition;
+		while (position < readPosition) {
+			int offset = (int) (position % readCapacity);
+			int length = (int) Math.min(Math.min(readPosition - position, readCapacity - offset), zeroes.length);
+			data.position(DATA_OFFSET + offset);
+			data.put(zeroes, 0, length);
+			position += length;
+		}
+		fullFence();
+		readRing.putLong(READ_POSITION_OFFSET, readPosition);
+		releasedPosition = readPosition;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		try{
+			if(reader != null)
+				reader.close();
+			if(writer != null)
+				writer.close();
+		}catch(IOException e){
+			e.printStackTrace();
+		}
+	}
+}
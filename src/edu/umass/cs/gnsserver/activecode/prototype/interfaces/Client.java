@@ -34,6 +34,38 @@ public interface Client {
 	 */
 	public JSONObject runCode(InternalRequestHeader header, String guid, String accessor, String code, JSONObject valuesMap, int ttl, long budget) throws ActiveException;
 	
+	/**
+	 * Same as {@link #runCode(InternalRequestHeader, String, String, String, JSONObject, int, long)}
+	 * with the action the code runs for and a hash that identifies the code, so that 
+	 * a client can avoid sending code the worker already has. Clients that don't 
+	 * cache code ignore both.
+	 * 
+	 * @param header 
+	 * @param guid
+	 * @param accessor
+	 * @param action the action the code runs for, can be null
+	 * @param code
+	 * @param codeHash the hash of the code, can be null
+	 * @param valuesMap
+	 * @param ttl
+	 * @param budget 
+	 * @return the executed result as an ValuesMap object
+	 * @throws ActiveException 
+	 */
+	public default JSONObject runCode(InternalRequestHeader header, String guid, String accessor, String action, String code, String codeHash, 
+			JSONObject valuesMap, int ttl, long budget) throws ActiveException {
+		return runCode(header, guid, accessor, code, valuesMap, ttl, budget);
+	}
+	
+	
+	/**
+	 * Sets where this client reports the CPU time its worker spends on
+	 * each guid's code. Clients whose workers don't measure CPU time ignore it.
+	 * 
+	 * @param accounting
+	 */
+	public default void setCpuAccounting(CpuAccounting accounting) {
+	}
 	
 	/**
 	 * Shutdown this client when system stopped.
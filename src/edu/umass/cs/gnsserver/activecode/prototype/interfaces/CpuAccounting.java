@@ -0,0 +1,19 @@
+package edu.umass.cs.gnsserver.activecode.prototype.interfaces;
+
+/**
+ * This interface is used by a Client to report the CPU 
+ * time its worker spent on each guid's code.
+ * 
+ * @author westy
+ *
+ */
+public interface CpuAccounting {
+	
+	/**
+	 * Charges the guid for CPU time used by its code.
+	 * 
+	 * @param guid
+	 * @param cpuTime in nanoseconds
+	 */
+	public void charge(String guid, long cpuTime);
+}
@@ -9,10 +9,14 @@ import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import edu.umass.cs.gnsserver.activecode.ActiveCodeConfig;
 import edu.umass.cs.gnsserver.activecode.ActiveCodeHandler;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveException;
@@ -20,9 +24,11 @@ import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage.Type;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveQueryHandler;
 import edu.umass.cs.gnsserver.activecode.prototype.channels.ActiveDatagramChannel;
+import edu.umass.cs.gnsserver.activecode.prototype.channels.ActiveMappedChannel;
 import edu.umass.cs.gnsserver.activecode.prototype.channels.ActiveNamedPipe;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Client;
+import edu.umass.cs.gnsserver.activecode.prototype.interfaces.CpuAccounting;
 import edu.umass.cs.gnsserver.interfaces.ActiveDBInterface;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 import edu.umass.cs.utils.DelayProfiler;
@@ -55,15 +61,25 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	
 	private ConcurrentHashMap<Long, Monitor> tasks = new ConcurrentHashMap<Long, Monitor>();
 	
+	// The hashes of the code sent to the current worker, the worker keeps at most as many
+	private final Cache<String, Boolean> sentCodes = CacheBuilder.newBuilder()
+			.maximumSize(ActiveCodeConfig.activeWorkerCodeCacheSize).build();
+	
 	private Process workerProc;
 	final private int id;
 	final private boolean pipeEnable;
+	final private boolean mappedEnable;
+	// Whether the current worker was told to use the rings, both ends always use the same channel
+	private boolean ringsMapped;
 	final private boolean crashEnabled = ActiveCodeConfig.activeCrashEnabled;
 	
 	private final int heapSize;
 	
 	private static long lastWorkerStartedTime;
 	private AtomicBoolean isRestarting = new AtomicBoolean();
+	private volatile boolean isShutdown = false;
+	
+	private volatile CpuAccounting accounting;
 	
 	/********************* For test **********************/
 	/**
@@ -93,11 +109,27 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	 * @param heapSize 
 	 */
 	public ActiveNonBlockingClient(String nodeId, ActiveDBInterface app, String ifile, String ofile, int id, int workerNumThread, int heapSize){
+		this(nodeId, app, ifile, ofile, id, workerNumThread, heapSize, ActiveCodeConfig.activeMappedChannelEnabled);
+	}
+	
+	/**
+	 * @param nodeId 
+	 * @param app 
+	 * @param ifile
+	 * @param ofile
+	 * @param id 
+	 * @param workerNumThread 
+	 * @param heapSize 
+	 * @param mappedEnable true to exchange messages through memory-mapped ring buffers, 
+	 * with the named pipes only used to wake up a blocked receiver
+	 */
+	public ActiveNonBlockingClient(String nodeId, ActiveDBInterface app, String ifile, String ofile, int id, int workerNumThread, int heapSize, boolean mappedEnable){
 		this.nodeId = nodeId;
 		this.id = id;
 		this.ifile = ifile;
 		this.ofile = ofile;
 		this.pipeEnable = true;
+		this.mappedEnable = mappedEnable;
 		this.workerNumThread = workerNumThread;
 		this.heapSize = heapSize;
 		
@@ -122,6 +154,8 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	}
 	
 	private void initializeChannelAndStartWorker(){
+		// a new worker has no code
+		sentCodes.invalidateAll();
 		Runtime runtime = Runtime.getRuntime();
 		try {
 			runtime.exec("mkfifo "+ifile);
@@ -129,12 +163,49 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 		} catch (IOException e1) {
 			e1.printStackTrace();
 		}		
+		ringsMapped = false;
+		if(mappedEnable){
+			try {
+				// the worker maps the rings when it starts
+				ActiveMappedChannel.createRing(ifile, ActiveCodeConfig.activeMappedChannelSize);
+				ActiveMappedChannel.createRing(ofile, ActiveCodeConfig.activeMappedChannelSize);
+				ringsMapped = true;
+			} catch (IOException e) {
+				ActiveCodeHandler.getLogger().log(Level.WARNING,
+						"unable to create the rings of {0}, using the named pipes: {1}",
+						new Object[]{ifile, e});
+			}
+		}
 		try {
+			// the worker is told which channel to use on its command line
 			workerProc = startWorker(ofile, ifile, id);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		channel = new ActiveNamedPipe(ifile, ofile);
+		if(ringsMapped){
+			try {
+				channel = new ActiveMappedChannel(ifile, ofile);
+			} catch (IOException e) {
+				ActiveCodeHandler.getLogger().log(Level.WARNING,
+						"unable to map the rings of {0}, restarting the worker with the named pipes: {1}",
+						new Object[]{ifile, e});
+				// the worker is using the rings, so start it again on the pipes
+				if(workerProc != null){
+					workerProc.destroyForcibly();
+				}
+				ActiveMappedChannel.deleteRing(ifile);
+				ActiveMappedChannel.deleteRing(ofile);
+				ringsMapped = false;
+				try {
+					workerProc = startWorker(ofile, ifile, id);
+				} catch (IOException e1) {
+					e1.printStackTrace();
+				}
+				channel = new ActiveNamedPipe(ifile, ofile);
+			}
+		} else {
+			channel = new ActiveNamedPipe(ifile, ofile);
+		}
 		DelayProfiler.updateDelay("activeRestartWorker", lastWorkerStartedTime);
 	}
 	
@@ -150,6 +221,7 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	public ActiveNonBlockingClient(String nodeId, ActiveDBInterface app, int port, int serverPort, int id, int workerNumThread){
 		this.nodeId = nodeId;
 		this.pipeEnable = false;
+		this.mappedEnable = false;
 		this.id = id;
 		this.workerNumThread = workerNumThread;
 		this.ifile = null;
@@ -191,7 +263,7 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 		 * connection.
 		 */
 		
-		while(!Thread.currentThread().isInterrupted()){
+		while(!Thread.currentThread().isInterrupted() && !isShutdown){
 			ActiveMessage response;
 			try {
 				if( (response = (ActiveMessage) channel.receiveMessage()) != null){					
@@ -203,11 +275,11 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 							new Object[]{response});
 					
 					monitor.setResult(response, response.type == Type.RESPONSE);
-				} else {
+				} else if(!isShutdown) {
 					if(!isRestarting.getAndSet(true)){
 						lastWorkerStartedTime = System.currentTimeMillis();
 						// restart the worker
-						this.shutdown();
+						this.stopWorker();
 						this.initializeChannelAndStartWorker();
 						
 						// release all the requests that waited on its monitor
@@ -226,10 +298,29 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	
 	/**
 	 * Destroy the worker process if it's still running,
-	 * delete the 
+	 * delete the pipes and stop receiving. The worker is
+	 * not restarted.
 	 */
 	@Override
 	public void shutdown(){
+		isShutdown = true;
+		stopWorker();
+		// release all the requests that are still waiting
+		for(Monitor monitor:this.tasks.values()){
+			monitor.setResult(null, true);
+		}
+	}
+	
+	@Override
+	public void setCpuAccounting(CpuAccounting accounting){
+		this.accounting = accounting;
+	}
+	
+	/**
+	 * Destroy the worker process if it's still running,
+	 * delete the pipes and close the channel.
+	 */
+	private void stopWorker(){
 		
 		if(workerProc != null){		
 			//FIXME: forcibly kill the worker
@@ -240,6 +331,10 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 			(new File(ifile)).delete();
 			(new File(ofile)).delete();
 		}
+		if(mappedEnable){
+			ActiveMappedChannel.deleteRing(ifile);
+			ActiveMappedChannel.deleteRing(ofile);
+		}
 		
 		channel.close();
 	}
@@ -278,6 +373,8 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	    command.add(Boolean.toString(pipeEnable));
 	    command.add("ReconfigurableNode");
 	    command.add(nodeId);
+	    command.add(Boolean.toString(ringsMapped));
+	    command.add(""+ActiveCodeConfig.activeWorkerCodeCacheSize);
 	    
 	    ProcessBuilder builder = new ProcessBuilder(command);
 		builder.directory(new File(System.getProperty("user.dir")));
@@ -345,10 +442,12 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	}
 	
   /**
+   * Channels are thread-safe, so requests from different threads
+   * are not serialized here.
    *
    * @param am
    */
-  protected synchronized void sendMessage(ActiveMessage am){
+  protected void sendMessage(ActiveMessage am){
 		try {
 			channel.sendMessage(am);
 			ActiveCodeHandler.getLogger().log(ActiveCodeHandler.DEBUG_LEVEL, 
@@ -386,8 +485,74 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	@Override
 	public JSONObject runCode(InternalRequestHeader header, String guid, String accessor, 
 			String code, JSONObject valuesMap, int ttl, long budget) throws ActiveException {
+		return runCode(header, guid, accessor, null, code, null, valuesMap, ttl, budget);
+	}
+	
+	/**
+	 * Same as {@link #runCode(InternalRequestHeader, String, String, String, JSONObject, int, long)}
+	 * but the code is only sent if it hasn't been sent to the current worker before. Otherwise
+	 * the request only carries the hash of the code, and if the worker no longer has the code
+	 * the request is sent again with the code.
+	 * 
+	 * @param header 
+	 * @param guid
+	 * @param accessor
+	 * @param action the action the code runs for, can be null
+	 * @param code
+	 * @param codeHash the hash of the code, null to always send the code
+	 * @param valuesMap
+	 * @param ttl
+	 * @param budget 
+	 * @return executed result sent back from worker
+	 * @throws ActiveException
+	 */
+	@Override
+	public JSONObject runCode(InternalRequestHeader header, String guid, String accessor, 
+			String action, String code, String codeHash, JSONObject valuesMap, int ttl, long budget) throws ActiveException {
+		
+		String value = valuesMap.toString();
+		boolean sendCode = codeHash == null || sentCodes.getIfPresent(codeHash) == null;
+		if(sendCode && codeHash != null){
+			sentCodes.put(codeHash, Boolean.TRUE);
+		}
+		ActiveMessage msg = new ActiveMessage(guid, accessor, action, sendCode?code:"", codeHash, value, ttl, budget);
+		ActiveMessage response = execute(header, msg);
+		
+		if(ActiveMessage.CODE_MISS.equals(response.getError())){
+			DelayProfiler.updateCount("activeCodeWorkerMisses", 1);
+			msg = new ActiveMessage(guid, accessor, action, code, codeHash, value, ttl, budget);
+			response = execute(header, msg);
+		}
+		
+		CpuAccounting accounting = this.accounting;
+		if(accounting != null && response.getCpuTime() > 0){
+			accounting.charge(guid, response.getCpuTime());
+		}
 		
-		ActiveMessage msg = new ActiveMessage(guid, accessor, code, valuesMap.toString(), ttl, budget);
+		if(response.getError() != null){
+			throw new ActiveException("Message: " + msg.toString() +
+                                " Response: " + response.toString());
+		}
+		counter.getAndIncrement();
+		
+		try {
+			// FIXED: it is possible that the returned value is null which causes a NullPointerException when initializing a JSONObject
+			if(response.getValue() == null){
+				// The methods calling ActiveCodeHandler.runCode will check the returned result, if it's null, 
+				// the methods will use the original value. See NSFieldAccess, NSUpdateSupport
+				return null;
+			}
+			return new JSONObject(response.getValue());
+		} catch (JSONException e) {
+			throw new ActiveException("Bad JSON value returned from active code!");
+		}
+	}
+	
+	/**
+	 * Sends the request to the worker, answers the queries the code makes 
+	 * while it runs and returns the response.
+	 */
+	private ActiveMessage execute(InternalRequestHeader header, ActiveMessage msg) throws ActiveException {
 		Monitor monitor = new Monitor();
 		tasks.put(msg.getId(), monitor);
 		
@@ -441,6 +606,7 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 		}
 		
 		response = monitor.getResult();
+		tasks.remove(msg.getId());
 		
 		ActiveCodeHandler.getLogger().log(ActiveCodeHandler.DEBUG_LEVEL,
 				"receive a response from the worker:{0}",
@@ -453,25 +619,7 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 			 */
 			throw new ActiveException("Worker crashes!");
 		}
-		if(response.getError() != null){
-			throw new ActiveException("Message: " + msg.toString() +
-                                " Response: " + response.toString());
-		}
-		counter.getAndIncrement();
-		tasks.remove(response.getId());
-		
-		
-		try {
-			// FIXED: it is possible that the returned value is null which causes a NullPointerException when initializing a JSONObject
-			if(response.getValue() == null){
-				// The methods calling ActiveCodeHandler.runCode will check the returned result, if it's null, 
-				// the methods will use the original value. See NSFieldAccess, NSUpdateSupport
-				return null;
-			}
-			return new JSONObject(response.getValue());
-		} catch (JSONException e) {
-			throw new ActiveException("Bad JSON value returned from active code!");
-		}
+		return response;
 	}
 	
 	public String toString(){
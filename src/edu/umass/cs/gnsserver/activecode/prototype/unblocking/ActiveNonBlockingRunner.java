@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -13,7 +12,9 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import javax.script.Invocable;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
@@ -21,19 +22,29 @@ import javax.script.SimpleScriptContext;
 
 import org.json.JSONException;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.maxmind.geoip2.DatabaseReader;
 
+import edu.umass.cs.gnsserver.activecode.ActiveCodeConfig;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Runner;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
+import jdk.nashorn.api.scripting.NashornException;
 import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
 import jdk.nashorn.api.scripting.ScriptObjectMirror;
 
 /**
  * This class implements Runner interface.
- * It has a script engine to execute user code and a in-memory map to cache
- * evaled user code context. 
+ * It has a script engine to execute user code, a bounded cache of 
+ * compiled code keyed by the hash of the code and a bounded cache of
+ * the context each guid's code has been evaled in for each action.
+ * 
+ * <p>A request can carry only the hash of its code if the code has been
+ * sent before. If the compiled code has been evicted since, the request 
+ * fails with a {@link CodeMissException} and the client sends it again 
+ * with the code.
  * 
  * @author gaozy
  *
@@ -41,10 +52,11 @@ import jdk.nashorn.api.scripting.ScriptObjectMirror;
 public class ActiveNonBlockingRunner implements Runner {
 	
 	final private ScriptEngine engine;
-	final private Invocable invocable;
 	
-	private final HashMap<String, ScriptContext> contexts = new HashMap<String, ScriptContext>();
-	private final HashMap<String, Integer> codeHashes = new HashMap<String, Integer>();
+	// keyed by the code hash, or by the code itself for requests without a hash
+	private final Cache<String, CompiledScript> scripts;
+	// the run function of each guid's code, keyed by guid, action and code
+	private final Cache<String, ScriptObjectMirror> contexts;
 	private final Channel channel;
 	private final ConcurrentHashMap<Long, ActiveNonBlockingQuerier> map = new ConcurrentHashMap<Long, ActiveNonBlockingQuerier>();
 	private final DatabaseReader dbReader;
@@ -70,36 +82,101 @@ public class ActiveNonBlockingRunner implements Runner {
 			throw new RuntimeException("Can not eval JSON");			
 		}
 		
-		invocable = (Invocable) engine;
+		scripts = CacheBuilder.newBuilder().maximumSize(ActiveCodeConfig.activeWorkerCodeCacheSize).build();
+		contexts = CacheBuilder.newBuilder().maximumSize(ActiveCodeConfig.activeWorkerCodeCacheSize).build();
 	}
 	
 	/**
-	 * Update cache needs to be synchronized, as some code cache may not be evaled before being used.
+	 * This exception is thrown when a request only carries the hash of
+	 * code that is not in the cache.
+	 */
+	public static class CodeMissException extends ScriptException {
+		private static final long serialVersionUID = 1L;
+
+		CodeMissException(String codeHash) {
+			super("No code cached for hash "+codeHash);
+		}
+	}
+	
+	/**
+	 * Returns the run function of the guid's code for the action, evaluating the code 
+	 * in a new context if it hasn't been evaluated for this guid and action yet. 
+	 * The key includes the code so changed code gets a new context and the old one 
+	 * ages out of the cache. No lock is needed: if two threads eval the same new code 
+	 * at once, one of the contexts is dropped.
 	 * 
-	 * @param codeId
+	 * @param guid
+	 * @param action
 	 * @param code
+	 * @param codeHash
+	 * @return the run function
 	 * @throws ScriptException
+	 * @throws NoSuchMethodException if the code has no run function
 	 */
-	private synchronized void updateCache(String codeId, String code) throws ScriptException {
-	    if (!contexts.containsKey(codeId)) {
-	      // Create a context if one does not yet exist and eval the code
-	      ScriptContext sc = new SimpleScriptContext();
-	      contexts.put(codeId, sc);
-	      codeHashes.put(codeId, code.hashCode());
-	      engine.eval(code, sc);
-	    } else if ( codeHashes.get(codeId) != code.hashCode()) {
-	      // The context exists, but we need to eval the new code
-	      ScriptContext sc = contexts.get(codeId);
-	      codeHashes.put(codeId, code.hashCode());
-	      engine.eval(code, sc);
-	    }
+	private ScriptObjectMirror getRunFunction(String guid, String action, final String code, String codeHash) 
+			throws ScriptException, NoSuchMethodException {
+		final String codeKey = (codeHash != null) ? codeHash : code;
+		final String contextKey = guid + "/" + action + "/" + codeKey;
+		ScriptObjectMirror run = contexts.getIfPresent(contextKey);
+		if (run != null) {
+			return run;
+		}
+		
+		CompiledScript script = scripts.getIfPresent(codeKey);
+		if (script == null) {
+			if (code == null || code.isEmpty()) {
+				throw new CodeMissException(codeHash);
+			}
+			try {
+				script = scripts.get(codeKey, new Callable<CompiledScript>() {
+					@Override
+					public CompiledScript call() throws ScriptException {
+						return ((Compilable) engine).compile(code);
+					}
+				});
+			} catch (ExecutionException e) {
+				throw (e.getCause() instanceof ScriptException) ? (ScriptException) e.getCause() 
+						: new ScriptException(e);
+			}
+		}
+		
+		// Each guid and action gets its own global so that code can't see the state of other code
+		ScriptContext sc = new SimpleScriptContext();
+		Bindings bindings = engine.createBindings();
+		sc.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+		script.eval(sc);
+		Object function = bindings.get("run");
+		if (!(function instanceof ScriptObjectMirror) || !((ScriptObjectMirror) function).isFunction()) {
+			throw new NoSuchMethodException("No such function run");
+		}
+		run = (ScriptObjectMirror) function;
+		contexts.put(contextKey, run);
+		return run;
 	}
 	
 	/**
-	 * This method first update the cache of code, 
-	 * then set the context with the cached code 
-	 * for the script engine, finally invokes the
-	 * "run" method.
+	 * Runs code sent with the request, see {@link #runCode(String, String, String, String, String, String, int, long)}.
+	 * 
+	 * @param guid
+	 * @param accessor
+	 * @param code
+	 * @param value
+	 * @param ttl
+	 * @param id 
+	 * @return ValuesMap result 
+	 * @throws ScriptException
+	 * @throws NoSuchMethodException
+	 */
+	@Override
+	public String runCode(String guid, String accessor, String code, String value, int ttl, long id) 
+			throws ScriptException, NoSuchMethodException {
+		return runCode(guid, accessor, null, code, null, value, ttl, id);
+	}
+	
+	/**
+	 * This method first gets the context of the guid
+	 * for the action from the cache, evaling the code if necessary, 
+	 * then invokes its "run" method.
 	 * 
 	 * <p>Based on the answer of Nashorn builder on stackoverflow:
 	 * http://stackoverflow.com/questions/30140103/should-i-use-a-separate-scriptengine-and-compiledscript-instances-per-each-threa/30159424#30159424
@@ -107,30 +184,34 @@ public class ActiveNonBlockingRunner implements Runner {
 	 * 
 	 * @param guid
 	 * @param accessor
-	 * @param code
+	 * @param action the action the code runs for, can be null
+	 * @param code the code, can be empty if codeHash is given
+	 * @param codeHash the hash of the code, null to identify the code by itself
 	 * @param value
 	 * @param ttl
 	 * @param id 
 	 * @return ValuesMap result 
-	 * @throws ScriptException
+	 * @throws ScriptException a {@link CodeMissException} if the code is needed
 	 * @throws NoSuchMethodException
 	 */
-        @Override
-	public String runCode(String guid, String accessor, String code, String value, int ttl, long id) 
-			throws ScriptException, NoSuchMethodException {		
+	public String runCode(String guid, String accessor, String action, String code, String codeHash, 
+			String value, int ttl, long id) throws ScriptException, NoSuchMethodException {		
+		
+		ScriptObjectMirror run = getRunFunction(guid, action, code, codeHash);
 		
         ActiveNonBlockingQuerier querier = new ActiveNonBlockingQuerier(channel, dbReader, JSON, ttl, guid, id);
 		map.put(id, querier);
 		
-		updateCache(guid, code);
-		engine.setContext(contexts.get(guid));
-				
-		Object ret = invocable.invokeFunction("run", JSON.callMember("parse", value),
-				accessor, querier);		
+		Object ret;
+		try {
+			ret = run.call(null, JSON.callMember("parse", value), accessor, querier);
+		} catch (NashornException e) {
+			throw new ScriptException(e);
+		} finally {
+			map.remove(id);
+		}
 		
 		String result = JSON.callMember("stringify", ret).toString();
-		
-		map.remove(id);
 		return result;
 	}
 	
@@ -14,8 +14,10 @@ import org.json.JSONException;
 
 import com.maxmind.geoip2.DatabaseReader;
 
+import edu.umass.cs.gnsserver.activecode.ActiveCodeConfig;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage.Type;
+import edu.umass.cs.gnsserver.activecode.prototype.channels.ActiveMappedChannel;
 import edu.umass.cs.gnsserver.activecode.prototype.channels.ActiveNamedPipe;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
 
@@ -54,8 +56,11 @@ public class ActiveNonBlockingWorker {
 	 * @param ofile
 	 * @param id 
 	 * @param numThread
+	 * @param geoip_file 
+	 * @param mappedEnable true if the client has created memory-mapped rings for the pipes and uses them,
+	 * the worker exits if it can't map them
 	 */
-	protected ActiveNonBlockingWorker(String ifile, String ofile, int id, int numThread, String geoip_file) {
+	protected ActiveNonBlockingWorker(String ifile, String ofile, int id, int numThread, String geoip_file, boolean mappedEnable) {
 		this.id = id;
 		
 		executor = new ThreadPoolExecutor(numThread, numThread, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
@@ -76,7 +81,7 @@ public class ActiveNonBlockingWorker {
 			dbReader = null;
 		}
 		
-		channel = new ActiveNamedPipe(ifile, ofile);
+		channel = initializeChannel(ifile, ofile, mappedEnable);
 		runner = new ActiveNonBlockingRunner(channel, dbReader);
 				
 		ActiveNonBlockingWorker.getLogger().log(Level.FINE, "{0} starts running", new Object[]{this});
@@ -94,6 +99,24 @@ public class ActiveNonBlockingWorker {
 	}
 
 	
+	private static Channel initializeChannel(String ifile, String ofile, boolean mappedEnable) {
+		if(mappedEnable){
+			try {
+				return new ActiveMappedChannel(ifile, ofile);
+			} catch (IOException e) {
+				// the client is using the rings, falling back to the pipes would leave the two ends
+				// talking past each other so give up and let the client restart the worker
+				ActiveNonBlockingWorker.getLogger().log(Level.SEVERE, 
+						"unable to map the rings of {0}: {1}", 
+						new Object[]{ifile, e});
+				// opening and closing the pipes unblocks the client, which then sees the worker is gone
+				new ActiveNamedPipe(ifile, ofile).close();
+				throw new IllegalStateException("Unable to map the rings of "+ifile, e);
+			}
+		}
+		return new ActiveNamedPipe(ifile, ofile);
+	}
+	
 	private void runWorker() throws JSONException, IOException {
 		
 		ActiveMessage msg = null;
@@ -138,8 +161,12 @@ public class ActiveNonBlockingWorker {
 			int id = Integer.parseInt(args[2]);
 			int numThread = Integer.parseInt(args[3]);
 			String geoip_file = args[4];
+			boolean mappedEnable = args.length > 8 && Boolean.parseBoolean(args[8]);
+			if(args.length > 9){
+				ActiveCodeConfig.activeWorkerCodeCacheSize = Integer.parseInt(args[9]);
+			}
 			
-			new ActiveNonBlockingWorker(cfile, sfile, id, numThread, geoip_file);
+			new ActiveNonBlockingWorker(cfile, sfile, id, numThread, geoip_file, mappedEnable);
 		}
 	}
 }
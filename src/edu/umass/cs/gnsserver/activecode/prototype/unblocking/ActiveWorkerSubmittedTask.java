@@ -46,6 +46,10 @@ public class ActiveWorkerSubmittedTask implements Runnable {
 		} catch (InterruptedException | ExecutionException | TimeoutException e) {
 			// return an error
 			response = new ActiveMessage(request.getId(), null, e.getMessage());
+			if(e instanceof TimeoutException){
+				// the code has used at least its whole budget
+				response.setCpuTime(TimeUnit.MILLISECONDS.toNanos(timeout));
+			}
 			ActiveNonBlockingWorker.getLogger().log(Level.FINE, 
 					"get an exception {0} when executing request {1} with code {2}", 
 					new Object[]{e, request, request.getCode()});
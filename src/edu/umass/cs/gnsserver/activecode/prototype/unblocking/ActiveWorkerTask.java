@@ -1,5 +1,7 @@
 package edu.umass.cs.gnsserver.activecode.prototype.unblocking;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.concurrent.Callable;
 import java.util.logging.Level;
 
@@ -16,6 +18,8 @@ import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
  */
 public class ActiveWorkerTask implements Callable<ActiveMessage>  {
 	
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+	
 	final ActiveNonBlockingRunner runner;
 	final ActiveMessage request;
 	
@@ -27,17 +31,27 @@ public class ActiveWorkerTask implements Callable<ActiveMessage>  {
 	@Override
 	public ActiveMessage call() {
 		ActiveMessage response = null;
+		// the client charges the guid for the CPU time of its code, time spent waiting for queries is not counted
+		long cpuStart = threadMXBean.getCurrentThreadCpuTime();
 		try {
 			response = new ActiveMessage(request.getId(), 
-					runner.runCode(request.getGuid(), request.getAccessor(), request.getCode(), request.getValue(), request.getTtl(), request.getId()),
+					runner.runCode(request.getGuid(), request.getAccessor(), request.getAction(), 
+							request.getCode(), request.getCodeHash(), 
+							request.getValue(), request.getTtl(), request.getId()),
 					null);
+		} catch (ActiveNonBlockingRunner.CodeMissException e) {
+			// the client sends the request again with the code
+			response = new ActiveMessage(request.getId(), null, ActiveMessage.CODE_MISS);
 		} catch (NoSuchMethodException | ScriptException e) {
 			ActiveNonBlockingWorker.getLogger().log(Level.FINE, 
 					"get an exception {0} when executing request {1} with code {2}", 
 					new Object[]{e, request, request.getCode()});
 			response = new ActiveMessage(request.getId(), null, e.getMessage());
 		}
-
+		
+		if(cpuStart >= 0){
+			response.setCpuTime(threadMXBean.getCurrentThreadCpuTime() - cpuStart);
+		}
 		return response;
 	}
 
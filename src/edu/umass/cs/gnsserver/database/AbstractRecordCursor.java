@@ -33,5 +33,12 @@ public abstract class AbstractRecordCursor implements RecordCursorInterface {
   public JSONObject nextJSONObject() throws FailedDBOperationException {
     throw new UnsupportedOperationException("Not supported yet.");
   }
+
+  /**
+   * Releases any resources held by the cursor. Cursors that are read
+   * to the end don't need to be closed. Does nothing by default.
+   */
+  public void close() {
+  }
   
 }
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2016
+ * University of Massachusetts
+ * All Rights Reserved
+ */
+package edu.umass.cs.gnsserver.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnscommon.utils.JSONDotNotation;
+import edu.umass.cs.gnsserver.database.ReadOnlyJSON.ReadOnlyJSONObject;
+import edu.umass.cs.gnsserver.utils.JSONUtils;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+
+/**
+ * A write-through cache of entire records in front of another {@link NoSQLRecords}.
+ *
+ * Records are kept as {@link ReadOnlyJSON} trees in a cache that is bounded by
+ * the estimated heap size of the records it holds. {@link #lookupEntireRecord} returns
+ * a mutable copy of the cached record and {@link #lookupSomeFields} copies the fields
+ * it pulls out of it, so a hot record is read without a database round trip and
+ * callers can modify what they get like they can with any other {@link NoSQLRecords}.
+ *
+ * Every operation that modifies a record (insert, updateEntireRecord,
+ * updateIndividualFields, removeMapKeys, addToSetField, removeFromSetField
+ * and removeEntireRecord, which is
+ * also how paxos restore reaches the database) is passed through to the
+ * underlying records and then invalidates the cached copy of that record only.
+ * Selects and iterators always go to the underlying records.
+ */
+public class CachingNoSQLRecords implements NoSQLRecords {
+
+  // Must be a power of 2.
+  private static final int VERSION_STRIPES = 1024;
+
+  private final NoSQLRecords records;
+  private final Cache<String, ReadOnlyJSONObject> cache;
+  /**
+   * Seqlock style version numbers for stripes of record names. Writers bump
+   * the version before (making it odd) and after (making it even again) they
+   * write. A reader only caches what it read if the version was even and unchanged
+   * across its read so that a stale read can never overwrite an invalidation.
+   */
+  private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+  /**
+   * Creates a cache in front of {@code records} that holds up to
+   * {@code maxSizeInBytes} bytes (estimated) of records.
+   *
+   * @param records
+   * @param maxSizeInBytes
+   */
+  public CachingNoSQLRecords(NoSQLRecords records, long maxSizeInBytes) {
+    this.records = records;
+    this.cache = CacheBuilder.newBuilder()
+            .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+            .maximumWeight(maxSizeInBytes)
+            .weigher(new Weigher<String, ReadOnlyJSONObject>() {
+              @Override
+              public int weigh(String key, ReadOnlyJSONObject value) {
+                return ReadOnlyJSON.estimateSize(value);
+              }
+            })
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * @return the records this is a cache for
+   */
+  public NoSQLRecords getRecords() {
+    return records;
+  }
+
+  private static String cacheKey(String collection, String name) {
+    return collection + "/" + name;
+  }
+
+  private int stripe(String key) {
+    return key.hashCode() & (VERSION_STRIPES - 1);
+  }
+
+  private ReadOnlyJSONObject getRecord(String collection, String name)
+          throws FailedDBOperationException, RecordNotFoundException {
+    String key = cacheKey(collection, name);
+    ReadOnlyJSONObject record = cache.getIfPresent(key);
+    if (record != null) {
+      return record;
+    }
+    int stripe = stripe(key);
+    long version = versions.get(stripe);
+    JSONObject json = records.lookupEntireRecord(collection, name);
+    if (json == null) {
+      throw new RecordNotFoundException(name);
+    }
+    try {
+      record = ReadOnlyJSON.freeze(json);
+    } catch (JSONException e) {
+      DatabaseConfig.getLogger().log(Level.FINE, "getRecord failed: {0}", e.getMessage());
+      throw new FailedDBOperationException(collection, name, "Unable to parse json record");
+    }
+    // Only cache it if no write was in progress or completed while we were reading.
+    if ((version & 1) == 0 && versions.get(stripe) == version) {
+      cache.put(key, record);
+      // A write might have started between the check and the put.
+      if (versions.get(stripe) != version) {
+        cache.invalidate(key);
+      }
+    }
+    return record;
+  }
+
+  private int startWrite(String collection, String name) {
+    String key = cacheKey(collection, name);
+    versions.incrementAndGet(stripe(key));
+    cache.invalidate(key);
+    return stripe(key);
+  }
+
+  private void finishWrite(String collection, String name, int stripe) {
+    cache.invalidate(cacheKey(collection, name));
+    versions.incrementAndGet(stripe);
+  }
+
+  @Override
+  public void insert(String collection, String name, JSONObject value)
+          throws FailedDBOperationException, RecordExistsException {
+    int stripe = startWrite(collection, name);
+    try {
+      records.insert(collection, name, value);
+    } finally {
+      finishWrite(collection, name, stripe);
+    }
+  }
+
+  @Override
+  public JSONObject lookupEntireRecord(String collection, String name)
+          throws FailedDBOperationException, RecordNotFoundException {
+    try {
+      return ReadOnlyJSON.mutableCopy(getRecord(collection, name));
+    } catch (JSONException e) {
+      DatabaseConfig.getLogger().log(Level.FINE, "lookupEntireRecord failed: {0}", e.getMessage());
+      throw new FailedDBOperationException(collection, name, "Unable to copy json record");
+    }
+  }
+
+  @Override
+  public HashMap<ColumnField, Object> lookupSomeFields(String collection, String name,
+          ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
+          throws RecordNotFoundException, FailedDBOperationException {
+    if (name == null) {
+      throw new RecordNotFoundException(name);
+    }
+    JSONObject record = getRecord(collection, name);
+    HashMap<ColumnField, Object> hashMap = new HashMap<>();
+    hashMap.put(nameField, name);
+    if (valuesMapField != null && valuesMapKeys != null) {
+      try {
+        JSONObject readValuesMap = record.getJSONObject(valuesMapField.getName());
+        ValuesMap valuesMapOut = new ValuesMap();
+        for (int i = 0; i < valuesMapKeys.size(); i++) {
+          String userKey = valuesMapKeys.get(i).getName();
+          if (JSONDotNotation.containsFieldDotNotation(userKey, readValuesMap) == false) {
+            continue;
+          }
+          try {
+            switch (valuesMapKeys.get(i).type()) {
+              case USER_JSON:
+                valuesMapOut.put(userKey, ReadOnlyJSON.mutableCopyObject(
+                        JSONDotNotation.getWithDotNotation(userKey, readValuesMap)));
+                break;
+              case LIST_STRING:
+                valuesMapOut.putAsArray(userKey,
+                        JSONUtils.JSONArrayToResultValue(
+                                (JSONArray) JSONDotNotation.getWithDotNotation(userKey, readValuesMap)));
+                break;
+              default:
+                DatabaseConfig.getLogger().log(Level.SEVERE,
+                        "ERROR: Error: User keys field {0} is not a known type:{1}",
+                        new Object[]{userKey, valuesMapKeys.get(i).type()});
+                break;
+            }
+          } catch (JSONException | ClassCastException e) {
+            DatabaseConfig.getLogger().log(Level.SEVERE, "Error parsing json: {0}", e.getMessage());
+          }
+        }
+        hashMap.put(valuesMapField, valuesMapOut);
+      } catch (JSONException e) {
+        DatabaseConfig.getLogger().log(Level.SEVERE, "Problem getting values map: {0}", e.getMessage());
+      }
+    }
+    return hashMap;
+  }
+
+  @Override
+  public boolean contains(String collection, String name) throws FailedDBOperationException {
+    return cache.getIfPresent(cacheKey(collection, name)) != null
+            || records.contains(collection, name);
+  }
+
+  @Override
+  public void removeEntireRecord(String collection, String name) throws FailedDBOperationException {
+    int stripe = startWrite(collection, name);
+    try {
+      records.removeEntireRecord(collection, name);
+    } finally {
+      finishWrite(collection, name, stripe);
+    }
+  }
+
+  @Override
+  public void updateEntireRecord(String collection, String name, ValuesMap valuesMap)
+          throws FailedDBOperationException {
+    int stripe = startWrite(collection, name);
+    try {
+      records.updateEntireRecord(collection, name, valuesMap);
+    } finally {
+      finishWrite(collection, name, stripe);
+    }
+  }
+
+  @Override
+  public void updateIndividualFields(String collection, String name,
+          ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys,
+          ArrayList<Object> valuesMapValues) throws FailedDBOperationException {
+    int stripe = startWrite(collection, name);
+    try {
+      records.updateIndividualFields(collection, name, valuesMapField, valuesMapKeys, valuesMapValues);
+    } finally {
+      finishWrite(collection, name, stripe);
+    }
+  }
+
+  @Override
+  public void removeMapKeys(String collection, String name, ColumnField mapField,
+          ArrayList<ColumnField> mapKeys) throws FailedDBOperationException {
+    int stripe = startWrite(collection, name);
+    try {
+      records.removeMapKeys(collection, name, mapField, mapKeys);
+    } finally {
+      finishWrite(collection, name, stripe);
+    }
+  }
+
+  @Override
+  public void addToSetField(String collection, String name, ColumnField mapField, String key,
+          List<Object> values) throws FailedDBOperationException {
+    int stripe = startWrite(collection, name);
+    try {
+      records.addToSetField(collection, name, mapField, key, values);
+    } finally {
+      finishWrite(collection, name, stripe);
+    }
+  }
+
+  @Override
+  public void removeFromSetField(String collection, String name, ColumnField mapField, String key,
+          List<Object> values) throws FailedDBOperationException {
+    int stripe = startWrite(collection, name);
+    try {
+      records.removeFromSetField(collection, name, mapField, key, values);
+    } finally {
+      finishWrite(collection, name, stripe);
+    }
+  }
+
+  @Override
+  public boolean setFieldContains(String collection, String name, ColumnField mapField, String key,
+          Object value) throws FailedDBOperationException {
+    return records.setFieldContains(collection, name, mapField, key, value);
+  }
+
+  @Override
+  public AbstractRecordCursor getAllRowsIterator(String collection) throws FailedDBOperationException {
+    return records.getAllRowsIterator(collection);
+  }
+
+  @Override
+  public AbstractRecordCursor selectRecords(String collection, ColumnField valuesMapField,
+          String key, Object value) throws FailedDBOperationException {
+    return records.selectRecords(collection, valuesMapField, key, value);
+  }
+
+  @Override
+  public AbstractRecordCursor selectRecordsPage(String collection, ColumnField valuesMapField,
+          String key, Object value, String afterName, int limit) throws FailedDBOperationException {
+    return records.selectRecordsPage(collection, valuesMapField, key, value, afterName, limit);
+  }
+
+  @Override
+  public AbstractRecordCursor selectRecordsWithin(String collection, ColumnField valuesMapField,
+          String key, String value) throws FailedDBOperationException {
+    return records.selectRecordsWithin(collection, valuesMapField, key, value);
+  }
+
+  @Override
+  public AbstractRecordCursor selectRecordsNear(String collection, ColumnField valuesMapField,
+          String key, String value, Double maxDistance) throws FailedDBOperationException {
+    return records.selectRecordsNear(collection, valuesMapField, key, value, maxDistance);
+  }
+
+  @Override
+  public AbstractRecordCursor selectRecordsQuery(String collection, ColumnField valuesMapField,
+          String query, List<String> projection) throws FailedDBOperationException {
+    return records.selectRecordsQuery(collection, valuesMapField, query, projection);
+  }
+
+  @Override
+  public AbstractRecordCursor selectRecordsQueryPage(String collection, ColumnField valuesMapField,
+          String query, List<String> projection, String afterName, int limit) throws FailedDBOperationException {
+    return records.selectRecordsQueryPage(collection, valuesMapField, query, projection, afterName, limit);
+  }
+
+  @Override
+  public void createIndex(String collection, String field, String index) {
+    records.createIndex(collection, field, index);
+  }
+
+  @Override
+  public void printAllEntries(String collection) throws FailedDBOperationException {
+    records.printAllEntries(collection);
+  }
+
+  @Override
+  public String toString() {
+    return "CachingNoSQLRecords{" + "records=" + records
+            + ", size=" + cache.size() + ", stats=" + cache.stats() + '}';
+  }
+}
@@ -325,6 +325,21 @@ public class CassandraRecords implements NoSQLRecords {
     //To change body of implemented methods use File | Settings | File Templates.
   }
 
+  @Override
+  public void addToSetField(String collectionName, String name, ColumnField mapField, String key, List<Object> values) {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
+  @Override
+  public void removeFromSetField(String collectionName, String name, ColumnField mapField, String key, List<Object> values) {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
+  @Override
+  public boolean setFieldContains(String collectionName, String name, ColumnField mapField, String key, Object value) {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
   @Override
   public AbstractRecordCursor getAllRowsIterator(String collection) {
     throw new UnsupportedOperationException("Not supported yet.");
@@ -335,6 +350,12 @@ public class CassandraRecords implements NoSQLRecords {
     throw new UnsupportedOperationException("Not supported yet.");
   }
 
+  @Override
+  public AbstractRecordCursor selectRecordsPage(String collectionName, ColumnField valuesMapField,
+          String key, Object value, String afterName, int limit) {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
   @Override
   public AbstractRecordCursor selectRecordsWithin(String collectionName, ColumnField valuesMapField, String key, String value) {
     throw new UnsupportedOperationException("Not supported yet.");
@@ -351,6 +372,12 @@ public class CassandraRecords implements NoSQLRecords {
     throw new UnsupportedOperationException("Not supported yet.");
   }
 
+  @Override
+  public AbstractRecordCursor selectRecordsQueryPage(String collectionName, ColumnField valuesMapField,
+          String query, List<String> projection, String afterName, int limit) {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
   @Override
   public void removeEntireRecord(String tableName, String guid) {
     CollectionSpec spec = getCollectionSpec(tableName);
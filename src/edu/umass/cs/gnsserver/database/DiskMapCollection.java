@@ -16,9 +16,14 @@ import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DiskMap;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONObject;
 
@@ -30,12 +35,19 @@ import org.json.JSONObject;
  * A collection is basically a named separate namespace for documents.
  * A document is a JSONObject.
  *
+ * Records that have only had some fields changed since they were last
+ * committed (see {@link #markDirty}) are written back to Mongo as
+ * {@code $set}/{@code $unset} updates of just those fields instead of
+ * replacing the entire document.
+ *
  * @author westy
  */
 public class DiskMapCollection {
 
   private DiskMap<String, JSONObject> map;
   private MongoRecords mongoRecords;
+  // Records changed since the last commit. A record that isn't in here is written whole.
+  private final ConcurrentHashMap<String, DirtyPaths> dirtyRecords = new ConcurrentHashMap<>();
 
   /**
    * Create a DiskMapCollection name collection on a given nodeID.
@@ -64,9 +76,23 @@ public class DiskMapCollection {
     	Long.MAX_VALUE) {
       @Override
       public Set<String> commit(Map<String, JSONObject> toCommit) throws IOException {
+        Map<String, Set<String>> partial = new HashMap<>();
+        for (Map.Entry<String, JSONObject> entry : toCommit.entrySet()) {
+          // Anything changed after this point will be marked and committed again
+          DirtyPaths dirty = dirtyRecords.remove(entry.getKey());
+          if (dirty != null && !dirty.whole && entry.getValue() != null) {
+            partial.put(entry.getKey(), dirty.getPaths());
+          }
+        }
         try {
-        	mongoRecords.bulkUpdate(DBNAMERECORD, toCommit);
+          mongoRecords.bulkUpdate(DBNAMERECORD, toCommit, partial);
         } catch (FailedDBOperationException | RecordExistsException e) {
+          // We don't know what made it so the next try writes them whole
+          for (Map.Entry<String, JSONObject> entry : toCommit.entrySet()) {
+            if (entry.getValue() != null) {
+              markReplaced(entry.getKey());
+            }
+          }
           throw new IOException(e);
         }
         return toCommit.keySet();
@@ -88,6 +114,86 @@ public class DiskMapCollection {
     };
   }
 
+  /**
+   * Notes that the entire record has been replaced (or inserted) so the next commit
+   * will write the whole document.
+   *
+   * @param key
+   */
+  public void markReplaced(String key) {
+    dirtyRecords.put(key, new DirtyPaths(true));
+  }
+
+  /**
+   * Notes that only the given (dot notation) paths of the record have been changed
+   * in place. Should be called after the change is made and before the
+   * record is put back into the map.
+   *
+   * @param key
+   * @param paths
+   */
+  public void markDirty(String key, Collection<String> paths) {
+    DirtyPaths dirty = dirtyRecords.get(key);
+    if (dirty == null) {
+      DirtyPaths newDirty = new DirtyPaths(false);
+      dirty = dirtyRecords.putIfAbsent(key, newDirty);
+      if (dirty == null) {
+        dirty = newDirty;
+      }
+    }
+    dirty.addAll(paths);
+  }
+
+  /**
+   * Forgets any changes to the record. Used when the record is removed.
+   *
+   * @param key
+   */
+  public void markRemoved(String key) {
+    dirtyRecords.remove(key);
+  }
+
+  /**
+   * The paths changed in a record. Paths are kept so that none is a prefix of
+   * another which Mongo requires for a single update.
+   */
+  private static class DirtyPaths {
+
+    private final boolean whole;
+    private final Set<String> paths = new HashSet<>();
+
+    DirtyPaths(boolean whole) {
+      this.whole = whole;
+    }
+
+    synchronized void addAll(Collection<String> newPaths) {
+      if (whole) {
+        return;
+      }
+      for (String path : newPaths) {
+        add(path);
+      }
+    }
+
+    private void add(String path) {
+      Iterator<String> iter = paths.iterator();
+      while (iter.hasNext()) {
+        String existing = iter.next();
+        if (path.equals(existing) || path.startsWith(existing + ".")) {
+          // Already covered by an enclosing path
+          return;
+        } else if (existing.startsWith(path + ".")) {
+          iter.remove();
+        }
+      }
+      paths.add(path);
+    }
+
+    synchronized Set<String> getPaths() {
+      return new HashSet<>(paths);
+    }
+  }
+
   /**
    * 
    * @return the diskmap
@@ -9,9 +9,13 @@ package edu.umass.cs.gnsserver.database;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -23,6 +27,7 @@ import org.json.JSONObject;
 
 import com.mongodb.util.JSON;
 
+import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
@@ -48,6 +53,12 @@ public class DiskMapRecords implements NoSQLRecords {
   private Map<String, DiskMapCollection> collections;
   private String mongoNodeID;
   private int mongoPort;
+  // Sets holding the contents of the lists used as set fields so that membership
+  // tests are lookups rather than scans. Keyed by the record object held in the diskmap
+  // (JSONObject uses identity equality) so they go away along with the record.
+  // Only touched while holding the lock on the record.
+  private final Map<JSONObject, Map<String, Set<Object>>> setIndexes
+          = Collections.synchronizedMap(new WeakHashMap<JSONObject, Map<String, Set<Object>>>());
 
   private DiskMapCollection getCollection(String name) {
     DiskMapCollection collection = collections.get(name);
@@ -97,6 +108,7 @@ public class DiskMapRecords implements NoSQLRecords {
   @Override
   public void insert(String collection, String name, JSONObject value)
           throws FailedDBOperationException, RecordExistsException {
+    getCollection(collection).markReplaced(name);
     getMap(collection).put(name, value);
   }
 
@@ -109,7 +121,10 @@ public class DiskMapRecords implements NoSQLRecords {
     }
     try {
       // Make a new object to make sure there aren't any DBObjects lurking in here
-      return recursiveCopyJSONObject(record); //copyJsonObject(record);
+      // and because updates modify the record in place.
+      synchronized (record) {
+        return recursiveCopyJSONObject(record); //copyJsonObject(record);
+      }
     } catch (JSONException e) {
       DatabaseConfig.getLogger().log(Level.FINE, "lookupEntireRecord failed: {0}", e.getMessage());
       throw new FailedDBOperationException(collection, name, "Unable to parse json record");
@@ -165,8 +180,9 @@ public class DiskMapRecords implements NoSQLRecords {
     return copy;
   }
 
+  // Used in MongoRecords
   @SuppressWarnings({"unchecked", "rawtypes"})
-  private static Object recursiveCopyObject(Object value)
+  static Object recursiveCopyObject(Object value)
           throws JSONException {
     if (value instanceof JSONObject) {
       value = recursiveCopyJSONObject((JSONObject) value);
@@ -180,6 +196,12 @@ public class DiskMapRecords implements NoSQLRecords {
     return value;
   }
 
+  // Used in MongoRecords. Copies a list field without stringifying and reparsing it.
+  static JSONArray copyAsJSONArray(Object value) throws JSONException {
+    Object copy = recursiveCopyObject(value);
+    return copy instanceof JSONArray ? (JSONArray) copy : new JSONArray(value.toString());
+  }
+
   // for debugging
   @SuppressWarnings("unused")
   private void print(JSONObject json) throws JSONException {
@@ -201,48 +223,54 @@ public class DiskMapRecords implements NoSQLRecords {
           ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
           throws RecordNotFoundException, FailedDBOperationException {
 
-    JSONObject record = lookupEntireRecord(collection, name);
-//    LOGGER.log(Level.FINE, "Full record " + record.toString());
+    JSONObject record;
+    if ((record = getMap(collection).get(name)) == null) {
+      throw new RecordNotFoundException(name);
+    }
     HashMap<ColumnField, Object> hashMap = new HashMap<>();
     hashMap.put(nameField, name);
     if (valuesMapField != null && valuesMapKeys != null) {
-      try {
-        JSONObject readValuesMap = record.getJSONObject(valuesMapField.getName());
+      // Copy just the requested fields out of the record instead of copying all of it
+      // so the cost of a read depends on what is returned, not on the size of the record.
+      synchronized (record) {
+        try {
+          JSONObject readValuesMap = record.getJSONObject(valuesMapField.getName());
 //        LOGGER.log(Level.FINE, "Read valuesMap " + readValuesMap.toString());
-        ValuesMap valuesMapOut = new ValuesMap();
-        for (int i = 0; i < valuesMapKeys.size(); i++) {
-          String userKey = valuesMapKeys.get(i).getName();
-          if (JSONDotNotation.containsFieldDotNotation(userKey, readValuesMap) == false) {
+          ValuesMap valuesMapOut = new ValuesMap();
+          for (int i = 0; i < valuesMapKeys.size(); i++) {
+            String userKey = valuesMapKeys.get(i).getName();
+            if (JSONDotNotation.containsFieldDotNotation(userKey, readValuesMap) == false) {
 //            LOGGER.fine("valuesMap doesn't contain " + userKey);
-            continue;
-          }
-          try {
-            switch (valuesMapKeys.get(i).type()) {
-              case USER_JSON:
-                Object value = JSONDotNotation.getWithDotNotation(userKey, readValuesMap);
-                LOGGER.log(Level.FINE,
-                        "Object is {0}", new Object[]{value.toString()});
-                valuesMapOut.put(userKey, value);
-                break;
-              case LIST_STRING:
-                valuesMapOut.putAsArray(userKey,
-                        JSONUtils.JSONArrayToResultValue(
-                                new JSONArray(JSONDotNotation.getWithDotNotation(userKey,
-                                        readValuesMap).toString())));
-                break;
-              default:
-                LOGGER.log(Level.SEVERE,
-                        "ERROR: Error: User keys field {0} is not a known type:{1}",
-                        new Object[]{userKey, valuesMapKeys.get(i).type()});
-                break;
+              continue;
+            }
+            try {
+              switch (valuesMapKeys.get(i).type()) {
+                case USER_JSON:
+                  Object value = recursiveCopyObject(JSONDotNotation.getWithDotNotation(userKey, readValuesMap));
+                  LOGGER.log(Level.FINE,
+                          "Object is {0}", new Object[]{value});
+                  valuesMapOut.put(userKey, value);
+                  break;
+                case LIST_STRING:
+                  valuesMapOut.putAsArray(userKey,
+                          JSONUtils.JSONArrayToResultValue(
+                                  copyAsJSONArray(JSONDotNotation.getWithDotNotation(userKey,
+                                          readValuesMap))));
+                  break;
+                default:
+                  LOGGER.log(Level.SEVERE,
+                          "ERROR: Error: User keys field {0} is not a known type:{1}",
+                          new Object[]{userKey, valuesMapKeys.get(i).type()});
+                  break;
+              }
+            } catch (JSONException e) {
+              LOGGER.log(Level.SEVERE, "Error parsing json: {0}", e.getMessage());
             }
-          } catch (JSONException e) {
-            LOGGER.log(Level.SEVERE, "Error parsing json: {0}", e.getMessage());
           }
+          hashMap.put(valuesMapField, valuesMapOut);
+        } catch (JSONException e) {
+          LOGGER.log(Level.SEVERE, "Problem getting values map: {0}", e.getMessage());
         }
-        hashMap.put(valuesMapField, valuesMapOut);
-      } catch (JSONException e) {
-        LOGGER.log(Level.SEVERE, "Problem getting values map: {0}", e.getMessage());
       }
     }
     return hashMap;
@@ -257,6 +285,7 @@ public class DiskMapRecords implements NoSQLRecords {
   public void removeEntireRecord(String collection, String name) throws FailedDBOperationException {
     LOGGER.log(Level.FINE, "Remove: {0}", name);
     getMap(collection).remove(name);
+    getCollection(collection).markRemoved(name);
   }
 
   @Override
@@ -266,56 +295,77 @@ public class DiskMapRecords implements NoSQLRecords {
     try {
       json.put(NameRecord.NAME.getName(), name);
       json.put(NameRecord.VALUES_MAP.getName(), valuesMap);
+      getCollection(collection).markReplaced(name);
       getMap(collection).put(name, json);
     } catch (JSONException e) {
 
     }
   }
 
+  /**
+   * Updates the fields in place in the record held by the diskmap and
+   * marks just those fields as dirty so that the commit to mongo
+   * is a $set of those fields rather than a rewrite of the entire record.
+   *
+   * @param collection
+   * @param name
+   * @param valuesMapField
+   * @param valuesMapKeys
+   * @param valuesMapValues
+   * @throws FailedDBOperationException
+   */
   @Override
   public void updateIndividualFields(String collection, String name,
           ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys,
           ArrayList<Object> valuesMapValues) throws FailedDBOperationException {
     LOGGER.log(Level.FINE, "Update fields {0}/{1}", new Object[]{name, valuesMapKeys});
-    JSONObject record;
-    try {
-      record = lookupEntireRecord(collection, name);
-    } catch (RecordNotFoundException e) {
-      DatabaseConfig.getLogger().log(Level.FINE, "updateIndividualFields failed: {0}", e.getMessage());
-      throw new FailedDBOperationException(collection, name, "Record not found.");
-    }
-    LOGGER.log(Level.FINE, "Record before:{0}", record);
+    JSONObject record = getMap(collection).get(name);
     if (record == null) {
-      throw new FailedDBOperationException(collection, name, "Record is null.");
+      DatabaseConfig.getLogger().log(Level.FINE, "updateIndividualFields failed: {0} not found", name);
+      throw new FailedDBOperationException(collection, name, "Record not found.");
     }
+    List<String> dirtyPaths = new ArrayList<>();
     if (valuesMapField != null && valuesMapKeys != null) {
       try {
-        JSONObject json = record.getJSONObject(valuesMapField.getName());
-        for (int i = 0; i < valuesMapKeys.size(); i++) {
-          String fieldName = valuesMapKeys.get(i).getName();
-          switch (valuesMapKeys.get(i).type()) {
-            case LIST_STRING:
-              JSONDotNotation.putWithDotNotation(json, fieldName, valuesMapValues.get(i));
-              break;
-            case USER_JSON:
-              JSONDotNotation.putWithDotNotation(json, fieldName, JSONParse(valuesMapValues.get(i)));
-              break;
-            default:
-              LOGGER.log(Level.WARNING,
-                      "Ignoring unknown format: {0}", valuesMapKeys.get(i).type());
-              break;
+        synchronized (record) {
+          LOGGER.log(Level.FINE, "Record before:{0}", record);
+          setIndexes.remove(record);
+          JSONObject json = record.getJSONObject(valuesMapField.getName());
+          for (int i = 0; i < valuesMapKeys.size(); i++) {
+            String fieldName = valuesMapKeys.get(i).getName();
+            Object value;
+            switch (valuesMapKeys.get(i).type()) {
+              case LIST_STRING:
+                value = valuesMapValues.get(i);
+                break;
+              case USER_JSON:
+                // Copy so that there are no DBObjects in the record
+                value = recursiveCopyObject(JSONParse(valuesMapValues.get(i)));
+                break;
+              default:
+                LOGGER.log(Level.WARNING,
+                        "Ignoring unknown format: {0}", valuesMapKeys.get(i).type());
+                continue;
+            }
+            if (JSONDotNotation.putWithDotNotation(json, fieldName, value)) {
+              dirtyPaths.add(valuesMapField.getName() + "." + fieldName);
+            }
           }
+          LOGGER.log(Level.FINE, "Record after:{0}", record);
         }
-        LOGGER.log(Level.FINE, "Json after:{0}", json);
-        record.put(valuesMapField.getName(), json);
-        LOGGER.log(Level.FINE, "Record after:{0}", record);
       } catch (Exception e) {
         LOGGER.log(Level.SEVERE, "Problem updating json: {0}", e.getMessage());
+        // Some fields might have been changed already
+        getCollection(collection).markDirty(name, dirtyPaths);
+        getMap(collection).put(name, record);
         throw new FailedDBOperationException(collection, name, "Unable to parse json " + e.getMessage());
       }
     }
+    getCollection(collection).markDirty(name, dirtyPaths);
+    // Put it back so the diskmap knows it needs committing
     getMap(collection).put(name, record);
   }
+
   // not sure why the JSON.parse doesn't handle things this way but it doesn't
 
   private Object JSONParse(Object object) {
@@ -330,36 +380,177 @@ public class DiskMapRecords implements NoSQLRecords {
   public void removeMapKeys(String collection, String name,
           ColumnField mapField, ArrayList<ColumnField> mapKeys)
           throws FailedDBOperationException {
-    JSONObject record = null;
-    try {
-      record = lookupEntireRecord(collection, name);
-    } catch (RecordNotFoundException e) {
-    }
-    LOGGER.log(Level.FINE, "Record before:{0}", record);
+    JSONObject record = getMap(collection).get(name);
     if (record == null) {
       DatabaseConfig.getLogger().log(Level.FINE, "removeMapKeys failed. record is null");
       throw new FailedDBOperationException(collection, name, "Record not found.");
     }
+    List<String> dirtyPaths = new ArrayList<>();
     if (mapField != null && mapKeys != null) {
       try {
-        JSONObject json = record.getJSONObject(mapField.getName());
-        LOGGER.log(Level.FINE, "Json before:{0}", json);
-        for (int i = 0; i < mapKeys.size(); i++) {
-          String fieldName = mapKeys.get(i).getName();
-          LOGGER.log(Level.FINE, "Removing: {0}", fieldName);
-          JSONDotNotation.removeWithDotNotation(fieldName, json);
+        synchronized (record) {
+          LOGGER.log(Level.FINE, "Record before:{0}", record);
+          setIndexes.remove(record);
+          JSONObject json = record.getJSONObject(mapField.getName());
+          for (int i = 0; i < mapKeys.size(); i++) {
+            String fieldName = mapKeys.get(i).getName();
+            LOGGER.log(Level.FINE, "Removing: {0}", fieldName);
+            JSONDotNotation.removeWithDotNotation(fieldName, json);
+            dirtyPaths.add(mapField.getName() + "." + fieldName);
+          }
+          LOGGER.log(Level.FINE, "Record after:{0}", record);
         }
-        LOGGER.log(Level.FINE, "Json after:{0}", json);
-        record.put(mapField.getName(), json);
-        LOGGER.log(Level.FINE, "Record after:{0}", record);
       } catch (JSONException e) {
         LOGGER.log(Level.SEVERE,
                 "Problem updating json: {0}", e.getMessage());
       }
     }
+    getCollection(collection).markDirty(name, dirtyPaths);
+    getMap(collection).put(name, record);
+  }
+
+  @Override
+  public void addToSetField(String collection, String name, ColumnField mapField, String key,
+          List<Object> values) throws FailedDBOperationException {
+    JSONObject record = getMap(collection).get(name);
+    if (record == null) {
+      DatabaseConfig.getLogger().log(Level.FINE, "addToSetField failed: {0} not found", name);
+      throw new FailedDBOperationException(collection, name, "Record not found.");
+    }
+    try {
+      synchronized (record) {
+        JSONObject json = record.getJSONObject(mapField.getName());
+        JSONArray list = getList(json, key);
+        Set<Object> present;
+        if (list == null || (list.length() > 0
+                && GNSProtocol.NULL_RESPONSE.toString().equals(list.get(0)))) {
+          list = new JSONArray();
+          JSONDotNotation.putWithDotNotation(json, key, list);
+          present = new HashSet<>();
+          getSetIndex(record).put(mapField.getName() + "." + key, present);
+        } else {
+          present = getSet(record, mapField, key);
+        }
+        for (Object value : values) {
+          if (present.add(value)) {
+            list.put(value);
+          }
+        }
+      }
+    } catch (JSONException e) {
+      LOGGER.log(Level.FINE, "addToSetField failed: {0}", e.getMessage());
+      throw new FailedDBOperationException(collection, name, "Unable to add to " + key + " " + e.getMessage());
+    }
+    getCollection(collection).markDirty(name, Collections.singletonList(mapField.getName() + "." + key));
     getMap(collection).put(name, record);
   }
 
+  @Override
+  public void removeFromSetField(String collection, String name, ColumnField mapField, String key,
+          List<Object> values) throws FailedDBOperationException {
+    JSONObject record = getMap(collection).get(name);
+    if (record == null) {
+      DatabaseConfig.getLogger().log(Level.FINE, "removeFromSetField failed: {0} not found", name);
+      throw new FailedDBOperationException(collection, name, "Record not found.");
+    }
+    try {
+      synchronized (record) {
+        JSONObject json = record.getJSONObject(mapField.getName());
+        JSONArray list = getList(json, key);
+        if (list == null) {
+          return;
+        }
+        Set<Object> present = getSet(record, mapField, key);
+        if (!present.removeAll(values)) {
+          return;
+        }
+        Set<Object> removed = new HashSet<>(values);
+        JSONArray kept = new JSONArray();
+        for (int i = 0; i < list.length(); i++) {
+          if (!removed.contains(list.get(i))) {
+            kept.put(list.get(i));
+          }
+        }
+        JSONDotNotation.putWithDotNotation(json, key, kept);
+      }
+    } catch (JSONException e) {
+      LOGGER.log(Level.FINE, "removeFromSetField failed: {0}", e.getMessage());
+      throw new FailedDBOperationException(collection, name, "Unable to remove from " + key + " " + e.getMessage());
+    }
+    getCollection(collection).markDirty(name, Collections.singletonList(mapField.getName() + "." + key));
+    getMap(collection).put(name, record);
+  }
+
+  @Override
+  public boolean setFieldContains(String collection, String name, ColumnField mapField, String key,
+          Object value) throws FailedDBOperationException {
+    JSONObject record = getMap(collection).get(name);
+    if (record == null) {
+      return false;
+    }
+    try {
+      synchronized (record) {
+        Set<Object> present = getSet(record, mapField, key);
+        return present != null && present.contains(value);
+      }
+    } catch (JSONException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the contents of the list at key in the record as a set
+   * or null if there isn't one. The set is built the first time and then kept up to date
+   * by addToSetField and removeFromSetField; any other in place update throws it away.
+   * Call this while holding the lock on the record.
+   */
+  private Set<Object> getSet(JSONObject record, ColumnField mapField, String key) throws JSONException {
+    Map<String, Set<Object>> index = getSetIndex(record);
+    String path = mapField.getName() + "." + key;
+    Set<Object> present = index.get(path);
+    if (present == null) {
+      JSONArray list = getList(record.getJSONObject(mapField.getName()), key);
+      if (list == null) {
+        return null;
+      }
+      present = new HashSet<>();
+      for (int i = 0; i < list.length(); i++) {
+        present.add(list.get(i));
+      }
+      index.put(path, present);
+    }
+    return present;
+  }
+
+  private Map<String, Set<Object>> getSetIndex(JSONObject record) {
+    Map<String, Set<Object>> index = setIndexes.get(record);
+    if (index == null) {
+      setIndexes.put(record, index = new HashMap<>());
+    }
+    return index;
+  }
+
+  /**
+   * Returns the list at key in json as a JSONArray that can be changed in place
+   * or null if there isn't one. Lists written by updateIndividualFields are collections
+   * so those are swapped for a JSONArray the first time.
+   * Call this while holding the lock on the record.
+   */
+  private static JSONArray getList(JSONObject json, String key) throws JSONException {
+    if (!JSONDotNotation.containsFieldDotNotation(key, json)) {
+      return null;
+    }
+    Object value = JSONDotNotation.getWithDotNotation(key, json);
+    if (value instanceof JSONArray) {
+      return (JSONArray) value;
+    } else if (value instanceof Collection) {
+      JSONArray list = new JSONArray((Collection<?>) value);
+      JSONDotNotation.putWithDotNotation(json, key, list);
+      return list;
+    }
+    throw new JSONException(key + " is not a list");
+  }
+
   @Override
   public AbstractRecordCursor getAllRowsIterator(String collection) throws FailedDBOperationException {
     commit(collection);
@@ -372,6 +563,14 @@ public class DiskMapRecords implements NoSQLRecords {
     return getMongoRecords(collection).selectRecords(MongoRecords.DBNAMERECORD, valuesMapField, key, value);
   }
 
+  @Override
+  public AbstractRecordCursor selectRecordsPage(String collection, ColumnField valuesMapField,
+          String key, Object value, String afterName, int limit) throws FailedDBOperationException {
+    commit(collection);
+    return getMongoRecords(collection).selectRecordsPage(MongoRecords.DBNAMERECORD, valuesMapField,
+            key, value, afterName, limit);
+  }
+
   @Override
   public AbstractRecordCursor selectRecordsWithin(String collection, ColumnField valuesMapField, String key, String value) throws FailedDBOperationException {
     commit(collection);
@@ -392,6 +591,14 @@ public class DiskMapRecords implements NoSQLRecords {
             query, projection);
   }
 
+  @Override
+  public AbstractRecordCursor selectRecordsQueryPage(String collection, ColumnField valuesMapField,
+          String query, List<String> projection, String afterName, int limit) throws FailedDBOperationException {
+    commit(collection);
+    return getMongoRecords(collection).selectRecordsQueryPage(MongoRecords.DBNAMERECORD, valuesMapField,
+            query, projection, afterName, limit);
+  }
+
   @Override
   public void createIndex(String collection, String field, String index) {
     commit(collection);
@@ -21,9 +21,14 @@ package edu.umass.cs.gnsserver.database;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 
 import org.json.JSONArray;
@@ -41,13 +46,16 @@ import com.mongodb.DBObject;
 import com.mongodb.DuplicateKeyException;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoException;
+import com.mongodb.WriteResult;
 import com.mongodb.util.JSON;
 
 import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnscommon.utils.JSONDotNotation;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.GuidInfo;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.main.GNSConfig;
@@ -111,6 +119,11 @@ public class MongoRecords implements NoSQLRecords {
             .addOtherIndex(new BasicDBObject(NameRecord.VALUES_MAP.getName() + "." + GNSProtocol.LOCATION_FIELD_NAME_2D_SPHERE.toString(), "2dsphere"));
     mongoCollectionSpecs.getCollectionSpec(DBNAMERECORD)
             .addOtherIndex(new BasicDBObject(NameRecord.VALUES_MAP.getName() + "." + GNSProtocol.IPADDRESS_FIELD_NAME.toString(), 1));
+    // The guid tags, which the database keeps up to date as guid infos are written,
+    // with the name so that the admin dump can page through the guids with a tag
+    mongoCollectionSpecs.getCollectionSpec(DBNAMERECORD)
+            .addOtherIndex(new BasicDBObject(NameRecord.VALUES_MAP.getName() + "." + AccountAccess.GUID_INFO
+                    + "." + GuidInfo.TAGS, 1).append(NameRecord.NAME.getName(), 1));
 
     boolean fatalException = false;
     try {
@@ -306,6 +319,9 @@ public class MongoRecords implements NoSQLRecords {
         // first we pull all the user values from the dbObject and put in a bson object
         // FIXME: Why not convert this to a JSONObject right now? We know that's what it is.
         BasicDBObject bson = (BasicDBObject) dbObject.get(valuesMapField.getName());
+        if (bson == null) {
+          bson = new BasicDBObject();
+        }
         DatabaseConfig.getLogger().log(Level.FINER, "{0} @@@@@@@@ {1}", new Object[]{dbName, bson});
         // then we run thru each userkey in the valuesMapKeys and pull the
         // value put stuffing it into the values map
@@ -321,14 +337,15 @@ public class MongoRecords implements NoSQLRecords {
           try {
             switch (valuesMapKeys.get(i).type()) {
               case USER_JSON:
-                Object value = getWithDotNotation(userKey, bson);
+                // Only the projected fields are copied and nested DBObjects become JSON
+                Object value = DiskMapRecords.recursiveCopyObject(getWithDotNotation(userKey, bson));
                 DatabaseConfig.getLogger().log(Level.FINE,
-                        "{0} Object is {1}", new Object[]{dbName, value.toString()});
+                        "{0} Object is {1}", new Object[]{dbName, value});
                 valuesMap.put(userKey, value);
                 break;
               case LIST_STRING:
                 valuesMap.putAsArray(userKey,
-                        JSONUtils.JSONArrayToResultValue(new JSONArray(getWithDotNotation(userKey, bson).toString())));
+                        JSONUtils.JSONArrayToResultValue(DiskMapRecords.copyAsJSONArray(getWithDotNotation(userKey, bson))));
                 break;
               default:
                 DatabaseConfig.getLogger().log(Level.SEVERE,
@@ -435,29 +452,113 @@ public class MongoRecords implements NoSQLRecords {
    */
   public void bulkUpdate(String collectionName, Map<String, JSONObject> values)
           throws FailedDBOperationException, RecordExistsException {
+    bulkUpdate(collectionName, values, Collections.<String, Set<String>>emptyMap());
+  }
+
+  /**
+   * Writes a batch of records. A null value removes the record.
+   * Records that have an entry in {@code dirtyPaths} are only partially written:
+   * each of the (dot notation) paths is sent as a {@code $set} of its current value
+   * in the record or as an {@code $unset} if the record no longer contains it.
+   * None of the paths for a record may be a prefix of another.
+   * All other records replace the entire document.
+   *
+   * @param collectionName
+   * @param values
+   * @param dirtyPaths
+   * @throws FailedDBOperationException
+   * @throws RecordExistsException
+   */
+  public void bulkUpdate(String collectionName, Map<String, JSONObject> values,
+          Map<String, Set<String>> dirtyPaths)
+          throws FailedDBOperationException, RecordExistsException {
     //String primaryKey = mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey().getName();
     DBCollection collection = db.getCollection(collectionName);
     String primaryKey = mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey().getName();
     db.requestEnsureConnection();
     BulkWriteOperation unordered = collection.initializeUnorderedBulkOperation();
+    int partialUpdates = 0;
+    int operations = 0;
     for (Map.Entry<String, JSONObject> entry : values.entrySet()) {
       BasicDBObject query = new BasicDBObject(primaryKey, entry.getKey());
       JSONObject value = entry.getValue();
-      if (value != null) {
+      Set<String> paths = dirtyPaths.get(entry.getKey());
+      if (value != null && paths != null) {
+        if (paths.isEmpty()) {
+          continue;
+        }
+        operations++;
+        BasicDBObject update;
+        try {
+          update = partialUpdate(value, paths);
+        } catch (Exception e) {
+          throw new FailedDBOperationException(collectionName, "bulkUpdate",
+                  "Unable to parse json" + e.getMessage());
+        }
+        unordered.find(query).updateOne(update);
+        partialUpdates++;
+      } else if (value != null) {
+        operations++;
         DBObject document;
         try {
-          document = (DBObject) JSON.parse(value.toString());
+          // The value might be modified in place by DiskMapRecords
+          synchronized (value) {
+            document = (DBObject) JSON.parse(value.toString());
+          }
         } catch (Exception e) {
           throw new FailedDBOperationException(collectionName, "bulkUpdate",
                   "Unable to parse json" + e.getMessage());
         }
         unordered.find(query).upsert().replaceOne(document);
       } else {
+        operations++;
         unordered.find(query).removeOne();
       }
     }
+    if (operations == 0) {
+      // Mongo won't execute an empty bulk operation
+      return;
+    }
     // Maybe check the result?
     unordered.execute();
+    DelayProfiler.updateCount("bulkUpdatePartial", partialUpdates);
+  }
+
+  private static BasicDBObject partialUpdate(JSONObject value, Set<String> paths)
+          throws JSONException {
+    BasicDBObject sets = new BasicDBObject();
+    BasicDBObject unsets = new BasicDBObject();
+    synchronized (value) {
+      for (String path : paths) {
+        if (JSONDotNotation.containsFieldDotNotation(path, value)) {
+          sets.append(path, toDBValue(JSONDotNotation.getWithDotNotation(path, value)));
+        } else {
+          unsets.append(path, "");
+        }
+      }
+    }
+    BasicDBObject update = new BasicDBObject();
+    if (!sets.isEmpty()) {
+      update.append("$set", sets);
+    }
+    if (!unsets.isEmpty()) {
+      update.append("$unset", unsets);
+    }
+    return update;
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static Object toDBValue(Object value) {
+    if (value == JSONObject.NULL) {
+      return null;
+    } else if (value instanceof JSONObject || value instanceof JSONArray) {
+      return JSON.parse(value.toString());
+    } else if (value instanceof Map) {
+      return JSON.parse(new JSONObject((Map) value).toString());
+    } else if (value instanceof Collection) {
+      return JSON.parse(new JSONArray((Collection) value).toString());
+    }
+    return value;
   }
 
   @Override
@@ -550,6 +651,76 @@ public class MongoRecords implements NoSQLRecords {
     }
   }
 
+  @Override
+  public void addToSetField(String collectionName, String name, ColumnField mapField, String key,
+          List<Object> values) throws FailedDBOperationException {
+    String primaryKey = mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey().getName();
+    DBCollection collection = db.getCollection(collectionName);
+    String fieldName = mapField.getName() + "." + key;
+    long startTime = System.currentTimeMillis();
+    try {
+      // The usual case is one $addToSet. It doesn't match a list that was set to null
+      // (which also creates the field if it is missing) so that is replaced instead.
+      BasicDBObject query = new BasicDBObject(primaryKey, name)
+              .append(fieldName + ".0", new BasicDBObject("$ne", GNSProtocol.NULL_RESPONSE.toString()));
+      WriteResult result = collection.update(query, new BasicDBObject("$addToSet",
+              new BasicDBObject(fieldName, new BasicDBObject("$each", values))));
+      if (result.getN() == 0) {
+        result = collection.update(new BasicDBObject(primaryKey, name),
+                new BasicDBObject("$set", new BasicDBObject(fieldName, new ArrayList<>(new LinkedHashSet<>(values)))));
+        if (result.getN() == 0) {
+          throw new FailedDBOperationException(collectionName, name, "Record not found.");
+        }
+      }
+    } catch (MongoException e) {
+      DatabaseConfig.getLogger().log(Level.FINE, "{0} addToSetField failed: {1}",
+              new Object[]{dbName, e.getMessage()});
+      throw new FailedDBOperationException(collectionName, fieldName,
+              "Original mongo exception:" + e.getMessage());
+    }
+    DelayProfiler.updateDelay("mongoAddToSet", startTime);
+  }
+
+  @Override
+  public void removeFromSetField(String collectionName, String name, ColumnField mapField, String key,
+          List<Object> values) throws FailedDBOperationException {
+    String primaryKey = mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey().getName();
+    DBCollection collection = db.getCollection(collectionName);
+    String fieldName = mapField.getName() + "." + key;
+    long startTime = System.currentTimeMillis();
+    try {
+      WriteResult result = collection.update(new BasicDBObject(primaryKey, name),
+              new BasicDBObject("$pullAll", new BasicDBObject(fieldName, values)));
+      if (result.getN() == 0) {
+        throw new FailedDBOperationException(collectionName, name, "Record not found.");
+      }
+    } catch (MongoException e) {
+      DatabaseConfig.getLogger().log(Level.FINE, "{0} removeFromSetField failed: {1}",
+              new Object[]{dbName, e.getMessage()});
+      throw new FailedDBOperationException(collectionName, fieldName,
+              "Original mongo exception:" + e.getMessage());
+    }
+    DelayProfiler.updateDelay("mongoPull", startTime);
+  }
+
+  @Override
+  public boolean setFieldContains(String collectionName, String name, ColumnField mapField, String key,
+          Object value) throws FailedDBOperationException {
+    String primaryKey = mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey().getName();
+    DBCollection collection = db.getCollection(collectionName);
+    // Matching a list against a single value matches any element of it.
+    BasicDBObject query = new BasicDBObject(primaryKey, name)
+            .append(mapField.getName() + "." + key, value);
+    try {
+      return collection.findOne(query, new BasicDBObject(primaryKey, 1)) != null;
+    } catch (MongoException e) {
+      DatabaseConfig.getLogger().log(Level.FINE, "{0} setFieldContains failed: {1}",
+              new Object[]{dbName, e.getMessage()});
+      throw new FailedDBOperationException(collectionName, name,
+              "Original mongo exception:" + e.getMessage());
+    }
+  }
+
   /**
    * Given a key and a value return all the records that have a *user* key with that value.
    * User keys are stored in the valuesMap field.
@@ -600,6 +771,34 @@ public class MongoRecords implements NoSQLRecords {
     return new MongoRecordCursor(cursor, mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey());
   }
 
+  @Override
+  public MongoRecordCursor selectRecordsPage(String collectionName, ColumnField valuesMapField,
+          String key, Object value, String afterName, int limit) throws FailedDBOperationException {
+    db.requestEnsureConnection();
+    DBCollection collection = db.getCollection(collectionName);
+    String nameField = mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey().getName();
+    BasicDBObject query = new BasicDBObject();
+    if (key != null) {
+      // as in selectRecords this also matches lists that contain the value
+      query.put(valuesMapField.getName() + "." + key, value);
+    }
+    if (afterName != null) {
+      query.put(nameField, new BasicDBObject("$gt", afterName));
+    }
+    DBCursor cursor = null;
+    try {
+      // Both the name and the guid tags are indexed together with the name
+      // so a page costs about as much as the rows it returns.
+      cursor = collection.find(query).sort(new BasicDBObject(nameField, 1)).limit(limit);
+    } catch (MongoException e) {
+      DatabaseConfig.getLogger().log(Level.FINE, "{0} selectRecordsPage failed: {1}",
+              new Object[]{dbName, e.getMessage()});
+      throw new FailedDBOperationException(collectionName, query.toString(),
+              "Original mongo exception:" + e.getMessage());
+    }
+    return new MongoRecordCursor(cursor, mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey());
+  }
+
   @Override
   public MongoRecordCursor selectRecordsWithin(String collectionName, ColumnField valuesMapField, String key, String value)
           throws FailedDBOperationException {
@@ -698,6 +897,37 @@ public class MongoRecords implements NoSQLRecords {
     return selectRecordsQuery(collectionName, valuesMapField, query, projection, false);
   }
 
+  @Override
+  public MongoRecordCursor selectRecordsQueryPage(String collectionName, ColumnField valuesMapField,
+          String query, List<String> projection, String afterName, int limit) throws FailedDBOperationException {
+    db.requestEnsureConnection();
+    DBCollection collection = db.getCollection(collectionName);
+    String nameField = mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey().getName();
+    DBCursor cursor = null;
+    try {
+      DBObject mongoQuery = parseMongoQuery(query, valuesMapField);
+      if (afterName != null) {
+        mongoQuery = new BasicDBObject("$and", Arrays.asList(mongoQuery,
+                new BasicDBObject(nameField, new BasicDBObject("$gt", afterName))));
+      }
+      if (projection == null
+              || (!projection.isEmpty()
+              && projection.get(0).equals(GNSProtocol.ENTIRE_RECORD.toString()))) {
+        cursor = collection.find(mongoQuery);
+      } else {
+        cursor = collection.find(mongoQuery, generateProjection(projection));
+      }
+      // The name is indexed so the page is read in order without sorting all the matches
+      cursor = cursor.sort(new BasicDBObject(nameField, 1)).limit(limit);
+    } catch (MongoException e) {
+      DatabaseConfig.getLogger().log(Level.FINE, "{0} selectRecordsQueryPage failed: {1}",
+              new Object[]{dbName, e.getMessage()});
+      throw new FailedDBOperationException(collectionName, query,
+              "Original mongo exception:" + e.getMessage());
+    }
+    return new MongoRecordCursor(cursor, mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey());
+  }
+
   private MongoRecordCursor selectRecordsQuery(String collectionName, ColumnField valuesMapField,
           String query, List<String> projection, boolean explain) throws FailedDBOperationException {
     db.requestEnsureConnection();
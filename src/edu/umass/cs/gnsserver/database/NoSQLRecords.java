@@ -146,6 +146,73 @@ public interface NoSQLRecords {
   public void removeMapKeys(String collectionName, String name, ColumnField mapField, ArrayList<ColumnField> mapKeys)
           throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 
+  /**
+   * For record with name, treats the list at <code>key</code> in the map <code>mapField</code>
+   * as a set and adds the values that aren't already in it. The list is created if it
+   * doesn't exist and replaced if it is the null list. The list is not read to do this.
+   *
+   * @param collectionName the name of the collection
+   * @param name the name of the record
+   * @param mapField the field that contains the list
+   * @param key the key of the list, can use dot notation
+   * @param values the values to add
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException if the
+   * record doesn't exist or the value at key isn't a list
+   */
+  public void addToSetField(String collectionName, String name, ColumnField mapField, String key,
+          List<Object> values) throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+
+  /**
+   * For record with name, removes all occurrences of the values from the list at <code>key</code>
+   * in the map <code>mapField</code>. The list is not read to do this.
+   *
+   * @param collectionName the name of the collection
+   * @param name the name of the record
+   * @param mapField the field that contains the list
+   * @param key the key of the list, can use dot notation
+   * @param values the values to remove
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException if the
+   * record doesn't exist or the value at key isn't a list
+   */
+  public void removeFromSetField(String collectionName, String name, ColumnField mapField, String key,
+          List<Object> values) throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+
+  /**
+   * Returns true if the list at <code>key</code> in the map <code>mapField</code>
+   * of the record with name contains the value. Only the answer comes back
+   * from the database, not the list.
+   *
+   * @param collectionName the name of the collection
+   * @param name the name of the record
+   * @param mapField the field that contains the list
+   * @param key the key of the list, can use dot notation
+   * @param value
+   * @return true if the value is in the list
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public boolean setFieldContains(String collectionName, String name, ColumnField mapField, String key,
+          Object value) throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+
+  /**
+   * Returns an iterator for up to limit rows in the collection in the order of their names,
+   * starting after the given name, with all fields filled in.
+   * If key is not null only the rows that have a *user* key with the value (or that contain
+   * the value if the key is a list) are returned.
+   * Lets a caller page through a collection without a scan of all the rows per page.
+   *
+   * @param collection
+   * @param valuesMapField - the field in the row that contains the *user* fields
+   * @param key - null for all rows
+   * @param value
+   * @param afterName - the name of the last row of the previous page or null for the first page
+   * @param limit - the maximum number of rows
+   * @return an AbstractRecordCursor
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public AbstractRecordCursor selectRecordsPage(String collection, ColumnField valuesMapField,
+          String key, Object value, String afterName, int limit)
+          throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+
   /**
    * Returns an iterator for all the rows in the collection with all fields filled in.
    *
@@ -213,6 +280,25 @@ public interface NoSQLRecords {
           String query, List<String> projection)
           throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 
+  /**
+   * Performs a query on the database and returns up to limit of the guids that satisfy
+   * the query in the order of their names, starting after the given name.
+   * Lets a caller page through the results of a query without holding a cursor open
+   * between pages.
+   *
+   * @param collection the name of the collection
+   * @param valuesMapField the field that contains the ValuesMap
+   * @param query the query to execute
+   * @param projection
+   * @param afterName - the name of the last row of the previous page or null for the first page
+   * @param limit - the maximum number of rows
+   * @return an AbstractRecordCursor
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public AbstractRecordCursor selectRecordsQueryPage(String collection, ColumnField valuesMapField,
+          String query, List<String> projection, String afterName, int limit)
+          throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+
   /**
    * Creates an index for the given field.
    *
@@ -0,0 +1,110 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.database;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.GNSRecordMap;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.gnscommon.utils.Format;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Measures the time to read one nested field of a record as the number of
+ * other fields in the record grows. With projection the time should stay flat.
+ *
+ * Typical incantation:
+
+ java -cp jars/GNS.jar edu.umass.cs.gnsserver.database.PartialReadThroughputTest frank_ActiveReplica mongo
+ *
+ * @author westy
+ */
+public class PartialReadThroughputTest {
+
+  private static final String COLLECTION_NAME = MongoRecords.DBNAMERECORD;
+  private static final String FIELD = "target.inner.value";
+  private static final int[] UNRELATED_FIELDS = {10, 100, 1000, 10000};
+  private static final int READS = 10000;
+
+  /**
+   * Run the test.
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.out.println("Usage: edu.umass.cs.gnsserver.database.PartialReadThroughputTest <node> [mongo|diskmap]");
+      System.exit(1);
+    }
+    NoSQLRecords instance = args.length > 1 && args[1].equals("mongo")
+            ? new MongoRecords(args[0]) : new DiskMapRecords(args[0]);
+    GNSRecordMap<String> recordMap = new GNSRecordMap<String>(instance, COLLECTION_NAME);
+    ArrayList<ColumnField> userFields = new ArrayList<>(Arrays.asList(new ColumnField(FIELD,
+            ColumnFieldType.USER_JSON)));
+    for (int unrelated : UNRELATED_FIELDS) {
+      String guid = "partialReadTest" + unrelated;
+      try {
+        instance.removeEntireRecord(COLLECTION_NAME, guid);
+        NameRecord nameRecord = new NameRecord(recordMap, guid, new ValuesMap(makeRecord(unrelated)));
+        instance.insert(COLLECTION_NAME, guid, nameRecord.toJSONObject());
+        Map<ColumnField, Object> map = null;
+        // warm up
+        for (int i = 0; i < READS / 10; i++) {
+          map = instance.lookupSomeFields(COLLECTION_NAME, guid,
+                  NameRecord.NAME, NameRecord.VALUES_MAP, userFields);
+        }
+        long startTime = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+          map = instance.lookupSomeFields(COLLECTION_NAME, guid,
+                  NameRecord.NAME, NameRecord.VALUES_MAP, userFields);
+        }
+        double micros = (System.nanoTime() - startTime) / 1000.0 / READS;
+        System.out.println(unrelated + " unrelated fields: " + Format.formatTime(micros)
+                + "us per read of " + FIELD + " = " + map.get(NameRecord.VALUES_MAP));
+        instance.removeEntireRecord(COLLECTION_NAME, guid);
+      } catch (JSONException | FailedDBOperationException | RecordExistsException | RecordNotFoundException e) {
+        System.out.println("Problem with record of " + unrelated + " unrelated fields: " + e);
+      }
+    }
+    System.exit(0);
+  }
+
+  // The field we read plus a number of unrelated fields, every tenth one nested
+  private static JSONObject makeRecord(int unrelated) throws JSONException {
+    JSONObject json = new JSONObject();
+    json.put("target", new JSONObject().put("inner", new JSONObject().put("value", "some value")));
+    for (int i = 0; i < unrelated; i++) {
+      if (i % 10 == 0) {
+        json.put("nested" + i, new JSONObject().put("a", i).put("b", "value " + i)
+                .put("c", new JSONObject().put("d", i)));
+      } else {
+        json.put("field" + i, "value " + i);
+      }
+    }
+    return json;
+  }
+}
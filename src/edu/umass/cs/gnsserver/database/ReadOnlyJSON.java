@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2016
+ * University of Massachusetts
+ * All Rights Reserved
+ */
+package edu.umass.cs.gnsserver.database;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Read-only JSON trees for records that are shared by a cache. Any attempt
+ * to modify one, through any of the put or remove methods or the
+ * iterator of its keys, throws an {@link UnsupportedOperationException}.
+ * Use {@link #mutableCopy(JSONObject)} to get something that can be modified.
+ */
+public class ReadOnlyJSON {
+
+  // Rough per-object overheads used by estimateSize.
+  private static final int OBJECT_OVERHEAD = 48;
+  private static final int ENTRY_OVERHEAD = 32;
+  private static final int STRING_OVERHEAD = 40;
+  private static final int SCALAR_SIZE = 16;
+
+  /**
+   * A JSONObject that can't be modified once it is built.
+   */
+  public static class ReadOnlyJSONObject extends JSONObject {
+
+    private final int size;
+    private boolean sealed = false;
+
+    private ReadOnlyJSONObject(JSONObject json) throws JSONException {
+      super();
+      int estimate = OBJECT_OVERHEAD;
+      Iterator<?> keyIter = json.keys();
+      while (keyIter.hasNext()) {
+        String key = (String) keyIter.next();
+        Object value = freezeObject(json.get(key));
+        super.put(key, value);
+        estimate += ENTRY_OVERHEAD + stringSize(key) + sizeOf(value);
+      }
+      this.size = estimate;
+      this.sealed = true;
+    }
+
+    private ReadOnlyJSONObject(Map<String, ?> map) throws JSONException {
+      super();
+      int estimate = OBJECT_OVERHEAD;
+      for (Map.Entry<String, ?> entry : map.entrySet()) {
+        Object value = freezeObject(entry.getValue());
+        super.put(entry.getKey(), value);
+        estimate += ENTRY_OVERHEAD + stringSize(entry.getKey()) + sizeOf(value);
+      }
+      this.size = estimate;
+      this.sealed = true;
+    }
+
+    private void checkWritable() {
+      if (sealed) {
+        throw new UnsupportedOperationException("Read-only JSONObject");
+      }
+    }
+
+    // All the other put, accumulate and append methods go through this one.
+    @Override
+    public JSONObject put(String key, Object value) throws JSONException {
+      checkWritable();
+      return super.put(key, value);
+    }
+
+    @Override
+    public Object remove(String key) {
+      checkWritable();
+      return super.remove(key);
+    }
+
+    @Override
+    public Iterator<?> keys() {
+      final Iterator<?> keyIter = super.keys();
+      return new Iterator<Object>() {
+        @Override
+        public boolean hasNext() {
+          return keyIter.hasNext();
+        }
+
+        @Override
+        public Object next() {
+          return keyIter.next();
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException("Read-only JSONObject");
+        }
+      };
+    }
+  }
+
+  /**
+   * A JSONArray that can't be modified once it is built.
+   */
+  public static class ReadOnlyJSONArray extends JSONArray {
+
+    private final int size;
+    private boolean sealed = false;
+
+    private ReadOnlyJSONArray(JSONArray jarray) throws JSONException {
+      super();
+      int estimate = OBJECT_OVERHEAD;
+      for (int i = 0; i < jarray.length(); i++) {
+        Object value = freezeObject(jarray.get(i));
+        super.put(value);
+        estimate += ENTRY_OVERHEAD + sizeOf(value);
+      }
+      this.size = estimate;
+      this.sealed = true;
+    }
+
+    private ReadOnlyJSONArray(Collection<?> collection) throws JSONException {
+      super();
+      int estimate = OBJECT_OVERHEAD;
+      for (Object element : collection) {
+        Object value = freezeObject(element);
+        super.put(value);
+        estimate += ENTRY_OVERHEAD + sizeOf(value);
+      }
+      this.size = estimate;
+      this.sealed = true;
+    }
+
+    private void checkWritable() {
+      if (sealed) {
+        throw new UnsupportedOperationException("Read-only JSONArray");
+      }
+    }
+
+    // All the other put methods go through this one or the indexed one.
+    @Override
+    public JSONArray put(Object value) {
+      checkWritable();
+      return super.put(value);
+    }
+
+    @Override
+    public JSONArray put(int index, Object value) throws JSONException {
+      checkWritable();
+      return super.put(index, value);
+    }
+
+    // Not every version of org.json has JSONArray.remove hence no @Override.
+    // It is never needed while the array is built.
+    public Object remove(int index) {
+      throw new UnsupportedOperationException("Read-only JSONArray");
+    }
+  }
+
+  /**
+   * Returns a read-only copy of the JSONObject. BasicDBObjects and BasicDBLists
+   * (or any Map and Collection) are converted along the way.
+   * If the json is already read-only it is returned as is.
+   *
+   * @param json
+   * @return a {@link ReadOnlyJSONObject}
+   * @throws JSONException
+   */
+  public static ReadOnlyJSONObject freeze(JSONObject json) throws JSONException {
+    if (json instanceof ReadOnlyJSONObject) {
+      return (ReadOnlyJSONObject) json;
+    }
+    return new ReadOnlyJSONObject(json);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object freezeObject(Object value) throws JSONException {
+    if (value instanceof ReadOnlyJSONObject || value instanceof ReadOnlyJSONArray) {
+      return value;
+    } else if (value instanceof JSONObject) {
+      return new ReadOnlyJSONObject((JSONObject) value);
+    } else if (value instanceof JSONArray) {
+      return new ReadOnlyJSONArray((JSONArray) value);
+    } else if (value instanceof Map) {
+      return new ReadOnlyJSONObject((Map<String, ?>) value);
+    } else if (value instanceof Collection) {
+      return new ReadOnlyJSONArray((Collection<?>) value);
+    }
+    return value;
+  }
+
+  /**
+   * Returns an estimate of the number of bytes of heap a read-only json
+   * tree is using. Computed once when the tree is built.
+   *
+   * @param json
+   * @return the estimated size in bytes
+   */
+  public static int estimateSize(ReadOnlyJSONObject json) {
+    return json.size;
+  }
+
+  private static int sizeOf(Object value) {
+    if (value instanceof ReadOnlyJSONObject) {
+      return ((ReadOnlyJSONObject) value).size;
+    } else if (value instanceof ReadOnlyJSONArray) {
+      return ((ReadOnlyJSONArray) value).size;
+    } else if (value instanceof String) {
+      return stringSize((String) value);
+    }
+    return SCALAR_SIZE;
+  }
+
+  private static int stringSize(String string) {
+    return STRING_OVERHEAD + 2 * string.length();
+  }
+
+  /**
+   * Returns a deep, modifiable copy of the JSONObject.
+   *
+   * @param json
+   * @return a JSONObject
+   * @throws JSONException
+   */
+  public static JSONObject mutableCopy(JSONObject json) throws JSONException {
+    JSONObject copy = new JSONObject();
+    Iterator<?> keyIter = json.keys();
+    while (keyIter.hasNext()) {
+      String key = (String) keyIter.next();
+      copy.put(key, mutableCopyObject(json.get(key)));
+    }
+    return copy;
+  }
+
+  private static JSONArray mutableCopy(JSONArray jarray) throws JSONException {
+    JSONArray copy = new JSONArray();
+    for (int i = 0; i < jarray.length(); i++) {
+      copy.put(mutableCopyObject(jarray.get(i)));
+    }
+    return copy;
+  }
+
+  /**
+   * Returns a deep, modifiable copy of a value of a JSONObject, i.e., a copy
+   * of a JSONObject or JSONArray and anything else as it is.
+   *
+   * @param value
+   * @return the copy
+   * @throws JSONException
+   */
+  public static Object mutableCopyObject(Object value) throws JSONException {
+    if (value instanceof JSONObject) {
+      return mutableCopy((JSONObject) value);
+    } else if (value instanceof JSONArray) {
+      return mutableCopy((JSONArray) value);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+/**
+ * Sends A record queries to a DNS server (a {@link UdpDnsServer} or a
+ * {@link DnsTranslator}) from many threads and reports the queries per second
+ * it answered along with the median and p99 latency.
+ *
+ * Each thread has one query outstanding at a time. If a rate is given the threads
+ * pace themselves to send that many queries per second in total, otherwise they
+ * send as fast as they get answers. Queries not answered within a second count
+ * as timeouts and SERVFAIL answers (which the server sends when it is saturated)
+ * are counted separately.
+ *
+ * Typical incantation:
+ *
+ * java -cp jars/GNS.jar edu.umass.cs.gnsserver.gnamed.DnsLoadGenerator 127.0.0.1 53 example.com 64 10 5000
+ *
+ * @author westy
+ */
+public class DnsLoadGenerator {
+
+  private static final int TIMEOUT_MS = 1000;
+
+  /**
+   * Run the load generator.
+   *
+   * @param args host, port, name to look up, number of threads, number of seconds
+   * to run for and optionally the total queries per second to send
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    final InetAddress host = InetAddress.getByName(args.length > 0 ? args[0] : "127.0.0.1");
+    final int port = args.length > 1 ? Integer.parseInt(args[1]) : 53;
+    String name = args.length > 2 ? args[2] : "example.com";
+    int threads = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+    int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+    int rate = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+
+    final Record question = Record.newRecord(Name.fromString(name.endsWith(".") ? name : name + "."),
+            Type.A, DClass.IN);
+    // Nanoseconds between queries of a single thread or 0 to not wait
+    final long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) * threads / rate : 0;
+    final long endTime = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+    final AtomicLong answered = new AtomicLong();
+    final AtomicLong serverFailures = new AtomicLong();
+    final AtomicLong timeouts = new AtomicLong();
+    final List<long[]> latencies = new ArrayList<>();
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (int i = 0; i < threads; i++) {
+      final int threadIndex = latencies.size();
+      latencies.add(null);
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          long[] micros = new long[1024];
+          int count = 0;
+          byte[] buffer = new byte[512];
+          try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(TIMEOUT_MS);
+            long next = System.nanoTime();
+            while (System.nanoTime() < endTime) {
+              if (interval > 0) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                  TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                next += interval;
+              }
+              Message query = Message.newQuery(question);
+              int id = query.getHeader().getID();
+              byte[] wire = query.toWire();
+              long start = System.nanoTime();
+              socket.send(new DatagramPacket(wire, wire.length, host, port));
+              Message response = null;
+              try {
+                // Skip late answers to earlier queries
+                do {
+                  DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                  socket.receive(packet);
+                  response = new Message(Arrays.copyOf(packet.getData(), packet.getLength()));
+                } while (response.getHeader().getID() != id);
+              } catch (SocketTimeoutException e) {
+                timeouts.incrementAndGet();
+                continue;
+              }
+              if (response.getHeader().getRcode() == Rcode.SERVFAIL) {
+                serverFailures.incrementAndGet();
+                continue;
+              }
+              answered.incrementAndGet();
+              if (count == micros.length) {
+                micros = Arrays.copyOf(micros, count * 2);
+              }
+              micros[count++] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            }
+          } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+          }
+          synchronized (latencies) {
+            latencies.set(threadIndex, Arrays.copyOf(micros, count));
+          }
+        }
+      });
+    }
+    executor.shutdown();
+    executor.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+
+    long[] all;
+    synchronized (latencies) {
+      int total = 0;
+      for (long[] micros : latencies) {
+        total += micros != null ? micros.length : 0;
+      }
+      all = new long[total];
+      int offset = 0;
+      for (long[] micros : latencies) {
+        if (micros != null) {
+          System.arraycopy(micros, 0, all, offset, micros.length);
+          offset += micros.length;
+        }
+      }
+    }
+    Arrays.sort(all);
+    System.out.println("threads=" + threads + " seconds=" + seconds
+            + (rate > 0 ? " rate=" + rate : ""));
+    System.out.println("answered=" + answered.get() + " servfail=" + serverFailures.get()
+            + " timeouts=" + timeouts.get());
+    System.out.println("qps=" + String.format("%.1f", answered.get() / (double) seconds));
+    System.out.println("p50=" + percentile(all, 50) + "us p99=" + percentile(all, 99)
+            + "us max=" + (all.length > 0 ? all[all.length - 1] : 0) + "us");
+  }
+
+  private static long percentile(long[] sorted, int percent) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.umass.cs.gnsserver.main.GNSConfig.GNSC;
+import edu.umass.cs.gnsserver.utils.Shutdownable;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
+
+/**
+ * The threads a DNS server uses to answer queries.
+ *
+ * Queries are handled by a fixed number of {@link LookupWorker}s
+ * ({@link GNSC#DNS_WORKER_THREADS}) with at most {@link GNSC#DNS_MAX_PENDING_QUERIES}
+ * queries waiting for one. When that many are waiting {@link #execute} refuses
+ * the query so the receive loop can answer it with SERVFAIL instead of queueing
+ * without bound. The GNS and upstream DNS lookups that a worker races against each
+ * other run on a second shared pool ({@link GNSC#DNS_LOOKUP_THREADS}) so that no
+ * threads are created per query.
+ *
+ * @author westy
+ */
+public class DnsLookupExecutor implements Shutdownable {
+
+  private final ThreadPoolExecutor workers;
+  private final ThreadPoolExecutor lookups;
+
+  /**
+   * Creates the executor with the sizes from the config.
+   */
+  public DnsLookupExecutor() {
+    this(Config.getGlobalInt(GNSC.DNS_WORKER_THREADS),
+            Config.getGlobalInt(GNSC.DNS_LOOKUP_THREADS),
+            Config.getGlobalInt(GNSC.DNS_MAX_PENDING_QUERIES));
+  }
+
+  /**
+   * Creates the executor.
+   *
+   * @param workerThreads the number of queries handled at once
+   * @param lookupThreads the number of GNS and DNS lookups done at once
+   * @param maxPending the number of queries that can wait for a worker
+   */
+  public DnsLookupExecutor(int workerThreads, int lookupThreads, int maxPending) {
+    this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(maxPending), new NamedThreadFactory("DnsWorker"));
+    // Every worker has at most two lookups outstanding and cancels the loser
+    // so this queue is bounded by the workers.
+    this.lookups = new ThreadPoolExecutor(lookupThreads, lookupThreads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("DnsLookup"));
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    private NamedThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  /**
+   * Hands the worker to a thread unless too many queries are waiting already.
+   *
+   * @param worker
+   * @return false if the query was refused
+   */
+  public boolean execute(LookupWorker worker) {
+    try {
+      workers.execute(worker);
+      return true;
+    } catch (RejectedExecutionException e) {
+      DelayProfiler.updateCount("dnsQueriesRejected", 1);
+      return false;
+    }
+  }
+
+  /**
+   * Returns the executor for the lookups done on behalf of a worker.
+   *
+   * @return the executor
+   */
+  public ExecutorService getLookupExecutor() {
+    return lookups;
+  }
+
+  /**
+   * Returns the number of queries waiting for a worker.
+   *
+   * @return the number of queries
+   */
+  public int getPendingQueries() {
+    return workers.getQueue().size();
+  }
+
+  @Override
+  public void shutdown() {
+    workers.shutdown();
+    lookups.shutdown();
+  }
+}
@@ -31,8 +31,6 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.Level;
 
 /**
@@ -47,7 +45,7 @@ public class DnsTranslator extends Thread implements Shutdownable {
 
   private final int port;
   private final DatagramSocket sock;
-  private ExecutorService executor = null;
+  private final DnsLookupExecutor executor;
   private final ClientRequestHandlerInterface handler;
 
   /**
@@ -64,7 +62,7 @@ public class DnsTranslator extends Thread implements Shutdownable {
   public DnsTranslator(InetAddress addr, int port, ClientRequestHandlerInterface handler) throws SecurityException, SocketException, UnknownHostException {
     this.port = port;
     this.sock = new DatagramSocket(port, addr);
-    this.executor = Executors.newFixedThreadPool(5);
+    this.executor = new DnsLookupExecutor();
     this.handler = handler;
   }
 
@@ -85,8 +83,15 @@ public class DnsTranslator extends Thread implements Shutdownable {
           } catch (InterruptedIOException e) {
             continue;
           }
-          executor.execute(new LookupWorker(sock, incomingPacket, incomingData, null, null, null, handler));
-          NameResolution.getLogger().fine(DelayProfiler.getStats());
+          LookupWorker worker = new LookupWorker(sock, incomingPacket, incomingData, null, null, null, handler,
+                  executor.getLookupExecutor());
+          if (!executor.execute(worker)) {
+            // Too many queries waiting so tell the client right away instead of queueing it
+            worker.sendServerFailure();
+          }
+          if (NameResolution.getLogger().isLoggable(Level.FINE)) {
+            NameResolution.getLogger().fine(DelayProfiler.getStats());
+          }
         }
       } catch (IOException e) {
         NameResolution.getLogger().log(Level.SEVERE, 
@@ -98,8 +103,6 @@ public class DnsTranslator extends Thread implements Shutdownable {
 
   @Override
   public void shutdown() {
-    if (executor != null) {
-      executor.shutdown();
-    }
+    executor.shutdown();
   }
 }
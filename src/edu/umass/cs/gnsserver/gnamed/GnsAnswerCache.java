@@ -0,0 +1,359 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import static edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess.HRN_GUID;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+import edu.umass.cs.gnsserver.main.GNSConfig.GNSC;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
+
+/**
+ * A cache of the answers the DNS server builds from GNS records, keyed by
+ * the name, type and class of the question.
+ *
+ * Answers are kept in wire format (without the query id) for as long as the
+ * smallest TTL of their records so that a popular name is answered by patching
+ * the id and flags of a copy of the bytes. Names or record types that don't exist
+ * are remembered for {@link GNSC#DNS_NEGATIVE_CACHE_TTL} seconds.
+ *
+ * Every answer is indexed by the HRN record and the guid record it was built from.
+ * {@link #invalidate} is called by the record map whenever one of those records is
+ * created, removed or has its DNS fields updated on this replica, which drops all
+ * the answers built from it. Version numbers per stripe of record names make sure an
+ * answer built from records read before such an update is never cached after it.
+ *
+ * Answers are only cached when active code is disabled because read code can make
+ * an answer depend on the client.
+ *
+ * @author westy
+ */
+public class GnsAnswerCache {
+
+  // Must be a power of 2.
+  private static final int VERSION_STRIPES = 1024;
+
+  // The id and the RA flag are patched in for every query.
+  private static final int RA_BYTE = 3;
+  private static final int RA_MASK = 0x80;
+
+  private static volatile GnsAnswerCache instance = null;
+
+  private final Cache<String, Answer> answers;
+  // The keys of the answers built from each record. Guarded by itself.
+  private final Map<String, Set<String>> keysByRecord = new HashMap<>();
+  private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+  private final int negativeTTL;
+
+  private static class Answer {
+
+    // The wire format with a zero id and no RA flag. Null for a negative answer.
+    private final byte[] wire;
+    private final int rcode;
+    private final long expiresAt;
+    private final String domain;
+    private final String guid;
+
+    private Answer(byte[] wire, int rcode, long expiresAt, String domain, String guid) {
+      this.wire = wire;
+      this.rcode = rcode;
+      this.expiresAt = expiresAt;
+      this.domain = domain;
+      this.guid = guid;
+    }
+  }
+
+  GnsAnswerCache(int size, int negativeTTL) {
+    this.negativeTTL = negativeTTL;
+    this.answers = CacheBuilder.newBuilder()
+            .maximumSize(size)
+            .removalListener(new RemovalListener<String, Answer>() {
+              @Override
+              public void onRemoval(RemovalNotification<String, Answer> notification) {
+                Answer answer = notification.getValue();
+                // A replaced answer has the same key as the new one, which is
+                // indexed by its domain and guid. If the old guid was different
+                // its entry is left behind and at worst drops the new answer early.
+                if (answer != null && notification.getCause() != RemovalCause.REPLACED) {
+                  unindex(answer.domain, notification.getKey());
+                  unindex(answer.guid, notification.getKey());
+                }
+              }
+            })
+            .build();
+  }
+
+  /**
+   * Returns the cache or null if GNS answers aren't cached.
+   *
+   * @return the cache or null
+   */
+  public static GnsAnswerCache getInstance() {
+    GnsAnswerCache cache = instance;
+    if (cache == null) {
+      synchronized (GnsAnswerCache.class) {
+        cache = instance;
+        if (cache == null) {
+          int size = Config.getGlobalInt(GNSC.DNS_ANSWER_CACHE_SIZE);
+          cache = new GnsAnswerCache(size, Config.getGlobalInt(GNSC.DNS_NEGATIVE_CACHE_TTL));
+          instance = cache;
+        }
+      }
+    }
+    return instance.isEnabled() ? instance : null;
+  }
+
+  private boolean isEnabled() {
+    return Config.getGlobalInt(GNSC.DNS_ANSWER_CACHE_SIZE) > 0
+            && Config.getGlobalBoolean(GNSC.DISABLE_ACTIVE_CODE);
+  }
+
+  /**
+   * Drops the answers built from the record with this name
+   * (an HRN or a guid). Does nothing if the cache hasn't been used.
+   *
+   * @param name
+   */
+  public static void invalidate(String name) {
+    GnsAnswerCache cache = instance;
+    if (cache != null && name != null) {
+      cache.invalidateRecord(name);
+    }
+  }
+
+  /**
+   * Returns true if the field is one that answers are built from.
+   *
+   * @param field
+   * @return true if updating the field needs to invalidate answers
+   */
+  public static boolean isDnsField(String field) {
+    int dot = field.indexOf('.');
+    String topLevel = dot < 0 ? field : field.substring(0, dot);
+    return HRN_GUID.equals(topLevel) || NameResolution.DNS_FIELDS.contains(topLevel);
+  }
+
+  void invalidateRecord(String name) {
+    versions.incrementAndGet(stripe(name));
+    Set<String> keys;
+    synchronized (keysByRecord) {
+      keys = keysByRecord.remove(name);
+    }
+    if (keys != null) {
+      answers.invalidateAll(keys);
+    }
+  }
+
+  /**
+   * Returns the current version of a record. Must be read before the record
+   * is read to build an answer from it.
+   *
+   * @param name
+   * @return the version
+   */
+  public long getVersion(String name) {
+    return versions.get(stripe(name));
+  }
+
+  private static int stripe(String name) {
+    return name.hashCode() & (VERSION_STRIPES - 1);
+  }
+
+  private static String key(String domain, Message query) {
+    return domain + "/" + query.getQuestion().getType() + "/" + query.getQuestion().getDClass();
+  }
+
+  /**
+   * Returns the cached answer to the query in wire format or null if there isn't one.
+   *
+   * @param domain the name in the query
+   * @param query
+   * @return the wire format of the answer or null
+   */
+  public byte[] lookupWire(String domain, Message query) {
+    Answer answer = getAnswer(domain, query);
+    if (answer == null) {
+      return null;
+    }
+    if (answer.wire == null) {
+      return NameResolution.errorMessage(query, answer.rcode).toWire();
+    }
+    byte[] wire = Arrays.copyOf(answer.wire, answer.wire.length);
+    int id = query.getHeader().getID();
+    wire[0] = (byte) (id >>> 8);
+    wire[1] = (byte) id;
+    if (query.getHeader().getFlag(Flags.RD)) {
+      wire[RA_BYTE] |= RA_MASK;
+    }
+    return wire;
+  }
+
+  /**
+   * Returns the cached answer to the query or null if there isn't one.
+   *
+   * @param domain the name in the query
+   * @param query
+   * @return the answer or null
+   */
+  public Message lookup(String domain, Message query) {
+    byte[] wire = lookupWire(domain, query);
+    if (wire == null) {
+      return null;
+    }
+    try {
+      return new Message(wire);
+    } catch (IOException e) {
+      NameResolution.getLogger().log(Level.WARNING, "Unable to parse cached answer for {0}: {1}",
+              new Object[]{domain, e});
+      answers.invalidate(key(domain, query));
+      return null;
+    }
+  }
+
+  private Answer getAnswer(String domain, Message query) {
+    String key = key(domain, query);
+    Answer answer = answers.getIfPresent(key);
+    if (answer != null && answer.expiresAt <= System.currentTimeMillis()) {
+      answers.invalidate(key);
+      answer = null;
+    }
+    DelayProfiler.updateCount(answer != null ? "dnsAnswerCacheHits" : "dnsAnswerCacheMisses", 1);
+    return answer;
+  }
+
+  /**
+   * Caches the response to the query if it is an answer or an NXDOMAIN and
+   * neither record it was built from has changed since their versions were read.
+   *
+   * @param domain the name in the query
+   * @param domainVersion the version of the HRN record read before it was read
+   * @param guid the guid the name resolved to or null if it didn't
+   * @param guidVersion the version of the guid record read before it was read
+   * @param query
+   * @param response
+   */
+  public void put(String domain, long domainVersion, String guid, long guidVersion,
+          Message query, Message response) {
+    int rcode = response.getHeader().getRcode();
+    Answer answer;
+    if (rcode == Rcode.NOERROR) {
+      long ttl = minimumTTL(response);
+      if (ttl <= 0) {
+        return;
+      }
+      Message template = (Message) response.clone();
+      template.getHeader().setID(0);
+      template.getHeader().unsetFlag(Flags.RA);
+      answer = new Answer(template.toWire(), rcode,
+              System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl), domain, guid);
+    } else if (rcode == Rcode.NXDOMAIN) {
+      answer = new Answer(null, rcode,
+              System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(negativeTTL), domain, guid);
+    } else {
+      return;
+    }
+    if (!isCurrent(domain, domainVersion, guid, guidVersion)) {
+      return;
+    }
+    String key = key(domain, query);
+    index(domain, key);
+    index(guid, key);
+    answers.put(key, answer);
+    // An update might have happened between the check and the put.
+    if (!isCurrent(domain, domainVersion, guid, guidVersion)) {
+      answers.invalidate(key);
+    }
+  }
+
+  private boolean isCurrent(String domain, long domainVersion, String guid, long guidVersion) {
+    return getVersion(domain) == domainVersion
+            && (guid == null || getVersion(guid) == guidVersion);
+  }
+
+  private static long minimumTTL(Message response) {
+    long ttl = Long.MAX_VALUE;
+    boolean any = false;
+    for (int section : new int[]{Section.ANSWER, Section.AUTHORITY, Section.ADDITIONAL}) {
+      for (Record record : response.getSectionArray(section)) {
+        ttl = Math.min(ttl, record.getTTL());
+        any = true;
+      }
+    }
+    return any ? ttl : 0;
+  }
+
+  private void index(String name, String key) {
+    if (name != null) {
+      synchronized (keysByRecord) {
+        Set<String> keys = keysByRecord.get(name);
+        if (keys == null) {
+          keys = new HashSet<>();
+          keysByRecord.put(name, keys);
+        }
+        keys.add(key);
+      }
+    }
+  }
+
+  private void unindex(String name, String key) {
+    if (name != null) {
+      synchronized (keysByRecord) {
+        Set<String> keys = keysByRecord.get(name);
+        if (keys != null) {
+          keys.remove(key);
+          if (keys.isEmpty()) {
+            keysByRecord.remove(name);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of cached answers.
+   *
+   * @return the number of answers
+   */
+  public long size() {
+    return answers.size();
+  }
+}
@@ -32,12 +32,13 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 
 import org.xbill.DNS.Flags;
 import org.xbill.DNS.Message;
+import org.xbill.DNS.Opcode;
 import org.xbill.DNS.Rcode;
 import org.xbill.DNS.SimpleResolver;
 import org.xbill.DNS.Cache;
@@ -52,7 +53,8 @@ import org.xbill.DNS.Credibility;
  * DNS requests can be handled just by the GNS server or by the GNS server
  * with a DNS server as a fallback.
  * When using DNS as a fallback we send out parallel requests and whichever returns
- * first is returned to the client as the answer.
+ * first is returned to the client as the answer. The parallel requests run on
+ * an executor that is shared by all the workers of a server.
  *
  * @author westy
  * @version 1.0
@@ -66,6 +68,7 @@ public class LookupWorker implements Runnable {
   private final DatagramPacket incomingPacket;
   private final byte[] incomingData;
   private final ClientRequestHandlerInterface handler;
+  private final ExecutorService lookupExecutor;
 
   /**
    * Creates a new <code>LookupWorker</code> object which handles the parallel GNS and DNS requesting.
@@ -77,9 +80,11 @@ public class LookupWorker implements Runnable {
    * @param gnsServer (might be null gns requests are resolved locally)
    * @param dnsCache (might be null meaning DNS responses are not cached)
    * @param handler
+   * @param lookupExecutor runs the parallel GNS and DNS requests
    */
   public LookupWorker(DatagramSocket socket, DatagramPacket incomingPacket, byte[] incomingData, SimpleResolver gnsServer,
-          SimpleResolver dnsServer, Cache dnsCache, ClientRequestHandlerInterface handler) {
+          SimpleResolver dnsServer, Cache dnsCache, ClientRequestHandlerInterface handler,
+          ExecutorService lookupExecutor) {
     this.socket = socket;
     this.incomingPacket = incomingPacket;
     this.incomingData = incomingData;
@@ -87,6 +92,7 @@ public class LookupWorker implements Runnable {
     this.dnsCache = dnsCache;
     this.gnsServer = gnsServer;
     this.handler = handler;
+    this.lookupExecutor = lookupExecutor;
   }
 
   /**
@@ -107,17 +113,26 @@ public class LookupWorker implements Runnable {
       sendResponse(NameResolution.formErrorMessage(incomingData).toWire());
       return;
     }
+    if (query.getOPT() != null) {
+      maxLength = Math.max(query.getOPT().getPayloadSize(), 512);
+    } else {
+      maxLength = 512;
+    }
+    // If only the GNS is consulted a cached answer can be sent as is.
+    if (dnsServer == null && isPlainQuery(query)) {
+      byte[] cached = NameResolution.lookupGnsAnswerCache(query);
+      if (cached != null && cached.length <= maxLength) {
+        sendResponse(cached);
+        DelayProfiler.updateDelay("LookupWorkerCached", startTime);
+        return;
+      }
+    }
     // THE MEAT IS IN HERE. Try to get a response from the GNS or DNS servers.
     response = generateReply(query);
     long postStart = System.currentTimeMillis();
     if (response == null) { // means we don't need to do anything
       return;
     }
-    if (query.getOPT() != null) {
-      maxLength = Math.max(query.getOPT().getPayloadSize(), 512);
-    } else {
-      maxLength = 512;
-    }
     NameResolution.getLogger().log(Level.FINE, "Q/R: {0}",
             NameResolution.queryAndResponseToString(query, response));
     // Send out the response.
@@ -128,6 +143,29 @@ public class LookupWorker implements Runnable {
     DelayProfiler.updateDelay("LookupWorker", startTime);
   }
 
+  // A query that generateReply would look up rather than ignore or reject.
+  private static boolean isPlainQuery(Message query) {
+    return !query.getHeader().getFlag(Flags.QR)
+            && query.getHeader().getRcode() == Rcode.NOERROR
+            && query.getHeader().getOpcode() == Opcode.QUERY;
+  }
+
+  /**
+   * Answers the query with SERVFAIL without looking anything up.
+   * Used when the server is too busy to handle the query.
+   */
+  public void sendServerFailure() {
+    Message response;
+    try {
+      response = NameResolution.errorMessage(new Message(incomingData), Rcode.SERVFAIL);
+    } catch (IOException e) {
+      response = NameResolution.formErrorMessage(incomingData);
+    }
+    if (response != null) {
+      sendResponse(response.toWire());
+    }
+  }
+
   /**
    * Queries DNS and/or GNS servers for DNS records.
    *
@@ -187,18 +225,23 @@ public class LookupWorker implements Runnable {
               new LookupTask(dnsQuery, dnsServer, false, /* isGNS */ handler));
     }
 
-    // A little bit of overkill for two tasks, but it's really not that much longer (if any) than
-    // the altenative. Plus it's cool and trendy to use futures.
-    ExecutorService executor = Executors.newFixedThreadPool(2);
-    ExecutorCompletionService<Message> completionService = new ExecutorCompletionService<>(executor);
+    // The tasks run on the shared lookup executor; the completion service just
+    // gives us the results in the order they finish.
+    ExecutorCompletionService<Message> completionService = new ExecutorCompletionService<>(lookupExecutor);
     List<Future<Message>> futures = new ArrayList<>(2);
-    for (Callable<Message> task : tasks) {
-      futures.add(completionService.submit(task));
+    try {
+      for (Callable<Message> task : tasks) {
+        futures.add(completionService.submit(task));
+      }
+    } catch (RejectedExecutionException e) {
+      // The server is shutting down
+      cancelAll(futures);
+      return NameResolution.errorMessage(query, Rcode.SERVFAIL);
     }
     Message successResponse = null;
     Message errorResponse = null;
     // loop throught the tasks getting results as they complete
-    for (int i=0; i<tasks.size(); i++) { // this is just doing things twice btw
+    for (int i=0; i<futures.size(); i++) { // this is just doing things twice btw
       try {
         Message result = completionService.take().get();
         if (result.getHeader().getRcode() == Rcode.NOERROR) {
@@ -214,8 +257,8 @@ public class LookupWorker implements Runnable {
         NameResolution.getLogger().log(Level.WARNING, "Lookup task interrupted: {0}", e);
       }
     }
-    // Shutdown the executor threadpool
-    executor.shutdown();
+    // Don't tie up a lookup thread with the loser if it hasn't started yet
+    cancelAll(futures);
     if (successResponse != null) {
       // Cache the successful response
       try {
@@ -246,6 +289,12 @@ public class LookupWorker implements Runnable {
     }
   }
 
+  private static void cancelAll(List<Future<Message>> futures) {
+    for (Future<Message> future : futures) {
+      future.cancel(false);
+    }
+  }
+
   /**
    * Returns a response to the sender.
    *
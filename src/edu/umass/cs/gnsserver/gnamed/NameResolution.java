@@ -26,7 +26,9 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -70,6 +72,12 @@ public class NameResolution {
 
   private static final Logger LOG = Logger.getLogger(NameResolution.class.getName());
 
+  /**
+   * The fields of a guid that DNS answers are built from.
+   */
+  public static final List<String> DNS_FIELDS = Collections.unmodifiableList(
+          Arrays.asList("A", "NS", "CNAME", "SOA", "PTR", "MX"));
+
   /**
    * @return Logger used by most of the client support package.
    */
@@ -176,7 +184,7 @@ public class NameResolution {
     /**
      * Request DNS fields of an alias and prepare a DNS response message 
      */
-    ArrayList<String> fields = new ArrayList<>(Arrays.asList("A", "NS", "CNAME", "SOA", "PTR", "MX"));
+    ArrayList<String> fields = new ArrayList<>(DNS_FIELDS);
     
     /**
      * <p>
@@ -201,7 +209,59 @@ public class NameResolution {
      */
 	  long resolveStart = System.currentTimeMillis();      
 	  
-	  JSONObject fieldResponseJson = lookupGuidField(addr.getHostAddress().toString(), query.getHeader().getID(), domainName, null, fields, handler);
+	  // Popular names are answered from memory
+	  GnsAnswerCache cache = GnsAnswerCache.getInstance();
+	  if (cache != null) {
+	    Message cached = cache.lookup(domainName, query);
+	    if (cached != null) {
+	      DelayProfiler.updateDelay("ResolveNameCached", resolveStart);
+	      return cached;
+	    }
+	  }
+	  
+	  // The versions must be read before the records they protect
+	  long domainVersion = cache != null ? cache.getVersion(domainName) : 0;
+	  long guidVersion = 0;
+	  String guid;
+	  JSONObject fieldResponseJson = null;
+	  try {
+	    guid = lookupGuid(domainName, handler);
+	    if (guid != null) {
+	      guidVersion = cache != null ? cache.getVersion(guid) : 0;
+	      fieldResponseJson = lookupFields(addr != null ? addr.getHostAddress() : null,
+	              query.getHeader().getID(), guid, fields, handler);
+	    } else {
+	      NameResolution.getLogger().log(Level.FINE, "No guid for {0} is found", domainName);
+	    }
+	  } catch (FailedDBOperationException | JSONException e) {
+	    // Don't cache this since the name might well exist
+	    NameResolution.getLogger().log(Level.FINE, "GNS lookup for domain {0} failed: {1}",
+	            new Object[]{domainName, e});
+	    return errorMessage(query, Rcode.NXDOMAIN);
+	  }
+	  
+	  response = buildGnsResponse(query, response, domainName, fieldResponseJson);
+	  if (cache != null) {
+	    cache.put(domainName, domainVersion, guid, guidVersion, query, response);
+	  }
+	  DelayProfiler.updateDelay("ResolveName", resolveStart);
+	  NameResolution.getLogger().log(Level.FINER, "Outgoing response from GNS: {0}", response.toString());
+	  return response;
+  }
+
+  /**
+   * Fills in the response to the query from the DNS fields of the guid
+   * or returns an error message if the query can't be answered.
+   *
+   * @param query
+   * @param response the response with just the header and question
+   * @param domainName
+   * @param fieldResponseJson the DNS fields or null if the name or guid doesn't exist
+   * @return the response or an error message
+   */
+  private static Message buildGnsResponse(Message query, Message response, String domainName,
+          JSONObject fieldResponseJson) {
+	  final int fieldName = query.getQuestion().getType();
 	  if (fieldResponseJson == null) {
 	    NameResolution.getLogger().log(Level.FINE, "GNS lookup for domain {0} failed.", domainName);
 	    return errorMessage(query, Rcode.NXDOMAIN);
@@ -330,13 +390,24 @@ public class NameResolution {
 		  // we haven't implemented yet
 		  return errorMessage(query, Rcode.NOTIMPL);
       }
-      
-      
-    DelayProfiler.updateDelay("ResolveName", resolveStart);
-    NameResolution.getLogger().log(Level.FINER, "Outgoing response from GNS: {0}", response.toString());
     return response;
   }
 
+  /**
+   * Returns the cached GNS answer to the query in wire format or null if
+   * there isn't one or GNS answers aren't cached.
+   *
+   * @param query
+   * @return the answer or null
+   */
+  public static byte[] lookupGnsAnswerCache(Message query) {
+    GnsAnswerCache cache = GnsAnswerCache.getInstance();
+    if (cache == null || query.getQuestion() == null) {
+      return null;
+    }
+    return cache.lookupWire(querytoStringForGNS(query.getQuestion().getName().toWire()), query);
+  }
+
   /**
    * retrieve all A records from A field of a JSON object
    * 
@@ -541,71 +612,79 @@ public class NameResolution {
     /**
      * 1. Lookup guid for the domain name
      */
-    String guid = null;
-    final ValuesMap result;
-    try{
-	    result = NSFieldAccess.lookupJSONFieldLocalNoAuth(null, domain,
-	            HRN_GUID, handler.getApp(), false);
-	    if (result != null) {
-	        guid = result.getString(HRN_GUID);
-	    }
+    String guid;
+    try {
+      guid = lookupGuid(domain, handler);
     } catch (FailedDBOperationException | JSONException e) {
-    	NameResolution.getLogger().log(Level.FINE,
-                "No guid for {0}: {1}", new Object[]{domain, e});
-    	return null;
+      NameResolution.getLogger().log(Level.FINE,
+              "No guid for {0}: {1}", new Object[]{domain, e});
+      return null;
     }
-    
+
     /**
      * 2. Lookup the record
      */
     JSONObject value = null;
-    if(guid != null){
-    	// Generate a DNS header for local read 
-    	InternalRequestHeader header = new InternalRequestHeader(){
-
-			@Override
-			public long getOriginatingRequestID() {
-				return id;
-			}
-
-			@Override
-			public String getOriginatingGUID() {
-				try {
-					return result.getString(HRN_GUID);
-				} catch (JSONException e) {
-					return null;
-				}
-			}
-
-			@Override
-			public int getTTL() {
-				return InternalRequestHeader.DEFAULT_TTL;
-			}
-
-			@Override
-			public boolean hasBeenCoordinatedOnce() {
-				// DNS request does not need coordination
-				return false;
-			}
-			
-			@Override
-			public String getSourceAddress(){
-				return addr;
-			}
-    		
-    	};
-    	try {
-			value = NSFieldAccess.lookupFieldsLocalNoAuth(header, guid, fields, ColumnFieldType.USER_JSON, handler);
-		} catch (FailedDBOperationException e) {
-			NameResolution.getLogger().log(Level.FINE,
-	                "Fetching record failed for {0}: {1}", new Object[]{domain, e});
-		}
-    }else{
-    	NameResolution.getLogger().log(Level.FINE,
-                "No guid for {0} is found", new Object[]{domain});
+    if (guid != null) {
+      try {
+        value = lookupFields(addr, id, guid, fields, handler);
+      } catch (FailedDBOperationException e) {
+        NameResolution.getLogger().log(Level.FINE,
+                "Fetching record failed for {0}: {1}", new Object[]{domain, e});
+      }
+    } else {
+      NameResolution.getLogger().log(Level.FINE,
+              "No guid for {0} is found", new Object[]{domain});
     }
     return value;
-    
+  }
+
+  /**
+   * Returns the guid of the HRN or null if there is no such HRN.
+   */
+  private static String lookupGuid(String domain, ClientRequestHandlerInterface handler)
+          throws FailedDBOperationException, JSONException {
+    ValuesMap result = NSFieldAccess.lookupJSONFieldLocalNoAuth(null, domain,
+            HRN_GUID, handler.getApp(), false);
+    return result != null && result.has(HRN_GUID) ? result.getString(HRN_GUID) : null;
+  }
+
+  /**
+   * Returns the fields of the guid or null if there is no such guid.
+   */
+  private static JSONObject lookupFields(String addr, int id, String guid, ArrayList<String> fields,
+          ClientRequestHandlerInterface handler) throws FailedDBOperationException {
+    // Generate a DNS header for local read
+    InternalRequestHeader header = new InternalRequestHeader() {
+
+      @Override
+      public long getOriginatingRequestID() {
+        return id;
+      }
+
+      @Override
+      public String getOriginatingGUID() {
+        return guid;
+      }
+
+      @Override
+      public int getTTL() {
+        return InternalRequestHeader.DEFAULT_TTL;
+      }
+
+      @Override
+      public boolean hasBeenCoordinatedOnce() {
+        // DNS request does not need coordination
+        return false;
+      }
+
+      @Override
+      public String getSourceAddress() {
+        return addr;
+      }
+
+    };
+    return NSFieldAccess.lookupFieldsLocalNoAuth(header, guid, fields, ColumnFieldType.USER_JSON, handler);
   }
 
   /**
@@ -26,8 +26,6 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.Level;
 
 import org.xbill.DNS.Cache;
@@ -47,6 +45,9 @@ import edu.umass.cs.utils.Config;
  * When using DNS as a fallback we send out parallel requests and whichever returns
  * first is returned to the client as the answer.
  *
+ * Queries are read by a single receive loop and handed to a {@link DnsLookupExecutor}.
+ * Queries that arrive while it is saturated are answered with SERVFAIL.
+ *
  * @author Westy
  * @version 1.0
  */
@@ -56,7 +57,7 @@ public class UdpDnsServer extends Thread implements Shutdownable {
   private final SimpleResolver gnsServer;
   private final Cache dnsCache;
   private final DatagramSocket sock;
-  private ExecutorService executor = null;
+  private final DnsLookupExecutor executor;
   private final String dnsServerIP; // just stored for informational purposes
   private final String gnsServerIP; // just stored for informational purposes
   private final ClientRequestHandlerInterface handler;
@@ -89,7 +90,7 @@ public class UdpDnsServer extends Thread implements Shutdownable {
     this.dnsServerIP = dnsServerIP;
     this.gnsServerIP = gnsServerIP;
     this.sock = new DatagramSocket(port, addr);
-    this.executor = Executors.newFixedThreadPool(5);
+    this.executor = new DnsLookupExecutor();
     this.handler = handler;
   }
 
@@ -112,7 +113,12 @@ public class UdpDnsServer extends Thread implements Shutdownable {
           } catch (InterruptedIOException e) {
             continue;
           }
-          executor.execute(new LookupWorker(sock, incomingPacket, incomingData, gnsServer, dnsServer, dnsCache, handler));
+          LookupWorker worker = new LookupWorker(sock, incomingPacket, incomingData, gnsServer, dnsServer, dnsCache, handler,
+                  executor.getLookupExecutor());
+          if (!executor.execute(worker)) {
+            // Too many queries waiting so tell the client right away instead of queueing it
+            worker.sendServerFailure();
+          }
         }
       } catch (IOException e) {
         NameResolution.getLogger().log(Level.SEVERE, 
@@ -124,8 +130,6 @@ public class UdpDnsServer extends Thread implements Shutdownable {
 
   @Override
   public void shutdown() {
-    if (executor != null) {
-      executor.shutdown();
-    }
+    executor.shutdown();
   }
 }
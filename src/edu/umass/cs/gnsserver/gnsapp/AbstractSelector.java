@@ -2,6 +2,8 @@ package edu.umass.cs.gnsserver.gnsapp;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,7 +59,8 @@ public abstract class AbstractSelector {
 			ClientException, IOException, InternalRequestException;
 
 	/**
-	 * Handles select request from a client.
+	 * Handles select request from a client. Waits for the select to
+	 * complete because commands return their responses synchronously.
 	 * 
 	 * @param header
 	 * @param packet
@@ -74,6 +77,72 @@ public abstract class AbstractSelector {
 			UnknownHostException, FailedDBOperationException,
 			InternalRequestException;
 
+	/**
+	 * Handles select request from a client and returns a future for the
+	 * response. The default implementation runs
+	 * {@link #handleSelectRequestFromClient} in the calling thread, so it
+	 * only avoids blocking in selectors that override it.
+	 * 
+	 * @param header
+	 * @param packet
+	 * @param app
+	 * @return a future that is completed with the SelectResponsePacket
+	 */
+	public CompletableFuture<SelectResponsePacket> handleSelectRequestFromClientAsync(
+			InternalRequestHeader header, SelectRequestPacket packet,
+			GNSApplicationInterface<String> app) {
+		CompletableFuture<SelectResponsePacket> future = new CompletableFuture<>();
+		try {
+			future.complete(handleSelectRequestFromClient(header, packet, app));
+		} catch (JSONException | UnknownHostException
+				| FailedDBOperationException | InternalRequestException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Called after a record on this name server has been updated so that
+	 * a selector that keeps context aware groups can update their members.
+	 * Must not block the update. The default implementation does nothing.
+	 * 
+	 * @param header
+	 * @param guid
+	 *            the record that was updated
+	 * @param fields
+	 *            the fields that were updated, null if they aren't known
+	 * @param entryReplica
+	 *            true at the replica that is replying to the client
+	 * @param app
+	 */
+	public void handleRecordUpdate(InternalRequestHeader header, String guid,
+			List<String> fields, boolean entryReplica,
+			GNSApplicationInterface<String> app) {
+	}
+
+	/**
+	 * Called when a guid is removed. At the name server that handles the
+	 * removal of the guid push is true, at the replicas of the record it is
+	 * false. Must not block. The default implementation does nothing.
+	 * 
+	 * @param header
+	 *            the header of the removal, null if push is false
+	 * @param guid
+	 * @param push
+	 *            true if the guid should be removed from context aware groups
+	 * @param app
+	 */
+	public void handleRecordRemoved(InternalRequestHeader header, String guid,
+			boolean push, GNSApplicationInterface<String> app) {
+	}
+
+	/**
+	 * Stops any threads of the selector. The default implementation does
+	 * nothing.
+	 */
+	public void shutdown() {
+	}
+
 	/**
 	 * Returns true if a query contains operations that are not allowed.
 	 * Currently $where is not allowed as well as attempts to use internal keys.
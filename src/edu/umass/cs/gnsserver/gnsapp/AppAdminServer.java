@@ -31,6 +31,7 @@ import edu.umass.cs.gnsserver.gnsapp.packet.Packet;
 import edu.umass.cs.gnsserver.gnsapp.packet.admin.AdminRequestPacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.admin.DumpRequestPacket;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.utils.Config;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -100,63 +101,41 @@ public class AppAdminServer extends Thread implements Shutdownable {
                       = new DumpRequestPacket<>(incomingJSON, gnsNodeConfig);
 
               dumpRequestPacket.setPrimaryNameServer(app.getNodeID());
+              // Send one page of records after the cursor, the requester asks for the next
+              // page once it has this one. If there is an argument it is a TAGNAME and we only
+              // return the records that have that tag, which are found using the tag index.
+              int pageSize = Config.getGlobalInt(GNSConfig.GNSC.DUMP_PAGE_SIZE);
               JSONArray jsonArray = new JSONArray();
-              // if there is an argument it is a TAGNAME we return all the records that have that tag
-              if (dumpRequestPacket.getArgument() != null) {
-                String tag = dumpRequestPacket.getArgument();
-                AbstractRecordCursor cursor = NameRecord.getAllRowsIterator(app.getDB());
+              String lastName = null;
+              AbstractRecordCursor cursor = NameRecord.selectRecordsPage(app.getDB(),
+                      dumpRequestPacket.getArgument() != null ? AccountAccess.GUID_INFO + "." + GuidInfo.TAGS : null,
+                      dumpRequestPacket.getArgument(), dumpRequestPacket.getCursor(), pageSize);
+              try {
                 while (cursor.hasNext()) {
-                  NameRecord nameRecord = null;
                   JSONObject json = cursor.nextJSONObject();
                   try {
-                    nameRecord = new NameRecord(app.getDB(), json);
-                  } catch (JSONException e) {
-                    GNSConfig.getLogger().log(Level.SEVERE,
-                            "Problem parsing json into NameRecord: {0} JSON is {1}",
-                            new Object[]{e, json.toString()});
-                  }
-                  if (nameRecord != null) {
-                    try {
-                      if (nameRecord.containsUserKey(AccountAccess.GUID_INFO)) {
-                        GuidInfo userInfo = new GuidInfo(nameRecord.getValuesMap().getJSONObject(AccountAccess.GUID_INFO));
-                        //GuidInfo userInfo = new GuidInfo(nameRecord.getUserKeyAsArray(AccountAccess.GUID_INFO).toResultValueString());
-                        if (userInfo.containsTag(tag)) {
-                          jsonArray.put(nameRecord.toJSONObject());
-                        }
-                      }
-                    } catch (FieldNotFoundException e) {
-                      GNSConfig.getLogger().log(Level.SEVERE,
-                              "FieldNotFoundException. Field Name =  {0}", e.getMessage());
-                      e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-                    }
-                  }
-                }
-                // OTHERWISE WE RETURN ALL THE RECORD
-              } else {
-                //for (NameRecord nameRecord : NameServer.getAllNameRecords()) {
-                AbstractRecordCursor cursor = NameRecord.getAllRowsIterator(app.getDB());
-                while (cursor.hasNext()) {
-                  NameRecord nameRecord = null;
-                  JSONObject json = cursor.nextJSONObject();
-                  try {
-                    nameRecord = new NameRecord(app.getDB(), json);
-                  } catch (JSONException e) {
+                    NameRecord nameRecord = new NameRecord(app.getDB(), json);
+                    lastName = nameRecord.getName();
+                    jsonArray.put(nameRecord.toJSONObject());
+                  } catch (JSONException | FieldNotFoundException e) {
                     GNSConfig.getLogger().log(Level.SEVERE,
                             "Problem parsing record cursor into NameRecord: {0} JSON is {1}",
                             new Object[]{e, json.toString()});
                   }
-                  if (nameRecord != null) {
-                    jsonArray.put(nameRecord.toJSONObject());
-                  }
                 }
+              } finally {
+                cursor.close();
               }
+              // A short page is the last one
+              dumpRequestPacket.setCursor(jsonArray.length() < pageSize ? null : lastName);
               GNSConfig.getLogger().log(Level.FINER,
                       "AppAdmin for {0} is {1}",
                       new Object[]{app.getNodeID(), jsonArray.toString()});
 
               dumpRequestPacket.setJsonArray(jsonArray);
+              // one connection per page, don't leave them open
               Packet.sendTCPPacket(dumpRequestPacket.toJSONObject(),
-                      dumpRequestPacket.getReturnAddress());
+                      dumpRequestPacket.getReturnAddress()).close();
 
               GNSConfig.getLogger().log(Level.FINEST,
                       "AppAdmin: Response to id:{0} --> {1}",
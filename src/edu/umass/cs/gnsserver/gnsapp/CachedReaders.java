@@ -0,0 +1,135 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp;
+
+import edu.umass.cs.gnsserver.gnsapp.packet.CacheInvalidationPacket;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
+import edu.umass.cs.utils.Util;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+
+import org.json.JSONException;
+
+/**
+ * Keeps track of the clients that cache reads served by this active so they
+ * can be told when a guid they read is updated.
+ *
+ * A client marks a read with {@link edu.umass.cs.gnscommon.packets.CommandPacket#setCachedRead}.
+ * After this active answers it the client is remembered for the guid for
+ * {@link GNSConfig.GNSC#CACHED_READER_TTL} ms. Updates are executed at every replica
+ * so each one tells the clients it served about an update with a
+ * {@link CacheInvalidationPacket}. These are best effort, a client that misses
+ * one keeps the value until its own TTL runs out.
+ *
+ * @author westy
+ */
+public class CachedReaders {
+
+  private final ConcurrentMap<String, ConcurrentMap<InetSocketAddress, Long>> readers
+          = new ConcurrentHashMap<>();
+
+  /**
+   * Remembers a client that cached a read of the guid.
+   *
+   * @param guid
+   * @param client
+   */
+  public void readerAdded(String guid, InetSocketAddress client) {
+    ConcurrentMap<InetSocketAddress, Long> guidReaders = readers.get(guid);
+    if (guidReaders == null) {
+      ConcurrentMap<InetSocketAddress, Long> newReaders = new ConcurrentHashMap<>();
+      guidReaders = readers.putIfAbsent(guid, newReaders);
+      if (guidReaders == null) {
+        guidReaders = newReaders;
+      }
+    }
+    guidReaders.put(client, System.currentTimeMillis());
+    // Guids that are read but never updated would otherwise stay around forever
+    if (Util.oneIn(1000)) {
+      removeExpired();
+    }
+  }
+
+  /**
+   * Tells the clients that recently cached a read of the guid that it was updated.
+   *
+   * @param guid
+   * @param field the updated field or null if it could be any field
+   * @param app
+   */
+  public void recordUpdated(String guid, String field, GNSApplicationInterface<String> app) {
+    Map<InetSocketAddress, Long> guidReaders = readers.get(guid);
+    if (guidReaders == null) {
+      return;
+    }
+    long oldest = System.currentTimeMillis() - Config.getGlobalInt(GNSConfig.GNSC.CACHED_READER_TTL);
+    CacheInvalidationPacket packet = new CacheInvalidationPacket(guid, field);
+    Iterator<Map.Entry<InetSocketAddress, Long>> iterator = guidReaders.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<InetSocketAddress, Long> entry = iterator.next();
+      if (entry.getValue() < oldest) {
+        iterator.remove();
+        continue;
+      }
+      try {
+        app.sendToAddress(entry.getKey(), packet.toJSONObject());
+        DelayProfiler.updateCount("cacheInvalidations", 1);
+      } catch (IOException | JSONException e) {
+        GNSConfig.getLogger().log(Level.FINE, "Unable to send invalidation of {0} to {1}: {2}",
+                new Object[]{guid, entry.getKey(), e.getMessage()});
+        iterator.remove();
+      }
+    }
+    if (guidReaders.isEmpty()) {
+      readers.remove(guid, guidReaders);
+    }
+  }
+
+  private void removeExpired() {
+    long oldest = System.currentTimeMillis() - Config.getGlobalInt(GNSConfig.GNSC.CACHED_READER_TTL);
+    for (Map.Entry<String, ConcurrentMap<InetSocketAddress, Long>> guidReaders : readers.entrySet()) {
+      Iterator<Long> iterator = guidReaders.getValue().values().iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next() < oldest) {
+          iterator.remove();
+        }
+      }
+      if (guidReaders.getValue().isEmpty()) {
+        readers.remove(guidReaders.getKey(), guidReaders.getValue());
+      }
+    }
+  }
+
+  /**
+   *
+   * @return the number of guids with clients caching their reads
+   */
+  public int size() {
+    return readers.size();
+  }
+}
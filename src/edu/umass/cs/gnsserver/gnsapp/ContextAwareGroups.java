@@ -0,0 +1,402 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gnscommon.CommandType;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.exceptions.client.ClientException;
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.database.AbstractRecordCursor;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.GroupAccess;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.InternalField;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.SelectAclEvaluator;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.gnsserver.utils.ResultValue;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
+
+/**
+ * Keeps the members of context aware group guids up to date at a name server.
+ *
+ * A context aware group guid is set up with a query (see
+ * {@link SelectRequestPacket#makeGroupSetupRequest}). The setup select goes
+ * to every name server and each one registers the query here along with the
+ * guids of its own records that matched it. After that every update of a
+ * record on this name server is checked against the registered queries. If the
+ * record has started or stopped matching a query the change is pushed to the
+ * member list (the GROUP field) of the group guid, so the members are looked up
+ * with a single read of the group guid instead of a select sent to all the
+ * name servers.
+ *
+ * The checks are done off the update path by a few single threaded executors.
+ * The updates of a record always go to the same one so that its changes are
+ * pushed in order. The queue of each executor is bounded by
+ * {@link GNSConfig.GNSC#CONTEXT_AWARE_GROUP_QUEUE_SIZE}. When it is full the
+ * check is dropped rather than slowing down the update and the members are
+ * corrected the next time the group is set up. Every replica of a record keeps track of which of its records
+ * are members but only the entry replica pushes the changes. An update is only
+ * checked against the groups whose queries use one of the updated fields (or
+ * all of them when an internal field such as an ACL changed) and the query is
+ * evaluated in memory against the record (see {@link QueryMatcher}) so the
+ * database doesn't see a select for every update.
+ *
+ * The registered queries are soft state. A name server that restarts doesn't
+ * know about a group until the group is set up again, which happens when the
+ * members are looked up after the refresh interval of the group has passed.
+ *
+ * @author westy
+ */
+public class ContextAwareGroups
+{
+	private static final int EXECUTORS = Runtime.getRuntime().availableProcessors();
+
+	private final ConcurrentMap<String, GroupQuery> groups = new ConcurrentHashMap<>();
+
+	// Created when the first group is registered.
+	private volatile ExecutorService[] executors = null;
+
+	/**
+	 * The query of a group and the records on this name server that match it.
+	 */
+	private static class GroupQuery
+	{
+		private final String groupGuid;
+		private final String query;
+		private final String reader;
+		private final List<String> queryFields;
+		// Null if the query has to be run by the database.
+		private final QueryMatcher matcher;
+		private final Set<String> members = ConcurrentHashMap.newKeySet();
+
+		private GroupQuery(String groupGuid, String query, String reader, List<String> queryFields)
+		{
+			this.groupGuid = groupGuid;
+			this.query = query;
+			this.reader = reader;
+			this.queryFields = queryFields;
+			this.matcher = QueryMatcher.parse(query);
+		}
+
+		// True if one of the fields is a query field or is inside or contains one.
+		private boolean uses(List<String> fields)
+		{
+			if (fields == null)
+			{
+				return true;
+			}
+			for (String field : fields)
+			{
+				if (InternalField.isInternalField(field))
+				{
+					// ACLs and such change who can see the record
+					return true;
+				}
+				for (String queryField : queryFields)
+				{
+					if (field.equals(queryField) || field.startsWith(queryField + ".")
+							|| queryField.startsWith(field + "."))
+					{
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Registers the query of a group guid, replacing an earlier setup of the same group.
+	 *
+	 * @param groupGuid
+	 * @param query
+	 * @param reader the guid whose read ACLs the records must pass, null means world readable
+	 * @param queryFields the fields used in the query
+	 * @param localMembers the guids of the records on this name server that match the query
+	 */
+	public void register(String groupGuid, String query, String reader, List<String> queryFields,
+			Collection<String> localMembers)
+	{
+		GroupQuery group = new GroupQuery(groupGuid, query, reader, queryFields);
+		group.members.addAll(localMembers);
+		startExecutors();
+		groups.put(groupGuid, group);
+		AbstractSelector.LOGGER.log(Level.FINE, "Registered group {0} for {1} with {2} local members",
+				new Object[]{groupGuid, query, localMembers.size()});
+	}
+
+	/**
+	 *
+	 * @return the number of groups registered at this name server
+	 */
+	public int size()
+	{
+		return groups.size();
+	}
+
+	/**
+	 * Queues a check of the record against the registered queries.
+	 *
+	 * @param header the header of the update
+	 * @param guid
+	 * @param fields the fields that were updated, null if they aren't known
+	 * @param push true if changes in membership should be pushed to the group guids
+	 * @param app
+	 */
+	public void recordUpdated(final InternalRequestHeader header, final String guid,
+			final List<String> fields, final boolean push, final GNSApplicationInterface<String> app)
+	{
+		if (groups.isEmpty())
+		{
+			return;
+		}
+		final List<GroupQuery> affected = new ArrayList<>();
+		for (GroupQuery group : groups.values())
+		{
+			if (group.uses(fields))
+			{
+				affected.add(group);
+			}
+		}
+		if (affected.isEmpty())
+		{
+			return;
+		}
+		execute(guid, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				checkRecord(header, guid, affected, push, app);
+			}
+		});
+	}
+
+	/**
+	 * Queues the removal of a guid that has been deleted from the groups it is a member of.
+	 * Every replica of the guid knows which groups it was in from the checks of its updates.
+	 *
+	 * @param header the header of the delete, null if push is false
+	 * @param guid
+	 * @param push true if the guid should be removed from the group guids
+	 * @param app
+	 */
+	public void recordRemoved(final InternalRequestHeader header, final String guid,
+			final boolean push, final GNSApplicationInterface<String> app)
+	{
+		if (groups.isEmpty())
+		{
+			return;
+		}
+		execute(guid, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for (GroupQuery group : groups.values())
+				{
+					if (group.members.remove(guid) && push)
+					{
+						pushChange(header, group.groupGuid, guid, false, app);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops the executors. Checks that are still queued are dropped.
+	 */
+	public synchronized void shutdown()
+	{
+		if (executors != null)
+		{
+			for (ExecutorService executor : executors)
+			{
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	private void execute(String guid, Runnable task)
+	{
+		try
+		{
+			executors[(guid.hashCode() & Integer.MAX_VALUE) % executors.length].execute(task);
+		} catch (RejectedExecutionException e)
+		{
+			if (executors[0].isShutdown())
+			{
+				AbstractSelector.LOGGER.log(Level.FINE, "Not checking {0} after shutdown", guid);
+			} else
+			{
+				DelayProfiler.updateCount("contextAwareGroupChecksDropped", 1);
+				AbstractSelector.LOGGER.log(Level.WARNING, "Too many checks queued, not checking {0}", guid);
+			}
+		}
+	}
+
+	private void checkRecord(InternalRequestHeader header, String guid, List<GroupQuery> affected,
+			boolean push, GNSApplicationInterface<String> app)
+	{
+		long startTime = System.currentTimeMillis();
+		JSONObject record;
+		try
+		{
+			record = app.getDB().lookupEntireRecord(guid);
+		} catch (RecordNotFoundException e)
+		{
+			// Removed in the meantime
+			record = null;
+		} catch (FailedDBOperationException e)
+		{
+			AbstractSelector.LOGGER.log(Level.WARNING, "Unable to check {0} against the groups: {1}",
+					new Object[]{guid, e.getMessage()});
+			return;
+		}
+		for (GroupQuery group : affected)
+		{
+			boolean matches;
+			try
+			{
+				matches = record != null && matches(group, guid, record, app);
+			} catch (FailedDBOperationException | JSONException e)
+			{
+				AbstractSelector.LOGGER.log(Level.WARNING, "Unable to check {0} against group {1}: {2}",
+						new Object[]{guid, group.groupGuid, e.getMessage()});
+				continue;
+			}
+			boolean changed = matches ? group.members.add(guid) : group.members.remove(guid);
+			if (changed && push)
+			{
+				pushChange(header, group.groupGuid, guid, matches, app);
+			}
+		}
+		DelayProfiler.updateDelay("contextAwareGroupCheck", startTime);
+	}
+
+	private static boolean matches(GroupQuery group, String guid, JSONObject record,
+			GNSApplicationInterface<String> app) throws FailedDBOperationException, JSONException
+	{
+		if (group.matcher != null)
+		{
+			JSONObject valuesMap = record.getJSONObject(NameRecord.VALUES_MAP.getName());
+			// The database select leaves out records that aren't guids
+			return valuesMap.has(AccountAccess.GUID_INFO) && group.matcher.matches(valuesMap)
+					&& new SelectAclEvaluator(group.reader, group.queryFields, app)
+							.filterRecord(record) != null;
+		}
+		// Runs the query against just this record which is a lookup by name in the database.
+		AbstractRecordCursor cursor = NameRecord.selectRecordsQuery(app.getDB(),
+				"$and: [(" + group.query + "), (" + NameRecord.NAME.getName() + ": \"" + guid + "\")]",
+				null);
+		try
+		{
+			while (cursor.hasNext())
+			{
+				if (new SelectAclEvaluator(group.reader, group.queryFields, app)
+						.filterRecord(cursor.nextJSONObject()) != null)
+				{
+					return true;
+				}
+			}
+			return false;
+		} finally
+		{
+			cursor.close();
+		}
+	}
+
+	private static void pushChange(InternalRequestHeader header, String groupGuid, String guid,
+			boolean added, GNSApplicationInterface<String> app)
+	{
+		try
+		{
+			if (added)
+			{
+				app.getRequestHandler().getInternalClient().execute(
+						GNSCommandInternal.fieldUpdate(header, CommandType.AppendOrCreateListUnsigned,
+								GNSProtocol.GUID.toString(), groupGuid,
+								GNSProtocol.FIELD.toString(), GroupAccess.GROUP,
+								GNSProtocol.VALUE.toString(), new ResultValue(Arrays.asList(guid))));
+			} else
+			{
+				app.getRequestHandler().getInternalClient().execute(
+						GNSCommandInternal.fieldRemove(groupGuid, GroupAccess.GROUP, guid, header));
+			}
+			DelayProfiler.updateCount("contextAwareGroupChanges", 1);
+		} catch (IOException | JSONException | ClientException | InternalRequestException e)
+		{
+			AbstractSelector.LOGGER.log(Level.WARNING, "Unable to {0} {1} in group {2}: {3}",
+					new Object[]{added ? "add" : "remove", guid, groupGuid, e.getMessage()});
+		}
+	}
+
+	private synchronized void startExecutors()
+	{
+		if (executors != null)
+		{
+			return;
+		}
+		ExecutorService[] newExecutors = new ExecutorService[EXECUTORS];
+		int queueSize = Config.getGlobalInt(GNSConfig.GNSC.CONTEXT_AWARE_GROUP_QUEUE_SIZE);
+		for (int i = 0; i < newExecutors.length; i++)
+		{
+			final int index = i;
+			// AbortPolicy so that execute can tell a full queue from a shutdown.
+			newExecutors[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, ContextAwareGroups.class.getSimpleName() + "-" + index);
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, new ThreadPoolExecutor.AbortPolicy());
+		}
+		executors = newExecutors;
+	}
+}
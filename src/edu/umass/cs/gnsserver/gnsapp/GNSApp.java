@@ -52,6 +52,7 @@ import edu.umass.cs.gnscommon.packets.AdminCommandPacket;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
 import edu.umass.cs.gnscommon.packets.ResponsePacket;
 import edu.umass.cs.gnsserver.activecode.ActiveCodeHandler;
+import edu.umass.cs.gnsserver.database.CachingNoSQLRecords;
 import edu.umass.cs.gnsserver.database.ColumnField;
 import edu.umass.cs.gnsserver.database.MongoRecords;
 import edu.umass.cs.gnsserver.database.NoSQLRecords;
@@ -103,7 +104,8 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
         GNSApplicationInterface<String>, Replicable, Reconfigurable,
         ClientMessenger, AppRequestParserBytes, Shutdownable {
 
-    private static AbstractSelector selector = null;
+    private static volatile AbstractSelector selector = null;
+    private static final CachedReaders cachedReaders = new CachedReaders();
     private String nodeID;
   private InetSocketAddress nodeAddress;
   private NodeConfig<String> nodeConfig;
@@ -195,7 +197,20 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
     /**
      * @return Select implementation.
      */
-    public synchronized static final AbstractSelector getSelector() {
+    public static final AbstractSelector getSelector() {
+        // Called for every update so don't lock once it has been created
+        AbstractSelector result = selector;
+        return result != null ? result : createSelector();
+    }
+
+    /**
+     * @return the clients that cache reads served by this active
+     */
+    public static final CachedReaders getCachedReaders() {
+        return cachedReaders;
+    }
+
+    private synchronized static AbstractSelector createSelector() {
         if (selector != null)
             return selector;
         // else
@@ -435,6 +450,7 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
     if (httpsServer != null) {
       httpsServer.stop();
     }
+    getSelector().shutdown();
     if (this.requestHandler.getInternalClient() != null) {
       this.requestHandler.getInternalClient().close();
     }
@@ -465,6 +481,10 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
       GNSConfig.getLogger().log(Level.WARNING, "Problem creating noSqlRecords from config:{0}", e.getMessage());
       noSqlRecords = new MongoRecords(nodeID, Config.getGlobalInt(GNSConfig.GNSC.MONGO_PORT));
     }
+    if (Config.getGlobalBoolean(GNSConfig.GNSC.ENABLE_RECORD_CACHE)) {
+      noSqlRecords = new CachingNoSQLRecords(noSqlRecords,
+              Config.getGlobalInt(GNSConfig.GNSC.RECORD_CACHE_SIZE_IN_MB) * 1024L * 1024L);
+    }
     this.nameRecordDB = new GNSRecordMap<>(noSqlRecords, MongoRecords.DBNAMERECORD);
     GNSConfig.getLogger().log(Level.FINE, "App {0} created {1}",
             new Object[]{nodeID, nameRecordDB});
@@ -659,6 +679,10 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
         // the record. If the record does not exists this is just a
         // noop.
         NameRecord.removeNameRecord(nameRecordDB, name);
+        // The name server that handles the removal of a guid takes it out of
+        // the context aware groups, here we just forget about the record.
+        getSelector().handleRecordRemoved(null, name, false, this);
+        getCachedReaders().recordUpdated(name, null, this);
       } else // state does not equal null so we either create a new record
       // or update the existing one
        if (!NameRecord.containsRecord(nameRecordDB, name)) {
@@ -668,6 +692,7 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
             NameRecord nameRecord = new NameRecord(nameRecordDB, name,
                     valuesMap);
             NameRecord.addNameRecord(nameRecordDB, nameRecord);
+            getSelector().handleRecordUpdate(null, name, null, false, this);
           } catch (RecordExistsException | JSONException e) {
         	  e.printStackTrace();
         	  GNSConfig.getLogger().log(Level.SEVERE,
@@ -680,6 +705,8 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
                     nameRecordDB, name);
             nameRecord
                     .updateState(new ValuesMap(new JSONObject(state)));
+            getSelector().handleRecordUpdate(null, name, null, false, this);
+            getCachedReaders().recordUpdated(name, null, this);
           } catch (JSONException | FieldNotFoundException | RecordNotFoundException | FailedDBOperationException e) {
             GNSConfig.getLogger().log(Level.SEVERE,
                     "Problem updating name {0} with state {1}: {2}", new Object[]{name, state, e});
@@ -183,6 +183,16 @@ public class GNSClientInternal extends GNSClient {
 		}
 	}
 
+	/**
+	 * @param command
+	 * @return The time in milliseconds that {@link #execute(CommandPacket)}
+	 *         waits for {@code command}. Callers that use
+	 *         {@link #executeAsync(CommandPacket)} should wait as long.
+	 */
+	public static long getExecuteTimeout(CommandPacket command) {
+		return getTimeout(command);
+	}
+
 	/**
 	 * Overrides corresponding {@link GNSClient} method with a finite timeout.
 	 * 
@@ -46,6 +46,14 @@ public class GNSCommandInternal extends InternalCommandPacket {
   private static JSONObject makeInternal(CommandType type,
           InternalRequestHeader header, JSONObject command)
           throws JSONException {
+    return makeInternal(type, command,
+            DEFAULT_INTERNAL ? GNSProtocol.INTERNAL_QUERIER.toString()
+                    : header.getQueryingGUID());
+  }
+
+  private static JSONObject makeInternal(CommandType type,
+          JSONObject command, String querier)
+          throws JSONException {
     // internal commands can not and need not be signed
     assert (!command.has(GNSProtocol.SIGNATURE.toString()));
     // currently only read/write requests can be internal
@@ -54,8 +62,7 @@ public class GNSCommandInternal extends InternalCommandPacket {
     return command.put(
             type.isRead() ? GNSProtocol.READER.toString()
                     : GNSProtocol.WRITER.toString(),
-            DEFAULT_INTERNAL ? GNSProtocol.INTERNAL_QUERIER.toString()
-                    : header.getQueryingGUID())
+            querier)
             // secure because this only works at servers
             .put(GNSProtocol.INTERNAL_PROOF.toString(),
                     GNSConfig.getInternalOpSecret());
@@ -87,16 +94,37 @@ public class GNSCommandInternal extends InternalCommandPacket {
             new GNSCommandInternal(header, makeInternal(
                     type,
                     header,
-                    CommandUtils
-                    .createCommand(type, keysAndValues)
-                    .put(GNSProtocol.ORIGINATING_GUID.toString(),
-                            header.getOriginatingGUID())
-                    .put(GNSProtocol.ORIGINATING_QID.toString(),
-                            header.getOriginatingRequestID())
-                    .put(GNSProtocol.REQUEST_TTL.toString(),
-                            header.getTTL())
-                    .put(GNSProtocol.QUERIER_GUID.toString(),
-                            header.getQueryingGUID()))), header);
+                    createCommand(type, header, keysAndValues))), header);
+  }
+
+  /**
+   * Same as {@link #getCommand} except that the querier is always the given
+   * guid so that ACL (but no signature) checks are performed on it by the
+   * receiving server. The caller must have checked the querier's signature.
+   */
+  private static GNSCommandInternal getQuerierCommand(CommandType type,
+          InternalRequestHeader header, String querier, Object... keysAndValues)
+          throws JSONException, InternalRequestException {
+    return enforceChecks(
+            new GNSCommandInternal(header, makeInternal(
+                    type,
+                    createCommand(type, header, keysAndValues),
+                    querier)), header);
+  }
+
+  private static JSONObject createCommand(CommandType type,
+          InternalRequestHeader header, Object... keysAndValues)
+          throws JSONException {
+    return CommandUtils
+            .createCommand(type, keysAndValues)
+            .put(GNSProtocol.ORIGINATING_GUID.toString(),
+                    header.getOriginatingGUID())
+            .put(GNSProtocol.ORIGINATING_QID.toString(),
+                    header.getOriginatingRequestID())
+            .put(GNSProtocol.REQUEST_TTL.toString(),
+                    header.getTTL())
+            .put(GNSProtocol.QUERIER_GUID.toString(),
+                    header.getQueryingGUID());
   }
 
   private static GNSCommandInternal enforceChecks(
@@ -160,6 +188,32 @@ public class GNSCommandInternal extends InternalCommandPacket {
             GNSProtocol.FIELDS.toString(), fields);
   }
 
+  /**
+   * Same as {@link #fieldRead(String, ArrayList, InternalRequestHeader)}
+   * except that the read is done as {@code querierGUID} instead of as
+   * {@link GNSProtocol#INTERNAL_QUERIER}, so the receiving server checks
+   * that the querier is allowed to read the fields. The signature of the
+   * querier must already have been verified.
+   *
+   * @param targetGUID
+   * @param fields
+   * The queried fields.
+   * @param querierGUID
+   * The guid whose ACL access is checked.
+   * @param header
+   * The internal request header.
+   * @return InternalCommandPacket
+   * @throws JSONException
+   * @throws InternalRequestException
+   */
+  public static final InternalCommandPacket fieldReadAsQuerier(String targetGUID,
+          ArrayList<String> fields, String querierGUID, InternalRequestHeader header)
+          throws JSONException, InternalRequestException {
+    return getQuerierCommand(CommandType.ReadUnsigned, header, querierGUID,
+            GNSProtocol.GUID.toString(), targetGUID,
+            GNSProtocol.FIELDS.toString(), fields);
+  }
+
   /**
    * Identical to
    * {@link GNSCommand#fieldUpdate(String, String, Object, GuidEntry)} except
@@ -22,6 +22,7 @@ package edu.umass.cs.gnsserver.gnsapp;
 import edu.umass.cs.gnscommon.packets.commandreply.NotificationStatsToIssuer;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectOperation;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectResponsePacket;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
@@ -31,12 +32,20 @@ import org.json.JSONObject;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * This class represents a data structure to store information
  * about Select operations performed on the GNS.
+ * 
+ * Each select has its own future which is completed with the response
+ * for the client once all servers have responded, enough records have been
+ * seen, the select times out or one of the servers returns an error.
  */
 public class NSSelectInfo {
 
@@ -53,6 +62,16 @@ public class NSSelectInfo {
   
   private final List<NotificationStatsToIssuer> notificationStatusList;
   
+  // the guids (or records) of a page of a paged select in guid order
+  private final ConcurrentSkipListMap<String, Object> pageResponses;
+  
+  // the smallest of the last guids read by the name servers that read a full page
+  private String pageEnd = null;
+  
+  private final CompletableFuture<SelectResponsePacket> future;
+  
+  private ScheduledFuture<?> timeoutTask = null;
+  
 
   /**
    * NSSelectInfo constructor.
@@ -74,6 +93,8 @@ public class NSSelectInfo {
       
   	  this.recordResponses = new ConcurrentHashMap<String, JSONObject>();
   	  this.notificationStatusList = new LinkedList<NotificationStatsToIssuer>();
+  	  this.pageResponses = new ConcurrentSkipListMap<String, Object>();
+  	  this.future = new CompletableFuture<SelectResponsePacket>();
   }
   
   	/**
@@ -119,12 +140,53 @@ public class NSSelectInfo {
    * @return true if the response was not seen yet, false otherwise
    */
   public boolean addRecordResponseIfNotSeenYet(String name, JSONObject json) {
-	  if (!recordResponses.containsKey(name)) {
-		  recordResponses.put(name, json);
-		  return true;
-    } else {
-      return false;
-    }
+	  return recordResponses.putIfAbsent(name, json) == null;
+  }
+  
+  /**
+   * 
+   * @return the number of distinct records seen so far
+   */
+  public int getNumberOfRecordResponses() {
+	  return recordResponses.size();
+  }
+  
+  /**
+   * 
+   * @return the future that is completed with the response for the client
+   */
+  public CompletableFuture<SelectResponsePacket> getFuture() {
+	  return future;
+  }
+  
+  /**
+   * Completes the select with the given response and cancels the timeout.
+   * Only the first call has any effect.
+   * 
+   * @param response
+   * @return true if this call completed the select
+   */
+  public boolean complete(SelectResponsePacket response) {
+	  boolean completed = future.complete(response);
+	  synchronized (this) {
+		  if (timeoutTask != null) {
+			  timeoutTask.cancel(false);
+		  }
+	  }
+	  return completed;
+  }
+  
+  /**
+   * Sets the task that will complete the select with partial results
+   * if it takes too long.
+   * 
+   * @param timeoutTask
+   */
+  public synchronized void setTimeoutTask(ScheduledFuture<?> timeoutTask) {
+	  this.timeoutTask = timeoutTask;
+	  if (future.isDone()) {
+		  timeoutTask.cancel(false);
+	  }
   }
   
   /**
@@ -149,7 +211,51 @@ public class NSSelectInfo {
    */
   public List<NotificationStatsToIssuer> getAllNotificationStats()
   {
-	  return this.notificationStatusList;
+	  synchronized(notificationStatusList)
+	  {
+		  return new ArrayList<NotificationStatsToIssuer>(this.notificationStatusList);
+	  }
+  }
+
+  /**
+   * Adds a guid (or record) of a page of a paged select if the guid has not been seen yet.
+   *
+   * @param guid
+   * @param result
+   * @return true if the guid was not seen yet, false otherwise
+   */
+  public boolean addPageResponseIfNotSeenYet(String guid, Object result) {
+	  return pageResponses.putIfAbsent(guid, result) == null;
+  }
+  
+  /**
+   * 
+   * @return the guids (or records) of a page of a paged select keyed by guid in guid order
+   */
+  public NavigableMap<String, Object> getPageResponses() {
+	  return pageResponses;
+  }
+  
+  /**
+   * Records the last guid read by a name server that read a full page of a paged
+   * select. That name server may have more guids after it, so the page can only
+   * go up to the smallest of these.
+   * 
+   * @param lastName
+   */
+  public synchronized void updatePageEnd(String lastName) {
+	  if (pageEnd == null || lastName.compareTo(pageEnd) < 0) {
+		  pageEnd = lastName;
+	  }
+  }
+  
+  /**
+   * 
+   * @return the last guid the page can hold or null if all the name servers
+   * read all their guids
+   */
+  public synchronized String getPageEnd() {
+	  return pageEnd;
   }
 
   /**
@@ -0,0 +1,532 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.mongodb.util.JSON;
+
+/**
+ * Evaluates a select query against a single record in memory.
+ *
+ * The query is in the same syntax that is handed to the database (see
+ * MongoRecords.parseMongoQuery), something like <code>~fred : ($gt: 0)</code>.
+ * Only the common operators are understood: equality, $eq, $ne, $gt,
+ * $gte, $lt, $lte, $in, $nin, $exists, $regex, $size, $all, $not, $and, $or
+ * and $nor. A query that uses anything else (the geo operators for instance)
+ * can't be parsed and has to be run by the database instead.
+ *
+ * @author westy
+ */
+class QueryMatcher
+{
+	private final Map<?, ?> query;
+
+	private QueryMatcher(Map<?, ?> query)
+	{
+		this.query = query;
+	}
+
+	/**
+	 * Parses a query.
+	 *
+	 * @param query
+	 * @return the matcher or null if the query uses something that isn't understood
+	 */
+	static QueryMatcher parse(String query)
+	{
+		String edittedQuery = "{" + query + "}";
+		edittedQuery = edittedQuery.replace("(", "{");
+		edittedQuery = edittedQuery.replace(")", "}");
+		edittedQuery = edittedQuery.replace("~", "");
+		Object parsed;
+		try
+		{
+			parsed = JSON.parse(edittedQuery);
+		} catch (RuntimeException e)
+		{
+			return null;
+		}
+		if (!(parsed instanceof Map) || !supported((Map<?, ?>) parsed, false))
+		{
+			return null;
+		}
+		return new QueryMatcher((Map<?, ?>) parsed);
+	}
+
+	/**
+	 * Returns true if the values map of a record matches the query.
+	 *
+	 * @param valuesMap
+	 * @return true if the record matches
+	 */
+	boolean matches(JSONObject valuesMap)
+	{
+		return matchesDocument(query, valuesMap);
+	}
+
+	// Checks the operators up front so that matching never has to give up half way.
+	private static boolean supported(Map<?, ?> query, boolean operators)
+	{
+		for (Map.Entry<?, ?> entry : query.entrySet())
+		{
+			String key = entry.getKey().toString();
+			Object value = entry.getValue();
+			if (!supportedValue(value))
+			{
+				return false;
+			}
+			if (!key.startsWith("$"))
+			{
+				if (operators)
+				{
+					return false;
+				}
+				if (value instanceof Map && !isOperatorMap((Map<?, ?>) value))
+				{
+					// Matching an embedded document exactly
+					return false;
+				}
+				if (value instanceof Map && !supported((Map<?, ?>) value, true))
+				{
+					return false;
+				}
+				continue;
+			}
+			switch (key)
+			{
+				case "$and":
+				case "$or":
+				case "$nor":
+					if (operators || !(value instanceof List))
+					{
+						return false;
+					}
+					for (Object clause : (List<?>) value)
+					{
+						if (!(clause instanceof Map) || !supported((Map<?, ?>) clause, false))
+						{
+							return false;
+						}
+					}
+					break;
+				case "$not":
+					if (!operators || value instanceof Pattern)
+					{
+						break;
+					}
+					if (!(value instanceof Map) || !supported((Map<?, ?>) value, true))
+					{
+						return false;
+					}
+					break;
+				case "$in":
+				case "$nin":
+				case "$all":
+					if (!operators || !(value instanceof List))
+					{
+						return false;
+					}
+					break;
+				case "$eq":
+				case "$ne":
+				case "$gt":
+				case "$gte":
+				case "$lt":
+				case "$lte":
+				case "$regex":
+					if (!operators)
+					{
+						return false;
+					}
+					if (!(value instanceof Pattern))
+					{
+						try
+						{
+							compile(value.toString(), query.get("$options"));
+						} catch (RuntimeException e)
+						{
+							return false;
+						}
+					}
+					break;
+				case "$exists":
+				case "$options":
+				case "$size":
+					if (!operators)
+					{
+						return false;
+					}
+					break;
+				default:
+					return false;
+			}
+		}
+		return true;
+	}
+
+	// The parser turns things like $date into objects that the values in a record never equal.
+	private static boolean supportedValue(Object value)
+	{
+		if (value instanceof List)
+		{
+			for (Object element : (List<?>) value)
+			{
+				if (!(element instanceof Map) && !supportedValue(element))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+		return value == null || value instanceof String || value instanceof Number
+				|| value instanceof Boolean || value instanceof Map || value instanceof Pattern;
+	}
+
+	private static boolean isOperatorMap(Map<?, ?> map)
+	{
+		if (map.isEmpty())
+		{
+			return false;
+		}
+		for (Object key : map.keySet())
+		{
+			if (!key.toString().startsWith("$"))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matchesDocument(Map<?, ?> query, JSONObject valuesMap)
+	{
+		for (Map.Entry<?, ?> entry : query.entrySet())
+		{
+			String key = entry.getKey().toString();
+			Object value = entry.getValue();
+			switch (key)
+			{
+				case "$and":
+					for (Object clause : (List<?>) value)
+					{
+						if (!matchesDocument((Map<?, ?>) clause, valuesMap))
+						{
+							return false;
+						}
+					}
+					break;
+				case "$or":
+					boolean any = false;
+					for (Object clause : (List<?>) value)
+					{
+						if (matchesDocument((Map<?, ?>) clause, valuesMap))
+						{
+							any = true;
+							break;
+						}
+					}
+					if (!any)
+					{
+						return false;
+					}
+					break;
+				case "$nor":
+					for (Object clause : (List<?>) value)
+					{
+						if (matchesDocument((Map<?, ?>) clause, valuesMap))
+						{
+							return false;
+						}
+					}
+					break;
+				default:
+					Object fieldValue = lookup(key, valuesMap);
+					if (value instanceof Pattern)
+					{
+						if (!matchesRegex(fieldValue, (Pattern) value))
+						{
+							return false;
+						}
+					} else if (value instanceof Map)
+					{
+						if (!matchesOperators((Map<?, ?>) value, fieldValue))
+						{
+							return false;
+						}
+					} else if (!matchesAny(fieldValue, value))
+					{
+						return false;
+					}
+			}
+		}
+		return true;
+	}
+
+	private static boolean matchesOperators(Map<?, ?> operators, Object fieldValue)
+	{
+		for (Map.Entry<?, ?> entry : operators.entrySet())
+		{
+			Object operand = entry.getValue();
+			boolean result;
+			switch (entry.getKey().toString())
+			{
+				case "$eq":
+					result = matchesAny(fieldValue, operand);
+					break;
+				case "$ne":
+					result = !matchesAny(fieldValue, operand);
+					break;
+				case "$gt":
+				case "$gte":
+				case "$lt":
+				case "$lte":
+					result = compareAny(entry.getKey().toString(), fieldValue, operand);
+					break;
+				case "$in":
+					result = false;
+					for (Object candidate : (List<?>) operand)
+					{
+						if (matchesAny(fieldValue, candidate))
+						{
+							result = true;
+							break;
+						}
+					}
+					break;
+				case "$nin":
+					result = true;
+					for (Object candidate : (List<?>) operand)
+					{
+						if (matchesAny(fieldValue, candidate))
+						{
+							result = false;
+							break;
+						}
+					}
+					break;
+				case "$all":
+					result = fieldValue != null;
+					for (Object candidate : (List<?>) operand)
+					{
+						if (!matchesAny(fieldValue, candidate))
+						{
+							result = false;
+							break;
+						}
+					}
+					break;
+				case "$exists":
+					result = (fieldValue != null) == isTrue(operand);
+					break;
+				case "$size":
+					result = fieldValue instanceof JSONArray && operand instanceof Number
+							&& ((JSONArray) fieldValue).length() == ((Number) operand).intValue();
+					break;
+				case "$regex":
+					result = matchesRegex(fieldValue, operand instanceof Pattern ? (Pattern) operand
+							: compile(operand.toString(), operators.get("$options")));
+					break;
+				case "$options":
+					// Used by $regex
+					result = true;
+					break;
+				case "$not":
+					result = operand instanceof Pattern ? !matchesRegex(fieldValue, (Pattern) operand)
+							: !matchesOperators((Map<?, ?>) operand, fieldValue);
+					break;
+				default:
+					result = false;
+			}
+			if (!result)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Like the database a list matches if the list itself or any of its elements match.
+	private static boolean matchesAny(Object fieldValue, Object operand)
+	{
+		if (fieldValue instanceof JSONArray)
+		{
+			JSONArray array = (JSONArray) fieldValue;
+			if (operand instanceof List && equalsList(array, (List<?>) operand))
+			{
+				return true;
+			}
+			for (int i = 0; i < array.length(); i++)
+			{
+				if (valueEquals(array.opt(i), operand))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+		return valueEquals(fieldValue, operand);
+	}
+
+	private static boolean equalsList(JSONArray array, List<?> list)
+	{
+		if (array.length() != list.size())
+		{
+			return false;
+		}
+		for (int i = 0; i < list.size(); i++)
+		{
+			if (!valueEquals(array.opt(i), list.get(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean valueEquals(Object fieldValue, Object operand)
+	{
+		if (fieldValue == null || fieldValue == JSONObject.NULL)
+		{
+			return operand == null;
+		}
+		if (fieldValue instanceof Number && operand instanceof Number)
+		{
+			return ((Number) fieldValue).doubleValue() == ((Number) operand).doubleValue();
+		}
+		return fieldValue.equals(operand);
+	}
+
+	private static boolean compareAny(String operator, Object fieldValue, Object operand)
+	{
+		if (fieldValue instanceof JSONArray)
+		{
+			JSONArray array = (JSONArray) fieldValue;
+			for (int i = 0; i < array.length(); i++)
+			{
+				if (compare(operator, array.opt(i), operand))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+		return compare(operator, fieldValue, operand);
+	}
+
+	// Values of different types never compare, the same as in the database.
+	private static boolean compare(String operator, Object fieldValue, Object operand)
+	{
+		int comparison;
+		if (fieldValue instanceof Number && operand instanceof Number)
+		{
+			comparison = Double.compare(((Number) fieldValue).doubleValue(), ((Number) operand).doubleValue());
+		} else if (fieldValue instanceof String && operand instanceof String)
+		{
+			comparison = ((String) fieldValue).compareTo((String) operand);
+		} else
+		{
+			return false;
+		}
+		switch (operator)
+		{
+			case "$gt":
+				return comparison > 0;
+			case "$gte":
+				return comparison >= 0;
+			case "$lt":
+				return comparison < 0;
+			default:
+				return comparison <= 0;
+		}
+	}
+
+	private static Pattern compile(String regex, Object options)
+	{
+		int flags = 0;
+		if (options != null)
+		{
+			String optionString = options.toString();
+			if (optionString.contains("i"))
+			{
+				flags |= Pattern.CASE_INSENSITIVE;
+			}
+			if (optionString.contains("m"))
+			{
+				flags |= Pattern.MULTILINE;
+			}
+			if (optionString.contains("s"))
+			{
+				flags |= Pattern.DOTALL;
+			}
+		}
+		return Pattern.compile(regex, flags);
+	}
+
+	private static boolean matchesRegex(Object fieldValue, Pattern pattern)
+	{
+		if (fieldValue instanceof JSONArray)
+		{
+			JSONArray array = (JSONArray) fieldValue;
+			for (int i = 0; i < array.length(); i++)
+			{
+				if (array.opt(i) instanceof String && pattern.matcher((String) array.opt(i)).find())
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+		return fieldValue instanceof String && pattern.matcher((String) fieldValue).find();
+	}
+
+	private static boolean isTrue(Object operand)
+	{
+		if (operand instanceof Boolean)
+		{
+			return (Boolean) operand;
+		}
+		return operand instanceof Number && ((Number) operand).intValue() != 0;
+	}
+
+	// Follows the dot notation into nested objects, null means the field isn't there.
+	private static Object lookup(String field, JSONObject valuesMap)
+	{
+		if (valuesMap.has(field))
+		{
+			return valuesMap.opt(field);
+		}
+		Object current = valuesMap;
+		for (String part : field.split("\\."))
+		{
+			if (!(current instanceof JSONObject))
+			{
+				return null;
+			}
+			current = ((JSONObject) current).opt(part);
+		}
+		return current;
+	}
+}
@@ -25,14 +25,9 @@ package edu.umass.cs.gnsserver.gnsapp;
  * All Rights Reserved
  */
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SignatureException;
-import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -40,10 +35,17 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -63,8 +65,7 @@ import edu.umass.cs.gnscommon.packets.commandreply.NotificationStatsToIssuer;
 import edu.umass.cs.gnscommon.packets.commandreply.SelectHandleInfo;
 import edu.umass.cs.gnsserver.database.AbstractRecordCursor;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.InternalField;
-import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
-import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSAuthentication;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.SelectAclEvaluator;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectResponsePacket;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
@@ -77,6 +78,7 @@ import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.main.GNSConfig.GNSC;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig;
 import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
 
 /**
  * This class handles select operations which have a similar semantics to an SQL SELECT.
@@ -106,6 +108,25 @@ import edu.umass.cs.utils.Config;
  * from all the results removing duplicates and then sends back JUST THE GUIDs, not the full
  * records.
  *  *
+ * Each select gets a future (see {@link #handleSelectRequestFromClientAsync})
+ * that is completed as soon as all the NSs have responded, the select's limit
+ * on the number of records has been reached, or 
+ * {@link GNSC#SELECT_REQUEST_TIMEOUT} has passed, in which case whatever the 
+ * NSs that did respond sent is returned. No lock is held while the NSs are 
+ * being waited for. The command path still blocks its own thread on the future
+ * in {@link #handleSelectRequestFromClient} because commands return their 
+ * responses synchronously.
+ *
+ * Paged selects (SELECT_PAGE) don't collect all the records in the collecting NS.
+ * Each NS reads at most a page of the matching records in guid order after the
+ * last guid of the previous page, which is a range query on the unique name index, 
+ * and returns them with the last guid it read if it read a full page. The collecting 
+ * NS merges the pages and cuts the result at the smallest of those guids, since 
+ * the NS that read it may have more guids after it. So each guid is in exactly one
+ * page even though every NS returns the guids it holds a replica of. The last guid 
+ * of the page is returned to the client, which sends it back to get the next page.
+ * No NS keeps any state between pages.
+ *
  * @author westy
  */
 public class Select extends AbstractSelector 
@@ -118,13 +139,32 @@ public class Select extends AbstractSelector
 	// for any name server.
 	private final NameServerSelectNotificationState pendingNotifications;
 	
+	// the context aware group guids whose members are kept up to date at this name server.
+	private final ContextAwareGroups contextAwareGroups = new ContextAwareGroups();
+	
 	
 	private final Random randomIdGen = new Random();
 	
 	private final ConcurrentMap<Integer, NSSelectInfo> pendingQueries
           = new ConcurrentHashMap<Integer, NSSelectInfo>();
-	private final ConcurrentMap<Integer, SelectResponsePacket> queryResult
-          = new ConcurrentHashMap<Integer, SelectResponsePacket>();
+	
+	// Completes selects whose servers haven't all responded in time.
+	private static final ScheduledThreadPoolExecutor TIMEOUT_EXECUTOR 
+		= new ScheduledThreadPoolExecutor(1, new ThreadFactory() 
+		{
+			@Override
+			public Thread newThread(Runnable r) 
+			{
+				Thread thread = new Thread(r, Select.class.getSimpleName() + "-timeout");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	
+	static
+	{
+		TIMEOUT_EXECUTOR.setRemoveOnCancelPolicy(true);
+	}
 	
 	/**
 	 * The select constructor. 
@@ -215,10 +255,48 @@ public class Select extends AbstractSelector
    * @throws FailedDBOperationException
    * @throws InternalRequestException
    */
+  @Override
   public  SelectResponsePacket handleSelectRequestFromClient(InternalRequestHeader header,
           SelectRequestPacket packet, GNSApplicationInterface<String> app) 
         		  throws JSONException, UnknownHostException, FailedDBOperationException, 
         		  InternalRequestException
+  {  
+	  // Blocks this thread until the select completes. Only this select's own
+	  // future is waited on and it is always completed by the response handlers
+	  // or the timeout. Client commands use the async version instead.
+	  String errorMessage;
+	  try
+	  {
+		  return handleSelectRequestFromClientAsync(header, packet, app).get();
+	  } 
+	  catch (InterruptedException e) 
+	  {
+		  Thread.currentThread().interrupt();
+		  errorMessage = "Interrupted while waiting for select";
+	  } 
+	  catch (ExecutionException e) 
+	  {
+		  LOGGER.log(Level.SEVERE, "Exception while waiting for select: {0}", e.getCause());
+		  errorMessage = "Select failed: " + e.getCause();
+	  }
+	  return SelectResponsePacket.makeFailPacket(packet.getRequestID(), null, -1, null, 
+			  errorMessage);
+  }
+  
+  /**
+   * Handle a select request from a client without blocking.
+   * This node is the broadcaster and selector.
+   *
+   * @param header
+   * @param packet
+   * @param app
+   * @return a future that is completed with the select response packet
+   * or null if the select couldn't be done
+   */
+  @Override
+  public CompletableFuture<SelectResponsePacket> handleSelectRequestFromClientAsync(
+		  InternalRequestHeader header, SelectRequestPacket packet, 
+		  GNSApplicationInterface<String> app)
   {  
 	  switch(packet.getSelectOperation())
 	  {
@@ -240,20 +318,26 @@ public class Select extends AbstractSelector
 	  			return processNotificationStatusFromClient(header, packet, app);
 	  			//break;
 	  		}
+	  		case SELECT_PAGE:
+	  		{
+	  			return processSelectRequestFromClient(header, packet, app);
+	  		}
 	  		default:
 	  			break;
 	  }
-	  return null;
+	  return CompletableFuture.completedFuture(null);
   }
   
   
-  private SelectResponsePacket processSelectRequestFromClient(InternalRequestHeader header,
-          SelectRequestPacket packet, GNSApplicationInterface<String> app)
+  private CompletableFuture<SelectResponsePacket> processSelectRequestFromClient(
+		  InternalRequestHeader header, SelectRequestPacket packet, 
+		  GNSApplicationInterface<String> app)
   {
 	  Set<InetSocketAddress> serverAddresses = new HashSet<>(PaxosConfig.getActives().values());
 	  
 	  // store the info for later
-	  int queryId = addQueryInfo(serverAddresses, packet);
+	  NSSelectInfo info = addQueryInfo(serverAddresses, packet, app);
+	  int queryId = info.getId();
 	  
 	  InetSocketAddress returnAddress = new InetSocketAddress(app.getNodeAddress().getAddress(),
             ReconfigurationConfig.getClientFacingPort(app.getNodeAddress().getPort()));
@@ -277,35 +361,17 @@ public class Select extends AbstractSelector
                   new Object[]{app.getNodeID(), outgoingJSON, offsetAddress, address});
 			  app.sendToAddress(offsetAddress, outgoingJSON);
 		  }
-		  
-		  // Wait for responses, otherwise you are violating Replicable.execute(.)'s semantics.
-		  synchronized (pendingQueries) 
-		  {
-			  while (pendingQueries.containsKey(queryId)) 
-			  {
-				  try
-				  {
-					  pendingQueries.wait(SELECT_REQUEST_TIMEOUT);
-				  } catch (InterruptedException e) {
-					  e.printStackTrace();
-				  }
-			  }
-		  }
-		  if (queryResult.containsKey(queryId)) 
-		  {
-			  
-			  return queryResult.remove(queryId);
-		  }
 	  }
 	  catch (IOException | JSONException  e) 
 	  {
 		  LOGGER.log(Level.SEVERE, "Exception while sending select request: {0}", e);
+		  finishQuery(info, null);
 	  }
-	  return null;
+	  return info.getFuture();
   }
   
   
-  private SelectResponsePacket processNotificationStatusFromClient
+  private CompletableFuture<SelectResponsePacket> processNotificationStatusFromClient
   					(InternalRequestHeader header, 
   							SelectRequestPacket packet, GNSApplicationInterface<String> app)
   {
@@ -321,7 +387,8 @@ public class Select extends AbstractSelector
 	  Set<InetSocketAddress> serverAddresses = getServerAddressFromHandles(localHandlesList);
 	  
 	  // store the info for later
-	  int queryId = addQueryInfo(serverAddresses, packet);
+	  NSSelectInfo info = addQueryInfo(serverAddresses, packet, app);
+	  int queryId = info.getId();
 	  
 	  //FIXME: aditya: COMMENT: not sure why we are not sending here on server-server port. s
 	  InetSocketAddress returnAddress = new InetSocketAddress(
@@ -363,25 +430,7 @@ public class Select extends AbstractSelector
 		  }
 	  }
 	  
-	  // Wait for responses, otherwise you are violating Replicable.execute(.)'s semantics.
-	  synchronized (pendingQueries)
-	  {
-		  while (pendingQueries.containsKey(queryId)) 
-		  {
-			  try
-			  {
-				  pendingQueries.wait(SELECT_REQUEST_TIMEOUT);
-			  } catch (InterruptedException e) {
-				  e.printStackTrace();
-			  }
-		  }
-	  }
-	  
-	  if (queryResult.containsKey(queryId)) 
-	  {
-		  return queryResult.remove(queryId);
-	  }
-	  return null;
+	  return info.getFuture();
   }
   
   
@@ -481,6 +530,11 @@ public class Select extends AbstractSelector
 				  response = processSelectRequestFromNSForNotificationStatus(request, app);
 				  break;
 			  }
+			  case SELECT_PAGE:
+			  {
+				  response = processSelectRequestFromNSForPage(request, app);
+				  break;
+			  }
 			  default:
 				  break;
 		  }
@@ -516,26 +570,55 @@ public class Select extends AbstractSelector
   {
 	  AbstractRecordCursor cursor = getDBCursor(request, app);
 	  
-	  // aditya:TODO: These cases also needs to be changed to a distributed
-  	  // iterator approach. 
+	  // These return all the matching records at once. Selects that can match
+	  // more records than should be held in memory use SELECT_PAGE instead,
+	  // see processSelectRequestFromNSForPage.
 	  
 	  JSONArray resultRecords = new JSONArray();
+	  // The collecting NS doesn't need more than this many records from any one NS
+	  int limit = request.getLimit();
+	  SelectAclEvaluator acl = makeAclEvaluator(request, app);
+	  // the local members of a context aware group that is being set up
+	  List<String> groupMembers = request.getGroupGuid() != null ? new ArrayList<String>() : null;
 	  
-	  while (cursor != null && cursor.hasNext()) 
+	  try
 	  {
-		  JSONObject record = cursor.nextJSONObject();
-		  
-		  record = aclCheckForRecord(request, record, app);
-		  if(record!=null)
+		  while (cursor != null && cursor.hasNext() 
+				  && (limit <= 0 || resultRecords.length() < limit)) 
 		  {
-			  record = performProjectionForUserRequestedAttributes(
-					  app, request, record);
+			  JSONObject record = cursor.nextJSONObject();
 			  
+			  record = acl.filterRecord(record);
 			  if(record!=null)
-				  resultRecords.put(record);
-			  
+			  {
+				  if(groupMembers != null)
+				  {
+					  groupMembers.add(record.optString(NameRecord.NAME.getName()));
+				  }
+				  record = performProjectionForUserRequestedAttributes(
+						  app, request, record);
+				  
+				  if(record!=null)
+					  resultRecords.put(record);
+				  
+			  }
+		  }
+	  }
+	  finally
+	  {
+		  // The loop can stop at the limit before the cursor is used up
+		  if(cursor != null)
+		  {
+			  cursor.close();
 		  }
 	  }
+	  acl.updateStats();
+	  
+	  if(groupMembers != null)
+	  {
+		  contextAwareGroups.register(request.getGroupGuid(), request.getQuery(), 
+				  request.getReader(), getFieldsFromQuery(request.getQuery()), groupMembers);
+	  }
 	  
 	  return SelectResponsePacket.makeSuccessPacketForFullRecords(
 			  request.getRequestID(), request.getClientAddress(),
@@ -543,6 +626,81 @@ public class Select extends AbstractSelector
   }
   
   
+  /**
+   * Reads a page of the records that match the query in guid order after the
+   * last guid of the previous page. The page holds guids if the request has no 
+   * projection and records in the form that is returned to the user otherwise.
+   * The response carries the last guid that was read if a full page was read
+   * because there may be more records after it.
+   * 
+   * @param request
+   * @param app
+   * @return the response
+   * @throws FailedDBOperationException
+   */
+  private SelectResponsePacket processSelectRequestFromNSForPage
+  			(SelectRequestPacket request, GNSApplicationInterface<String> app) 
+  					throws FailedDBOperationException
+  {
+	  // Pages are never bigger than what a NS fetches at once for a select notify.
+	  int fetchSize = Config.getGlobalInt(GNSC.SELECT_FETCH_SIZE);
+	  int pageSize = request.getPageSize() > 0 ? 
+			  Math.min(request.getPageSize(), fetchSize) : fetchSize;
+	  LOGGER.log(Level.FINE, "NS{0} page query: {1} {2} after {3}",
+              new Object[]{app.getNodeID(), request.getQuery(), request.getProjection(), 
+            		  request.getAfterName()});
+	  AbstractRecordCursor cursor = NameRecord.selectRecordsQueryPage(app.getDB(), 
+			  request.getQuery(), request.getProjection(), request.getAfterName(), pageSize);
+	  
+	  JSONArray page = new JSONArray();
+	  SelectAclEvaluator acl = makeAclEvaluator(request, app);
+	  int read = 0;
+	  String lastName = null;
+	  try
+	  {
+		  while (cursor.hasNext()) 
+		  {
+			  JSONObject record = cursor.nextJSONObject();
+			  read++;
+			  // Where this NS got to, whether or not the record can be returned
+			  lastName = record.optString(NameRecord.NAME.getName(), lastName);
+			  
+			  record = acl.filterRecord(record);
+			  if(record != null)
+			  {
+				  record = performProjectionForUserRequestedAttributes(
+						  app, request, record);
+				  
+				  if(record != null)
+				  {
+					  if(request.getProjection() == null)
+					  {
+						  String guid = record.optString(NameRecord.NAME.getName(), null);
+						  if(guid != null)
+							  page.put(guid);
+					  }
+					  else
+					  {
+						  JSONObject userRecord = massageRecord(record);
+						  if(userRecord != null)
+							  page.put(userRecord);
+					  }
+				  }
+			  }
+		  }
+	  }
+	  finally
+	  {
+		  cursor.close();
+	  }
+	  acl.updateStats();
+	  
+	  return SelectResponsePacket.makeSuccessPacketForPage(
+			  request.getRequestID(), request.getClientAddress(),
+			  request.getNsQueryId(), app.getNodeAddress(), page, 
+			  read < pageSize ? null : lastName);
+  }
+  
   private SelectResponsePacket processSelectRequestFromNSForSelectNotify(
 		  		SelectRequestPacket request, GNSApplicationInterface<String> app) 
 		  				throws FailedDBOperationException
@@ -558,11 +716,12 @@ public class Select extends AbstractSelector
   	  
   	  List<NotificationSendingStats> notificationStatsList = new LinkedList<NotificationSendingStats>();
   	  
+  	  SelectAclEvaluator acl = makeAclEvaluator(request, app);
   	  while (cursor != null && cursor.hasNext()) 
   	  {
   		  JSONObject record = cursor.nextJSONObject();
   		  
-  		  record = aclCheckForRecord(request, record, app);
+  		  record = acl.filterRecord(record);
   		  if(record != null)
   		  {
   			  record = performProjectionForUserRequestedAttributes(
@@ -609,6 +768,8 @@ public class Select extends AbstractSelector
   	  }
   	  
   	  
+  	  acl.updateStats();
+  	  
   	  // last batch.
   	  if(currList.size() > 0)
   	  {  
@@ -717,29 +878,18 @@ public class Select extends AbstractSelector
   }
   
   /**
-   * Checks if {@code record} satisfies ACL checks. Also, removes fields from {@code record} 
-   * that the query issuer is not allowed to read. 
-   *
+   * Creates the evaluator that checks the records of a select against their read ACLs. 
+   * The query issuer must be able to read all the query attributes of a record 
+   * and the fields it isn't allowed to read are removed from the record. 
+   * 
    * @param packet
-   * @param record
    * @param app
-   * @return
-   * The JSONObject corresponding to the record after removing private fields. Returns null
-   * if ACL check on query fields fails or there is an exception.
+   * @return the evaluator for the records of the select
    */
-  private JSONObject aclCheckForRecord(SelectRequestPacket packet, JSONObject record,
+  private SelectAclEvaluator makeAclEvaluator(SelectRequestPacket packet,
 		  GNSApplicationInterface<String> app) 
   {
-	  // First we check if the query issuer is in read ACLs for all query attributes
-	  boolean satisfy =aclCheckForQueryAttributes(packet, record, app);
-	  if(satisfy)
-	  {
-		  return aclCheckForProjectionFields(packet, record, app);
-	  }
-	  else
-	  {
-		  return null;
-	  }
+	  return new SelectAclEvaluator(packet.getReader(), getFieldsForQueryType(packet), app);
   }
   
   /**
@@ -814,93 +964,6 @@ public class Select extends AbstractSelector
 	  return record;
   }
   
-  /**
-   * This function checks that the query issuer has read access to all query fields for 
-   * {@code record}.
-   * 
-   * @param packet
-   * @param record
-   * @param app
-   * @return
-   * true if the acl check on query fields is satisfied. Otherwise, false.
-   */
-  private boolean aclCheckForQueryAttributes(SelectRequestPacket packet, JSONObject record,
-		  	GNSApplicationInterface<String> app) 
-  {
-	  try 
-	  {
-		  String guid = record.getString(NameRecord.NAME.getName());
-		  List<String> queryFields = getFieldsForQueryType(packet);
-		  
-		  NameRecord nr = new NameRecord(app.getDB(), record);
-        
-		  ResponseCode responseCode = NSAuthentication.signatureAndACLCheck(null, guid, null, 
-				queryFields, packet.getReader(), null, null, MetaDataTypeName.READ_WHITELIST, app, true, nr);
-		  
-		  LOGGER.log(Level.FINE, "{0} ACL check for select: guid={0} queryFields={1} responsecode={3}",
-                new Object[]{app.getNodeID(), guid, queryFields, responseCode});
-		  if (responseCode.isOKResult()) {
-			  return true;
-		  }
-      } catch (JSONException | InvalidKeyException | InvalidKeySpecException 
-    		  	| SignatureException | NoSuchAlgorithmException | FailedDBOperationException 
-    		  	| UnsupportedEncodingException e) 
-	  {
-        // ignore json errros
-        LOGGER.log(Level.FINE, "{0} Problem getting guid from json: {1}",
-                new Object[]{app.getNodeID(), e.getMessage()});
-      }
-	  return false;
-  }
-  
-  /**
-   * This filters individual fields if the cannot be accessed by the reader.
-   *
-   * @param packet
-   * @param record
-   * @param app
-   * @return
-   * the JSONObject after removing fields that don't satisfy ACL checks.
-   */
-  private JSONObject aclCheckForProjectionFields(SelectRequestPacket packet, JSONObject record,
-		  GNSApplicationInterface<String> app) 
-  {
-	  try 
-	  {
-		  String guid = record.getString(NameRecord.NAME.getName());
-		  // Look at the keys in the values map
-		  JSONObject valuesMap = record.getJSONObject(NameRecord.VALUES_MAP.getName());
-		  Iterator<?> keys = valuesMap.keys();
-		  while (keys.hasNext()) 
-		  {
-			  String field = (String) keys.next();
-			  if (!InternalField.isInternalField(field)) 
-			  {
-				  LOGGER.log(Level.FINE, "{0} Checking: {1}", new Object[]{app.getNodeID(), field});
-				  ResponseCode responseCode = NSAuthentication.signatureAndACLCheck(null, guid, field, 
-						  null, packet.getReader(), null, null, MetaDataTypeName.READ_WHITELIST, app, true, 
-						  new NameRecord(app.getDB(), record));
-            
-				  if (!responseCode.isOKResult()) 
-				  {
-					  LOGGER.log(Level.FINE, "{0} Removing: {1}", new Object[]{app.getNodeID(), field});
-					  // removing the offending field
-					  keys.remove();
-				  }
-			  }
-		  }
-      } catch (JSONException | InvalidKeyException | InvalidKeySpecException 
-    		  | SignatureException | NoSuchAlgorithmException | FailedDBOperationException 
-    		  | UnsupportedEncodingException e) 
-	  {
-    	  LOGGER.log(Level.FINE, "{0} Problem getting guid from json: {1}",
-                new Object[]{app.getNodeID(), e.getMessage()});
-    	  // This record has problems, so we can't return this to a user. 
-    	  return null;
-      }
-	  return record;
-  }
-  
   // Returns the fields that present in a query.
   private List<String> getFieldsForQueryType(SelectRequestPacket request) 
   {
@@ -912,6 +975,7 @@ public class Select extends AbstractSelector
       		return new ArrayList<>(Arrays.asList(request.getKey()));
       	case QUERY:
       	case SELECT_NOTIFY:
+      	case SELECT_PAGE:
       		return getFieldsFromQuery(request.getQuery());
       	default:
       		return new ArrayList<>();
@@ -932,6 +996,48 @@ public class Select extends AbstractSelector
   }
   
   
+  /**
+   * Checks the updated record against the context aware groups registered
+   * at this name server.
+   * 
+   * @param header
+   * @param guid
+   * @param fields
+   * @param entryReplica
+   * @param app
+   */
+  @Override
+  public void handleRecordUpdate(InternalRequestHeader header, String guid,
+		  List<String> fields, boolean entryReplica, GNSApplicationInterface<String> app)
+  {
+	  contextAwareGroups.recordUpdated(header, guid, fields, entryReplica, app);
+  }
+  
+  /**
+   * Drops a removed guid from the context aware groups.
+   * 
+   * @param header
+   * @param guid
+   * @param push
+   * @param app
+   */
+  @Override
+  public void handleRecordRemoved(InternalRequestHeader header, String guid,
+		  boolean push, GNSApplicationInterface<String> app)
+  {
+	  contextAwareGroups.recordRemoved(header, guid, push, app);
+  }
+  
+  /**
+   * Stops the threads that keep the context aware groups up to date.
+   */
+  @Override
+  public void shutdown()
+  {
+	  contextAwareGroups.shutdown();
+  }
+  
+  
   /**
    * Handles a select response.
    * This code runs in the collecting NS.
@@ -970,27 +1076,12 @@ public class Select extends AbstractSelector
 	  {
 		  SelectResponsePacket response = processSelectResponse(packet, replica,  info);
 		  
-		  // If response is non-null, the all responses have been received.
-		  // and this is the non-null response that needs to go to the client.
+		  // If response is non-null, the all responses have been received
+		  // (or enough records have been) and this is the non-null response 
+		  // that needs to go to the client.
 		  if(response != null)
 		  {
-			  // Put the result where the coordinator can see it.
-			  queryResult.put(packet.getNsQueryId(), response);
-			  // and let the coordinator know the value is there
-			  if (GNSApp.DELEGATE_CLIENT_MESSAGING) 
-			  {
-				  synchronized (pendingQueries) 
-				  {
-					  // Must be done after setting result in QUERY_RESULT,
-					  // Otherwise, the waiting thread will wake up and 
-					  // find the query is not in progress but will not find any result
-					  // so will return a wrong response. A wait()
-					  // can wake spuriously without the notify() as mentioned
-					  // in the documentation of these functions.
-					  pendingQueries.remove(packet.getNsQueryId());
-					  pendingQueries.notify();
-				  }
-			  }
+			  finishQuery(info, response);
 		  }
 	  } 
 	  else 
@@ -1003,24 +1094,66 @@ public class Select extends AbstractSelector
 		  // The query has failed at one of the name servers.
 		  // So, we just send an error response to the client
 		  // and remove the query state.
-		  // Put the result where the coordinator can see it.
-		  queryResult.put(packet.getNsQueryId(), packet);
-		  // and let the coordinator know the value is there
-		  if (GNSApp.DELEGATE_CLIENT_MESSAGING) 
-		  {
-			  synchronized (pendingQueries) 
-			  {
-				  // Must be done after setting result in QUERY_RESULT,
-				  // Otherwise, the waiting thread will wake up and 
-				  // find the query is not in progress but will not find any result
-				  // so will return a wrong response. A wait()
-				  // can wake spuriously without the notify() as mentioned
-				  // in the documentation of these functions.
-				  pendingQueries.remove(packet.getNsQueryId());
-				  pendingQueries.notify();
-			  }
-		  }
+		  finishQuery(info, packet);
+	  }
+  }
+  
+  /**
+   * Completes the select with the response and forgets about it.
+   * Any responses that arrive after this are ignored.
+   * 
+   * @param info
+   * @param response
+   */
+  private void finishQuery(NSSelectInfo info, SelectResponsePacket response)
+  {
+	  pendingQueries.remove(info.getId(), info);
+	  info.complete(response);
+  }
+  
+  /**
+   * Called when not all of the servers have responded to a select in time. 
+   * Completes the select with whatever the servers that did respond sent.
+   * 
+   * @param info
+   * @param app
+   */
+  private void handleSelectTimeout(NSSelectInfo info, GNSApplicationInterface<String> app)
+  {
+	  if (info.getFuture().isDone())
+	  {
+		  return;
+	  }
+	  Set<InetSocketAddress> missing;
+	  synchronized (info)
+	  {
+		  missing = new HashSet<>(info.serversYetToRespond());
+	  }
+	  LOGGER.log(Level.WARNING, "NS {0} select {1} timed out waiting for {2}. Returning partial results.",
+			  new Object[]{app.getNodeID(), info.getSelectRequestPacket().getSummary(), missing});
+	  DelayProfiler.updateCount("selectTimeouts", 1);
+	  SelectResponsePacket response = null;
+	  switch(info.getSelectOperation())
+	  {
+	  		case EQUALS:
+	  		case NEAR:
+			case WITHIN:
+			case QUERY:
+				response = makeResponseForReturningGUIDs(info, app);
+				break;
+			case SELECT_NOTIFY:
+				response = makeResponseForSelectNotify(info);
+				break;
+			case NOTIFICATION_STATUS:
+				response = makeResponseForNotificationStatus(info);
+				break;
+			case SELECT_PAGE:
+				response = makeResponseForPage(info);
+				break;
+			default:
+				break;
 	  }
+	  finishQuery(info, response);
   }
   
   /**
@@ -1059,6 +1192,11 @@ public class Select extends AbstractSelector
 				response = processSelectResponseForNotificationStatus(packet, info, replica);
 			  	break;
 			}
+			case SELECT_PAGE:
+			{
+				response = processSelectResponseForPage(packet, info, replica);
+			  	break;
+			}
 			default:
 			{
 				break;
@@ -1068,7 +1206,8 @@ public class Select extends AbstractSelector
   }
   
   /**
-   * Returns a SelectResponsePacket if all name servers have responded. 
+   * Returns a SelectResponsePacket if all name servers have responded or 
+   * we have as many records as the select's limit.
    * Otherwise, returns null for pending requests. 
    * 
    * @param packet
@@ -1103,41 +1242,61 @@ public class Select extends AbstractSelector
 		  info.removeServerAddress(packet.getNSAddress());
 		  allServersResponded = info.allServersResponded();
 	  }
-	  if (allServersResponded) 
+	  int limit = info.getSelectRequestPacket().getLimit();
+	  if (allServersResponded 
+			  || (limit > 0 && info.getNumberOfRecordResponses() >= limit)) 
 	  {  
-		  Set<JSONObject> allRecords = info.getResponsesAsSet();
+		  LOGGER.log(Level.FINE,
+	              "NS{0} All servers responded or limit of {1} reached",
+	              new Object[]{app.getNodeID(), limit});
+		  return makeResponseForReturningGUIDs(info, app);
+	  } else 
+	  {
+		  LOGGER.log(Level.FINE,
+				  "NS{0} servers yet to respond:{1}",
+				  new Object[]{app.getNodeID(), info.serversYetToRespond()});
+	  }
+	  return null;
+  }
+  
+  // Makes the response from the records that have been received so far.
+  private SelectResponsePacket makeResponseForReturningGUIDs(NSSelectInfo info, 
+		  GNSApplicationInterface<String> app)
+  {
+	  int limit = info.getSelectRequestPacket().getLimit();
+	  Set<JSONObject> allRecords = info.getResponsesAsSet();
+	  long requestId = info.getSelectRequestPacket().getRequestID();
+	  
+	  // If projection is null we return guids (old-style).
+	  if (info.getProjection() == null) 
+	  {
 		  Set<String> guids = extractGuidsFromRecords(allRecords);
 		  LOGGER.log(Level.FINE,
-	              "NS{0} guids:{1} All servers responded",
+	              "NS{0} guids:{1}",
 	              new Object[]{app.getNodeID(), guids});
-		  
-		  SelectResponsePacket response = null;
-		  
-		  // If projection is null we return guids (old-style).
-		  if (info.getProjection() == null) 
+		  List<String> result = new ArrayList<>(guids);
+		  if (limit > 0 && result.size() > limit)
 		  {
-			  response = SelectResponsePacket.makeSuccessPacketForFullRecords(
-	  				  packet.getRequestID(), null, -1, null, new JSONArray(guids));
-	  			// Otherwise we return a list of records.
+			  result = result.subList(0, limit);
 		  }
-		  else 
+		  return SelectResponsePacket.makeSuccessPacketForFullRecords(
+  				  requestId, null, -1, null, new JSONArray(result));
+  			// Otherwise we return a list of records.
+	  }
+	  else 
+	  {
+		  List<JSONObject> records = filterAndMassageRecords(allRecords);
+		  if (limit > 0 && records.size() > limit)
 		  {
-			  List<JSONObject> records = filterAndMassageRecords(allRecords);
-			  LOGGER.log(Level.FINE,
-	                "NS{0} record:{1}",
-	                new Object[]{app.getNodeID(), records});
-			  response = SelectResponsePacket.makeSuccessPacketForFullRecords(
-					  packet.getRequestID(), null, 
-					  -1, null, new JSONArray(records));
+			  records = records.subList(0, limit);
 		  }
-		  return response;
-	  } else 
-	  {
 		  LOGGER.log(Level.FINE,
-				  "NS{0} servers yet to respond:{1}",
-				  new Object[]{app.getNodeID(), info.serversYetToRespond()});
+                "NS{0} record:{1}",
+                new Object[]{app.getNodeID(), records});
+		  return SelectResponsePacket.makeSuccessPacketForFullRecords(
+				  requestId, null, 
+				  -1, null, new JSONArray(records));
 	  }
-	  return null;
   }
   
   
@@ -1166,37 +1325,12 @@ public class Select extends AbstractSelector
 	  
 	  if (allServersResponded) 
 	  {
-		  SelectResponsePacket response = null;
-		  List<NotificationStatsToIssuer> statsList = info.getAllNotificationStats();
-		  
 		  // In SelectAndNotify command, a user always gets back notification stats. 
 		  //Unlike in SelectNotificationStatus command, where the command can fail because 
 		  // of garbage collection of handle state at name servers. 
-		  assert(statsList.size() == info.getAllServers().size());
-		  
-		  long totalNot = 0;
-		  long failedNot = 0;
-		  long pendingNot = 0;
-		  
-		  for(int i=0; i<statsList.size(); i++)
-		  {
-			  totalNot+=statsList.get(i).getTotalNotifications();
-			  failedNot+=statsList.get(i).getFailedNotifications();
-			  pendingNot+=statsList.get(i).getPendingNotifications();
-		  }
-		  
-		  List<LocalSelectHandleInfo> handleList = getLocalSelectHandleList(statsList);
-		  
-		  SelectHandleInfo selectHandle 
-	  					= new SelectHandleInfo(handleList);
+		  assert(info.getAllNotificationStats().size() == info.getAllServers().size());
 		  
-		  NotificationStatsToIssuer mergedStats = new NotificationStatsToIssuer
-	  							(selectHandle, totalNot, failedNot, pendingNot);
-		  
-		  response = SelectResponsePacket.makeSuccessPacketForNotificationStatsOnly
-				  	(packet.getRequestID(), null, -1, null, mergedStats);
-		  
-		  return response;
+		  return makeResponseForSelectNotify(info);
 	  }
 	  else 
 	  {
@@ -1207,6 +1341,37 @@ public class Select extends AbstractSelector
 	  return null;
   }
   
+  // Merges the notification stats that have been received so far.
+  private SelectResponsePacket makeResponseForSelectNotify(NSSelectInfo info)
+  {
+	  SelectResponsePacket response = null;
+	  List<NotificationStatsToIssuer> statsList = info.getAllNotificationStats();
+	  
+	  long totalNot = 0;
+	  long failedNot = 0;
+	  long pendingNot = 0;
+	  
+	  for(int i=0; i<statsList.size(); i++)
+	  {
+		  totalNot+=statsList.get(i).getTotalNotifications();
+		  failedNot+=statsList.get(i).getFailedNotifications();
+		  pendingNot+=statsList.get(i).getPendingNotifications();
+	  }
+	  
+	  List<LocalSelectHandleInfo> handleList = getLocalSelectHandleList(statsList);
+	  
+	  SelectHandleInfo selectHandle 
+	  					= new SelectHandleInfo(handleList);
+	  
+	  NotificationStatsToIssuer mergedStats = new NotificationStatsToIssuer
+	  							(selectHandle, totalNot, failedNot, pendingNot);
+	  
+	  response = SelectResponsePacket.makeSuccessPacketForNotificationStatsOnly
+			  	(info.getSelectRequestPacket().getRequestID(), null, -1, null, mergedStats);
+	  
+	  return response;
+  }
+  
   private List<LocalSelectHandleInfo> getLocalSelectHandleList(
 		  					List<NotificationStatsToIssuer> statsList)
   {
@@ -1243,44 +1408,103 @@ public class Select extends AbstractSelector
 	  
 	  if (allServersResponded) 
 	  {
-		  SelectResponsePacket response = null;
-		  List<NotificationStatsToIssuer> statsList = info.getAllNotificationStats();
+		  return makeResponseForNotificationStatus(info);
+	  }
+	  else 
+	  {
+		  LOGGER.log(Level.FINE,
+				  "NS{0} servers yet to respond:{1}",
+				  	new Object[]{app.getNodeID(), info.serversYetToRespond()});
+	  }
+	  return null;
+  }
+  
+  // Fails unless every server has returned its stats.
+  private SelectResponsePacket makeResponseForNotificationStatus(NSSelectInfo info)
+  {
+	  SelectResponsePacket response = null;
+	  List<NotificationStatsToIssuer> statsList = info.getAllNotificationStats();
+	  long requestId = info.getSelectRequestPacket().getRequestID();
+	  
+	  // Some handle requests failed.
+	  if(statsList.size() != info.getAllServers().size())
+	  {
+		  response = SelectResponsePacket.makeFailPacket
+				  	(requestId, null, -1, null, 
+				  	"Select notification state has been garbage collected. Notification status cannot"
+				  	+ "be queried anymore.");
+	  }
+	  else  // success case.
+	  {
+		  long totalNot = 0;
+		  long failedNot = 0;
+		  long pendingNot = 0;
 		  
-		  // Some handle requests failed.
-		  if(statsList.size() != info.getAllServers().size())
-		  {
-			  response = SelectResponsePacket.makeFailPacket
-					  	(packet.getRequestID(), null, -1, null, 
-					  	"Select notification state has been garbage collected. Notification status cannot"
-					  	+ "be queried anymore.");
-		  }
-		  else  // success case.
+		  for(int i=0; i<statsList.size(); i++)
 		  {
-			  long totalNot = 0;
-			  long failedNot = 0;
-			  long pendingNot = 0;
-			  
-			  for(int i=0; i<statsList.size(); i++)
-			  {
-				  totalNot+=statsList.get(i).getTotalNotifications();
-				  failedNot+=statsList.get(i).getFailedNotifications();
-				  pendingNot+=statsList.get(i).getPendingNotifications();
-			  }
-			  
-			  SelectHandleInfo selectHandle 
-		  					= info.getSelectRequestPacket().getSelectHandleInfo();
-			  
-			  assert(selectHandle != null);
-			  
-			  NotificationStatsToIssuer mergedStats = new NotificationStatsToIssuer
-		  							(selectHandle, totalNot, failedNot, pendingNot);
-			  
-			  
-			  response = SelectResponsePacket.makeSuccessPacketForNotificationStatsOnly
-		  				(packet.getRequestID(), null, -1, null, mergedStats);
+			  totalNot+=statsList.get(i).getTotalNotifications();
+			  failedNot+=statsList.get(i).getFailedNotifications();
+			  pendingNot+=statsList.get(i).getPendingNotifications();
 		  }
 		  
-		  return response;
+		  SelectHandleInfo selectHandle 
+	  					= info.getSelectRequestPacket().getSelectHandleInfo();
+		  
+		  assert(selectHandle != null);
+		  
+		  NotificationStatsToIssuer mergedStats = new NotificationStatsToIssuer
+	  							(selectHandle, totalNot, failedNot, pendingNot);
+		  
+		  
+		  response = SelectResponsePacket.makeSuccessPacketForNotificationStatsOnly
+	  				(requestId, null, -1, null, mergedStats);
+	  }
+	  
+	  return response;
+  }
+  
+  /**
+   * Adds a page from a name server to the page for the client. 
+   * Returns the page for the client once all the name servers have responded. 
+   * Otherwise, returns null for pending requests. 
+   * 
+   * @param packet
+   * @param info
+   * @param app
+   * @return the page for the client if all name servers have responded, null otherwise
+   * @throws JSONException
+   */
+  private SelectResponsePacket processSelectResponseForPage(
+		  SelectResponsePacket packet, NSSelectInfo info, GNSApplicationInterface<String> app) 
+				  	throws JSONException
+  {
+	  JSONArray jsonArray = packet.getRecords();
+	  int length = jsonArray.length();
+	  for (int i = 0; i < length; i++)
+	  {
+		  // Pages hold guids or records as they are returned to the user.
+		  Object result = jsonArray.get(i);
+		  String guid = result instanceof JSONObject ? 
+				  ((JSONObject) result).getString("_GUID") : result.toString();
+		  info.addPageResponseIfNotSeenYet(guid, result);
+	  }
+	  
+	  if (packet.getLastName() != null)
+	  {
+		  info.updatePageEnd(packet.getLastName());
+	  }
+	  
+	  boolean allServersResponded;
+	  synchronized (info) 
+	  {
+		  // Remove the NS Address from the list to keep track of who has responded
+		  info.removeServerAddress(packet.getNSAddress());
+		  allServersResponded = info.allServersResponded();
+	  }
+	  
+	  if (allServersResponded) 
+	  {
+		  return makeResponseForPage(info);
 	  }
 	  else 
 	  {
@@ -1291,31 +1515,67 @@ public class Select extends AbstractSelector
 	  return null;
   }
   
+  // Makes the page for the client from the pages that have been received so far.
+  // Guids after the end of the page are dropped, they are read again for the next page.
+  private SelectResponsePacket makeResponseForPage(NSSelectInfo info)
+  {
+	  String pageEnd = info.getPageEnd();
+	  NavigableMap<String, Object> responses = pageEnd == null ? info.getPageResponses()
+			  : info.getPageResponses().headMap(pageEnd, true);
+	  int pageSize = info.getSelectRequestPacket().getPageSize();
+	  JSONArray page = new JSONArray();
+	  for (Map.Entry<String, Object> entry : responses.entrySet())
+	  {
+		  if (pageSize > 0 && page.length() >= pageSize)
+		  {
+			  break;
+		  }
+		  page.put(entry.getValue());
+		  if (page.length() == pageSize)
+		  {
+			  // A full page ends at its last guid even if the name servers read further
+			  pageEnd = entry.getKey();
+		  }
+	  }
+	  return SelectResponsePacket.makeSuccessPacketForPage(
+			  info.getSelectRequestPacket().getRequestID(), null, -1, null, 
+			  page, pageEnd);
+  }
+  
   // Converts a record from the database into something we can return to 
   // the user. Adds the "_GUID" and removes internal fields.
   protected List<JSONObject> filterAndMassageRecords(Set<JSONObject> records) {
     List<JSONObject> result = new ArrayList<>();
     for (JSONObject record : records) {
-      try {
-        JSONObject newRecord = new JSONObject();
-        // add the _GUID record
-        newRecord.put("_GUID", record.getString(NameRecord.NAME.getName()));
-        //Now add all the non-internal records from the valuesMap
-        JSONObject valuesMap = record.getJSONObject(NameRecord.VALUES_MAP.getName());
-        Iterator<?> keyIter = valuesMap.keys();
-        while (keyIter.hasNext()) {
-          String key = (String) keyIter.next();
-          if (!InternalField.isInternalField(key)) {
-            newRecord.put(key, valuesMap.get(key));
-          }
-        }
+      JSONObject newRecord = massageRecord(record);
+      if (newRecord != null) {
         result.add(newRecord);
-      } catch (JSONException e) {
       }
     }
     return result;
   }
 
+  // Converts one record, returns null if the record can't be parsed.
+  private static JSONObject massageRecord(JSONObject record) {
+    try {
+      JSONObject newRecord = new JSONObject();
+      // add the _GUID record
+      newRecord.put("_GUID", record.getString(NameRecord.NAME.getName()));
+      //Now add all the non-internal records from the valuesMap
+      JSONObject valuesMap = record.getJSONObject(NameRecord.VALUES_MAP.getName());
+      Iterator<?> keyIter = valuesMap.keys();
+      while (keyIter.hasNext()) {
+        String key = (String) keyIter.next();
+        if (!InternalField.isInternalField(key)) {
+          newRecord.put(key, valuesMap.get(key));
+        }
+      }
+      return newRecord;
+    } catch (JSONException e) {
+      return null;
+    }
+  }
+
   // Pulls the guids out of the record to return to the user for "old-style" 
   // select calls.
   protected  Set<String> extractGuidsFromRecords(Set<JSONObject> records) {
@@ -1331,22 +1591,28 @@ public class Select extends AbstractSelector
     return result;
   }
 
-  private int addQueryInfo(Set<InetSocketAddress> serverAddresses, 
-		  								SelectRequestPacket selectPacket) 
+  // Creates the info for a new select and starts its timeout
+  private NSSelectInfo addQueryInfo(Set<InetSocketAddress> serverAddresses, 
+		  								SelectRequestPacket selectPacket, 
+		  								final GNSApplicationInterface<String> app) 
   {
-	  int id;
-	  synchronized(pendingQueries)
+	  NSSelectInfo info;
+	  do 
 	  {
-		  do 
+		  info = new NSSelectInfo(randomIdGen.nextInt(), serverAddresses, selectPacket);
+	  }
+	  while (pendingQueries.putIfAbsent(info.getId(), info) != null);
+	  
+	  final NSSelectInfo timedInfo = info;
+	  info.setTimeoutTask(TIMEOUT_EXECUTOR.schedule(new Runnable() 
+	  {
+		  @Override
+		  public void run() 
 		  {
-			  id = randomIdGen.nextInt();
+			  handleSelectTimeout(timedInfo, app);
 		  }
-		  while (pendingQueries.containsKey(id));
-		  //Add query info
-		  NSSelectInfo info = new NSSelectInfo(id, serverAddresses, selectPacket);
-		  pendingQueries.put(id, info);
-	  }
-	  return id;
+	  }, SELECT_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS));
+	  return info;
   }
   
   
@@ -27,6 +27,7 @@ import edu.umass.cs.gnsserver.gnsapp.packet.admin.DumpRequestPacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.admin.SentinalPacket;
 
 import edu.umass.cs.gnsserver.nodeconfig.PortOffsets;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -34,6 +35,7 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.text.ParseException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -135,6 +137,13 @@ public class AdminListener extends Thread implements Shutdownable {
             int incomingId = incomingPacket.getId();
             handler.getAdmintercessor().handleIncomingDumpResponsePackets(incomingJSON, handler);
             ClientCommandProcessorConfig.getLogger().log(Level.FINEST, "ListenerAdmin: Relayed response for {0} --> {1}", new Object[]{incomingId, dumpRequestPacket.toJSONObject()});
+            if (incomingPacket.getCursor() != null) {
+              // The server has more records, ask it for the next page now that we have this one
+              incomingPacket.setJsonArray(new JSONArray());
+              Packet.multicastTCP(handler.getGnsNodeConfig(), Collections.singleton(incomingPacket.getPrimaryNameServer()),
+                      incomingPacket.toJSONObject(), 2, PortOffsets.SERVER_ADMIN_PORT, null);
+              break;
+            }
             int remaining = replicationMap.get(incomingId);
             remaining -= 1;
             if (remaining > 0) {
@@ -21,8 +21,11 @@ import java.net.UnknownHostException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,18 +40,25 @@ import org.json.JSONObject;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 
+import edu.umass.cs.gnscommon.CommandType;
 import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.ResponseCode;
 import edu.umass.cs.gnscommon.SharedGuidUtils;
 import edu.umass.cs.gnscommon.exceptions.client.ClientException;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
 import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
 import edu.umass.cs.gnscommon.exceptions.server.ServerRuntimeException;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnscommon.packets.commandreply.AccountGuidsPage;
 import edu.umass.cs.gnscommon.utils.RandomString;
+import edu.umass.cs.gnsserver.gnsapp.GNSApp;
 import edu.umass.cs.gnsserver.gnsapp.GNSCommandInternal;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.database.ColumnFieldType;
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSFieldAccess;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.utils.Email;
@@ -69,6 +79,7 @@ import edu.umass.cs.utils.Util;
  * follows:
  * <p>
  * GUID: "ACCOUNT_INFO" -- {account} for primary guid<br>
+ * GUID: "ACCOUNT_GUIDS" -- {bucket: {GUID: true, ...}, ...} for primary guid<br>
  * GUID: "GUID" -- GUID (primary) for secondary guid<br>
  * GUID: "GUID_INFO" -- {guid info}<br>
  * HRN: "GUID" -- GUID<br>
@@ -96,6 +107,22 @@ public class AccountAccess {
   public static final String ACCOUNT_INFO_GUIDS = InternalField
           .makeInternalFieldString("guids");
 
+  /**
+   * Defines the field name in an account guid where the guids of the account
+   * are stored. Each guid is a key in one of {@link #ACCOUNT_GUIDS_BUCKETS} buckets
+   * so that adding or removing one only touches that key.
+   */
+  public static final String ACCOUNT_GUIDS = InternalField
+          .makeInternalFieldString("account_guids");
+
+  /**
+   * The number of buckets the guids of an account are spread over. Must be a power of 2.
+   */
+  public static final int ACCOUNT_GUIDS_BUCKETS = 256;
+
+  // About how many guids are returned in a page of lookupAccountGuidsPage
+  private static final int ACCOUNT_GUIDS_PAGE_SIZE = 10000;
+
   /**
    * Defines the field name in an HRN record (the reverse record) where guid
    * is stored.
@@ -1055,7 +1082,17 @@ public class AccountAccess {
     }
     // Step 3 - delete all the subGuids
     ResponseCode deleteSubGuidsResponseCode = ResponseCode.NO_ERROR;
-    for (String subguid : accountInfo.getGuids()) {
+    List<String> subguids;
+    try {
+      subguids = lookupAccountGuids(header, accountInfo, handler);
+    } catch (ClientException e) {
+      subguids = Collections.emptyList();
+      deleteSubGuidsResponseCode = e.getCode();
+    } catch (FailedDBOperationException | IOException | InternalRequestException | JSONException e) {
+      subguids = Collections.emptyList();
+      deleteSubGuidsResponseCode = ResponseCode.UPDATE_ERROR;
+    }
+    for (String subguid : subguids) {
     	GuidInfo subGuidInfo = lookupGuidInfoAnywhere(header, subguid, handler);
     	
       if (subGuidInfo != null) {
@@ -1108,6 +1145,8 @@ public class AccountAccess {
                 + " Failed to delete " + accountInfo.getGuid());
       }
       if (deleteGuidResponseCode.isOKResult()) {
+        // Step 5 - take it out of any context aware groups
+        GNSApp.getSelector().handleRecordRemoved(header, accountInfo.getGuid(), true, handler.getApp());
         return new CommandResponse(ResponseCode.NO_ERROR,
                 GNSProtocol.OK_RESPONSE.toString());
       } else {
@@ -1277,8 +1316,9 @@ public class AccountAccess {
       createdGUID = true;
 
       // else both name and guid created successfully
+      updateAccountGuids(header, accountInfo, Arrays.asList(guid), null, handler);
       updateAccountInfoNoAuthentication(header, commandPacket,
-              accountInfo.addGuid(guid)
+              accountInfo.noteGuidsAdded(1)
               .noteUpdate(), handler, true);
 
       return new CommandResponse(ResponseCode.NO_ERROR,
@@ -1334,7 +1374,6 @@ public class AccountAccess {
         String publicKey = publicKeys.get(i);
         String guid = SharedGuidUtils
                 .createGuidStringFromBase64PublicKey(publicKey);
-        accountInfo.addGuid(guid);
         //guids.add(guid);
         // HRN records
         JSONObject jsonHRN = new JSONObject();
@@ -1360,7 +1399,7 @@ public class AccountAccess {
         guidInfoMap.put(guid, jsonGuid);
       }
       DelayProfiler.updateDelay("addMultipleGuidsSetup", startTime);
-      accountInfo.noteUpdate();
+      accountInfo.noteGuidsAdded(guidInfoMap.size()).noteUpdate();
 
       // First we create the HRN records as a batch
       ResponseCode returnCode;
@@ -1378,8 +1417,10 @@ public class AccountAccess {
     		  new CreateServiceName(nameStates, activesChangePolicy)))
               .isExceptionOrError()) 
       {
-        // now we update the account info
-        if (updateAccountInfoNoAuthentication(header, commandPacket, accountInfo,
+        // now we update the account guids and info
+        if (updateAccountGuids(header, accountInfo, guidInfoMap.keySet(), null,
+                handler).isOKResult()
+                && updateAccountInfoNoAuthentication(header, commandPacket, accountInfo,
                 handler, true).isOKResult()) {
           HashMap<String, String> guidInfoNameStates = new HashMap<>();
           for (String key : guidInfoMap.keySet()) {
@@ -1564,11 +1605,28 @@ public class AccountAccess {
     // Step 2 - update the account info record unless this is part of an account guid delete
     ResponseCode accountInfoResponseCode;
     if (!ignoreAccountGuid) {
-      accountInfo.removeGuid(guidInfo.getGuid());
-      accountInfo.noteUpdate();
-      accountInfoResponseCode = updateAccountInfoNoAuthentication(header, commandPacket,
-              accountInfo,
-              handler, true);
+      accountInfoResponseCode = ResponseCode.NO_ERROR;
+      // Only count the removal of guids the account actually has
+      boolean listed = false;
+      try {
+        listed = accountInfo.getLegacyGuids().contains(guidInfo.getGuid())
+                || accountGuidsBucketHas(header, accountInfo.getGuid(), guidInfo.getGuid(), handler);
+      } catch (ClientException e) {
+        accountInfoResponseCode = e.getCode();
+      } catch (FailedDBOperationException | IOException | InternalRequestException | JSONException e) {
+        accountInfoResponseCode = ResponseCode.DATABASE_OPERATION_ERROR;
+      }
+      if (accountInfoResponseCode.isOKResult()) {
+        accountInfoResponseCode = updateAccountGuids(header, accountInfo,
+                Collections.<String>emptyList(), guidInfo.getGuid(), handler);
+      }
+      if (accountInfoResponseCode.isOKResult()) {
+        accountInfo.noteGuidRemoved(guidInfo.getGuid(), listed);
+        accountInfo.noteUpdate();
+        accountInfoResponseCode = updateAccountInfoNoAuthentication(header, commandPacket,
+                accountInfo,
+                handler, true);
+      }
     } else {
       accountInfoResponseCode = ResponseCode.NO_ERROR;
     }
@@ -1610,6 +1668,8 @@ public class AccountAccess {
                 + " Failed to delete " + guidInfo.getGuid());
       }
       if (deleteGuidResponseCode.isOKResult()) {
+        // Step 5 - take it out of any context aware groups
+        GNSApp.getSelector().handleRecordRemoved(header, guidInfo.getGuid(), true, handler.getApp());
         return new CommandResponse(ResponseCode.NO_ERROR,
                 GNSProtocol.OK_RESPONSE.toString());
       } else {
@@ -1854,6 +1914,183 @@ public class AccountAccess {
             remoteUpdate);
   }
 
+  /**
+   * Adds guids to and removes a guid from the buckets of the account. The guids
+   * still listed in the account info are moved into the buckets too. Doesn't
+   * update the account info itself.
+   *
+   * @param header
+   * @param accountInfo
+   * @param added
+   * @param removed - can be null
+   * @param handler
+   * @return the response code
+   */
+  private static ResponseCode updateAccountGuids(InternalRequestHeader header,
+          AccountInfo accountInfo, Collection<String> added, String removed,
+          ClientRequestHandlerInterface handler) {
+    try {
+      JSONObject json = new JSONObject();
+      for (String guid : accountInfo.getLegacyGuids()) {
+        json.put(accountGuidsField(guid), true);
+      }
+      for (String guid : added) {
+        json.put(accountGuidsField(guid), true);
+      }
+      if (json.length() > 0) {
+        handler.getInternalClient().execute(
+                GNSCommandInternal.fieldUpdate(header, CommandType.ReplaceUserJSONUnsigned,
+                        GNSProtocol.GUID.toString(), accountInfo.getGuid(),
+                        GNSProtocol.USER_JSON.toString(), json));
+        accountInfo.clearLegacyGuids();
+      }
+      if (removed != null) {
+        handler.getInternalClient().execute(
+                GNSCommandInternal.fieldUpdate(header, CommandType.RemoveFieldUnsigned,
+                        GNSProtocol.GUID.toString(), accountInfo.getGuid(),
+                        GNSProtocol.FIELD.toString(), accountGuidsField(removed)));
+      }
+      return ResponseCode.NO_ERROR;
+    } catch (JSONException e) {
+      GNSConfig.getLogger().log(Level.SEVERE,
+              "JSON parse error updating account guids:{0}", e);
+      return ResponseCode.JSON_PARSE_ERROR;
+    } catch (ClientException e) {
+      GNSConfig.getLogger().log(Level.SEVERE,
+              "Problem updating account guids:{0}", e);
+      return e.getCode();
+    } catch (IOException | InternalRequestException e) {
+      GNSConfig.getLogger().log(Level.SEVERE,
+              "Problem updating account guids:{0}", e);
+      return new ClientException(e).getCode();
+    }
+  }
+
+  /**
+   * Returns a page of the guids of the account starting at the bucket
+   * {@code cursor}. Pages are sized by the number of guids in the account
+   * so that each has about {@link #ACCOUNT_GUIDS_PAGE_SIZE} guids. Guids still
+   * listed in the account info are returned in the first page.
+   *
+   * @param header
+   * @param accountInfo
+   * @param cursor - the bucket to start at, 0 for the first page
+   * @param handler
+   * @return the page
+   * @throws FailedDBOperationException
+   * @throws ClientException
+   * @throws IOException
+   * @throws InternalRequestException
+   * @throws JSONException
+   */
+  public static AccountGuidsPage lookupAccountGuidsPage(InternalRequestHeader header,
+          AccountInfo accountInfo, int cursor, ClientRequestHandlerInterface handler)
+          throws FailedDBOperationException, ClientException, IOException,
+          InternalRequestException, JSONException {
+    if (cursor < 0 || cursor >= ACCOUNT_GUIDS_BUCKETS) {
+      throw new IllegalArgumentException("Bad account guids cursor " + cursor);
+    }
+    int span = (int) Math.min(ACCOUNT_GUIDS_BUCKETS, Math.max(1,
+            (long) ACCOUNT_GUIDS_BUCKETS * ACCOUNT_GUIDS_PAGE_SIZE
+            / Math.max(1, accountInfo.getGuidCount())));
+    int end = Math.min(ACCOUNT_GUIDS_BUCKETS, cursor + span);
+    String[] fields = new String[end - cursor];
+    for (int i = cursor; i < end; i++) {
+      fields[i - cursor] = accountGuidsBucketField(i);
+    }
+    JSONObject buckets = readAccountGuidsBuckets(header, accountInfo.getGuid(), fields, handler);
+    JSONArray guids = new JSONArray();
+    if (cursor == 0) {
+      for (String guid : accountInfo.getLegacyGuids()) {
+        guids.put(guid);
+      }
+    }
+    for (String field : fields) {
+      Object value = buckets.opt(field);
+      if (value != null) {
+        JSONObject bucket = value instanceof JSONObject ? (JSONObject) value
+                : new JSONObject(value.toString());
+        Iterator<?> keys = bucket.keys();
+        while (keys.hasNext()) {
+          guids.put(keys.next());
+        }
+      }
+    }
+    return new AccountGuidsPage(guids, end < ACCOUNT_GUIDS_BUCKETS ? end : -1);
+  }
+
+  /**
+   * Returns all the guids of the account.
+   *
+   * @param header
+   * @param accountInfo
+   * @param handler
+   * @return a list of guids
+   * @throws FailedDBOperationException
+   * @throws ClientException
+   * @throws IOException
+   * @throws InternalRequestException
+   * @throws JSONException
+   */
+  public static List<String> lookupAccountGuids(InternalRequestHeader header,
+          AccountInfo accountInfo, ClientRequestHandlerInterface handler)
+          throws FailedDBOperationException, ClientException, IOException,
+          InternalRequestException, JSONException {
+    List<String> result = new ArrayList<>(accountInfo.getGuidCount());
+    int cursor = 0;
+    do {
+      AccountGuidsPage page = lookupAccountGuidsPage(header, accountInfo, cursor, handler);
+      for (int i = 0; i < page.getGuids().length(); i++) {
+        result.add(page.getGuids().getString(i));
+      }
+      cursor = page.getCursor();
+    } while (cursor >= 0);
+    return result;
+  }
+
+  // Reads the buckets locally if the account guid is here, otherwise from a replica that has it
+  private static JSONObject readAccountGuidsBuckets(InternalRequestHeader header, String guid,
+          String[] fields, ClientRequestHandlerInterface handler)
+          throws FailedDBOperationException, ClientException, IOException,
+          InternalRequestException, JSONException {
+    try {
+      return NameRecord.getNameRecordMultiUserFields(handler.getApp().getDB(), guid,
+              ColumnFieldType.USER_JSON, fields).getValuesMap();
+    } catch (RecordNotFoundException | FieldNotFoundException e) {
+      return handler.getInternalClient().execute(
+              GNSCommandInternal.fieldRead(guid, new ArrayList<>(Arrays.asList(fields)), header))
+              .getResultJSONObject();
+    }
+  }
+
+  // True if the guid is in its bucket of the account record
+  private static boolean accountGuidsBucketHas(InternalRequestHeader header, String accountGuid,
+          String guid, ClientRequestHandlerInterface handler)
+          throws FailedDBOperationException, ClientException, IOException,
+          InternalRequestException, JSONException {
+    String field = accountGuidsBucketField(accountGuidsBucket(guid));
+    Object value = readAccountGuidsBuckets(header, accountGuid, new String[]{field}, handler)
+            .opt(field);
+    if (value == null) {
+      return false;
+    }
+    JSONObject bucket = value instanceof JSONObject ? (JSONObject) value
+            : new JSONObject(value.toString());
+    return bucket.has(guid);
+  }
+
+  private static int accountGuidsBucket(String guid) {
+    return guid.hashCode() & (ACCOUNT_GUIDS_BUCKETS - 1);
+  }
+
+  private static String accountGuidsBucketField(int bucket) {
+    return ACCOUNT_GUIDS + "." + String.format("%02x", bucket);
+  }
+
+  private static String accountGuidsField(String guid) {
+    return accountGuidsBucketField(accountGuidsBucket(guid)) + "." + guid;
+  }
+
   private static ResponseCode updateGuidInfo(InternalRequestHeader header,
           CommandPacket commandPacket,
           GuidInfo guidInfo,
@@ -24,6 +24,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -39,6 +40,11 @@ import java.util.Set;
  * also have additional associated GUIDs. For certain things we also keep an encrypted
  * password.
  *
+ * Only the number of associated GUIDs is kept here, the GUIDs themselves are kept
+ * in buckets in the account record by {@link AccountAccess} so that adding or removing
+ * one doesn't rewrite all of them. Accounts written before that still have the list
+ * of GUIDs in here until their next add or remove moves them into the buckets.
+ *
  * @author westy, arun
  */
 public class AccountInfo {
@@ -48,7 +54,8 @@ public class AccountInfo {
   // This is reserved for future use.
   private final String type;
   private final Set<String> aliases;
-  private final Set<String> guids;
+  private final Set<String> legacyGuids;
+  private int guidCount;
   private final Date created;
   private Date updated;
   /**
@@ -84,7 +91,8 @@ public class AccountInfo {
     this.guid = guid;
     this.type = "DEFAULT"; // huh? :-)
     this.aliases = new HashSet<>();
-    this.guids = new HashSet<>();
+    this.legacyGuids = new HashSet<>();
+    this.guidCount = 0;
     this.created = new Date();
     this.updated = new Date();
     this.password = password;
@@ -179,33 +187,62 @@ public class AccountInfo {
   }
 
   /**
-   * Returns the guids associated with this account.
+   * Returns the number of guids associated with this account.
+   *
+   * @return the number of guids
+   */
+  public int getGuidCount() {
+    return guidCount;
+  }
+
+  /**
+   * Returns the guids that are still listed in the account info itself
+   * instead of in the buckets of the account record.
    *
    * @return a list of strings
    */
-  public List<String> getGuids() {
-    return new ArrayList<>(guids);
+  public List<String> getLegacyGuids() {
+    return new ArrayList<>(legacyGuids);
   }
 
   /**
-   * Adds a guid to this account.
+   * Forgets the guids listed in the account info itself once they
+   * have been moved into the buckets of the account record.
    *
-   * @param guid
    * @return {@code this}
    */
-  public AccountInfo addGuid(String guid) {
-    guids.add(guid);
+  public AccountInfo clearLegacyGuids() {
+    legacyGuids.clear();
+    return this;
+  }
+
+  /**
+   * Counts guids added to this account.
+   *
+   * @param count
+   * @return {@code this}
+   */
+  public AccountInfo noteGuidsAdded(int count) {
+    guidCount += count;
     return this;
   }
 
   /**
-   * Removes a guid from this account.
+   * Counts a guid removed from this account if it was one of its guids.
+   * Call this once the guid has been removed from the buckets of the account
+   * record.
    *
    * @param guid
-   * @return true if the guid was found
+   * @param wasListed - true if the guid was listed in here or in the buckets
+   * of the account record before it was removed
+   * @return true if the guid was one of the guids of this account
    */
-  public boolean removeGuid(String guid) {
-    return guids.remove(guid);
+  public boolean noteGuidRemoved(String guid, boolean wasListed) {
+    if (legacyGuids.remove(guid) || wasListed) {
+      guidCount = Math.max(0, guidCount - 1);
+      return true;
+    }
+    return false;
   }
 
   /**
@@ -290,6 +327,7 @@ public class AccountInfo {
   private static final String TYPE = "type";
   private static final String ALIASES = "aliases";
   private static final String GUIDS = "guids";
+  private static final String GUIDCNT = "guidCnt";
   private static final String CREATED = "created";
   private static final String UPDATED = "updated";
   private static final String PASSWORD = "password";
@@ -309,7 +347,9 @@ public class AccountInfo {
     this.guid = json.getString(GUID);
     this.type = json.getString(TYPE);
     this.aliases = JSONUtils.JSONArrayToHashSet(json.getJSONArray(ALIASES));
-    this.guids = JSONUtils.JSONArrayToHashSet(json.getJSONArray(GUIDS));
+    this.legacyGuids = json.has(GUIDS) ? JSONUtils.JSONArrayToHashSet(json.getJSONArray(GUIDS))
+            : new HashSet<String>();
+    this.guidCount = json.optInt(GUIDCNT, legacyGuids.size());
     this.created = Format.parseDateUTC(json.getString(CREATED));
     this.updated = Format.parseDateUTC(json.getString(UPDATED));
     this.password = json.optString(PASSWORD, null);
@@ -329,30 +369,51 @@ public class AccountInfo {
     return toJSONObject(false);
   }
 
-  // If the number of subguids exceeds this we don't return them
-  // to the client.
-  private static final int TOO_MANY_GUIDS = 50000;
+  /**
+   * If the number of subguids exceeds this we don't return them
+   * to the client.
+   */
+  public static final int TOO_MANY_GUIDS = 50000;
 
   /**
    * Converts this instance into a JSONObject. If forClient is true, we don't
-   * include some information like the verification code and the actual
-   * guids if there are too many.
+   * include some information like the verification code and the guids
+   * still listed in here if there are too many.
    *
    * @param forClient
    * @return the JSON Object
    * @throws JSONException
    */
   public JSONObject toJSONObject(boolean forClient) throws JSONException {
+    return toJSONObject(forClient, null);
+  }
+
+  /**
+   * Converts this instance into a JSONObject for the client with all the
+   * guids of the account, which the caller has read from the buckets of the
+   * account record. The guids are left out if there are too many.
+   *
+   * @param guids
+   * @return the JSON Object
+   * @throws JSONException
+   */
+  public JSONObject toJSONObjectForClient(Collection<String> guids) throws JSONException {
+    return toJSONObject(true, guids);
+  }
+
+  private JSONObject toJSONObject(boolean forClient, Collection<String> guids) throws JSONException {
     JSONObject json = new JSONObject();
     json.put(USERNAME, name);
     json.put(GUID, guid);
     json.put(TYPE, type);
     json.put(ALIASES, new JSONArray(aliases));
-    if (forClient && guids.size() > TOO_MANY_GUIDS) {
-      json.put("guidCnt", guids.size());
-    } else {
-      json.put("guidCnt", guids.size());
-      json.put(GUIDS, new JSONArray(guids));
+    json.put(GUIDCNT, guidCount);
+    if (guids != null) {
+      if (guids.size() <= TOO_MANY_GUIDS) {
+        json.put(GUIDS, new JSONArray(guids));
+      }
+    } else if (!legacyGuids.isEmpty() && !(forClient && guidCount > TOO_MANY_GUIDS)) {
+      json.put(GUIDS, new JSONArray(legacyGuids));
     }
     json.put(CREATED, Format.formatDateUTC(created));
     json.put(UPDATED, Format.formatDateUTC(updated));
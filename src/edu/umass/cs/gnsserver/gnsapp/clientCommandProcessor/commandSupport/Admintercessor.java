@@ -84,6 +84,14 @@ public class Admintercessor {
    * This is where the final dump response results are put once we see the sentinel packet.
    */
   private final ConcurrentMap<Integer, Map<String, TreeSet<NameRecord>>> dumpResult;
+  /**
+   * When the last page of records came in for each dump that is still running.
+   */
+  private final ConcurrentMap<Integer, Long> dumpProgress;
+  /**
+   * How long to wait for the next page of a dump.
+   */
+  private static final long DUMP_TIMEOUT_MS = 10000;
 
   /**
    * The thread that collects results from the servers.
@@ -103,6 +111,7 @@ public class Admintercessor {
     randomID = new Random();
     dumpStorage = new ConcurrentHashMap<>(10, 0.75f, 3);
     dumpResult = new ConcurrentHashMap<>(10, 0.75f, 3);
+    dumpProgress = new ConcurrentHashMap<>(10, 0.75f, 3);
     adminResult = new ConcurrentHashMap<>(10, 0.75f, 3);
   }
 
@@ -174,9 +183,14 @@ public class Admintercessor {
     try {
       ClientCommandProcessorConfig.getLogger().log(Level.FINER, "Waiting for dump response id: {0}", id);
       synchronized (dumpMonitor) {
-        long timeoutExpiredMs = System.currentTimeMillis() + 10000;
+        long timeoutExpiredMs = System.currentTimeMillis() + DUMP_TIMEOUT_MS;
         while (!dumpResult.containsKey(id)) {
-          dumpMonitor.wait(timeoutExpiredMs - System.currentTimeMillis());
+          dumpMonitor.wait(Math.max(1, timeoutExpiredMs - System.currentTimeMillis()));
+          // A large dump takes many pages, only give up if no page has come in for a while
+          Long lastPage = dumpProgress.get(id);
+          if (lastPage != null) {
+            timeoutExpiredMs = Math.max(timeoutExpiredMs, lastPage + DUMP_TIMEOUT_MS);
+          }
           if (System.currentTimeMillis() >= timeoutExpiredMs) {
             // we timed out... only got partial results{
             Map<String, TreeSet<NameRecord>> recordsMap = dumpStorage.get(id);
@@ -188,6 +202,7 @@ public class Admintercessor {
           }
         }
       }
+      dumpProgress.remove(id);
 
       ClientCommandProcessorConfig.getLogger().log(Level.FINER, "Dump response id received: {0}", id);
     } catch (InterruptedException x) {
@@ -264,11 +279,16 @@ public class Admintercessor {
             // pull the records out of the dump response and put them in dumpStorage
             JSONArray jsonArray = dumpResponse.getJsonArray();
             String serverID = dumpResponse.getPrimaryNameServer();
-            TreeSet<NameRecord> records = new TreeSet<>();
+            // servers send their records a page at a time
+            TreeSet<NameRecord> records = recordsMap.get(serverID);
+            if (records == null) {
+              records = new TreeSet<>();
+              recordsMap.put(serverID, records);
+            }
             for (int i = 0; i < jsonArray.length(); i++) {
               records.add(new NameRecord(null, jsonArray.getJSONObject(i)));
             }
-            recordsMap.put(serverID, records);
+            dumpProgress.put(id, System.currentTimeMillis());
           } catch (JSONException e) {
             ClientCommandProcessorConfig.getLogger().log(Level.WARNING, "JSON error during dump reponse processing: {0}", e);
           }
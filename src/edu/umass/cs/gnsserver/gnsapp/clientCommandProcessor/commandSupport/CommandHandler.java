@@ -27,6 +27,7 @@ import edu.umass.cs.gnscommon.packets.ResponsePacket;
 import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientCommandProcessorConfig;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.gnsapp.GNSApp;
 import edu.umass.cs.gnsserver.gnsapp.GNSApplicationInterface;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 import edu.umass.cs.gnsserver.main.GNSConfig;
@@ -117,6 +118,12 @@ public class CommandHandler {
 	                          (System.currentTimeMillis() - executeCommandStart),
 	                          LONG_DELAY_THRESHOLD});
 	      }
+	      // Remember clients that cache this read so they hear about updates
+	      if (commandPacket.isCachedRead() && commandPacket.getClientAddress() != null
+	              && !returnValue.getExceptionOrErrorCode().isExceptionOrError()) {
+	        GNSApp.getCachedReaders().readerAdded(commandPacket.getServiceName(),
+	                commandPacket.getClientAddress());
+	      }
 	      // the last arguments here in the call below are instrumentation
 	      // that the client can use to determine LNS load
 	      ResponsePacket returnPacket = new ResponsePacket(
@@ -172,7 +179,12 @@ public class CommandHandler {
   private static CommandPacket addMessageWithoutSignatureToCommand(
           CommandPacket commandPacket) throws JSONException {
     JSONObject command = PacketUtils.getCommand(commandPacket);
-    CommandUtils.addMessageWithoutSignatureToJSON(command);
+    if (commandPacket.getSignedCommand() != null) {
+      // Signed over the string it was sent as so there is no canonical JSON to make
+      command.put(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), commandPacket.getSignedCommand());
+    } else {
+      CommandUtils.addMessageWithoutSignatureToJSON(command);
+    }
     return commandPacket;
   }
 
@@ -248,6 +260,35 @@ public class CommandHandler {
     return header;
   }
 
+  /**
+   * Sends the response to a command that was handled in a non-blocking
+   * manner, i.e., one whose execution returned null, directly to the
+   * client address of the command.
+   *
+   * @param commandPacket
+   * @param returnValue
+   * @param receiptTime
+   * @param app
+   */
+  public static void sendDeferredCommandResponse(CommandPacket commandPacket,
+          CommandResponse returnValue, long receiptTime,
+          GNSApplicationInterface<String> app) {
+    ResponsePacket returnPacket = new ResponsePacket(
+            commandPacket.getRequestID(),
+            commandPacket.getServiceName(), returnValue, 0, 0,
+            System.currentTimeMillis() - receiptTime);
+    try {
+      ClientCommandProcessorConfig.getLogger().log(Level.FINE,
+              "{0} sending deferred command reply: {1}",
+              new Object[]{app, returnPacket});
+      app.sendToAddress(commandPacket.getClientAddress(),
+              returnPacket.toJSONObject());
+    } catch (IOException | JSONException e) {
+      ClientCommandProcessorConfig.getLogger().log(Level.SEVERE,
+              "Problem replying to command: {0}", e);
+    }
+  }
+
   private static long lastStatsTime = 0;
 
   /**
@@ -29,15 +29,25 @@ import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import edu.umass.cs.gnsserver.gnsapp.GNSApp;
 import org.apache.commons.lang3.time.DateUtils;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import edu.umass.cs.gnscommon.CommandType;
 import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.ResponseCode;
 import edu.umass.cs.gnscommon.SharedGuidUtils;
@@ -47,17 +57,24 @@ import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
 import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gigapaxos.interfaces.RequestFuture;
+import edu.umass.cs.gnscommon.packets.commandreply.GuidsReadResult;
 import edu.umass.cs.gnscommon.packets.commandreply.SelectHandleInfo;
+import edu.umass.cs.gnscommon.packets.commandreply.SelectPage;
 import edu.umass.cs.gnscommon.utils.Base64;
 import edu.umass.cs.gnsserver.database.ColumnFieldType;
 import edu.umass.cs.gnsserver.gnsapp.GNSApplicationInterface;
+import edu.umass.cs.gnsserver.gnsapp.GNSClientInternal;
+import edu.umass.cs.gnsserver.gnsapp.GNSCommandInternal;
 import edu.umass.cs.gnsserver.gnsapp.Select;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.AclCheckResult;
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSAccessSupport;
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSAuthentication;
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSFieldAccess;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSGroupAccess;
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSUpdateSupport;
+import edu.umass.cs.gnsserver.gnsapp.packet.InternalCommandPacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectOperation;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectResponsePacket;
@@ -201,6 +218,142 @@ public class FieldAccess {
 
   }
 
+  /**
+   * Reads the value of fields in many guids for one reader.
+   * The request is signed once by the reader and sent to the reader's
+   * name servers so the signature is checked against the local public key.
+   * The guids on this server are read directly and the rest are read
+   * in parallel from their name servers with ACL checks on the reader.
+   * At most {@link GNSConfig.GNSC#READ_MULTIPLE_GUIDS_MAX_GUIDS} guids are read
+   * in one request, at most {@link GNSConfig.GNSC#READ_MULTIPLE_GUIDS_MAX_IN_FLIGHT}
+   * remote reads are outstanding at once and all of them share one deadline.
+   *
+   * @param header
+   * @param commandPacket
+   * @param reader
+   * @param guids
+   * @param fields
+   * @param signature
+   * @param message
+   * @param timestamp
+   * @param handler
+   * @return a {@link GuidsReadResult} with the values or error of each guid
+   */
+  public static CommandResponse lookupMultipleGuids(InternalRequestHeader header, CommandPacket commandPacket,
+          String reader, List<String> guids, ArrayList<String> fields,
+          String signature, String message, Date timestamp,
+          ClientRequestHandlerInterface handler) {
+    // The guids are read as the reader without any further signature checks
+    // so an unsigned request (which would pass for a world readable reader
+    // guid) must not get this far.
+    if (reader == null || signature == null || message == null) {
+      return new CommandResponse(ResponseCode.SIGNATURE_ERROR, GNSProtocol.BAD_RESPONSE.toString()
+              + " " + GNSProtocol.BAD_SIGNATURE.toString());
+    }
+    if (guids.size() > Config.getGlobalInt(GNSConfig.GNSC.READ_MULTIPLE_GUIDS_MAX_GUIDS)) {
+      return new CommandResponse(ResponseCode.TOO_MANY_GUIDS_EXCEPTION, GNSProtocol.BAD_RESPONSE.toString()
+              + " " + GNSProtocol.TOO_MANY_GUIDS.toString() + " " + guids.size() + " guids in one read");
+    }
+    long startTime = System.currentTimeMillis();
+    // Checks the signature against the public key of the reader which is on this server.
+    ResponseCode errorCode = signatureAndACLCheckForRead(header, commandPacket, reader,
+            GNSProtocol.ENTIRE_RECORD.toString(),
+            null, //fields
+            reader, signature, message, timestamp, handler.getApp());
+    if (errorCode.isExceptionOrError()) {
+      return new CommandResponse(errorCode, GNSProtocol.BAD_RESPONSE.toString() + " " + errorCode.getProtocolCode());
+    }
+    GuidsReadResult result = new GuidsReadResult();
+    // In the order they were sent so the oldest is waited for when the window is full
+    Map<String, RequestFuture<CommandPacket>> remoteReads = new LinkedHashMap<>();
+    int maxInFlight = Config.getGlobalInt(GNSConfig.GNSC.READ_MULTIPLE_GUIDS_MAX_IN_FLIGHT);
+    long deadline = -1;
+    try {
+      for (String guid : guids) {
+        if (handler.getApp().getDB().containsName(guid)) {
+          lookupFieldsForReader(header, guid, fields, reader, result, handler);
+          continue;
+        }
+        // Sent as the reader so that its ACL is checked at the other name server
+        CommandPacket read = GNSCommandInternal.fieldReadAsQuerier(guid, fields, reader, header);
+        if (deadline < 0) {
+          deadline = startTime + GNSClientInternal.getExecuteTimeout(read);
+        }
+        if (remoteReads.size() >= maxInFlight) {
+          Iterator<Map.Entry<String, RequestFuture<CommandPacket>>> oldest = remoteReads.entrySet().iterator();
+          Map.Entry<String, RequestFuture<CommandPacket>> entry = oldest.next();
+          oldest.remove();
+          collectRemoteRead(entry.getKey(), entry.getValue(), deadline, result);
+        }
+        if (System.currentTimeMillis() >= deadline) {
+          result.putError(guid, ResponseCode.TIMEOUT);
+          continue;
+        }
+        try {
+          remoteReads.put(guid, handler.getInternalClient().executeAsync(read));
+        } catch (IOException e) {
+          result.putError(guid, ResponseCode.REMOTE_QUERY_EXCEPTION);
+        }
+      }
+      for (Map.Entry<String, RequestFuture<CommandPacket>> entry : remoteReads.entrySet()) {
+        collectRemoteRead(entry.getKey(), entry.getValue(), deadline, result);
+      }
+      return new CommandResponse(ResponseCode.NO_ERROR, result.toJSONObject().toString());
+    } catch (FailedDBOperationException e) {
+      return new CommandResponse(ResponseCode.DATABASE_OPERATION_ERROR, GNSProtocol.BAD_RESPONSE.toString()
+              + " " + GNSProtocol.DATABASE_OPERATION_ERROR.toString() + " " + e);
+    } catch (InternalRequestException e) {
+      return new CommandResponse(e.getCode(), GNSProtocol.BAD_RESPONSE.toString() + " " + e.getMessage());
+    } catch (JSONException e) {
+      return new CommandResponse(ResponseCode.JSON_PARSE_ERROR, GNSProtocol.BAD_RESPONSE.toString()
+              + " " + GNSProtocol.JSON_PARSE_ERROR.toString() + " " + e);
+    }
+  }
+
+  // Waits until the deadline for the read of a remote guid and puts its values or error in the result.
+  private static void collectRemoteRead(String guid, RequestFuture<CommandPacket> future,
+          long deadline, GuidsReadResult result) {
+    try {
+      CommandPacket response = future.get(
+              Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+      result.putValues(guid,
+              new ValuesMap(new JSONObject(response.getResultString())).removeInternalFields());
+    } catch (ClientException e) {
+      result.putError(guid, e.getCode());
+    } catch (JSONException e) {
+      result.putError(guid, ResponseCode.JSON_PARSE_ERROR);
+    } catch (TimeoutException e) {
+      result.putError(guid, ResponseCode.TIMEOUT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result.putError(guid, ResponseCode.UNSPECIFIED_ERROR);
+    } catch (ExecutionException e) {
+      result.putError(guid, e.getCause() instanceof ClientException
+              ? ((ClientException) e.getCause()).getCode() : ResponseCode.UNSPECIFIED_ERROR);
+    }
+  }
+
+  // Reads the fields of a local guid after checking the ACL of the reader, whose signature
+  // has already been checked.
+  private static void lookupFieldsForReader(InternalRequestHeader header, String guid,
+          ArrayList<String> fields, String reader, GuidsReadResult result,
+          ClientRequestHandlerInterface handler) throws FailedDBOperationException, JSONException {
+    ResponseCode errorCode;
+    try {
+      errorCode = NSAuthentication.signatureAndACLCheck(header, guid, null, fields, reader,
+              null, null, MetaDataTypeName.READ_WHITELIST, handler.getApp(), true);
+    } catch (InvalidKeyException | InvalidKeySpecException | SignatureException
+            | NoSuchAlgorithmException | UnsupportedEncodingException e) {
+      errorCode = ResponseCode.SIGNATURE_ERROR;
+    }
+    if (errorCode.isExceptionOrError()) {
+      result.putError(guid, errorCode);
+    } else {
+      result.putValues(guid, NSFieldAccess.lookupFieldsLocalNoAuth(header, guid, fields,
+              ColumnFieldType.USER_JSON, handler).removeInternalFields());
+    }
+  }
+
   /**
    * Supports reading of the old style data formatted as a JSONArray of strings.
    * Much of the internal system data is still stored in this format.
@@ -575,7 +728,7 @@ public class FieldAccess {
   ///
   /// SELECT METHODS
   ///
-  private static SelectResponsePacket executeSelect(InternalRequestHeader header, CommandPacket commandPacket,
+  private static CommandResponse executeSelect(InternalRequestHeader header, CommandPacket commandPacket,
           SelectOperation operation,
           String reader, String key, Object value, Object otherValue,
           String signature, String message,
@@ -587,20 +740,70 @@ public class FieldAccess {
 	  return executeSelectHelper(header, commandPacket, packet, reader, signature, message, app);
   }
   
-  private static SelectResponsePacket executeSelectHelper(InternalRequestHeader header, 
-		  CommandPacket commandPacket, SelectRequestPacket packet,
+  /**
+   * Does the signature check and starts the select. Selects from clients are 
+   * answered from the select's future, so this returns null and the command 
+   * response is sent to the client when the select completes. Internal 
+   * requests and requests that can't be replied to directly wait for the select.
+   */
+  private static CommandResponse executeSelectHelper(InternalRequestHeader header, 
+		  final CommandPacket commandPacket, final SelectRequestPacket packet,
 		  String reader, String signature, String message,
-		  GNSApplicationInterface<String> app)
+		  final GNSApplicationInterface<String> app)
 				  throws FailedDBOperationException, JSONException, UnknownHostException, InternalRequestException 
   {
 	  // First do a signature check 
 	  if (!signatureCheckForSelect(reader, signature, message, app)) 
 	  {
-		  return null;
+		  return new CommandResponse(ResponseCode.SIGNATURE_ERROR,
+				  GNSProtocol.BAD_RESPONSE.toString() + " "
+						  + GNSProtocol.BAD_SIGNATURE.toString());
+	  }
+	  
+	  if (header == null || header.getDoNotReplyToClient() 
+			  || commandPacket instanceof InternalCommandPacket || header.verifyInternal()
+			  || commandPacket.getClientAddress() == null)
+	  {
+		  return getCommandResponseForSelect(packet, GNSApp.getSelector().
+		       		handleSelectRequestFromClient(header, packet, app));
 	  }
 	  
-	  return  GNSApp.getSelector().
-		       		handleSelectRequestFromClient(header, packet, app);
+	  final long receiptTime = System.currentTimeMillis();
+	  GNSApp.getSelector().handleSelectRequestFromClientAsync(header, packet, app)
+	  	.whenComplete(new BiConsumer<SelectResponsePacket, Throwable>()
+	  	{
+	  		@Override
+	  		public void accept(SelectResponsePacket selectResp, Throwable e)
+	  		{
+	  			CommandResponse response;
+	  			if (e != null)
+	  			{
+	  				Throwable cause = e instanceof CompletionException && e.getCause() != null 
+	  						? e.getCause() : e;
+	  				LOGGER.log(Level.FINE, "Select {0} failed: {1}", 
+	  						new Object[]{packet.getRequestID(), cause});
+	  				response = new CommandResponse(new ClientException(cause).getCode(),
+	  						GNSProtocol.BAD_RESPONSE.toString() + " "
+	  								+ GNSProtocol.UNSPECIFIED_ERROR.toString() 
+	  								+ " Select failed: " + cause.getMessage());
+	  			}
+	  			else
+	  			{
+	  				try 
+	  				{
+	  					response = getCommandResponseForSelect(packet, selectResp);
+	  				} catch (JSONException ex) 
+	  				{
+	  					response = new CommandResponse(ResponseCode.JSON_PARSE_ERROR,
+	  							GNSProtocol.BAD_RESPONSE.toString() + " "
+	  									+ GNSProtocol.JSON_PARSE_ERROR.toString() + " " + ex);
+	  				}
+	  			}
+	  			CommandHandler.sendDeferredCommandResponse(commandPacket, response, 
+	  					receiptTime, app);
+	  		}
+	  	});
+	  return null;
   }
 
   private static boolean signatureCheckForSelect(String reader, String signature,
@@ -645,7 +848,8 @@ public class FieldAccess {
    * @param signature
    * @param message
    * @param handler
-   * @return a command response
+   * @return a command response or null if the response is sent to the client
+   * when the select completes
    * @throws InternalRequestException
    */
   public static CommandResponse select(InternalRequestHeader header, CommandPacket commandPacket,
@@ -654,22 +858,15 @@ public class FieldAccess {
           
           ClientRequestHandlerInterface handler) throws InternalRequestException 
   {
-	  SelectResponsePacket selectResp;
 	  try 
 	  {
-		  selectResp = executeSelect(header, commandPacket, SelectOperation.EQUALS, reader, key, value, null,
+		  return executeSelect(header, commandPacket, SelectOperation.EQUALS, reader, key, value, null,
               signature, message, handler.getApp());
-
-		  if (selectResp != null && selectResp.getResponseCode().equals(ResponseCode.NO_ERROR)) 
-		  {
-			  return new CommandResponse(ResponseCode.NO_ERROR, selectResp.getRecords().toString());
-		  }
 	  } catch (IOException | JSONException | FailedDBOperationException e) 
 	  {
 		  return new CommandResponse(new ClientException(e).getCode(), 
 				  "Unspecified error in select: "+e.getMessage());
 	  }
-	  return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, "Unspecified error in select");
   }
 
   
@@ -684,7 +881,8 @@ public class FieldAccess {
    * @param signature
    * @param message
    * @param handler
-   * @return a command response
+   * @return a command response or null if the response is sent to the client
+   * when the select completes
    * @throws InternalRequestException
    */
   public static CommandResponse selectWithin(InternalRequestHeader header, CommandPacket commandPacket,
@@ -693,24 +891,16 @@ public class FieldAccess {
           String signature, String message,
           ClientRequestHandlerInterface handler) throws InternalRequestException 
   {
-	  SelectResponsePacket selectResp;
 	  try 
 	  {
-		  selectResp = executeSelect(header, commandPacket, SelectOperation.WITHIN, reader, key, value, null,
+		  return executeSelect(header, commandPacket, SelectOperation.WITHIN, reader, key, value, null,
               signature, message,
               handler.getApp());
-
-		  if (selectResp != null && selectResp.getResponseCode().equals(ResponseCode.NO_ERROR)) 
-		  {
-			  return new CommandResponse(ResponseCode.NO_ERROR, 
-					  			selectResp.getRecords().toString());
-		  }
 	  } catch (IOException | JSONException | FailedDBOperationException e) 
 	  {
 		  return new CommandResponse(new ClientException(e).getCode(),
 				  "Unspecified error in selectWithin: "+e.getMessage());
 	  }
-	  return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, "Unspecified error in selectWithin");
   }
 
   /**
@@ -725,7 +915,8 @@ public class FieldAccess {
    * @param signature
    * @param message
    * @param handler
-   * @return a command response
+   * @return a command response or null if the response is sent to the client
+   * when the select completes
    * @throws InternalRequestException
    */
   public static CommandResponse selectNear(InternalRequestHeader header, CommandPacket commandPacket,
@@ -733,22 +924,15 @@ public class FieldAccess {
           String signature, String message,
           ClientRequestHandlerInterface handler) throws InternalRequestException 
   {
-	  SelectResponsePacket selectResp;
 	  try 
 	  {
-		  selectResp = executeSelect(header, commandPacket, SelectOperation.NEAR, 
+		  return executeSelect(header, commandPacket, SelectOperation.NEAR, 
 				  reader, key, value, maxDistance, signature, message, handler.getApp());
-		  
-		  if (selectResp != null && selectResp.getResponseCode().equals(ResponseCode.NO_ERROR))
-		  {
-			  return new CommandResponse(ResponseCode.NO_ERROR, selectResp.getRecords().toString());
-		  }
 	  } catch (IOException | JSONException | FailedDBOperationException e) 
 	  {
 		  return new CommandResponse(new ClientException(e).getCode(), 
 				  "Unspecified error in selectNear:"+e.getMessage());
 	  }
-	  return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, "Unspecified error in selectNear");
   }
   
   /**
@@ -765,7 +949,8 @@ public class FieldAccess {
    * @param notificationStr
    * 
    * @param handler
-   * @return a command response
+   * @return a command response or null if the response is sent to the client
+   * when the select completes
    * @throws InternalRequestException
    */
   public static CommandResponse selectAndNotify(InternalRequestHeader header, 
@@ -780,16 +965,13 @@ public class FieldAccess {
                + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
                + " Bad query operators in " + query);
 	  }
-	  SelectResponsePacket selectResp;
 	  try
 	  {
 		  SelectRequestPacket packet = SelectRequestPacket.makeSelectNotifyRequest(
     		  reader, query, projection, notificationStr);
       
-		  selectResp = executeSelectHelper(header, commandPacket, packet, reader, 
+		  return executeSelectHelper(header, commandPacket, packet, reader, 
     		  								signature, message, handler.getApp());
-		  
-		  return getCommandResponseForSelect(packet, selectResp);
 	  } catch (IOException | JSONException | FailedDBOperationException e) 
 	  {
 		  ClientException cle = new ClientException(e);
@@ -802,7 +984,7 @@ public class FieldAccess {
    * A utility function to return a CommandResponse for a SelectRequestPacket and SelectResponsePacket.
    * @param incomingSelect
    * @param selectResponse
-   * @return
+   * @return the command response, an error response if {@code selectResponse} is null
    * @throws JSONException 
    */
   public static CommandResponse getCommandResponseForSelect(SelectRequestPacket incomingSelect, 
@@ -838,10 +1020,26 @@ public class FieldAccess {
 							  selectResponse.getErrorMessage());
 			  }
 		}
+		case SELECT_PAGE:
+		{
+			if (selectResponse != null )
+			  {
+				  if(selectResponse.getResponseCode().equals(ResponseCode.NO_ERROR))
+					  return new CommandResponse(ResponseCode.NO_ERROR, 
+							  new SelectPage(selectResponse.getRecords(), 
+									  selectResponse.getLastName()).toJSONObject().toString());
+				  else
+					  return new CommandResponse(selectResponse.getResponseCode(), 
+							  selectResponse.getErrorMessage());
+			  }
+		}
 		default:
 			break;
 	  }
-	  return null;
+	  return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR,
+			  GNSProtocol.BAD_RESPONSE.toString() + " "
+					  + GNSProtocol.UNSPECIFIED_ERROR.toString() 
+					  + " Select " + incomingSelect.getSelectOperation() + " failed");
   }
   
 
@@ -853,15 +1051,17 @@ public class FieldAccess {
    * @param reader
    * @param query
    * @param projection
+   * @param limit the maximum number of guids to return or -1 for all of them
    * @param signature
    * @param message
    * @param handler
-   * @return a command response
+   * @return a command response or null if the response is sent to the client
+   * when the select completes
    * @throws InternalRequestException
    */
   public static CommandResponse selectQuery(InternalRequestHeader header, 
 		  		  CommandPacket commandPacket,
-		            String reader, String query, List<String> projection,
+		            String reader, String query, List<String> projection, int limit,
 		             String signature, String message,
 		             ClientRequestHandlerInterface handler) throws InternalRequestException 
   {
@@ -872,14 +1072,13 @@ public class FieldAccess {
 						  + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
 						  + " Bad query operators in " + query);
 	  }
-      SelectResponsePacket selectResp;
       try 
       {
     	  SelectRequestPacket packet = SelectRequestPacket.makeQueryRequest
       											(reader, query, projection);
-      	  selectResp = executeSelectHelper(header, commandPacket, packet, reader, 
+    	  packet.setLimit(limit);
+      	  return executeSelectHelper(header, commandPacket, packet, reader, 
       		  										signature, message, handler.getApp());
-      	return getCommandResponseForSelect(packet, selectResp);
       } catch (IOException | JSONException | FailedDBOperationException e) 
       {
     	  ClientException cle = new ClientException(e);
@@ -887,6 +1086,59 @@ public class FieldAccess {
       }
   }
 
+  /**
+   * Sends a select request to the servers to retrieve the page of the guids 
+   * (or records) matching the query that comes after {@code afterName} in guid order. 
+   *
+   * @param header
+   * @param commandPacket
+   * @param reader
+   * @param query
+   * @param projection
+   * @param pageSize
+   * @param afterName
+   * The last guid of the previous page or null for the first page.
+   * @param signature
+   * @param message
+   * @param handler
+   * @return a command response or null if the response is sent to the client
+   * when the select completes
+   * @throws InternalRequestException
+   */
+  public static CommandResponse selectQueryPaged(InternalRequestHeader header, 
+		  		  CommandPacket commandPacket,
+		            String reader, String query, List<String> projection, int pageSize,
+		            String afterName,
+		             String signature, String message,
+		             ClientRequestHandlerInterface handler) throws InternalRequestException 
+  {
+	  if (Select.queryContainsEvil(query)) 
+	  {
+		  return new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED,
+				  GNSProtocol.BAD_RESPONSE.toString() + " "
+						  + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
+						  + " Bad query operators in " + query);
+	  }
+	  if (pageSize <= 0) 
+	  {
+		  return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR,
+				  GNSProtocol.BAD_RESPONSE.toString() + " "
+						  + GNSProtocol.UNSPECIFIED_ERROR.toString()
+						  + " Page size must be positive: " + pageSize);
+	  }
+      try 
+      {
+    	  SelectRequestPacket packet = SelectRequestPacket.makePageRequest
+      											(reader, query, projection, pageSize, afterName);
+    	  return executeSelectHelper(header, commandPacket, packet, reader, 
+      		  										signature, message, handler.getApp());
+      } catch (IOException | JSONException | FailedDBOperationException e) 
+      {
+    	  ClientException cle = new ClientException(e);
+    	  return new CommandResponse(cle.getCode(), "selectQueryPaged failed. "+cle.getMessage());
+      }
+  }
+
   /**
    * Sends a select request to the server to setup a context aware group guid and retrieve all the guids matching the query.
    *
@@ -896,7 +1148,7 @@ public class FieldAccess {
    * @param accountGuid
    * @param query
    * @param publicKey
-   * @param interval - the refresh interval (queries made more quickly than this will get a cached value)
+   * @param interval - the refresh interval, stored with the group (the members are kept up to date as records change)
    * @param signature
    * @param message
    * @param handler
@@ -928,7 +1180,7 @@ public class FieldAccess {
       if (!accountInfo.isVerified()) {
         return new CommandResponse(ResponseCode.VERIFICATION_ERROR, GNSProtocol.BAD_RESPONSE.toString()
                 + " " + GNSProtocol.VERIFICATION_ERROR.toString() + " Account not verified");
-      } else if (accountInfo.getGuids().size() > Config.getGlobalInt(GNSConfig.GNSC.ACCOUNT_GUID_MAX_SUBGUIDS)) {
+      } else if (accountInfo.getGuidCount() > Config.getGlobalInt(GNSConfig.GNSC.ACCOUNT_GUID_MAX_SUBGUIDS)) {
         return new CommandResponse(ResponseCode.TOO_MANY_GUIDS_EXCEPTION, GNSProtocol.BAD_RESPONSE.toString()
                 + " " + GNSProtocol.TOO_MANY_GUIDS.toString());
       } else {
@@ -943,25 +1195,64 @@ public class FieldAccess {
         }
       }
     }
-    /*JSONArray result;
-
+    if (Select.queryContainsEvil(query)) {
+      return new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED,
+              GNSProtocol.BAD_RESPONSE.toString() + " "
+              + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
+              + " Bad query operators in " + query);
+    }
     try {
-      SelectRequestPacket packet = SelectRequestPacket.makeGroupSetupRequest(-1,
-              reader, query, null, guid, interval);
-      result = executeSelectHelper(header, commandPacket, packet, reader, signature, message, handler.getApp());
-      if (result != null) {
-        return new CommandResponse(ResponseCode.NO_ERROR, result.toString());
+      // Every name server registers the query and answers with its matching guids.
+      // From then on the name servers push changes in the members to the group guid.
+      SelectRequestPacket packet = SelectRequestPacket.makeGroupSetupRequest(reader, query, guid);
+      SelectResponsePacket selectResp = null;
+      if (signatureCheckForSelect(reader, signature, message, handler.getApp())) {
+        selectResp = setupGroupMembers(header, packet, guid, handler);
+      }
+      if (selectResp == null || !selectResp.getResponseCode().equals(ResponseCode.NO_ERROR)) {
+        return getCommandResponseForSelect(packet, selectResp);
+      }
+      NSGroupAccess.updateQueryString(header, guid, query, null, handler);
+      if (reader != null) {
+        NSGroupAccess.updateQueryReader(header, guid, reader, handler);
+      }
+      if (interval > 0) {
+        NSGroupAccess.updateMinRefresh(header, guid, interval, handler);
       }
+      return new CommandResponse(ResponseCode.NO_ERROR, selectResp.getRecords().toString());
+    } catch (ClientException e) {
+      return new CommandResponse(e.getCode(), "selectGroupSetupQuery failed. " + e.getMessage());
     } catch (IOException | JSONException | FailedDBOperationException e) {
-    	ClientException cle = new ClientException(e);
-    	return new CommandResponse(cle.getCode(), "selectGroupSetupQuery failed. "+cle.getMessage());
+      ClientException cle = new ClientException(e);
+      return new CommandResponse(cle.getCode(), "selectGroupSetupQuery failed. " + cle.getMessage());
     }
-    return null;*/
-    throw new RuntimeException("selectGroupSetupQuery not supported");
+  }
+
+  // Runs the setup select, which registers the query at every name server,
+  // and replaces the members of the group guid with the result.
+  private static SelectResponsePacket setupGroupMembers(InternalRequestHeader header,
+          SelectRequestPacket packet, String guid, ClientRequestHandlerInterface handler)
+          throws ClientException, IOException, JSONException, FailedDBOperationException,
+          InternalRequestException {
+    SelectResponsePacket selectResp = GNSApp.getSelector()
+            .handleSelectRequestFromClient(header, packet, handler.getApp());
+    if (selectResp != null && selectResp.getResponseCode().equals(ResponseCode.NO_ERROR)) {
+      handler.getInternalClient().execute(
+              GNSCommandInternal.fieldUpdate(header,
+                      CommandType.ReplaceOrCreateListUnsigned,
+                      GNSProtocol.GUID.toString(), guid,
+                      GNSProtocol.FIELD.toString(), GroupAccess.GROUP,
+                      GNSProtocol.VALUE.toString(), selectResp.getRecords()));
+      NSGroupAccess.updateLastUpdate(header, guid, new Date(), handler);
+    }
+    return selectResp;
   }
 
   /**
-   * Sends a select request to the server to retrieve the members of a context aware group guid.
+   * Returns the members of a context aware group guid.
+   * The name servers keep the members up to date so this is a read of the group guid.
+   * A name server forgets the groups when it restarts so once the min refresh interval
+   * of the group has passed the group is set up again before the members are read.
    *
    * @param header
    * @param commandPacket
@@ -978,19 +1269,35 @@ public class FieldAccess {
           String signature, String message,
           ClientRequestHandlerInterface handler) throws InternalRequestException 
   {
-	  throw new RuntimeException("selectGroupLookupQuery not supported");
-    /*JSONArray result;
+    // The members are kept up to date by the name servers so this is just a read
+    // of the group guid.
     try {
-      SelectRequestPacket packet = SelectRequestPacket.MakeGroupLookupRequest(-1, reader, accountGuid);
-      result = executeSelectHelper(header, commandPacket, packet, reader, signature, message, handler.getApp());
-      if (result != null) {
-        return new CommandResponse(ResponseCode.NO_ERROR, result.toString());
+      Date lastUpdate = NSGroupAccess.getLastUpdate(header, accountGuid, handler);
+      if (lastUpdate == null || lastUpdate.getTime()
+              + NSGroupAccess.getMinRefresh(header, accountGuid, handler) * 1000L < System.currentTimeMillis()) {
+        String query = NSGroupAccess.getQueryString(header, accountGuid, handler);
+        if (query != null) {
+          SelectResponsePacket selectResp = setupGroupMembers(header,
+                  SelectRequestPacket.makeGroupSetupRequest(
+                          NSGroupAccess.getQueryReader(header, accountGuid, handler), query, accountGuid),
+                  accountGuid, handler);
+          if (selectResp != null && selectResp.getResponseCode().equals(ResponseCode.NO_ERROR)) {
+            return new CommandResponse(ResponseCode.NO_ERROR, selectResp.getRecords().toString());
+          }
+        }
       }
-    } catch (IOException | JSONException | FailedDBOperationException e) {
-    	ClientException cle = new ClientException(e);
-    	return new CommandResponse(cle.getCode(), "selectGroupLookupQuery failed. "+cle.getMessage());
+      ResultValue members = NSFieldAccess.lookupListFieldAnywhere(header, accountGuid,
+              GroupAccess.GROUP, true, handler);
+      return new CommandResponse(ResponseCode.NO_ERROR, new JSONArray(members).toString());
+    } catch (FailedDBOperationException e) {
+      ClientException cle = new ClientException(e);
+      return new CommandResponse(cle.getCode(), "selectGroupLookupQuery failed. " + cle.getMessage());
+    } catch (ClientException e) {
+      return new CommandResponse(e.getCode(), "selectGroupLookupQuery failed. " + e.getMessage());
+    } catch (IOException | JSONException e) {
+      ClientException cle = new ClientException(e);
+      return new CommandResponse(cle.getCode(), "selectGroupLookupQuery failed. " + cle.getMessage());
     }
-    return null;*/
   }
   
   /**
@@ -1012,16 +1319,13 @@ public class FieldAccess {
 		            String signature, String message, ClientRequestHandlerInterface handler) 
 		          		  throws InternalRequestException 
     {
-	  	  SelectResponsePacket selectResp;
 	  	  try 
 	  	  {
 	  		  SelectRequestPacket packet = SelectRequestPacket.makeSelectNotificationStatusRequest
 	  				  									(reader, selectHandle, null);
 	  		  
-	  		  selectResp = executeSelectHelper(header, commandPacket, packet, reader, 
+	  		  return executeSelectHelper(header, commandPacket, packet, reader, 
 	      		  								signature, message, handler.getApp());
-	  		  
-	  		 return getCommandResponseForSelect(packet, selectResp);
 	  	  }
 	  	  catch (IOException | JSONException | FailedDBOperationException e) 
 	  	  {
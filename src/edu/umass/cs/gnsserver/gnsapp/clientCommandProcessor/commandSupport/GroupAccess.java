@@ -33,7 +33,6 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandler
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSFieldAccess;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 
-import edu.umass.cs.gnsserver.utils.JSONUtils;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Date;
@@ -313,28 +312,15 @@ public class GroupAccess {
     // We need to do this in a way that
     // multiple invocations of this command result in the same 
     // values in the distributed database.
-    // First init some things to keep track of what's happened.
-    String result = GNSProtocol.OK_RESPONSE.toString();
-    Set<String> currentMembers;
-    // Find which new members are not in the group
-    try {
-      currentMembers
-              = JSONUtils.JSONArrayToHashSet(handler.getInternalClient().execute(GNSCommandInternal.
-                      fieldRead(groupGuid, GROUP, header)).getResultJSONArray());
-      newMembers.removeAll(currentMembers);
-    } catch (JSONException | InternalRequestException | IOException | ClientException e) {
-      result = "LOOKUP_ERROR";
-    }
-    // If there are any new members not in the group we add the here
-    if (!newMembers.isEmpty()) {
-      result = handler.getInternalClient().execute(
-              GNSCommandInternal.fieldUpdate(header,
-                      CommandType.AppendOrCreateListUnsigned,
-                      GNSProtocol.GUID.toString(), groupGuid,
-                      GNSProtocol.FIELD.toString(), GROUP,
-                      GNSProtocol.VALUE.toString(), newMembers
-              )).getResultString();
-    }
+    // The append treats the list as a set and is done in place by the database
+    // so there is no need to read the members first to find the new ones.
+    String result = handler.getInternalClient().execute(
+            GNSCommandInternal.fieldUpdate(header,
+                    CommandType.AppendOrCreateListUnsigned,
+                    GNSProtocol.GUID.toString(), groupGuid,
+                    GNSProtocol.FIELD.toString(), GROUP,
+                    GNSProtocol.VALUE.toString(), newMembers
+            )).getResultString();
     return GNSProtocol.OK_RESPONSE.toString().equals(result);
   }
 
@@ -345,26 +331,14 @@ public class GroupAccess {
     // We need to do this in a way that
     // multiple invocations of this command result in the same 
     // values in the distributed database.
-    // First init some things to keep track of what's happened.
-    String result = GNSProtocol.OK_RESPONSE.toString();
-    boolean foundInGroups = false;
-    // If the group is already in groups of the member we don't need to do the update.
-    try {
-      foundInGroups = JSONUtils.JSONArrayContains(groupGuid,
-              handler.getInternalClient().execute(GNSCommandInternal.
-                      fieldRead(memberGuid, GROUPS, header)).getResultJSONArray());
-    } catch (JSONException | InternalRequestException | IOException | ClientException e) {
-      result = "LOOKUP_ERROR";
-    }
-    if (!foundInGroups) {
-      result = handler.getInternalClient().execute(
-              GNSCommandInternal.fieldUpdate(header,
-                      CommandType.AppendOrCreateListUnsigned,
-                      GNSProtocol.GUID.toString(), memberGuid,
-                      GNSProtocol.FIELD.toString(), GROUPS,
-                      GNSProtocol.VALUE.toString(), new ResultValue(Arrays.asList(groupGuid))
-              )).getResultString();
-    }
+    // Like the members this is a set append so the groups aren't read first.
+    String result = handler.getInternalClient().execute(
+            GNSCommandInternal.fieldUpdate(header,
+                    CommandType.AppendOrCreateListUnsigned,
+                    GNSProtocol.GUID.toString(), memberGuid,
+                    GNSProtocol.FIELD.toString(), GROUPS,
+                    GNSProtocol.VALUE.toString(), new ResultValue(Arrays.asList(groupGuid))
+            )).getResultString();
     return GNSProtocol.OK_RESPONSE.toString().equals(result);
   }
 
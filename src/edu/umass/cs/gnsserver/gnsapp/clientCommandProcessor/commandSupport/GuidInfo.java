@@ -117,7 +117,10 @@ public class GuidInfo {
   private static final String TYPE = "type";
   private static final String CREATED = "created";
   private static final String UPDATED = "updated";
-  private static final String TAGS = "tags";
+  /**
+   * The key of the tags in the JSON form, which is how a GuidInfo is stored in the database.
+   */
+  public static final String TAGS = "tags";
 
   /**
    Creates a GuidInfo instance from a JSONObject.
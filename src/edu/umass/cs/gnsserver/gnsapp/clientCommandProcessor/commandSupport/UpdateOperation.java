@@ -76,7 +76,7 @@ public enum UpdateOperation {
   /**
    * Deletes the values from the current values.
    */
-  SINGLE_FIELD_REMOVE(true, false, false),
+  SINGLE_FIELD_REMOVE(true, true, false), // set operation, doesn't require a read
   /**
    * Treats the value as a singleton and replaces the current value with this one.
    */
@@ -84,11 +84,11 @@ public enum UpdateOperation {
   /**
    * Appends the given value onto the current values TREATING THE LIST AS A SET - meaning no duplicates.
    */
-  SINGLE_FIELD_APPEND(true, false, false),
+  SINGLE_FIELD_APPEND(true, true, false), // set operation, doesn't require a read
   /**
    * An upsert operation similar to <code>SINGLE_FIELD_APPEND</code> that creates the field if it does not exist.
    */
-  SINGLE_FIELD_APPEND_OR_CREATE(true, false, true, SINGLE_FIELD_APPEND),
+  SINGLE_FIELD_APPEND_OR_CREATE(true, true, true, SINGLE_FIELD_APPEND), // set operation, doesn't require a read
   /**
    * An upsert operation similar to <code>SINGLE_FIELD_REPLACE_ALL</code> that creates the field if it does not exist.
    */
@@ -153,6 +153,19 @@ public enum UpdateOperation {
     return ableToSkipRead;
   }
 
+  /**
+   * Indicates that this operation treats the field as a set and the database can do it
+   * in place (adding or removing just the given values) without reading the field.
+   * If the database can't do that, for instance if the field isn't a list, the field
+   * has to be read and the operation done with {@link #updateValuesMap}.
+   *
+   * @return a boolean
+   */
+  public boolean isSetOperation() {
+    return this == SINGLE_FIELD_APPEND || this == SINGLE_FIELD_APPEND_OR_CREATE
+            || this == SINGLE_FIELD_REMOVE;
+  }
+
   /**
    * Indicates that this operation will attempt to create a field that does not already exist.
    *
@@ -112,7 +112,7 @@ public class AddMultipleGuids extends AbstractCommand {
       }
       if (!accountInfo.isVerified()) {
         return new CommandResponse(ResponseCode.VERIFICATION_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.VERIFICATION_ERROR.toString() + " Account not verified");
-      } else if (accountInfo.getGuids().size() > Config.getGlobalInt(GNSConfig.GNSC.ACCOUNT_GUID_MAX_SUBGUIDS)) {
+      } else if (accountInfo.getGuidCount() > Config.getGlobalInt(GNSConfig.GNSC.ACCOUNT_GUID_MAX_SUBGUIDS)) {
         return new CommandResponse(ResponseCode.TOO_MANY_GUIDS_EXCEPTION, GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.TOO_MANY_GUIDS.toString());
       } else if (names != null && publicKeys != null) {
         GNSConfig.getLogger().log(Level.INFO, "ADD SLOW{0} / {1}", new Object[]{names, publicKeys});
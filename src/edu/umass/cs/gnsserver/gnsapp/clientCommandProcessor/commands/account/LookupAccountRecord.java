@@ -28,6 +28,12 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCom
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 import edu.umass.cs.gnscommon.CommandType;
 import edu.umass.cs.gnscommon.ResponseCode;
+import edu.umass.cs.gnscommon.exceptions.client.ClientException;
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
+
+import java.io.IOException;
+import java.util.List;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -71,11 +77,17 @@ import edu.umass.cs.gnscommon.packets.CommandPacket;
     assert (acccountInfo != null);
     {
       try {
-        // The true below omits things we don't want to send back to the client.
+        // This omits things we don't want to send back to the client.
         // Like the verification code or the list of guids which might be too big to send back to the client
-        return new CommandResponse(ResponseCode.NO_ERROR, acccountInfo.toJSONObject(true).toString());
+        List<String> guids = acccountInfo.getGuidCount() <= AccountInfo.TOO_MANY_GUIDS
+                ? AccountAccess.lookupAccountGuids(header, acccountInfo, handler) : null;
+        return new CommandResponse(ResponseCode.NO_ERROR, acccountInfo.toJSONObjectForClient(guids).toString());
       } catch (JSONException e) {
         return new CommandResponse(ResponseCode.JSON_PARSE_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.JSON_PARSE_ERROR.toString());
+      } catch (ClientException e) {
+        return new CommandResponse(e.getCode(), GNSProtocol.BAD_RESPONSE.toString() + " " + e.getMessage());
+      } catch (FailedDBOperationException | IOException | InternalRequestException e) {
+        return new CommandResponse(ResponseCode.DATABASE_OPERATION_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.DATABASE_OPERATION_ERROR.toString() + " " + e.getMessage());
       }
     }
   }
@@ -28,7 +28,11 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCom
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 import edu.umass.cs.gnscommon.CommandType;
 import edu.umass.cs.gnscommon.ResponseCode;
+import edu.umass.cs.gnscommon.exceptions.client.ClientException;
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -75,7 +79,14 @@ public class LookupRandomGuids extends AbstractCommand {
     }
     assert (acccountInfo != null);
     {
-      List<String> guids = acccountInfo.getGuids();
+      List<String> guids;
+      try {
+        guids = AccountAccess.lookupAccountGuids(header, acccountInfo, handler);
+      } catch (ClientException e) {
+        return new CommandResponse(e.getCode(), GNSProtocol.BAD_RESPONSE.toString() + " " + e.getMessage());
+      } catch (FailedDBOperationException | IOException | InternalRequestException e) {
+        return new CommandResponse(ResponseCode.DATABASE_OPERATION_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.DATABASE_OPERATION_ERROR.toString() + " " + e.getMessage());
+      }
       if (count >= guids.size()) {
         return new CommandResponse(ResponseCode.NO_ERROR, new JSONArray(guids).toString());
       } else {
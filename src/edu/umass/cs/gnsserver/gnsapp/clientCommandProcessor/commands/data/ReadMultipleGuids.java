@@ -0,0 +1,79 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.data;
+
+import edu.umass.cs.gnscommon.utils.Format;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandResponse;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.FieldAccess;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
+import edu.umass.cs.gnscommon.CommandType;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
+import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
+import edu.umass.cs.gnsserver.utils.JSONUtils;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import org.json.JSONException;
+import org.json.JSONObject;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+
+/**
+ * Reads the same fields from many guids with one signature.
+ *
+ * @author westy
+ */
+public class ReadMultipleGuids extends AbstractCommand {
+
+  /**
+   *
+   * @param module
+   */
+  public ReadMultipleGuids(CommandModule module) {
+    super(module);
+  }
+
+  /**
+   *
+   * @return the command type
+   */
+  @Override
+  public CommandType getCommandType() {
+    return CommandType.ReadMultipleGuids;
+  }
+
+  @Override
+  public CommandResponse execute(InternalRequestHeader internalHeader, CommandPacket commandPacket,
+          ClientRequestHandlerInterface handler) throws JSONException, ParseException {
+    JSONObject json = commandPacket.getCommand();
+    // The reader is the guid the command is sent to
+    String reader = json.getString(GNSProtocol.GUID.toString());
+    ArrayList<String> guids = JSONUtils.JSONArrayToArrayListString(json.getJSONArray(GNSProtocol.GUIDS.toString()));
+    ArrayList<String> fields = JSONUtils.JSONArrayToArrayListString(json.getJSONArray(GNSProtocol.FIELDS.toString()));
+    String signature = json.optString(GNSProtocol.SIGNATURE.toString(), null);
+    String message = json.optString(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), null);
+    Date timestamp = json.has(GNSProtocol.TIMESTAMP.toString())
+            ? Format.parseDateISO8601UTC(json.getString(GNSProtocol.TIMESTAMP.toString())) : null; // can be null on older client
+    return FieldAccess.lookupMultipleGuids(internalHeader, commandPacket, reader, guids, fields,
+            signature, message, timestamp, handler);
+  }
+
+}
@@ -68,6 +68,7 @@ public class SelectQuery extends AbstractCommand {
     JSONObject json = commandPacket.getCommand();
     String reader = json.optString(GNSProtocol.GUID.toString(), null);
     String query = json.getString(GNSProtocol.QUERY.toString());
+    int limit = json.optInt(GNSProtocol.SELECT_LIMIT.toString(), -1);
 
     String signature = json.optString(GNSProtocol.SIGNATURE.toString(), null);
     String message = json.optString(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), null);
@@ -84,7 +85,7 @@ public class SelectQuery extends AbstractCommand {
     } else {
       fields = JSONUtils.JSONArrayToArrayListString(json.getJSONArray(GNSProtocol.FIELDS.toString()));
     }
-    return FieldAccess.selectQuery(header, commandPacket, reader, query, fields,
+    return FieldAccess.selectQuery(header, commandPacket, reader, query, fields, limit,
             signature, message, handler);
   }
 
@@ -31,8 +31,10 @@ import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 
 import javax.crypto.BadPaddingException;
@@ -46,7 +48,8 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import com.google.common.collect.Sets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.SharedGuidUtils;
@@ -54,6 +57,7 @@ import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
 import edu.umass.cs.gnscommon.utils.Base64;
+import edu.umass.cs.gnsserver.database.ColumnFieldType;
 import edu.umass.cs.gnsserver.gnsapp.GNSApplicationInterface;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
@@ -71,19 +75,88 @@ import edu.umass.cs.utils.Util;
  */
 public class NSAccessSupport {
 
-  private static KeyFactory keyFactory;
-  // arun: at least as many instances as cores for parallelism.
-  private static Signature[] signatureInstances = new Signature[2 * Runtime.getRuntime().availableProcessors()];
+  /**
+   * Per-thread crypto engines. {@link Signature}, {@link Cipher}, {@link MessageDigest}
+   * and {@link KeyFactory} instances are not thread-safe, so rather than sharing a
+   * small array of them behind a global monitor every verifying thread gets its own.
+   */
+  private static final ThreadLocal<KeyFactory> KEY_FACTORIES = new ThreadLocal<KeyFactory>() {
+    @Override
+    protected KeyFactory initialValue() {
+      try {
+        return KeyFactory.getInstance(GNSProtocol.RSA_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        return null;
+      }
+    }
+  };
 
-  static {
-    try {
-      keyFactory = KeyFactory.getInstance(GNSProtocol.RSA_ALGORITHM.toString());
-      for (int i = 0; i < signatureInstances.length; i++) {
-        signatureInstances[i] = Signature.getInstance(GNSProtocol.SIGNATURE_ALGORITHM.toString());
+  private static final ThreadLocal<Signature> SIGNATURE_INSTANCES = new ThreadLocal<Signature>() {
+    @Override
+    protected Signature initialValue() {
+      try {
+        return Signature.getInstance(GNSProtocol.SIGNATURE_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        return null;
       }
-    } catch (NoSuchAlgorithmException e) {
-      ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
     }
+  };
+
+  private static final ThreadLocal<MessageDigest> MESSAGE_DIGESTS = new ThreadLocal<MessageDigest>() {
+    @Override
+    protected MessageDigest initialValue() {
+      try {
+        return MessageDigest.getInstance(GNSProtocol.DIGEST_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        return null;
+      }
+    }
+  };
+
+  private static final ThreadLocal<Cipher> CIPHERS = new ThreadLocal<Cipher>() {
+    @Override
+    protected Cipher initialValue() {
+      try {
+        return Cipher.getInstance(GNSProtocol.SECRET_KEY_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        return null;
+      }
+    }
+  };
+
+  /**
+   * Base64 encoded public key => decoded public key. Almost all verifications
+   * for a guid use the same key so there is no reason to parse it every time.
+   */
+  private static final Cache<String, PublicKey> PUBLIC_KEY_CACHE
+          = CacheBuilder.newBuilder().concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .maximumSize(Config.getGlobalInt(GNSC.VERIFICATION_KEY_CACHE_SIZE)).build();
+
+  /**
+   * Public key + encoded secret key certificate => secret key. Used by the
+   * {@link GNSC#ENABLE_SECRET_KEY} path so that we only unwrap a certificate once.
+   * The public key is part of the cache key so that a certificate is only ever
+   * accepted for the public key that it was originally verified against.
+   */
+  private static final Cache<String, SecretKey> SECRET_KEY_CACHE
+          = CacheBuilder.newBuilder().concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .maximumSize(Config.getGlobalInt(GNSC.VERIFICATION_KEY_CACHE_SIZE)).build();
+
+  /**
+   * The fields of a record that hold its meta data, which is all an ACL check reads.
+   */
+  private static final String[] META_DATA_FIELDS;
+
+  static {
+    Set<String> prefixes = new LinkedHashSet<>();
+    for (MetaDataTypeName type : MetaDataTypeName.values()) {
+      prefixes.add(type.getPrefix());
+    }
+    META_DATA_FIELDS = prefixes.toArray(new String[prefixes.size()]);
   }
 
   /**
@@ -100,8 +173,8 @@ public class NSAccessSupport {
    */
   public static boolean verifySignature(String accessorPublicKey, String signature, String message) throws
           InvalidKeyException, SignatureException, UnsupportedEncodingException, InvalidKeySpecException {
-    byte[] publickeyBytes = Base64.decode(accessorPublicKey);
-    if (publickeyBytes == null) { // bogus public key
+    PublicKey publicKey = getPublicKey(accessorPublicKey);
+    if (publicKey == null) { // bogus public key
       ClientSupportConfig.getLogger().log(Level.FINE, "&&&&Base 64 decoding is bogus!!!");
       return false;
     }
@@ -111,7 +184,8 @@ public class NSAccessSupport {
               Util.truncate(signature, 16, 16),
               Util.truncate(message, 16, 16)});
     long t = System.nanoTime();
-    boolean result = verifySignatureInternal(publickeyBytes, signature, message);
+    boolean result = verifySignatureInternal(accessorPublicKey, publicKey, signature, message);
+    VerificationStats.record(t);
     if (Util.oneIn(100)) {
       DelayProfiler.updateDelayNano("verification", t);
     }
@@ -124,18 +198,33 @@ public class NSAccessSupport {
     return result;
   }
 
-  private static int sigIndex = 0;
-
-  private synchronized static Signature getSignatureInstance() {
-    return signatureInstances[sigIndex++ % signatureInstances.length];
+  /**
+   * Returns the decoded public key for a Base64 encoded public key, possibly from the cache.
+   *
+   * @param encodedPublicKey
+   * @return the public key or null if the encoded key can't be decoded
+   * @throws InvalidKeySpecException
+   */
+  private static PublicKey getPublicKey(String encodedPublicKey) throws InvalidKeySpecException {
+    PublicKey publicKey = PUBLIC_KEY_CACHE.getIfPresent(encodedPublicKey);
+    if (publicKey == null) {
+      byte[] publickeyBytes = Base64.decode(encodedPublicKey);
+      if (publickeyBytes == null) {
+        return null;
+      }
+      publicKey = KEY_FACTORIES.get().generatePublic(new X509EncodedKeySpec(publickeyBytes));
+      PUBLIC_KEY_CACHE.put(encodedPublicKey, publicKey);
+    }
+    return publicKey;
   }
 
-  private static synchronized boolean verifySignatureInternal(byte[] publickeyBytes, String signature, String message)
+  private static boolean verifySignatureInternal(String accessorPublicKey, PublicKey publicKey,
+          String signature, String message)
           throws InvalidKeyException, SignatureException, UnsupportedEncodingException, InvalidKeySpecException {
 
     if (Config.getGlobalBoolean(GNSC.ENABLE_SECRET_KEY)) {
       try {
-        return verifySignatureInternalSecretKey(publickeyBytes, signature, message);
+        return verifySignatureInternalSecretKey(accessorPublicKey, publicKey, signature, message);
       } catch (Exception e) {
         // This provided backward support for clients that don't have ENABLE_SECRET_KEY on by
         // falling through to non-secret method.
@@ -147,69 +236,26 @@ public class NSAccessSupport {
     }
 
     // Non-secret method kept for backwards compatbility with older clients.
-    X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(publickeyBytes);
-    PublicKey publicKey = keyFactory.generatePublic(publicKeySpec);
-
-    Signature sigInstance = getSignatureInstance();
-    synchronized (sigInstance) {
-      sigInstance.initVerify(publicKey);
-      // iOS client uses UTF-8 - should switch to ISO-8859-1 to be consistent with
-      // secret key version
-      sigInstance.update(message.getBytes("UTF-8"));
-      // Non secret uses ISO-8859-1, but the iOS client uses hex so 
-      // we need to keep this for now.
-      try {
-        return sigInstance.verify(DatatypeConverter.parseHexBinary(signature));
-        // This will get thrown if the signature is not a hex string.
-      } catch (IllegalArgumentException e) {
-        return false;
-      }
-      //return sigInstance.verify(ByteUtils.hexStringToByteArray(signature));
-    }
-  }
-
-  private static final MessageDigest[] mds = new MessageDigest[Runtime.getRuntime().availableProcessors()];
-
-  static {
-    for (int i = 0; i < mds.length; i++) {
-      try {
-        mds[i] = MessageDigest.getInstance(GNSProtocol.DIGEST_ALGORITHM.toString());
-      } catch (NoSuchAlgorithmException e) {
-        e.printStackTrace();
-        System.exit(1);
-      }
-    }
-  }
-  private static int mdIndex = 0;
-
-  private static MessageDigest getMessageDigestInstance() {
-    return mds[mdIndex++ % mds.length];
-  }
-
-  private static final Cipher[] ciphers = new Cipher[2 * Runtime.getRuntime().availableProcessors()];
-
-  static {
-    for (int i = 0; i < ciphers.length; i++) {
-      try {
-        ciphers[i] = Cipher.getInstance(GNSProtocol.SECRET_KEY_ALGORITHM.toString());
-      } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-        e.printStackTrace();
-        System.exit(1);
-      }
+    Signature sigInstance = SIGNATURE_INSTANCES.get();
+    sigInstance.initVerify(publicKey);
+    // iOS client uses UTF-8 - should switch to ISO-8859-1 to be consistent with
+    // secret key version
+    sigInstance.update(message.getBytes("UTF-8"));
+    // Non secret uses ISO-8859-1, but the iOS client uses hex so 
+    // we need to keep this for now.
+    try {
+      return sigInstance.verify(DatatypeConverter.parseHexBinary(signature));
+      // This will get thrown if the signature is not a hex string.
+    } catch (IllegalArgumentException e) {
+      return false;
     }
+    //return sigInstance.verify(ByteUtils.hexStringToByteArray(signature));
   }
 
-  private static int cipherIndex = 0;
-
-  private static Cipher getCipherInstance() {
-    return ciphers[cipherIndex++ % ciphers.length];
-  }
-
-  private static synchronized boolean verifySignatureInternalSecretKey(byte[] publickeyBytes, String signature, String message)
+  private static boolean verifySignatureInternalSecretKey(String accessorPublicKey, PublicKey publicKey,
+          String signature, String message)
           throws InvalidKeyException, SignatureException, UnsupportedEncodingException, InvalidKeySpecException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
 
-    PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(publickeyBytes));
-
     // FIXME: The reason why we use CHARSET should be more throughly documented here.
     byte[] sigBytes = signature.getBytes(GNSProtocol.CHARSET.toString());
     byte[] bytes = message.getBytes(GNSProtocol.CHARSET.toString());
@@ -221,20 +267,56 @@ public class NSAccessSupport {
     bbuf.get(sign);
     byte[] skCertEncoded = new byte[bbuf.getShort()];
     bbuf.get(skCertEncoded);
-    SecretKey secretKey = SessionKeys.getSecretKeyFromCertificate(skCertEncoded, publicKey);
 
-    MessageDigest md = getMessageDigestInstance();
-    byte[] digest;
-    synchronized (md) {
-      digest = md.digest(bytes);
+    String secretKeyCacheKey = accessorPublicKey
+            + new String(skCertEncoded, GNSProtocol.CHARSET.toString());
+    SecretKey secretKey = SECRET_KEY_CACHE.getIfPresent(secretKeyCacheKey);
+    if (secretKey == null) {
+      secretKey = SessionKeys.getSecretKeyFromCertificate(skCertEncoded, publicKey);
+      if (secretKey != null) {
+        SECRET_KEY_CACHE.put(secretKeyCacheKey, secretKey);
+      }
     }
-    Cipher cipher = getCipherInstance();
-    synchronized (cipher) {
-      cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-      return Arrays.equals(sign, cipher.doFinal(digest));
+
+    byte[] digest = MESSAGE_DIGESTS.get().digest(bytes);
+    Cipher cipher = CIPHERS.get();
+    cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+    return Arrays.equals(sign, cipher.doFinal(digest));
+  }
+
+  /**
+   * Verification counters. {@link LongAdder} stripes its cells across the
+   * verifying threads so recording stays uncontended, and the footprint is
+   * bounded by the number of cores rather than the number of threads that
+   * ever verified a signature.
+   */
+  private static class VerificationStats {
+
+    private static final long START_TIME = System.nanoTime();
+    private static final LongAdder COUNT = new LongAdder();
+    private static final LongAdder TOTAL_NANOS = new LongAdder();
+
+    private static void record(long startTime) {
+      TOTAL_NANOS.add(System.nanoTime() - startTime);
+      COUNT.increment();
     }
   }
 
+  /**
+   * Returns a summary of signature verification throughput and latency.
+   * The rate is that of all the verifying threads together since startup.
+   *
+   * @return a string suitable for logging
+   */
+  public static String getVerificationStats() {
+    double elapsedSeconds = (System.nanoTime() - VerificationStats.START_TIME) / 1000000000.0;
+    long count = VerificationStats.COUNT.sum();
+    long totalNanos = VerificationStats.TOTAL_NANOS.sum();
+    return "verification: count=" + count
+            + " rate/s=" + Util.df(count / elapsedSeconds)
+            + " avg_latency_us=" + (count > 0 ? Util.df(totalNanos / 1000.0 / count) : "0");
+  }
+
   /**
    * Handles checking of fields with dot notation.
    * Checks deepest field first then backs up.
@@ -250,18 +332,46 @@ public class NSAccessSupport {
   public static boolean hierarchicalAccessGroupCheck(MetaDataTypeName accessType, String guid,
           String field, Set<String> groups,
           GNSApplicationInterface<String> activeReplica) throws FailedDBOperationException {
+    return hierarchicalAccessGroupCheck(accessType, guid, field, null, groups, activeReplica);
+  }
+
+  /**
+   * Handles checking of fields with dot notation using the group guids
+   * on this server. Each group guid in the ACL is asked whether accessorGuid is one
+   * of its members so the groups of accessorGuid don't need to be looked up.
+   * Group guids that aren't on this server are not checked so a false result
+   * should be followed by {@link #hierarchicalAccessGroupCheck}.
+   *
+   * @param accessType
+   * @param guid
+   * @param field
+   * @param accessorGuid
+   * @param activeReplica
+   * @return true if the accessor has access
+   * @throws FailedDBOperationException
+   */
+  public static boolean hierarchicalAccessMemberCheck(MetaDataTypeName accessType, String guid,
+          String field, String accessorGuid,
+          GNSApplicationInterface<String> activeReplica) throws FailedDBOperationException {
+    return hierarchicalAccessGroupCheck(accessType, guid, field, accessorGuid, null, activeReplica);
+  }
+
+  private static boolean hierarchicalAccessGroupCheck(MetaDataTypeName accessType, String guid,
+          String field, String accessorGuid, Set<String> groups,
+          GNSApplicationInterface<String> activeReplica) throws FailedDBOperationException {
     ClientSupportConfig.getLogger().log(Level.FINE, "###field={0}", field);
     try {
-      return checkForGroupAccess(accessType, guid, field, groups, activeReplica);
+      return checkForGroupAccess(accessType, guid, field, accessorGuid, groups, activeReplica);
     } catch (FieldNotFoundException e) {
       ClientSupportConfig.getLogger().log(Level.FINE, "###field NOT FOUND={0}.. GOING UP", new Object[]{field});
     }
     // otherwise go up the hierarchy and check
     if (field.contains(".")) {
       return hierarchicalAccessGroupCheck(accessType, guid, field.substring(0, field.lastIndexOf(".")),
-              groups, activeReplica);
+              accessorGuid, groups, activeReplica);
     } else if (!GNSProtocol.ENTIRE_RECORD.toString().equals(field)) {
-      return hierarchicalAccessGroupCheck(accessType, guid, GNSProtocol.ENTIRE_RECORD.toString(), groups, activeReplica);
+      return hierarchicalAccessGroupCheck(accessType, guid, GNSProtocol.ENTIRE_RECORD.toString(),
+              accessorGuid, groups, activeReplica);
     } else {
       // check all the way up and there is no access
       return false;
@@ -271,17 +381,20 @@ public class NSAccessSupport {
   /**
    * Check for one of the groups that accessorGuid is in being a member of allowed users.
    * Field can be dotted and at any level.
+   * If groups is null the group guids in the ACL that are on this server
+   * are checked for accessorGuid instead.
    *
    * @param accessType
    * @param guid
    * @param field
    * @param accessorGuid
+   * @param groups
    * @param activeReplica
    * @return true if access is allowed
    * @throws FailedDBOperationException
    */
   private static boolean checkForGroupAccess(MetaDataTypeName accessType,
-          String guid, String field, Set<String> groups,
+          String guid, String field, String accessorGuid, Set<String> groups,
           GNSApplicationInterface<String> activeReplica)
           throws FieldNotFoundException, FailedDBOperationException {
     try {
@@ -291,7 +404,13 @@ public class NSAccessSupport {
               guid, field, activeReplica.getDB());
       ClientSupportConfig.getLogger().log(Level.FINE, "{0} allowed users of {1} : {2}",
               new Object[]{guid, field, allowedUsers});
-      return !Sets.intersection(SharedGuidUtils.convertPublicKeysToGuids(allowedUsers), groups).isEmpty();
+      for (String allowedGuid : SharedGuidUtils.convertPublicKeysToGuids(allowedUsers)) {
+        if (groups != null ? groups.contains(allowedGuid)
+                : NSGroupAccess.isGroupMember(allowedGuid, accessorGuid, activeReplica.getDB())) {
+          return true;
+        }
+      }
+      return false;
     } catch (RecordNotFoundException e) {
       ClientSupportConfig.getLogger().log(Level.WARNING,
               "User {0} access problem for {2} field: {3}",
@@ -387,39 +506,22 @@ public class NSAccessSupport {
 	  
 	  
 	  /**
-	   *  For the rest of ACL and signature check, let's first retrieve
-	   *  the entire record, then check ACL.
-	   */	  
-	  JSONObject json = null;
-	  /**
-	   * 1. Fetch the entire record of guid
+	   *  For the rest of ACL and signature check, let's retrieve
+	   *  just the meta data fields of the record, then check ACL.
+	   *  The rest of a big record would only be parsed and thrown away.
 	   */
 	  try {
 		  long startTime = System.nanoTime();
+		  metaData = NameRecord.getNameRecordMultiUserFields(basicRecordMap, guid,
+				  ColumnFieldType.USER_JSON, META_DATA_FIELDS).getValuesMap();
+		  DelayProfiler.updateDelayNano("lookupMetaDataForACLCheck", startTime);
+	  } catch (FailedDBOperationException | RecordNotFoundException | FieldNotFoundException e) {
 		  /**
-		   * An entire record retrieved from DB is a JSON
-		   */
-		  json = basicRecordMap.lookupEntireRecord(guid);
-		  DelayProfiler.updateDelayNano("lookupEntireRecordForACLCheck", startTime);
-	  } catch (FailedDBOperationException | RecordNotFoundException e) {
-		  /**
-		   * If the entire record can not be retrieved, then there is no way for us to check
+		   * If the record can not be retrieved, then there is no way for us to check
 		   * ACL and signature
 		   */
 		  return null;
 	  }
-		
-	  if(json == null){
-		  // The entire record is null, so we did not find the record
-		  return null;
-	  }
-	  
-	  metaData = null; 
-	  try {
-		  metaData = json.getJSONObject(GNSProtocol.META_DATA_FIELD.toString());
-	  } catch (JSONException e) {
-		  return null;
-	  }
 	  return metaData;
   }
   
@@ -21,6 +21,7 @@ package edu.umass.cs.gnsserver.gnsapp.clientSupport;
 
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
@@ -28,6 +29,7 @@ import java.text.ParseException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import org.json.JSONArray;
@@ -42,12 +44,16 @@ import edu.umass.cs.gnscommon.ResponseCode;
 import edu.umass.cs.gnscommon.SharedGuidUtils;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
+import edu.umass.cs.gnscommon.utils.Base64;
 import edu.umass.cs.gnsserver.gnsapp.GNSApplicationInterface;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.GuidInfo;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
+import edu.umass.cs.gnsserver.main.GNSConfig.GNSC;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
 
 /**
  *
@@ -58,6 +64,37 @@ public class NSAuthentication {
   private static final Cache<String, String> PUBLIC_KEY_CACHE
           = CacheBuilder.newBuilder().concurrencyLevel(5).maximumSize(1000).build();
 
+  /**
+   * Signatures that have recently verified successfully keyed by
+   * (accessor public key, signature digest, signed message digest).
+   * Null if {@link GNSC#ENABLE_VERIFIED_SIGNATURE_CACHE} is off.
+   * Entries never outlive {@link GNSC#STALE_COMMAND_INTERVAL_IN_MINUTES} so
+   * this doesn't change which commands are accepted as fresh.
+   */
+  private static final Cache<String, Boolean> VERIFIED_SIGNATURE_CACHE
+          = Config.getGlobalBoolean(GNSC.ENABLE_VERIFIED_SIGNATURE_CACHE)
+          ? CacheBuilder.newBuilder().concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .maximumSize(Config.getGlobalInt(GNSC.VERIFIED_SIGNATURE_CACHE_SIZE))
+          .expireAfterWrite(Math.min(Config.getGlobalInt(GNSC.VERIFIED_SIGNATURE_CACHE_TTL_IN_SECONDS),
+                  Config.getGlobalInt(GNSC.STALE_COMMAND_INTERVAL_IN_MINUTES) * 60), TimeUnit.SECONDS)
+          .build()
+          : null;
+
+  // Collision resistance matters here since a hit skips verification.
+  private static final String VERIFIED_SIGNATURE_DIGEST_ALGORITHM = "SHA-256";
+
+  private static final ThreadLocal<MessageDigest> VERIFIED_SIGNATURE_DIGESTS = new ThreadLocal<MessageDigest>() {
+    @Override
+    protected MessageDigest initialValue() {
+      try {
+        return MessageDigest.getInstance(VERIFIED_SIGNATURE_DIGEST_ALGORITHM);
+      } catch (NoSuchAlgorithmException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize signature cache digest:{0}", e);
+        return null;
+      }
+    }
+  };
+
   /**
    * Does access and signature checking for a field OR fields in a guid.
    * For explicit multi-field access all fields must be accessible or
@@ -163,7 +200,7 @@ public class NSAuthentication {
     if (skipSigCheck) {
       return ResponseCode.NO_ERROR;
     } else // Now check signatures
-    if (NSAccessSupport.verifySignature(aclResult.getPublicKey(), signature, message)) {
+    if (verifySignatureWithCaching(aclResult.getPublicKey(), signature, message)) {
       return ResponseCode.NO_ERROR;
     } else {
       ClientSupportConfig.getLogger().log(Level.FINE,
@@ -172,6 +209,55 @@ public class NSAuthentication {
     }
   }
 
+  /**
+   * Verifies the signature using {@link NSAccessSupport#verifySignature} unless
+   * a byte-identical signed message from the same public key has already been
+   * verified recently, in which case the cached result is used.
+   *
+   * @param publicKey
+   * @param signature
+   * @param message
+   * @return true if the signature verifies successfully
+   * @throws InvalidKeyException
+   * @throws InvalidKeySpecException
+   * @throws SignatureException
+   * @throws UnsupportedEncodingException
+   */
+  private static boolean verifySignatureWithCaching(String publicKey, String signature, String message)
+          throws InvalidKeyException, InvalidKeySpecException, SignatureException, UnsupportedEncodingException {
+    if (VERIFIED_SIGNATURE_CACHE == null) {
+      return NSAccessSupport.verifySignature(publicKey, signature, message);
+    }
+    String key = verifiedSignatureCacheKey(publicKey, signature, message);
+    if (key != null && VERIFIED_SIGNATURE_CACHE.getIfPresent(key) != null) {
+      DelayProfiler.updateCount("verifiedSignatureCacheHit", 1);
+      return true;
+    }
+    DelayProfiler.updateCount("verifiedSignatureCacheMiss", 1);
+    boolean result = NSAccessSupport.verifySignature(publicKey, signature, message);
+    // Only successful verifications are cached.
+    if (result && key != null) {
+      VERIFIED_SIGNATURE_CACHE.put(key, Boolean.TRUE);
+    }
+    return result;
+  }
+
+  /**
+   * The cache key is the public key followed by digests of the signature
+   * and of the full signed message.
+   */
+  private static String verifiedSignatureCacheKey(String publicKey, String signature, String message)
+          throws UnsupportedEncodingException {
+    MessageDigest md = VERIFIED_SIGNATURE_DIGESTS.get();
+    if (md == null) {
+      return null;
+    }
+    byte[] signatureDigest = md.digest(signature.getBytes(GNSProtocol.CHARSET.toString()));
+    byte[] messageDigest = md.digest(message.getBytes(GNSProtocol.CHARSET.toString()));
+    return publicKey + ":" + Base64.encodeToString(signatureDigest, false)
+            + ":" + Base64.encodeToString(messageDigest, false);
+  }
+
   /**
    * Check the acl to insure that {@code accessorGuid} can access {@code targetGuid}'s {@code field}.
    *
@@ -233,9 +319,12 @@ public class NSAuthentication {
                 "================> Catchall lookup returned: {0}",
                 accessorGuidInfo);
         // Check all the ACLs in the tree for this field to see if there is a group guid that
-        // in there somewhere that has accessorGuid as a member
+        // in there somewhere that has accessorGuid as a member. The group guids on this
+        // server can answer that directly, otherwise we need the groups of accessorGuid.
         Set<String> groups;
-        if (!(groups = NSGroupAccess.lookupGroups(header, accessorGuid, gnsApp.getRequestHandler())).isEmpty()) {
+        if (NSAccessSupport.hierarchicalAccessMemberCheck(access, targetGuid, field, accessorGuid, gnsApp)) {
+          publicKey = accessorGuidInfo.getPublicKey();
+        } else if (!(groups = NSGroupAccess.lookupGroups(header, accessorGuid, gnsApp.getRequestHandler())).isEmpty()) {
           if (NSAccessSupport.hierarchicalAccessGroupCheck(access, targetGuid, field, groups, gnsApp)) {
             publicKey = accessorGuidInfo.getPublicKey();
           }
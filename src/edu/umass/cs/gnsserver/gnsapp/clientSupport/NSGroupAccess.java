@@ -28,6 +28,7 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.Group
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.InternalField;
 import edu.umass.cs.gnsserver.gnsapp.GNSApplicationInterface;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.utils.JSONUtils;
@@ -68,6 +69,10 @@ public class NSGroupAccess {
    * The field for group query string.
    */
   public static final String GROUP_QUERY_STRING = InternalField.makeInternalFieldString("groupQueryString");
+  /**
+   * The field for the guid whose read ACLs the members of a group must pass.
+   */
+  public static final String GROUP_QUERY_READER = InternalField.makeInternalFieldString("groupQueryReader");
   /**
    * The field for group projection string.
    */
@@ -107,6 +112,21 @@ public class NSGroupAccess {
     return !NSFieldAccess.lookupListFieldLocallySafe(guid, GroupAccess.GROUP, database).isEmpty();
   }
 
+  /**
+   * Returns true if the member guid is in the group guid, which must be on this server.
+   * The members are not read to answer this.
+   *
+   * @param groupGuid
+   * @param memberGuid
+   * @param database
+   * @return true if memberGuid is a member of groupGuid
+   * @throws FailedDBOperationException
+   */
+  public static boolean isGroupMember(String groupGuid, String memberGuid, BasicRecordMap database)
+          throws FailedDBOperationException {
+    return NameRecord.setFieldContains(database, groupGuid, GroupAccess.GROUP, memberGuid);
+  }
+
   /**
    * Returns the groups that a GUID is a member of.
    *
@@ -197,6 +217,25 @@ public class NSGroupAccess {
     }
   }
 
+  /**
+   * Updates the query reader field for this group guid.
+   *
+   * @param header
+   * @param guid
+   * @param reader
+   * @param handler
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * @throws java.io.IOException
+   * @throws org.json.JSONException
+   * @throws InternalRequestException
+   */
+  public static void updateQueryReader(InternalRequestHeader header, String guid,
+          String reader, ClientRequestHandlerInterface handler)
+          throws ClientException, IOException, JSONException, InternalRequestException {
+    handler.getInternalClient().execute(GNSCommandInternal.fieldUpdate(guid, GROUP_QUERY_READER,
+            reader, header));
+  }
+
   /**
    * Returns the last update time for this group guid.
    *
@@ -249,6 +288,20 @@ public class NSGroupAccess {
     return getGroupFieldAsString(header, guid, GROUP_QUERY_STRING, handler);
   }
   
+  /**
+   * Returns the query reader for this group guid.
+   *
+   * @param header
+   * @param guid
+   * @param handler
+   * @return the query reader or null if the group was set up without one
+   * @throws FailedDBOperationException
+   */
+  public static String getQueryReader(InternalRequestHeader header, String guid, ClientRequestHandlerInterface handler)
+          throws FailedDBOperationException {
+    return getGroupFieldAsString(header, guid, GROUP_QUERY_READER, handler);
+  }
+  
   /**
    * Returns the query string for this group guid.
    *
@@ -20,6 +20,7 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.Activ
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.InternalField;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.UpdateOperation;
+import edu.umass.cs.gnsserver.gnsapp.GNSApp;
 import edu.umass.cs.gnsserver.gnsapp.GNSApplicationInterface;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
@@ -34,6 +35,7 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.logging.Level;
@@ -135,6 +137,14 @@ public class NSUpdateSupport {
       NameRecord nameRecord = getNameRecord(guid, field, operation, app.getDB());
       updateNameRecord(header, nameRecord, guid, field, operation, updateValue, oldValue, argument, userJSON,
               app.getDB(), app.getActiveCodeHandler());
+      // Keep the members of any context aware groups up to date
+      GNSApp.getSelector().handleRecordUpdate(header, guid,
+              field != null ? Arrays.asList(field) : userJSON != null ? userJSON.getKeys() : null,
+              !doNotReplyToClient, app);
+      // Tell the clients that cache reads of this guid. Internal fields like
+      // the ACLs change who can read every field so they invalidate all of them.
+      GNSApp.getCachedReaders().recordUpdated(guid,
+              field != null && !InternalField.isInternalField(field) ? field : null, app);
       return ResponseCode.NO_ERROR;
     } else // Handle special case of a create index
      if (!updateValue.isEmpty() && updateValue.get(0) instanceof String) {
@@ -165,7 +175,8 @@ public class NSUpdateSupport {
   private static void updateNameRecord(InternalRequestHeader header, NameRecord nameRecord, String guid, String field,
           UpdateOperation operation, ResultValue updateValue, ResultValue oldValue, int argument,
           ValuesMap userJSON, BasicRecordMap db, ActiveCodeHandler activeCodeHandler)
-          throws FailedDBOperationException, FieldNotFoundException, InternalRequestException {
+          throws FailedDBOperationException, FieldNotFoundException, InternalRequestException,
+          RecordNotFoundException {
     ValuesMap newValue = userJSON;
     if (activeCodeHandler != null) {
       JSONObject result = ActiveCodeHandler.handleActiveCode(header, guid, field, ActiveCode.WRITE_ACTION, userJSON, db);
@@ -0,0 +1,308 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientSupport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.SharedGuidUtils;
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnsserver.gnsapp.GNSApplicationInterface;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.GuidInfo;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.InternalField;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.utils.DelayProfiler;
+
+/**
+ * Does the read ACL checks of the records returned by a select for one reader.
+ *
+ * The read whitelist of each record is parsed once into a {@link CompiledAcl}
+ * holding the accessors of each field. Whether the reader can read a field only
+ * depends on the whitelist (unless the reader is the record's own guid), so the
+ * answers are remembered for every distinct whitelist. Records that share a
+ * whitelist, like guids created with addMultipleGuids, are checked with a few
+ * map lookups instead of a full {@link NSAuthentication#signatureAndACLCheck}
+ * per field.
+ *
+ * Gives the same answers as {@link NSAuthentication#signatureAndACLCheck} with
+ * the signature check skipped. An evaluator is meant to be used by a single
+ * thread for the records of one select.
+ *
+ * @author westy
+ */
+public class SelectAclEvaluator {
+
+  // Forget the compiled ACLs if there are more than this many distinct ones.
+  private static final int MAX_COMPILED_ACLS = 1024;
+
+  private static final MetaDataTypeName ACCESS = MetaDataTypeName.READ_WHITELIST;
+
+  private final String reader;
+  private final List<String> queryFields;
+  private final GNSApplicationInterface<String> app;
+
+  private final Map<String, CompiledAcl> compiledAcls = new HashMap<>();
+
+  // Lookups of the reader that don't depend on the record. Done at most once.
+  private boolean readerLookedUp = false;
+  private GuidInfo readerGuidInfo = null;
+  private Set<String> readerGroups = null;
+
+  private int hits = 0;
+  private int misses = 0;
+
+  /**
+   * The read whitelist of a record in a form that is quick to check.
+   */
+  private static class CompiledAcl {
+
+    // The accessors of each top level field that has any, including GNSProtocol.ENTIRE_RECORD.
+    private final Map<String, JSONArray> accessors = new HashMap<>();
+    // The answers for each field; GNSProtocol.ENTIRE_RECORD is used for the query check of a null reader.
+    private final Map<String, Boolean> readable = new HashMap<>();
+    // A guid with this ACL for the group checks which go to the database.
+    private final String guid;
+
+    private CompiledAcl(JSONObject whitelist, String guid) {
+      this.guid = guid;
+      if (whitelist != null) {
+        Iterator<?> keys = whitelist.keys();
+        while (keys.hasNext()) {
+          String field = (String) keys.next();
+          JSONObject fieldAcl = whitelist.optJSONObject(field);
+          JSONArray md = fieldAcl != null ? fieldAcl.optJSONArray(GNSProtocol.MD.toString()) : null;
+          if (md != null) {
+            accessors.put(field, md);
+          }
+        }
+      }
+    }
+
+    // The accessors that NSAccessSupport.fieldAccessibleByEveryone looks at.
+    private JSONArray everyoneAccessors(String field) {
+      if (field != null && accessors.containsKey(field)) {
+        return accessors.get(field);
+      }
+      return accessors.get(GNSProtocol.ENTIRE_RECORD.toString());
+    }
+
+    // The accessors that NSAuthentication.lookupPublicKeyFromMetaData looks at.
+    // Dotted fields are checked against the entire record there.
+    private JSONArray readerAccessors(String field) {
+      if (!field.contains(".") && accessors.containsKey(field)) {
+        return accessors.get(field);
+      }
+      return accessors.get(GNSProtocol.ENTIRE_RECORD.toString());
+    }
+  }
+
+  /**
+   * Creates an evaluator for the records of a select.
+   *
+   * @param reader the guid doing the select or null
+   * @param queryFields the fields in the select query, all of which the reader must be able to read
+   * @param app
+   */
+  public SelectAclEvaluator(String reader, List<String> queryFields,
+          GNSApplicationInterface<String> app) {
+    this.reader = reader;
+    this.queryFields = queryFields != null ? queryFields : new ArrayList<String>();
+    this.app = app;
+  }
+
+  /**
+   * Checks that the reader can read all the query fields of the {@code record}
+   * and removes the fields it can't read from the record.
+   *
+   * @param record a record as it is read from the database
+   * @return the record with the unreadable fields removed, or null if the reader
+   * can't read the query fields or the record can't be parsed
+   */
+  public JSONObject filterRecord(JSONObject record) {
+    try {
+      String guid = record.getString(NameRecord.NAME.getName());
+      JSONObject valuesMap = record.getJSONObject(NameRecord.VALUES_MAP.getName());
+
+      // The guid itself can read all of its fields if it really is a guid.
+      if (reader != null && reader.equals(guid)) {
+        if (NSAuthentication.lookupPublicKeyLocallyWithCacheing(guid, app,
+                new NameRecord(app.getDB(), record)) == null) {
+          return null;
+        }
+        return record;
+      }
+
+      CompiledAcl acl = getCompiledAcl(guid, valuesMap);
+      // First we check if the query issuer is in read ACLs for all query attributes
+      if (reader == null) {
+        // Same as the unsigned check which looks at the entire record for the query fields
+        if (!isReadable(acl, GNSProtocol.ENTIRE_RECORD.toString())) {
+          return null;
+        }
+      } else {
+        for (String field : queryFields) {
+          if (!isReadable(acl, field)) {
+            return null;
+          }
+        }
+      }
+      // Then remove the fields that the reader can't see
+      List<String> unreadable = new ArrayList<>();
+      Iterator<?> keys = valuesMap.keys();
+      while (keys.hasNext()) {
+        String field = (String) keys.next();
+        if (!InternalField.isInternalField(field) && !isReadable(acl, field)) {
+          unreadable.add(field);
+        }
+      }
+      for (String field : unreadable) {
+        valuesMap.remove(field);
+      }
+      return record;
+    } catch (JSONException | FailedDBOperationException e) {
+      ClientSupportConfig.getLogger().log(Level.FINE, "Problem checking ACL of record: {0}",
+              e.getMessage());
+      // This record has problems, so we can't return this to a user.
+      return null;
+    }
+  }
+
+  /**
+   * Records how many records were checked against an ACL that was already
+   * compiled and how many needed a new one.
+   */
+  public void updateStats() {
+    DelayProfiler.updateCount("selectAclHits", hits);
+    DelayProfiler.updateCount("selectAclMisses", misses);
+    hits = 0;
+    misses = 0;
+  }
+
+  private CompiledAcl getCompiledAcl(String guid, JSONObject valuesMap) {
+    JSONObject metaData = valuesMap.optJSONObject(ACCESS.getPrefix());
+    JSONObject whitelist = metaData != null ? metaData.optJSONObject(ACCESS.name()) : null;
+    String key = canonicalString(whitelist);
+    CompiledAcl acl = compiledAcls.get(key);
+    if (acl != null) {
+      hits++;
+      return acl;
+    }
+    misses++;
+    if (compiledAcls.size() >= MAX_COMPILED_ACLS) {
+      compiledAcls.clear();
+    }
+    acl = new CompiledAcl(whitelist, guid);
+    compiledAcls.put(key, acl);
+    return acl;
+  }
+
+  private boolean isReadable(CompiledAcl acl, String field) throws FailedDBOperationException {
+    Boolean result = acl.readable.get(field);
+    if (result == null) {
+      result = reader == null ? NSAccessSupport.indexOfItemInJSONArray(acl.everyoneAccessors(field),
+              GNSProtocol.EVERYONE.toString()) >= 0
+              : readerCanRead(acl, field);
+      acl.readable.put(field, result);
+    }
+    return result;
+  }
+
+  // Follows NSAuthentication.aclCheck for a reader that isn't the guid.
+  private boolean readerCanRead(CompiledAcl acl, String field) throws FailedDBOperationException {
+    JSONArray publicKeys = acl.readerAccessors(field);
+    if (SharedGuidUtils.findPublicKeyForGuid(reader, publicKeys) != null) {
+      return true;
+    }
+    lookupReader();
+    if (readerGuidInfo == null) {
+      return false;
+    }
+    // Everyone includes the reader as long as the reader exists
+    if (NSAccessSupport.indexOfItemInJSONArray(publicKeys, GNSProtocol.EVERYONE.toString()) >= 0) {
+      return true;
+    }
+    // Or the reader is a member of a group that is in the ACL
+    if (NSAccessSupport.hierarchicalAccessMemberCheck(ACCESS, acl.guid, field, reader, app)) {
+      return true;
+    }
+    if (readerGroups == null) {
+      readerGroups = NSGroupAccess.lookupGroups(null, reader, app.getRequestHandler());
+    }
+    return !readerGroups.isEmpty()
+            && NSAccessSupport.hierarchicalAccessGroupCheck(ACCESS, acl.guid, field, readerGroups, app);
+  }
+
+  private void lookupReader() throws FailedDBOperationException {
+    if (!readerLookedUp) {
+      readerLookedUp = true;
+      readerGuidInfo = AccountAccess.lookupGuidInfoAnywhere(null, reader, app.getRequestHandler());
+    }
+  }
+
+  // A string that is the same for JSON with the same content regardless of key order.
+  private static String canonicalString(Object value) {
+    StringBuilder builder = new StringBuilder();
+    appendCanonical(builder, value);
+    return builder.toString();
+  }
+
+  private static void appendCanonical(StringBuilder builder, Object value) {
+    if (value instanceof JSONObject) {
+      JSONObject json = (JSONObject) value;
+      Set<String> keys = new TreeSet<>();
+      Iterator<?> keyIter = json.keys();
+      while (keyIter.hasNext()) {
+        keys.add((String) keyIter.next());
+      }
+      builder.append('{');
+      for (String key : keys) {
+        builder.append(JSONObject.quote(key)).append(':');
+        appendCanonical(builder, json.opt(key));
+        builder.append(',');
+      }
+      builder.append('}');
+    } else if (value instanceof JSONArray) {
+      JSONArray array = (JSONArray) value;
+      builder.append('[');
+      for (int i = 0; i < array.length(); i++) {
+        appendCanonical(builder, array.opt(i));
+        builder.append(',');
+      }
+      builder.append(']');
+    } else if (value instanceof String) {
+      builder.append(JSONObject.quote((String) value));
+    } else {
+      builder.append(value);
+    }
+  }
+}
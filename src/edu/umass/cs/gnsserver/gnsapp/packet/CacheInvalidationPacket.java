@@ -0,0 +1,103 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.packet;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * This class implements the packet an active sends to the clients
+ * that cache reads of a guid to tell them that a field of the guid was updated.
+ * It doesn't carry the new value and isn't answered.
+ *
+ * @author westy
+ */
+public class CacheInvalidationPacket extends BasicPacket {
+
+  private final static String GUID = "guid";
+  private final static String FIELD = "field";
+
+  private final String guid;
+  private final String field;
+
+  /**
+   * Constructs a new CacheInvalidationPacket.
+   *
+   * @param guid
+   * @param field the field that was updated or null if it could be any field
+   */
+  public CacheInvalidationPacket(String guid, String field) {
+    this.type = Packet.PacketType.CACHE_INVALIDATION;
+    this.guid = guid;
+    this.field = field;
+  }
+
+  /**
+   * Constructs a new CacheInvalidationPacket from a JSONObject.
+   *
+   * @param json JSONObject representing this packet
+   * @throws org.json.JSONException
+   */
+  public CacheInvalidationPacket(JSONObject json) throws JSONException {
+    if (Packet.getPacketType(json) != Packet.PacketType.CACHE_INVALIDATION) {
+      throw new JSONException("CACHE_INVALIDATION: wrong packet type " + Packet.getPacketType(json));
+    }
+    this.type = Packet.PacketType.CACHE_INVALIDATION;
+    this.guid = json.getString(GUID);
+    this.field = json.optString(FIELD, null);
+  }
+
+  /**
+   * Converts a CacheInvalidationPacket to a JSONObject.
+   *
+   * @return JSONObject representing this packet.
+   * @throws org.json.JSONException
+   */
+  @Override
+  public JSONObject toJSONObject() throws JSONException {
+    JSONObject json = new JSONObject();
+    Packet.putPacketType(json, getType());
+    addToJSONObject(json);
+    return json;
+  }
+
+  @Override
+  public void addToJSONObject(JSONObject json) throws JSONException {
+    json.put(GUID, guid);
+    if (field != null) {
+      json.put(FIELD, field);
+    }
+  }
+
+  /**
+   * @return the guid that was updated
+   */
+  public String getGuid() {
+    return guid;
+  }
+
+  /**
+   * @return the field that was updated or null if it could be any field
+   */
+  public String getField() {
+    return field;
+  }
+
+}
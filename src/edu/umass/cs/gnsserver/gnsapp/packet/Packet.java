@@ -88,6 +88,12 @@ public class Packet {
      */
     ADMIN_COMMAND(10, AdminCommandPacket.class.getCanonicalName()),
 
+    /**
+     * CACHE_INVALIDATION
+     * Sent by an active to the clients that cache reads of a guid when it is updated.
+     */
+    CACHE_INVALIDATION(11, CacheInvalidationPacket.class.getCanonicalName()),
+
     
     /**
      * DUMP_REQUEST
@@ -270,6 +276,8 @@ public class Packet {
           return new edu.umass.cs.gnscommon.packets.ResponsePacket(json);
         case INTERNAL_COMMAND:
         	return new edu.umass.cs.gnsserver.gnsapp.packet.InternalCommandPacket(json);
+        case CACHE_INVALIDATION:
+          return new edu.umass.cs.gnsserver.gnsapp.packet.CacheInvalidationPacket(json);
         	
         // Admin:
         case DUMP_REQUEST:
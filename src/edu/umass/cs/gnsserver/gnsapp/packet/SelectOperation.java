@@ -39,4 +39,10 @@ public enum SelectOperation
    * other name servers.
    */
   NOTIFICATION_STATUS,
+  
+  /**
+   * A general purpose query that returns one page of results in the
+   * order of the guids, starting after the last guid of the previous page.
+   */
+  SELECT_PAGE,
 }
\ No newline at end of file
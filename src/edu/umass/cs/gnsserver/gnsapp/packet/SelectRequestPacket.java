@@ -52,6 +52,10 @@ public class SelectRequestPacket extends BasicPacketWithNSReturnAddress implemen
 	private final static String NOTIFICATION_STR 				= "notifcationMesg";
 	private final static String SELECT_HANDLE 					= "selectHandle";
 	private final static String LOCAL_SELECT_HANDLE 			= "localSelectHandle";
+	private final static String LIMIT 							= "limit";
+	private final static String PAGE_SIZE 						= "pageSize";
+	private final static String AFTER_NAME 						= "afterName";
+	private final static String GROUP_GUID 						= "groupGuid";
   
   
 	private SelectOperation selectOperation;
@@ -72,6 +76,18 @@ public class SelectRequestPacket extends BasicPacketWithNSReturnAddress implemen
 	// used for notification status select operation. 
 	private SelectHandleInfo selectHandle = null;  
 	
+	// The maximum number of records wanted, -1 means all of them.
+	private int limit = -1;
+	
+	// The number of records in a page of a paged select.
+	private int pageSize = -1;
+	
+	// The last guid of the previous page of a paged select, null for the first page.
+	private String afterName = null;
+	
+	// The context aware group guid that a QUERY select is setting up.
+	private String groupGuid = null;
+	
   /**
    * Constructs a new SelectRequestPacket
    * 
@@ -172,6 +188,46 @@ public class SelectRequestPacket extends BasicPacketWithNSReturnAddress implemen
 			  reader, null, null, null, selectHandle, localSelectHandle);
   }
   
+  /**
+   * Creates a request for the page of at most {@code pageSize} of the GUIDs that 
+   * match the given query and come after {@code afterName} in name order.
+   * 
+   * @param reader
+   * @param query
+   * @param projection
+   * @param pageSize
+   * @param afterName the last guid of the previous page or null for the first page
+   * @return a SelectRequestPacket
+   */
+  public static SelectRequestPacket makePageRequest(String reader, String query, 
+		  			List<String> projection, int pageSize, String afterName) 
+  {
+	  SelectRequestPacket packet = new SelectRequestPacket(SelectOperation.SELECT_PAGE,
+			  reader, query, projection, null, null, null);
+	  packet.pageSize = pageSize;
+	  packet.afterName = afterName;
+	  return packet;
+  }
+  
+  /**
+   * Creates a QUERY select that also sets up the context aware group guid
+   * {@code groupGuid}. Each name server remembers the query so that it can 
+   * keep the members of the group up to date as its records are updated.
+   * 
+   * @param reader
+   * @param query
+   * @param groupGuid
+   * @return a SelectRequestPacket
+   */
+  public static SelectRequestPacket makeGroupSetupRequest(String reader, String query, 
+		  String groupGuid)
+  {
+	  SelectRequestPacket packet = new SelectRequestPacket(SelectOperation.QUERY,
+			  reader, query, null, null, null, null);
+	  packet.groupGuid = groupGuid;
+	  return packet;
+  }
+  
   /**
    * Constructs new SelectRequestPacket from a JSONObject
    *
@@ -208,7 +264,11 @@ public class SelectRequestPacket extends BasicPacketWithNSReturnAddress implemen
 			  	
 	  this.localSelectHandle = json.has(LOCAL_SELECT_HANDLE) ?
 			  	LocalSelectHandleInfo.fromJSONObject(json.getJSONObject(LOCAL_SELECT_HANDLE)):null;
-	
+	  
+	  this.limit = json.optInt(LIMIT, -1);
+	  this.pageSize = json.optInt(PAGE_SIZE, -1);
+	  this.afterName = json.optString(AFTER_NAME, null);
+	  this.groupGuid = json.optString(GROUP_GUID, null);
   }
 
   /**
@@ -266,6 +326,78 @@ public class SelectRequestPacket extends BasicPacketWithNSReturnAddress implemen
 	  {
 		  json.put(LOCAL_SELECT_HANDLE, this.localSelectHandle.toJSONObject());
 	  }
+	  
+	  if(this.limit > 0)
+	  {
+		  json.put(LIMIT, this.limit);
+	  }
+	  
+	  if(this.pageSize > 0)
+	  {
+		  json.put(PAGE_SIZE, this.pageSize);
+	  }
+	  
+	  if(this.afterName != null)
+	  {
+		  json.put(AFTER_NAME, this.afterName);
+	  }
+	  
+	  if(this.groupGuid != null)
+	  {
+		  json.put(GROUP_GUID, this.groupGuid);
+	  }
+  }
+
+  /**
+   * Returns the maximum number of records the select should return.
+   * 
+   * @return the limit or -1 if there is no limit
+   */
+  public int getLimit() 
+  {
+	  return limit;
+  }
+  
+  /**
+   * Sets the maximum number of records the select should return.
+   * The collecting name server completes the select as soon as it has 
+   * this many records.
+   * 
+   * @param limit a positive number or -1 for no limit
+   */
+  public void setLimit(int limit) 
+  {
+	  this.limit = limit;
+  }
+
+  /**
+   * Returns the number of records in a page of a paged select.
+   * 
+   * @return the page size or -1 if this isn't a paged select
+   */
+  public int getPageSize() 
+  {
+	  return pageSize;
+  }
+
+  /**
+   * Returns the last guid of the previous page of a paged select.
+   * 
+   * @return the guid or null for the first page
+   */
+  public String getAfterName() 
+  {
+	  return afterName;
+  }
+
+  /**
+   * Returns the context aware group guid this select is setting up.
+   * 
+   * @return the group guid or null if this select isn't setting up a group
+   */
+  public String getGroupGuid() 
+  {
+	  return groupGuid;
   }
 
   /**
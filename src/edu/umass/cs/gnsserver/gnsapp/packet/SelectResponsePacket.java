@@ -44,12 +44,15 @@ public class SelectResponsePacket extends BasicPacketWithReturnAddressAndNsAddre
 	private final static String NSQUERYID 				= "nsQueryId";
 	private final static String RESPONSECODE 			= "code";
 	private final static String ERRORSTRING 			= "error";
+	private final static String LAST_NAME 				= "lastName";
 	
 	private long requestId;
 	private int nsQueryId;
 	private JSONArray records;
 	// Only used in SelectNotify command.
 	private NotificationStatsToIssuer notificationStats;
+	// Only used in paged selects. Null if there are no more records.
+	private String lastName;
   
 	private ResponseCode responseCode;
 	private String errorMessage;
@@ -114,6 +117,31 @@ public class SelectResponsePacket extends BasicPacketWithReturnAddressAndNsAddre
   }
   
 
+  /**
+   * Used by a NameServer to send a page of records of a paged select back to 
+   * the collecting NameServer along with the name of the last record it read
+   * if it read a full page, and by the collecting NameServer for the merged page
+   * and the name to start the next page after. 
+   *
+   * @param id
+   * @param lnsAddress
+   * @param nsQueryId
+   * @param nsAddress
+   * @param records
+   * @param lastName the name to start the next page after or null if there are no more records
+   * @return a SelectResponsePacket
+   */
+  public static SelectResponsePacket makeSuccessPacketForPage(
+          long id, InetSocketAddress lnsAddress,
+          int nsQueryId, InetSocketAddress nsAddress, JSONArray records, 
+          String lastName) 
+  {
+	  SelectResponsePacket packet = new SelectResponsePacket(id, lnsAddress, nsQueryId, 
+			  nsAddress, records, null, ResponseCode.NO_ERROR, null);
+	  packet.lastName = lastName;
+	  return packet;
+  }
+
   /**
    * Used by a NameServer to a failure response to a NameServer or Local NameServer
    *
@@ -155,6 +183,7 @@ public class SelectResponsePacket extends BasicPacketWithReturnAddressAndNsAddre
     			(json.optJSONObject(NOTIFICATION_STATS));
     }
     this.errorMessage = json.optString(ERRORSTRING, null);
+    this.lastName = json.optString(LAST_NAME, null);
 
   }
 
@@ -185,6 +214,10 @@ public class SelectResponsePacket extends BasicPacketWithReturnAddressAndNsAddre
     if (errorMessage != null) {
     	json.put(ERRORSTRING, errorMessage);
     }
+    if(this.lastName != null)
+    {
+    	json.put(LAST_NAME, lastName);
+    }
     return json;
   }
 
@@ -275,4 +308,14 @@ public class SelectResponsePacket extends BasicPacketWithReturnAddressAndNsAddre
   {
 	  return this.notificationStats;
   }
+  
+  /**
+   * 
+   * @return the name to start the next page of a paged select after, 
+   * or null if there are no more records.
+   */
+  public String getLastName()
+  {
+	  return this.lastName;
+  }
 }
\ No newline at end of file
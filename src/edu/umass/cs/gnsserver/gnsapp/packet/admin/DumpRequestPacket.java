@@ -34,6 +34,10 @@ import org.json.JSONObject;
  * This class implements the packet transmitted between local nameserver and a primary
  * nameserver to toString information about the contents of the nameserver.
  *
+ * A name server answers with one page of records at a time. A response with a
+ * cursor has more records, which are asked for by sending the request back to the
+ * same name server with that cursor. A response without a cursor is the last one.
+ *
  * @author Westy
  * @param <NodeIDType>
  */
@@ -48,6 +52,7 @@ public class DumpRequestPacket<NodeIDType> extends BasicPacketWithReturnAddress
   /** json */
   public final static String JSON = "json";
   private final static String ARGUMENT = "arg";
+  private final static String CURSOR = "cursor";
   private int id;
   /**
    * Primary name server receiving the request *
@@ -59,6 +64,10 @@ public class DumpRequestPacket<NodeIDType> extends BasicPacketWithReturnAddress
    */
   private JSONArray jsonArray;
   private String argument;
+  /**
+   * The name of the last record sent *
+   */
+  private String cursor;
 
   /**
    * Constructs a new DumpRequestPacket packet
@@ -115,6 +124,7 @@ public class DumpRequestPacket<NodeIDType> extends BasicPacketWithReturnAddress
     this.primaryNameServer = json.has(PRIMARY_NAMESERVER) ? unstringer.valueOf(json.getString(PRIMARY_NAMESERVER)) : null;
     this.jsonArray = json.getJSONArray(JSON);
     this.argument = json.optString(ARGUMENT, null);
+    this.cursor = json.optString(CURSOR, null);
   }
 
   /**
@@ -135,6 +145,9 @@ public class DumpRequestPacket<NodeIDType> extends BasicPacketWithReturnAddress
     if (this.argument != null) {
       json.put(ARGUMENT, argument);
     }
+    if (this.cursor != null) {
+      json.put(CURSOR, cursor);
+    }
     return json;
   }
 
@@ -200,4 +213,22 @@ public class DumpRequestPacket<NodeIDType> extends BasicPacketWithReturnAddress
   public String getArgument() {
     return argument;
   }
+
+  /**
+   * Get the cursor, the name of the last record sent.
+   * 
+   * @return the cursor or null if there are no more records
+   */
+  public String getCursor() {
+    return cursor;
+  }
+
+  /**
+   * Set the cursor.
+   * 
+   * @param cursor
+   */
+  public void setCursor(String cursor) {
+    this.cursor = cursor;
+  }
 }
@@ -19,12 +19,15 @@
  */
 package edu.umass.cs.gnsserver.gnsapp.recordmap;
 
+import edu.umass.cs.gnsserver.activecode.ActiveCodeCache;
 import edu.umass.cs.gnsserver.database.AbstractRecordCursor;
 import edu.umass.cs.gnsserver.database.ColumnField;
+import edu.umass.cs.gnsserver.database.ColumnFieldType;
 import edu.umass.cs.gnsserver.database.NoSQLRecords;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.gnamed.GnsAnswerCache;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
 import org.json.JSONException;
@@ -81,6 +84,8 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
     try {
       String name = json.getString(NameRecord.NAME.getName());
       records.insert(collectionName, name, json);
+      GnsAnswerCache.invalidate(name);
+      ActiveCodeCache.invalidate(name);
       GNSConfig.getLogger().log(Level.FINER, "{0}:: Added {1} JSON: {2}",
               new Object[]{records.toString(), name, json});
     } catch (JSONException e) {
@@ -92,6 +97,8 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
   @Override
   public void removeRecord(String name) throws FailedDBOperationException {
     noSqlRecords.removeEntireRecord(collectionName, name);
+    GnsAnswerCache.invalidate(name);
+    ActiveCodeCache.invalidate(name);
   }
 
   @Override
@@ -103,6 +110,8 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
   public void updateEntireValuesMap(String name, ValuesMap valuesMap)
           throws FailedDBOperationException {
     noSqlRecords.updateEntireRecord(collectionName, name, valuesMap);
+    GnsAnswerCache.invalidate(name);
+    ActiveCodeCache.invalidate(name);
   }
 
   @Override
@@ -110,12 +119,62 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
           throws FailedDBOperationException {
     noSqlRecords.updateIndividualFields(collectionName, name,
             NameRecord.VALUES_MAP, valuesMapKeys, valuesMapValues);
+    invalidateDnsAnswers(name, valuesMapKeys);
+    invalidateActiveCode(name, valuesMapKeys);
   }
 
   @Override
   public void removeMapKeys(String name, ColumnField mapField, ArrayList<ColumnField> mapKeys)
           throws FailedDBOperationException {
     noSqlRecords.removeMapKeys(collectionName, name, mapField, mapKeys);
+    invalidateDnsAnswers(name, mapKeys);
+    invalidateActiveCode(name, mapKeys);
+  }
+
+  @Override
+  public void addToSetField(String name, String key, List<Object> values)
+          throws FailedDBOperationException {
+    noSqlRecords.addToSetField(collectionName, name, NameRecord.VALUES_MAP, key, values);
+    ArrayList<ColumnField> fields = new ArrayList<>();
+    fields.add(new ColumnField(key, ColumnFieldType.LIST_STRING));
+    invalidateDnsAnswers(name, fields);
+    invalidateActiveCode(name, fields);
+  }
+
+  @Override
+  public void removeFromSetField(String name, String key, List<Object> values)
+          throws FailedDBOperationException {
+    noSqlRecords.removeFromSetField(collectionName, name, NameRecord.VALUES_MAP, key, values);
+    ArrayList<ColumnField> fields = new ArrayList<>();
+    fields.add(new ColumnField(key, ColumnFieldType.LIST_STRING));
+    invalidateDnsAnswers(name, fields);
+    invalidateActiveCode(name, fields);
+  }
+
+  @Override
+  public boolean setFieldContains(String name, String key, Object value)
+          throws FailedDBOperationException {
+    return noSqlRecords.setFieldContains(collectionName, name, NameRecord.VALUES_MAP, key, value);
+  }
+
+  // Drops the DNS answers built from this record if any of the fields are used in them.
+  private static void invalidateDnsAnswers(String name, ArrayList<ColumnField> fields) {
+    for (ColumnField field : fields) {
+      if (GnsAnswerCache.isDnsField(field.getName())) {
+        GnsAnswerCache.invalidate(name);
+        return;
+      }
+    }
+  }
+
+  // Drops the cached active code of this guid if any of the fields hold code.
+  private static void invalidateActiveCode(String name, ArrayList<ColumnField> fields) {
+    for (ColumnField field : fields) {
+      if (ActiveCodeCache.isCodeField(field.getName())) {
+        ActiveCodeCache.invalidate(name);
+        return;
+      }
+    }
   }
 
   @Override
@@ -128,6 +187,12 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
     return noSqlRecords.selectRecords(collectionName, valuesMapField, key, value);
   }
 
+  @Override
+  public AbstractRecordCursor selectRecordsPage(ColumnField valuesMapField, String key, Object value,
+          String afterName, int limit) throws FailedDBOperationException {
+    return noSqlRecords.selectRecordsPage(collectionName, valuesMapField, key, value, afterName, limit);
+  }
+
   @Override
   public AbstractRecordCursor selectRecordsWithin(ColumnField valuesMapField, String key, String value) throws FailedDBOperationException {
     return noSqlRecords.selectRecordsWithin(collectionName, valuesMapField, key, value);
@@ -144,6 +209,14 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
     return noSqlRecords.selectRecordsQuery(collectionName, valuesMapField, query, projection);
   }
 
+  @Override
+  public AbstractRecordCursor selectRecordsQueryPage(ColumnField valuesMapField,
+          String query, List<String> projection, String afterName, int limit)
+          throws FailedDBOperationException {
+    return noSqlRecords.selectRecordsQueryPage(collectionName, valuesMapField, query, projection,
+            afterName, limit);
+  }
+
   @Override
   public String toString() {
     return "MongoRecordMap{" + "collectionName=" + collectionName + ", records=" + noSqlRecords + '}';
@@ -246,9 +246,11 @@ public class NameRecord implements Comparable<NameRecord>, Summarizable {
    * @return True if the updateEntireValuesMap does anything, false otherwise.
    * @throws edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   * @throws edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException
    */
   public boolean updateNameRecord(String recordKey, ResultValue newValues, ResultValue oldValues, int argument,
-          ValuesMap userJSON, UpdateOperation operation) throws FieldNotFoundException, FailedDBOperationException {
+          ValuesMap userJSON, UpdateOperation operation) throws FieldNotFoundException,
+          FailedDBOperationException, RecordNotFoundException {
 
     // Handle special case for SINGLE_FIELD_REMOVE_FIELD operation
     // whose purpose is to remove the field with name = key from values map.
@@ -262,6 +264,26 @@ public class NameRecord implements Comparable<NameRecord>, Summarizable {
       return true;
     }
 
+    // Set operations (group membership, ACLs) add or remove just the given values
+    // in the database so they don't have to read and write back the whole list.
+    // If the database can't do that, say the field isn't a list, read the field and do it here.
+    if (operation.isSetOperation() && !hashMap.containsKey(VALUES_MAP)) {
+      try {
+        if (operation.equals(UpdateOperation.SINGLE_FIELD_REMOVE)) {
+          recordMap.removeFromSetField(getName(), recordKey, newValues);
+        } else {
+          recordMap.addToSetField(getName(), recordKey, newValues);
+        }
+        return true;
+      } catch (FailedDBOperationException e) {
+        GNSConfig.getLogger().log(Level.FINE,
+                "Set operation {0} on {1} in {2} failed, reading the field: {3}",
+                new Object[]{operation, recordKey, getName(), e.getMessage()});
+        hashMap.putAll(recordMap.lookupUserFields(getName(), NAME, VALUES_MAP,
+                userFieldList(ColumnFieldType.LIST_STRING, recordKey)));
+      }
+    }
+
     /*
      * Some updateEntireValuesMap operations require that record is first read from DB, modified, and then written.
      * That is 1 DB read + 1 DB write. Others do not require record to be read, but we can directly do a write.
@@ -273,7 +295,7 @@ public class NameRecord implements Comparable<NameRecord>, Summarizable {
      * included it as a special case for it.
      */
     ValuesMap valuesMap;
-    if (operation.isAbleToSkipRead()) {
+    if (operation.isAbleToSkipRead() && !operation.isSetOperation()) {
       valuesMap = new ValuesMap();
       hashMap.put(VALUES_MAP, valuesMap);
     } else {
@@ -380,6 +402,23 @@ public class NameRecord implements Comparable<NameRecord>, Summarizable {
             userFieldList(returnType, userFieldNames)));
   }
 
+  /**
+   * Returns true if the user field of the name record holds a list that contains the value.
+   * The list isn't read to answer this so it is cheap even for very large lists
+   * such as the members of a big group.
+   *
+   * @param recordMap
+   * @param name
+   * @param key
+   * @param value
+   * @return true if the value is in the list
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public static boolean setFieldContains(BasicRecordMap recordMap, String name, String key, Object value)
+          throws FailedDBOperationException {
+    return recordMap.setFieldContains(name, key, value);
+  }
+
   private static ArrayList<ColumnField> userFieldList(ColumnFieldType returnType, String... fieldNames) {
     ArrayList<ColumnField> result = new ArrayList<>();
     for (String fieldName : fieldNames) {
@@ -423,6 +462,23 @@ public class NameRecord implements Comparable<NameRecord>, Summarizable {
     return recordMap.getAllRowsIterator();
   }
 
+  /**
+   * Returns up to limit records in the order of their names starting after afterName,
+   * only those that have a *user* key with the value if key is not null.
+   *
+   * @param recordMap
+   * @param key - null for all records
+   * @param value
+   * @param afterName - the name of the last record of the previous page or null for the first page
+   * @param limit
+   * @return an {@link AbstractRecordCursor}
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public static AbstractRecordCursor selectRecordsPage(BasicRecordMap recordMap, String key, Object value,
+          String afterName, int limit) throws FailedDBOperationException {
+    return recordMap.selectRecordsPage(NameRecord.VALUES_MAP, key, value, afterName, limit);
+  }
+
   /**
    * Given a key and a value return all the records as a AbstractRecordCursor that have a *user* key with that value.
    *
@@ -479,6 +535,24 @@ public class NameRecord implements Comparable<NameRecord>, Summarizable {
     return recordMap.selectRecordsQuery(NameRecord.VALUES_MAP, query, projection);
   }
 
+  /**
+   * Returns up to limit of the records that match the query in name order
+   * starting after afterName.
+   *
+   * @param recordMap
+   * @param query
+   * @param projection
+   * @param afterName the name of the last record of the previous page or null for the first page
+   * @param limit
+   * @return an {@link AbstractRecordCursor}
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public static AbstractRecordCursor selectRecordsQueryPage(BasicRecordMap recordMap,
+          String query, List<String> projection, String afterName, int limit)
+          throws FailedDBOperationException {
+    return recordMap.selectRecordsQueryPage(NameRecord.VALUES_MAP, query, projection, afterName, limit);
+  }
+
   /**
    * PLEASE DO NOT DELETE THE THIS. IT IS NECESSARY!!!! - Westy
    *
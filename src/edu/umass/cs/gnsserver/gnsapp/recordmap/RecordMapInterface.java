@@ -139,6 +139,41 @@ public interface RecordMapInterface {
   public abstract void removeMapKeys(String name, ColumnField mapField, ArrayList<ColumnField> mapKeys)
           throws FailedDBOperationException;
 
+  /**
+   * Adds the values that aren't already there to a user field that holds a list
+   * without reading the list.
+   *
+   * @param name - the name of the record
+   * @param key - the user field
+   * @param values - the values to add
+   * @throws FailedDBOperationException if the field isn't a list
+   */
+  public abstract void addToSetField(String name, String key, List<Object> values)
+          throws FailedDBOperationException;
+
+  /**
+   * Removes the values from a user field that holds a list without reading the list.
+   *
+   * @param name - the name of the record
+   * @param key - the user field
+   * @param values - the values to remove
+   * @throws FailedDBOperationException if the field isn't a list
+   */
+  public abstract void removeFromSetField(String name, String key, List<Object> values)
+          throws FailedDBOperationException;
+
+  /**
+   * Returns true if a user field that holds a list contains the value.
+   *
+   * @param name - the name of the record
+   * @param key - the user field
+   * @param value
+   * @return true if the value is in the list
+   * @throws FailedDBOperationException
+   */
+  public abstract boolean setFieldContains(String name, String key, Object value)
+          throws FailedDBOperationException;
+
   /**
    * Returns an iterator for all the rows in the collection with all fields filled in.
    *
@@ -160,6 +195,21 @@ public interface RecordMapInterface {
   public abstract AbstractRecordCursor selectRecords(ColumnField valuesMapField,
           String key, Object value) throws FailedDBOperationException;
 
+  /**
+   * Returns up to limit records in the order of their names starting after afterName.
+   * If key is not null only the records that have a *user* key with that value are returned.
+   *
+   * @param valuesMapField - the field in the row that contains the *user* fields
+   * @param key - null for all records
+   * @param value
+   * @param afterName - the name of the last record of the previous page or null for the first page
+   * @param limit
+   * @return an {@link AbstractRecordCursor}
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public abstract AbstractRecordCursor selectRecordsPage(ColumnField valuesMapField,
+          String key, Object value, String afterName, int limit) throws FailedDBOperationException;
+
   /**
    * If key is a GeoSpatial field return all fields that are within value which is a bounding box specified
    * as a nested JSONArray string tuple of paired tuples: [[LONG_UL, LAT_UL],[LONG_BR, LAT_BR]].
@@ -199,4 +249,20 @@ public interface RecordMapInterface {
   public abstract AbstractRecordCursor selectRecordsQuery(ColumnField valuesMapField,
           String query, List<String> projection) throws FailedDBOperationException;
 
+  /**
+   * Returns up to limit of the records that match the query in name order
+   * starting after afterName.
+   *
+   * @param valuesMapField
+   * @param query
+   * @param projection
+   * @param afterName the name of the last record of the previous page or null for the first page
+   * @param limit
+   * @return {@link AbstractRecordCursor}
+   * @throws FailedDBOperationException
+   */
+  public abstract AbstractRecordCursor selectRecordsQueryPage(ColumnField valuesMapField,
+          String query, List<String> projection, String afterName, int limit)
+          throws FailedDBOperationException;
+
 }
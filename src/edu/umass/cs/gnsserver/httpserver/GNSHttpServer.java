@@ -28,6 +28,7 @@ import static edu.umass.cs.gnsserver.httpserver.Defs.QUERYPREFIX;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.URI;
@@ -35,7 +36,17 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,13 +60,13 @@ import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpsExchange;
 
+import edu.umass.cs.gigapaxos.interfaces.Callback;
 import edu.umass.cs.gnsclient.client.GNSClient;
 import edu.umass.cs.gnsclient.client.GNSClientConfig;
 import edu.umass.cs.gnscommon.CommandType;
 import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.ResponseCode;
 import edu.umass.cs.gnscommon.exceptions.client.ClientException;
-import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
 import edu.umass.cs.gnscommon.utils.Base64;
 import edu.umass.cs.gnscommon.utils.CanonicalJSON;
@@ -70,9 +81,23 @@ import edu.umass.cs.gnsserver.utils.Util;
 import edu.umass.cs.nio.JSONPacket;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig;
 import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
 
 /**
+ * The HTTP server.
  *
+ * Requests don't hold a thread while they are in flight. The handler parses a
+ * request and either sends the command out with the async API of the
+ * {@link GNSClient}, answering the request from the callback, or hands the
+ * commands that are handled locally to a small pool of threads. The JDK server
+ * keeps connections open between requests and answers pipelined requests on a
+ * connection in order.
+ *
+ * At most HTTP_SERVER_MAX_IN_FLIGHT requests are worked on at once. The rest are
+ * answered right away with a 503 so that bursts don't build up a queue. So are
+ * requests for which the command can't be started, while requests that aren't
+ * answered within HTTP_SERVER_REQUEST_TIMEOUT get a 504. Command results,
+ * errors included, are sent with a 200 as before.
  *
  * @author westy
  */
@@ -96,12 +121,32 @@ public class GNSHttpServer {
 
   private final static Logger LOGGER = Logger.getLogger(GNSHttpServer.class.getName());
 
+  /**
+   * The backlog of connections waiting to be accepted.
+   */
+  protected static final int BACKLOG = 1024;
+
+  // Parses requests and writes responses. Requests don't hold these while in flight.
+  private final ExecutorService httpExecutor = Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(), new NamedThreadFactory("GNSHttpServer"));
+  // Runs the commands that are handled locally which block while they run.
+  private final ExecutorService localExecutor = new ThreadPoolExecutor(
+          4 * Runtime.getRuntime().availableProcessors(), 4 * Runtime.getRuntime().availableProcessors(),
+          0, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(Config.getGlobalInt(GNSConfig.GNSC.HTTP_SERVER_LOCAL_QUEUE_SIZE)),
+          new NamedThreadFactory("GNSHttpServerLocal"));
+  private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+          new NamedThreadFactory("GNSHttpServerTimer"));
+  private final Semaphore admission = new Semaphore(
+          Config.getGlobalInt(GNSConfig.GNSC.HTTP_SERVER_MAX_IN_FLIGHT));
+
   /**
    *
    * @param port
    * @param requestHandler
    */
   public GNSHttpServer(int port, ClientRequestHandlerInterface requestHandler) {
+    this.timer.setRemoveOnCancelPolicy(true);
     this.commandModule = new CommandModule();
     this.requestHandler = requestHandler;
     try {
@@ -142,6 +187,24 @@ public class GNSHttpServer {
     if (httpServer != null) {
       httpServer.stop(0);
     }
+    shutdownExecutors();
+  }
+
+  /**
+   * Stops the threads that handle requests.
+   */
+  protected void shutdownExecutors() {
+    httpExecutor.shutdown();
+    localExecutor.shutdown();
+    timer.shutdown();
+  }
+
+  /**
+   *
+   * @return the executor the JDK server runs the handlers on
+   */
+  protected ExecutorService getHttpExecutor() {
+    return httpExecutor;
   }
 
   /**
@@ -153,11 +216,11 @@ public class GNSHttpServer {
   public boolean tryPort(int port) {
     try {
       InetSocketAddress addr = new InetSocketAddress(port);
-      httpServer = HttpServer.create(addr, 0);
+      httpServer = HttpServer.create(addr, BACKLOG);
 
       httpServer.createContext("/", new EchoHttpHandler());
       httpServer.createContext("/" + GNS_PATH, new DefaultHttpHandler());
-      httpServer.setExecutor(Executors.newCachedThreadPool());
+      httpServer.setExecutor(httpExecutor);
       httpServer.start();
       // Need to do this for the places where we expose the insecure http service to the user
       requestHandler.setHttpServerPort(port);
@@ -183,65 +246,178 @@ public class GNSHttpServer {
      */
     @Override
     public void handle(HttpExchange exchange) {
+      if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+        sendResponse(exchange, HttpURLConnection.HTTP_BAD_METHOD, "");
+        return;
+      }
+      // Shed load rather than queue up requests
+      if (!admission.tryAcquire()) {
+        DelayProfiler.updateCount("httpRequestsRejected", 1);
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendResponse(exchange, HttpURLConnection.HTTP_UNAVAILABLE, GNSProtocol.BAD_RESPONSE.toString()
+                + " " + GNSProtocol.UNSPECIFIED_ERROR.toString() + " Server is busy");
+        return;
+      }
+      PendingRequest request = new PendingRequest(exchange);
       try {
-        String requestMethod = exchange.getRequestMethod();
-        if (requestMethod.equalsIgnoreCase("GET")) {
-          Headers requestHeaders = exchange.getRequestHeaders();
-          String host = requestHeaders.getFirst("Host");
-          Headers responseHeaders = exchange.getResponseHeaders();
-          responseHeaders.set("Content-Type", "text/plain");
-          if (Config.getGlobalBoolean(GNSClientConfig.GNSCC.ENABLE_CROSS_ORIGIN_REQUESTS)) {
-            responseHeaders.set("Access-Control-Allow-Origin", "*");
-          }
-          exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
-
-          try (OutputStream responseBody = exchange.getResponseBody()) {
-            URI uri = exchange.getRequestURI();
-            LOGGER.log(Level.FINE,
-                    "HTTP SERVER REQUEST FROM {0}: {1}",
-                    new Object[]{exchange.getRemoteAddress().getHostName(), uri.toString()});
-            String path = uri.getPath();
-            String query = uri.getQuery() != null ? uri.getQuery() : ""; // stupidly it returns null for empty query
-
-            String commandName = path.replaceFirst("/" + GNS_PATH + "/", "");
-
-            CommandResponse response;
-            if (!commandName.isEmpty()) {
-              LOGGER.log(Level.FINE, "Action: {0} Query:{1}", new Object[]{commandName, query});
-              boolean secureServer = exchange instanceof HttpsExchange;
-              response = processQuery(host, commandName, query, secureServer);
-            } else {
-              response = new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED, GNSProtocol.BAD_RESPONSE.toString()
-                      + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString() + " Don't understand " + commandName + " " + query);
-            }
-            LOGGER.log(Level.FINER, "Response: {0}", response);
-            // FIXME: This totally ignores the error code.
-            responseBody.write(response.getReturnValue().getBytes());
-          }
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        URI uri = exchange.getRequestURI();
+        LOGGER.log(Level.FINE,
+                "HTTP SERVER REQUEST FROM {0}: {1}",
+                new Object[]{exchange.getRemoteAddress().getHostName(), uri.toString()});
+        String path = uri.getPath();
+        String query = uri.getQuery() != null ? uri.getQuery() : ""; // stupidly it returns null for empty query
+
+        String commandName = path.replaceFirst("/" + GNS_PATH + "/", "");
+
+        CommandResponse response;
+        if (!commandName.isEmpty()) {
+          LOGGER.log(Level.FINE, "Action: {0} Query:{1}", new Object[]{commandName, query});
+          boolean secureServer = exchange instanceof HttpsExchange;
+          // null if the request will be answered later
+          response = processQuery(host, commandName, query, secureServer, request);
+        } else {
+          response = new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED, GNSProtocol.BAD_RESPONSE.toString()
+                  + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString() + " Don't understand " + commandName + " " + query);
+        }
+        if (response != null) {
+          request.complete(response);
+          request.finish();
         }
       } catch (Exception e) {
         LOGGER.log(Level.SEVERE, "Error: {0}", e.getMessage());
         e.printStackTrace();
-        try {
-          String response = GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.QUERY_PROCESSING_ERROR.toString() + " " + e;
-          try (OutputStream responseBody = exchange.getResponseBody()) {
-            responseBody.write(response.getBytes());
-          }
-        } catch (Exception f) {
-          // at this point screw it
+        request.complete(new CommandResponse(ResponseCode.UNSPECIFIED_ERROR,
+                GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.QUERY_PROCESSING_ERROR.toString() + " " + e),
+                HttpURLConnection.HTTP_INTERNAL_ERROR);
+        request.finish();
+      }
+    }
+  }
+
+  /**
+   * A request that has been admitted and not answered yet. It is answered once,
+   * with the response or with a timeout, whichever comes first. The request keeps
+   * its admission permit until the work on it has finished, which can be after
+   * a timeout has been sent, so the work in flight stays bounded.
+   */
+  private class PendingRequest {
+
+    private final HttpExchange exchange;
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicBoolean answered = new AtomicBoolean(false);
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private final ScheduledFuture<?> timeout;
+    private final ScheduledFuture<?> workTimeout;
+
+    private PendingRequest(HttpExchange exchange) {
+      this.exchange = exchange;
+      this.timeout = timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          DelayProfiler.updateCount("httpRequestsTimedOut", 1);
+          complete(new CommandResponse(ResponseCode.TIMEOUT, GNSProtocol.BAD_RESPONSE.toString()
+                  + " " + GNSProtocol.TIMEOUT.toString()), HttpURLConnection.HTTP_GATEWAY_TIMEOUT);
         }
+      }, Config.getGlobalInt(GNSConfig.GNSC.HTTP_SERVER_REQUEST_TIMEOUT), TimeUnit.MILLISECONDS);
+      // The GNS client never calls back if the response is lost
+      this.workTimeout = timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          DelayProfiler.updateCount("httpRequestsAbandoned", 1);
+          finish();
+        }
+      }, Config.getGlobalInt(GNSConfig.GNSC.HTTP_SERVER_WORK_TIMEOUT), TimeUnit.MILLISECONDS);
+    }
+
+    // Called once the work on the request is done, gives back the admission permit.
+    private void finish() {
+      if (!finished.compareAndSet(false, true)) {
+        return;
+      }
+      workTimeout.cancel(false);
+      admission.release();
+    }
+
+    // Answers with the result of the command. The error code of the result is in
+    // the body, as the clients expect.
+    private void complete(CommandResponse response) {
+      complete(response, HttpURLConnection.HTTP_OK);
+    }
+
+    // Answers with the given HTTP status, for requests that the command never ran for.
+    private void complete(final CommandResponse response, final int status) {
+      if (!answered.compareAndSet(false, true)) {
+        return;
+      }
+      timeout.cancel(false);
+      LOGGER.log(Level.FINER, "Response: {0} {1}", new Object[]{status, response});
+      // Don't write to the connection on the thread of the GNS client
+      try {
+        httpExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            if (status == HttpURLConnection.HTTP_UNAVAILABLE) {
+              exchange.getResponseHeaders().set("Retry-After", "1");
+            }
+            // FIXME: This totally ignores the error code of command results.
+            sendResponse(exchange, status, response.getReturnValue());
+            DelayProfiler.updateDelay("httpRequest", startTime);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // shutting down
+        exchange.close();
       }
     }
   }
 
+  // Sends the whole response with its length so that the connection can be used
+  // for the next request.
+  private static void sendResponse(HttpExchange exchange, int code, String body) {
+    try {
+      byte[] bytes = body.getBytes();
+      Headers responseHeaders = exchange.getResponseHeaders();
+      responseHeaders.set("Content-Type", "text/plain");
+      if (Config.getGlobalBoolean(GNSClientConfig.GNSCC.ENABLE_CROSS_ORIGIN_REQUESTS)) {
+        responseHeaders.set("Access-Control-Allow-Origin", "*");
+      }
+      // -1 is no body, 0 would be chunked
+      exchange.sendResponseHeaders(code, bytes.length > 0 ? bytes.length : -1);
+      try (OutputStream responseBody = exchange.getResponseBody()) {
+        responseBody.write(bytes);
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "Unable to send response: {0}", e.getMessage());
+      exchange.close();
+    }
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private int count = 0;
+
+    private NamedThreadFactory(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public synchronized Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, name + "-" + count++);
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
   /*
    * Process queries for the http service. Converts the URI of e the HTTP query into
    * the JSON Object format that is used by the CommandModeule class, then finds
-   * executes the matching command.
-   *
-   * @throws InternalRequestException
+   * executes the matching command. Returns null if the request will be answered
+   * once the command has been executed.
    */
-  private CommandResponse processQuery(String host, String commandName, String queryString, boolean secureServer) throws InternalRequestException {
+  private CommandResponse processQuery(String host, final String commandName, final String queryString,
+          boolean secureServer, final PendingRequest request) {
 
     // Convert the URI into a JSONObject, stuffing in some extra relevant fields like
     // the signature, and the message signed.
@@ -249,7 +425,7 @@ public class GNSHttpServer {
       // Note that the commandName is not part of the queryString string here so
       // it doesn't end up in the jsonCommand. Also see below where we put the
       // command integer into the jsonCommand.
-      JSONObject jsonCommand = Util.parseURIQueryStringIntoJSONObject(queryString);
+      final JSONObject jsonCommand = Util.parseURIQueryStringIntoJSONObject(queryString);
       // If the signature exists it is Base64 encoded so decode it now.
       if (jsonCommand.has(GNSProtocol.SIGNATURE.toString())) {
         jsonCommand.put(GNSProtocol.SIGNATURE.toString(),
@@ -257,7 +433,7 @@ public class GNSHttpServer {
                         GNSProtocol.CHARSET.toString()));
       }
       // getCommandForHttp allows for "dump" as well as "Dump"
-      CommandType commandType = CommandType.getCommandForHttp(commandName);
+      final CommandType commandType = CommandType.getCommandForHttp(commandName);
       if (commandType == null) {
         return new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED,
                 GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
@@ -284,53 +460,31 @@ public class GNSHttpServer {
       // Client will be null if GNSC.DISABLE_MULTI_SERVER_HTTP (see above)
       // is true (or there was a problem).
       if (client == null || commandType.isLocallyHandled()) {
-        // EXECUTE IT LOCALLY
-        AbstractCommand command;
+        // EXECUTE IT LOCALLY on the pool for that as it blocks
         try {
-          command = commandModule.lookupCommand(commandType);
-          // Do some work to get the signature and message into the command for
-          // signature checking that happens later on.
-          // This only happens for local execution because remote handling (in the
-          // other side of the if) already does this.
-          processSignature(jsonCommand);
-          if (command != null) {
-            return CommandHandler.executeCommand(command,
-                    new CommandPacket((long) (Math.random() * Long.MAX_VALUE), jsonCommand, false),
-                    requestHandler,
-                    /**
-                     * HTTP request will not be executed during recovery,
-                     * as all HTTP requests will be translated to GNS requests
-                     * and sent out by a GNSClient.
-                     * 
-                     * author: gaozy
-                     */
-                    false );
-          }
-          LOGGER.log(Level.FINE, "lookupCommand returned null for {0}", commandName);
-        } catch (IllegalArgumentException e) {
-          LOGGER.log(Level.FINE, "lookupCommand failed for {0}", commandName);
+          localExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                request.complete(executeLocally(commandName, commandType, queryString, jsonCommand));
+              } finally {
+                request.finish();
+              }
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          DelayProfiler.updateCount("httpRequestsRejected", 1);
+          request.complete(new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
+                  + GNSProtocol.UNSPECIFIED_ERROR.toString() + " Server is busy or shutting down"),
+                  HttpURLConnection.HTTP_UNAVAILABLE);
+          request.finish();
         }
-        return new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED,
-                GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
-                + " Sorry, don't understand " + commandName + QUERYPREFIX + queryString);
+        return null;
       } else {
-        // Send the command remotely using a client
-        try {
-          LOGGER.log(Level.FINE, "Sending command out to a remote server: {0}", jsonCommand);
-          CommandPacket commandResponsePacket = getResponseUsingGNSClient(client, jsonCommand);
-          return new CommandResponse(ResponseCode.NO_ERROR,
-                  // Some crap here to make single field reads return just the value for backward compatibility
-                  // There is similar code to this other places.
-                  specialCaseSingleFieldRead(commandResponsePacket.getResultString(),
-                          commandType, jsonCommand));
-        } catch (IOException | ClientException e) {
-          return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
-                  + GNSProtocol.UNSPECIFIED_ERROR.toString() + " " + e.toString());
-//      } catch (ClientException e) {
-//        return new CommandResponse(ResponseCode.GNSProtocol.UNSPECIFIED_ERROR.toString(),
-//                GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
-//                + " Sorry, don't understand " + commandName + QUERYPREFIX + queryString);
-        }
+        // Send the command remotely using a client, the callback answers the request
+        LOGGER.log(Level.FINE, "Sending command out to a remote server: {0}", jsonCommand);
+        sendUsingGNSClient(client, jsonCommand, commandType, request);
+        return null;
       }
     } catch (JSONException | UnsupportedEncodingException e) {
       return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
@@ -338,6 +492,41 @@ public class GNSHttpServer {
     }
   }
 
+  private CommandResponse executeLocally(String commandName, CommandType commandType,
+          String queryString, JSONObject jsonCommand) {
+    AbstractCommand command;
+    try {
+      command = commandModule.lookupCommand(commandType);
+      // Do some work to get the signature and message into the command for
+      // signature checking that happens later on.
+      // This only happens for local execution because remote handling (in the
+      // other side of the if) already does this.
+      processSignature(jsonCommand);
+      if (command != null) {
+        return CommandHandler.executeCommand(command,
+                new CommandPacket((long) (Math.random() * Long.MAX_VALUE), jsonCommand, false),
+                requestHandler,
+                /**
+                 * HTTP request will not be executed during recovery,
+                 * as all HTTP requests will be translated to GNS requests
+                 * and sent out by a GNSClient.
+                 * 
+                 * author: gaozy
+                 */
+                false );
+      }
+      LOGGER.log(Level.FINE, "lookupCommand returned null for {0}", commandName);
+    } catch (IllegalArgumentException e) {
+      LOGGER.log(Level.FINE, "lookupCommand failed for {0}", commandName);
+    } catch (JSONException e) {
+      return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
+              + GNSProtocol.UNSPECIFIED_ERROR.toString() + " " + e.toString());
+    }
+    return new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED,
+            GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
+            + " Sorry, don't understand " + commandName + QUERYPREFIX + queryString);
+  }
+
   private static void sanityCheckMessage(JSONObject jsonCommand) throws JSONException,
           UnsupportedEncodingException {
     if (jsonCommand.has("originalMessageBase64")) {
@@ -389,24 +578,47 @@ public class GNSHttpServer {
     return response;
   }
 
-  private CommandPacket getResponseUsingGNSClient(GNSClient client,
-          JSONObject jsonFormattedArguments) throws ClientException, IOException, JSONException {
-    LOGGER.log(Level.FINE, "jsonFormattedCommand ={0}", jsonFormattedArguments.toString());
+  private void sendUsingGNSClient(GNSClient client, final JSONObject jsonFormattedArguments,
+          final CommandType commandType, final PendingRequest request) {
+    LOGGER.log(Level.FINE, "jsonFormattedCommand ={0}", jsonFormattedArguments);
 
     CommandPacket outgoingPacket = new CommandPacket((long) (Math.random() * Long.MAX_VALUE), jsonFormattedArguments, false);
-    //GNSCommand.createGNSCommandFromJSONObject(jsonFormattedArguments);
-
-    LOGGER.log(Level.FINE, "outgoingPacket ={0}", outgoingPacket.toString());
-
-    CommandPacket returnPacket = client.execute(outgoingPacket);
 
-    LOGGER.log(Level.FINE, "returnPacket ={0}", returnPacket.toString());
-    /**
-     * Can also invoke getResponse(), getResponseString(), getResponseJSONObject()
-     * etc. on {@link CommandPacket} as documented in {@link GNSCommand}.
-     */
-    return returnPacket;
+    LOGGER.log(Level.FINE, "outgoingPacket ={0}", outgoingPacket);
+    try {
+      client.execute(outgoingPacket, new Callback<CommandPacket, CommandPacket>() {
+        @Override
+        public CommandPacket processResponse(CommandPacket returnPacket) {
+          LOGGER.log(Level.FINE, "returnPacket ={0}", returnPacket);
+          request.complete(getResponse(returnPacket, commandType, jsonFormattedArguments));
+          request.finish();
+          return returnPacket;
+        }
+      });
+    } catch (IOException e) {
+      request.complete(new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
+              + GNSProtocol.UNSPECIFIED_ERROR.toString() + " " + e.toString()),
+              HttpURLConnection.HTTP_UNAVAILABLE);
+      request.finish();
+    }
+  }
 
+  private static CommandResponse getResponse(CommandPacket returnPacket, CommandType commandType,
+          JSONObject jsonFormattedArguments) {
+    try {
+      String result = returnPacket.getResultString();
+      if (result == null) {
+        return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
+                + GNSProtocol.UNSPECIFIED_ERROR.toString() + " no response");
+      }
+      return new CommandResponse(ResponseCode.NO_ERROR,
+              // Some crap here to make single field reads return just the value for backward compatibility
+              // There is similar code to this other places.
+              specialCaseSingleFieldRead(result, commandType, jsonFormattedArguments));
+    } catch (ClientException e) {
+      return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
+              + GNSProtocol.UNSPECIFIED_ERROR.toString() + " " + e.toString());
+    }
   }
 
   /**
@@ -447,6 +659,9 @@ public class GNSHttpServer {
           String numberOfNameServers = "Server count: " + requestHandler.getGnsNodeConfig().getNumberOfNodes();
           String recordsClass = "Records Class: " + GNSConfig.GNSC.getNoSqlRecordsClass();
           String secureString = exchange instanceof HttpsExchange ? "Security: Secure" : "Security: Open";
+          String threadCount = "Thread count: " + ManagementFactory.getThreadMXBean().getThreadCount();
+          String inFlight = "HTTP requests in flight: "
+                  + (Config.getGlobalInt(GNSConfig.GNSC.HTTP_SERVER_MAX_IN_FLIGHT) - admission.availablePermits());
           // Build the response
           responseBody.write(responsePreamble.getBytes());
           responseBody.write(buildVersionInfo.getBytes());
@@ -468,6 +683,10 @@ public class GNSHttpServer {
 
           responseBody.write(recordsClass.getBytes());
           responseBody.write("<br>".getBytes());
+          responseBody.write(threadCount.getBytes());
+          responseBody.write("<br>".getBytes());
+          responseBody.write(inFlight.getBytes());
+          responseBody.write("<br>".getBytes());
           responseBody.write("<br>".getBytes());
           responseBody.write("Request Headers:".getBytes());
           responseBody.write("<br>".getBytes());
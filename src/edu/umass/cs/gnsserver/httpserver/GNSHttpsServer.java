@@ -28,7 +28,6 @@ import com.sun.net.httpserver.HttpsParameters;
 import com.sun.net.httpserver.HttpsServer;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.concurrent.Executors;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
 import java.io.FileInputStream;
 import java.net.BindException;
@@ -74,7 +73,7 @@ public class GNSHttpsServer extends GNSHttpServer {
   public boolean tryPort(int port) {
     try {
       InetSocketAddress addr = new InetSocketAddress(port);
-      httpsServer = HttpsServer.create(addr, 0);
+      httpsServer = HttpsServer.create(addr, BACKLOG);
       SSLContext sslContext = createSSLContext();
       httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext) {
         @Override
@@ -96,7 +95,7 @@ public class GNSHttpsServer extends GNSHttpServer {
 
       httpsServer.createContext("/", new EchoHttpHandler());
       httpsServer.createContext("/" + GNS_PATH, new DefaultHttpHandler());
-      httpsServer.setExecutor(Executors.newCachedThreadPool());
+      httpsServer.setExecutor(getHttpExecutor());
       httpsServer.start();
       // Need to do this for the places where we expose the secure http service to the user
       requestHandler.setHttpsServerPort(port);
@@ -152,6 +151,7 @@ public class GNSHttpsServer extends GNSHttpServer {
     if (httpsServer != null) {
       httpsServer.stop(0);
     }
+    shutdownExecutors();
   }
 
 }
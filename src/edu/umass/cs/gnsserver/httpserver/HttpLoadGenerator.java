@@ -0,0 +1,316 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.httpserver;
+
+import edu.umass.cs.gnscommon.utils.RandomString;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * HTTP load generator for the GNS HTTP server.
+ *
+ * Opens a large number of keep-alive connections (10000 by default) from a single
+ * thread and keeps a number of pipelined reads outstanding on each one, so the
+ * server sees connections * pipeline concurrent requests. Once a second it prints
+ * the responses received by status code and the thread count of the server, which
+ * it reads from the status page at "/". The thread count should stay flat however
+ * many requests are in flight and requests beyond HTTP_SERVER_MAX_IN_FLIGHT should
+ * come back as 503s.
+ *
+ * Each connection is a file descriptor on both ends so the open file limit
+ * (ulimit -n) of the shells running the server and this usually has to be raised.
+ *
+ * Usage:
+ * java -cp gnsserver.jar edu.umass.cs.gnsserver.httpserver.HttpLoadGenerator -port 24703 -guid GUID -field FIELD
+ */
+public class HttpLoadGenerator {
+
+  private static final Pattern THREAD_COUNT = Pattern.compile("Thread count: (\\d+)");
+
+  private final InetSocketAddress address;
+  private final int pipeline;
+  private final byte[] request;
+  private final Map<Integer, Integer> statusCounts = new TreeMap<>();
+  private int errors = 0;
+  private int minThreads = Integer.MAX_VALUE;
+  private int maxThreads = 0;
+
+  /**
+   * The state of one connection.
+   */
+  private static class Connection {
+
+    private final StringBuilder received = new StringBuilder();
+    private int outstanding = 0;
+  }
+
+  /**
+   * Creates a HttpLoadGenerator.
+   *
+   * @param host
+   * @param port
+   * @param pipeline the number of requests to keep outstanding on each connection
+   * @param guid
+   * @param field
+   */
+  public HttpLoadGenerator(String host, int port, int pipeline, String guid, String field) {
+    this.address = new InetSocketAddress(host, port);
+    this.pipeline = pipeline;
+    this.request = ("GET /" + GNSHttpServer.GNS_PATH + "/ReadUnsigned?guid=" + guid + "&field=" + field
+            + " HTTP/1.1\r\nHost: " + host + ":" + port + "\r\nConnection: keep-alive\r\n\r\n")
+            .getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Runs the load for the given time.
+   *
+   * @param connections
+   * @param durationMillis
+   * @throws IOException
+   */
+  public void run(int connections, long durationMillis) throws IOException {
+    try (Selector selector = Selector.open()) {
+      for (int i = 0; i < connections; i++) {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(address);
+        channel.register(selector, SelectionKey.OP_CONNECT, new Connection());
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+      long endTime = System.currentTimeMillis() + durationMillis;
+      long nextReport = System.currentTimeMillis() + 1000;
+      while (System.currentTimeMillis() < endTime) {
+        selector.select(100);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            handle(key, buffer);
+          } catch (IOException e) {
+            errors++;
+            key.cancel();
+            key.channel().close();
+          }
+        }
+        if (System.currentTimeMillis() >= nextReport) {
+          report(selector.keys().size());
+          nextReport += 1000;
+        }
+      }
+      for (SelectionKey key : selector.keys()) {
+        key.channel().close();
+      }
+    }
+    System.out.println("Threads min " + minThreads + " max " + maxThreads
+            + ", responses " + statusCounts + ", connection errors " + errors);
+  }
+
+  private void handle(SelectionKey key, ByteBuffer buffer) throws IOException {
+    SocketChannel channel = (SocketChannel) key.channel();
+    Connection connection = (Connection) key.attachment();
+    if (key.isConnectable()) {
+      channel.finishConnect();
+      key.interestOps(SelectionKey.OP_READ);
+      sendRequests(channel, connection);
+    } else if (key.isReadable()) {
+      buffer.clear();
+      if (channel.read(buffer) < 0) {
+        throw new IOException("Connection closed by the server");
+      }
+      buffer.flip();
+      connection.received.append(StandardCharsets.ISO_8859_1.decode(buffer));
+      while (parseResponse(connection)) {
+        connection.outstanding--;
+      }
+      if (connection.outstanding == 0) {
+        sendRequests(channel, connection);
+      }
+    }
+  }
+
+  // All the requests fit in the socket buffer so they go out in one write
+  private void sendRequests(SocketChannel channel, Connection connection) throws IOException {
+    ByteBuffer out = ByteBuffer.allocate(request.length * pipeline);
+    for (int i = 0; i < pipeline; i++) {
+      out.put(request);
+    }
+    out.flip();
+    while (out.hasRemaining()) {
+      channel.write(out);
+    }
+    connection.outstanding = pipeline;
+  }
+
+  // Removes one complete response from what has been received, returns false if there isn't one yet.
+  private boolean parseResponse(Connection connection) throws IOException {
+    StringBuilder received = connection.received;
+    int headerEnd = received.indexOf("\r\n\r\n");
+    if (headerEnd < 0) {
+      return false;
+    }
+    String[] headers = received.substring(0, headerEnd).split("\r\n");
+    int contentLength = 0;
+    for (String header : headers) {
+      if (header.toLowerCase().startsWith("content-length:")) {
+        contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+      }
+    }
+    if (received.length() < headerEnd + 4 + contentLength) {
+      return false;
+    }
+    String[] statusLine = headers[0].split(" ");
+    if (statusLine.length < 2) {
+      throw new IOException("Bad status line: " + headers[0]);
+    }
+    int status = Integer.parseInt(statusLine[1]);
+    Integer count = statusCounts.get(status);
+    statusCounts.put(status, count == null ? 1 : count + 1);
+    received.delete(0, headerEnd + 4 + contentLength);
+    return true;
+  }
+
+  private void report(int open) {
+    int threads = readThreadCount();
+    if (threads > 0) {
+      minThreads = Math.min(minThreads, threads);
+      maxThreads = Math.max(maxThreads, threads);
+    }
+    System.out.println("Connections " + open + ", server threads " + threads
+            + ", responses " + statusCounts + ", connection errors " + errors);
+  }
+
+  // Reads the server thread count from the status page, -1 if it can't be read.
+  private int readThreadCount() {
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL("http", address.getHostString(),
+              address.getPort(), "/").openConnection();
+      connection.setConnectTimeout(1000);
+      connection.setReadTimeout(1000);
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          Matcher matcher = THREAD_COUNT.matcher(line);
+          if (matcher.find()) {
+            return Integer.parseInt(matcher.group(1));
+          }
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      // report it as unknown
+    }
+    return -1;
+  }
+
+  /**
+   * The main routine run from the command line.
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(String args[]) throws Exception {
+    CommandLine parser = initializeOptions(args);
+    if (parser.hasOption("help") || !parser.hasOption("port")) {
+      printUsage();
+      System.exit(1);
+    }
+    HttpLoadGenerator generator = new HttpLoadGenerator(
+            parser.getOptionValue("host", "localhost"),
+            Integer.parseInt(parser.getOptionValue("port")),
+            Integer.parseInt(parser.getOptionValue("pipeline", "1")),
+            parser.getOptionValue("guid", RandomString.randomString(40)),
+            parser.getOptionValue("field", "environment"));
+    generator.run(Integer.parseInt(parser.getOptionValue("connections", "10000")),
+            Integer.parseInt(parser.getOptionValue("duration", "30")) * 1000L);
+    System.exit(0);
+  }
+
+  // command line arguments
+  // COMMAND LINE STUFF
+  private static HelpFormatter formatter = new HelpFormatter();
+  private static Options commandLineOptions;
+
+  private static CommandLine initializeOptions(String[] args) throws ParseException {
+    Option help = new Option("help", "Prints Usage");
+    Option host = OptionBuilder.withArgName("host").hasArg()
+            .withDescription("the host of the HTTP server (default localhost)")
+            .create("host");
+    Option port = OptionBuilder.withArgName("port").hasArg()
+            .withDescription("the port of the HTTP server")
+            .create("port");
+    Option connections = OptionBuilder.withArgName("connections").hasArg()
+            .withDescription("number of connections to open (default 10000)")
+            .create("connections");
+    Option pipeline = OptionBuilder.withArgName("pipeline").hasArg()
+            .withDescription("number of pipelined requests per connection (default 1)")
+            .create("pipeline");
+    Option duration = OptionBuilder.withArgName("duration").hasArg()
+            .withDescription("seconds to run for (default 30)")
+            .create("duration");
+    Option guid = OptionBuilder.withArgName("guid").hasArg()
+            .withDescription("the guid to read, a random one that doesn't exist by default")
+            .create("guid");
+    Option field = OptionBuilder.withArgName("field").hasArg()
+            .withDescription("the field to read (default environment)")
+            .create("field");
+
+    commandLineOptions = new Options();
+    commandLineOptions.addOption(host);
+    commandLineOptions.addOption(port);
+    commandLineOptions.addOption(connections);
+    commandLineOptions.addOption(pipeline);
+    commandLineOptions.addOption(duration);
+    commandLineOptions.addOption(guid);
+    commandLineOptions.addOption(field);
+    commandLineOptions.addOption(help);
+
+    CommandLineParser parser = new GnuParser();
+    return parser.parse(commandLineOptions, args);
+  }
+
+  private static void printUsage() {
+    formatter.printHelp("java -cp gnsserver.jar edu.umass.cs.gnsserver.httpserver.HttpLoadGenerator <options>", commandLineOptions);
+  }
+
+}
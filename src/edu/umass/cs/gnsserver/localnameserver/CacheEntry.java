@@ -20,7 +20,10 @@
 package edu.umass.cs.gnsserver.localnameserver;
 
 import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents the cache entry used at the local name server to cache records.
@@ -49,6 +52,21 @@ public class CacheEntry implements Comparable<CacheEntry> {
 
   private long activeNameServersTimestamp;
 
+  // Generations are unique across entries so a read sent before an entry was
+  // evicted and created again can't be cached in the new one.
+  private static final AtomicLong GENERATIONS = new AtomicLong();
+
+  /**
+   * The values read with each read key and when they were read.
+   */
+  private final Map<String, String> readValues = new HashMap<>();
+  private final Map<String, Long> readTimestamps = new HashMap<>();
+
+  /**
+   * Changes whenever the read values are dropped.
+   */
+  private long readGeneration = GENERATIONS.incrementAndGet();
+
   /**
    * Constructs a cache entry for a name.
    *
@@ -97,6 +115,63 @@ public class CacheEntry implements Comparable<CacheEntry> {
     this.activeNameServersTimestamp = System.currentTimeMillis();
   }
 
+  /**
+   * Returns the generation of the read values. A value read in an earlier
+   * generation is not cached.
+   *
+   * @return the generation
+   */
+  public synchronized long getReadGeneration() {
+    return readGeneration;
+  }
+
+  /**
+   * Caches the value of a read if the read values haven't been dropped since
+   * the read was sent.
+   *
+   * @param readKey
+   * @param value
+   * @param generation the generation when the read was sent
+   * @return true if the value was cached
+   */
+  public synchronized boolean updateReadValue(String readKey, String value, long generation) {
+    if (generation != readGeneration) {
+      return false;
+    }
+    readValues.put(readKey, value);
+    readTimestamps.put(readKey, System.currentTimeMillis());
+    return true;
+  }
+
+  /**
+   * Returns the value of a read if it was cached less than ttl ms ago.
+   *
+   * @param readKey
+   * @param ttl
+   * @return the value or null
+   */
+  public synchronized String getReadValueIfValid(String readKey, int ttl) {
+    Long timestamp = readTimestamps.get(readKey);
+    if (timestamp == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() - timestamp >= ttl) {
+      readValues.remove(readKey);
+      readTimestamps.remove(readKey);
+      return null;
+    }
+    return readValues.get(readKey);
+  }
+
+  /**
+   * Drops the read values, for instance because the guid has been updated.
+   */
+  public synchronized void invalidateReadValues() {
+    readValues.clear();
+    readTimestamps.clear();
+    readGeneration = GENERATIONS.incrementAndGet();
+  }
+
   /**
    * Returns true if the contains the key and the ttl associated with key has not expired in the cache.
    *
@@ -164,6 +239,7 @@ public class CacheEntry implements Comparable<CacheEntry> {
         result.append("\n    ***Expired***");
       }
     }
+    result.append("\nRead values: ").append(readValues.size());
     result.append("\n    TTL:").append(timeToLive).append("ms");
     result.append("\n    Value Timestamp: ").append(valueTimestamp);
     result.append("\n    Actives Timestamp: ").append(activeNameServersTimestamp);
@@ -23,8 +23,11 @@ import edu.umass.cs.gigapaxos.interfaces.NearestServerSelector;
 import edu.umass.cs.gigapaxos.interfaces.Request;
 import edu.umass.cs.gigapaxos.interfaces.RequestCallback;
 import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.ResponseCode;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
 import edu.umass.cs.gnscommon.packets.ResponsePacket;
+import edu.umass.cs.gnscommon.utils.CanonicalJSON;
 import edu.umass.cs.gnsserver.gnsapp.packet.Packet;
 import edu.umass.cs.nio.AbstractJSONPacketDemultiplexer;
 import edu.umass.cs.nio.MessageNIOTransport;
@@ -35,12 +38,17 @@ import edu.umass.cs.reconfiguration.reconfigurationpackets.ActiveReplicaError;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.RequestActiveReplicas;
 import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
 import edu.umass.cs.utils.Util;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 
 import org.json.JSONException;
@@ -49,6 +57,13 @@ import org.json.JSONObject;
 /**
  * Implements the <code>BasicPacketDemultiplexer</code> interface for using the nio package.
  *
+ * Unsigned reads that are identical apart from their request id, timestamp and nonce
+ * are coalesced: while one of them is outstanding the others wait for its response
+ * instead of being sent (see {@link GNSConfig.GNSC#LNS_COALESCE_READS}). Optionally
+ * their values are cached (see {@link GNSConfig.GNSC#LNS_VALUE_CACHE}). The counts
+ * of cache hits and misses, coalesced reads and reads sent upstream are kept in the
+ * DelayProfiler.
+ *
  * @param <NodeIDType>
  */
 public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemultiplexer {
@@ -58,6 +73,41 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
 
   final ReconfigurableAppClientAsync<Request> asyncLNSClient;
 
+  private long responseCount = 0;
+  private long lastStatsTime = 0;
+
+  // A read that has been outstanding longer than this (its response may have been
+  // lost) isn't waited for, the next identical read is sent instead.
+  private static final long MAX_COALESCE_WAIT = 2000; // milleseconds
+
+  // The outstanding reads by read key and by request id.
+  private final ConcurrentMap<String, CoalescedRead> coalescedReads = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Long, CoalescedRead> coalescedReadsById = new ConcurrentHashMap<>();
+
+  /**
+   * A read that has been sent and the identical reads waiting for its response.
+   */
+  private static class CoalescedRead {
+
+    private final List<LNSRequestInfo> waiting = new ArrayList<>();
+    private final long startTime = System.currentTimeMillis();
+    private boolean answered = false;
+
+    // Returns false if the response has already arrived or is overdue.
+    private synchronized boolean addWaiting(LNSRequestInfo requestInfo) {
+      if (answered || System.currentTimeMillis() - startTime > MAX_COALESCE_WAIT) {
+        return false;
+      }
+      waiting.add(requestInfo);
+      return true;
+    }
+
+    private synchronized List<LNSRequestInfo> answer() {
+      answered = true;
+      return waiting;
+    }
+  }
+
   /**
    * Create an instance of the LNSPacketDemultiplexer.
    *
@@ -165,11 +215,21 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
     CommandPacket packet = new CommandPacket(json);
     LNSRequestInfo requestInfo = new LNSRequestInfo(packet.getRequestID(),
             packet, header.sndr);
+    if (requestInfo.getCommandType().isUpdate()
+            || requestInfo.getCommandType().isCreateDelete()) {
+      handler.invalidateReadValues(packet.getServiceName());
+    } else if (handleRead(packet, requestInfo)) {
+      return;
+    }
     GNSConfig.getLogger().log(Level.INFO,
             "{0} inserting outgoing request {1} with header {2}",
             new Object[]{this, json,  header});
     handler.addRequestInfo(packet.getRequestID(), requestInfo, header);
     packet = removeSenderInfo(json);
+    sendRequest(requestInfo, packet);
+  }
+
+  private void sendRequest(LNSRequestInfo requestInfo, CommandPacket packet) throws IOException {
 
     if (requestInfo.getCommandType().isCreateDelete()
             || requestInfo.getCommandType().isSelect()) {
@@ -180,6 +240,114 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
       this.asyncLNSClient.sendRequest(packet, callback, redirector);
     }
   }
+
+  /**
+   * Answers a read from the value cache or adds it to an identical outstanding
+   * read. Otherwise it sets up the read so its response is cached and answers
+   * the identical reads that arrive in the meantime.
+   *
+   * @return true if the read has been taken care of and shouldn't be sent
+   * @throws JSONException
+   * @throws IOException
+   */
+  private boolean handleRead(CommandPacket packet, LNSRequestInfo requestInfo)
+          throws JSONException, IOException {
+    boolean coalesce = Config.getGlobalBoolean(GNSConfig.GNSC.LNS_COALESCE_READS);
+    boolean cacheValues = Config.getGlobalBoolean(GNSConfig.GNSC.LNS_VALUE_CACHE);
+    String readKey;
+    if ((!coalesce && !cacheValues) || (readKey = getReadKey(packet)) == null) {
+      return false;
+    }
+    String serviceName = packet.getServiceName();
+    if (cacheValues) {
+      String value = handler.getReadValueIfValid(serviceName, readKey);
+      if (value != null) {
+        DelayProfiler.updateCount("lnsReadCacheHits", 1);
+        handler.sendToClient(new InetSocketAddress(requestInfo.getHost(), requestInfo.getPort()),
+                new ResponsePacket(serviceName, packet.getRequestID(), ResponseCode.NO_ERROR, value)
+                .toJSONObject());
+        return true;
+      }
+      DelayProfiler.updateCount("lnsReadCacheMisses", 1);
+    }
+    // The generation has to be read before the read is sent
+    requestInfo.setRead(readKey, cacheValues ? handler.getReadGeneration(serviceName) : 0);
+    if (coalesce) {
+      CoalescedRead read = new CoalescedRead();
+      while (true) {
+        CoalescedRead outstanding = coalescedReads.putIfAbsent(readKey, read);
+        if (outstanding == null) {
+          break;
+        }
+        if (outstanding.addWaiting(requestInfo)) {
+          DelayProfiler.updateCount("lnsReadsCoalesced", 1);
+          return true;
+        }
+        // The outstanding read has just been answered or is overdue
+        if (coalescedReads.replace(readKey, outstanding, read)) {
+          break;
+        }
+      }
+      coalescedReadsById.put(packet.getRequestID(), read);
+    }
+    DelayProfiler.updateCount("lnsReadsSentUpstream", 1);
+    return false;
+  }
+
+  /**
+   * Returns the key of an unsigned read which is its command without the fields
+   * that differ from request to request. Signed reads aren't coalesced or cached
+   * because their signatures have to be checked at an active replica and neither
+   * are coordinated reads or reads that ask for invalidations.
+   *
+   * @return the key or null if the read can't be coalesced or cached
+   * @throws JSONException
+   */
+  private static String getReadKey(CommandPacket packet) throws JSONException {
+    JSONObject command = packet.getCommand();
+    if (command == null
+            || !packet.getCommandType().isRead()
+            || packet.getSignedCommand() != null
+            || command.has(GNSProtocol.SIGNATURE.toString())
+            || packet.needsCoordination()
+            || packet.isCachedRead()) {
+      return null;
+    }
+    JSONObject key = new JSONObject(command, JSONObject.getNames(command));
+    key.remove(GNSProtocol.TIMESTAMP.toString());
+    key.remove(GNSProtocol.NONCE.toString());
+    return CanonicalJSON.getCanonicalForm(key);
+  }
+
+  /**
+   * Caches the value of a read and answers the identical reads that waited for it.
+   */
+  private void finishRead(LNSRequestInfo sentInfo, ResponsePacket returnPacket)
+          throws JSONException, IOException {
+    String readKey = sentInfo.getReadKey();
+    if (returnPacket != null && returnPacket.getErrorCode() == ResponseCode.NO_ERROR
+            && Config.getGlobalBoolean(GNSConfig.GNSC.LNS_VALUE_CACHE)) {
+      handler.updateReadValue(sentInfo.getServiceName(), readKey, returnPacket.getReturnValue(),
+              sentInfo.getReadGeneration());
+    }
+    CoalescedRead read = coalescedReadsById.remove(sentInfo.getLNSReqID());
+    if (read == null) {
+      return;
+    }
+    List<LNSRequestInfo> waiting = read.answer();
+    coalescedReads.remove(readKey, read);
+    for (LNSRequestInfo requestInfo : waiting) {
+      if (returnPacket != null) {
+        handler.sendToClient(new InetSocketAddress(requestInfo.getHost(), requestInfo.getPort()),
+                new ResponsePacket(returnPacket.getServiceName(), requestInfo.getLNSReqID(),
+                        returnPacket.getErrorCode(), returnPacket.getReturnValue()).toJSONObject());
+      } else {
+        // Errors aren't shared, each of the waiting reads is sent on its own
+        handler.addRequestInfo(requestInfo.getLNSReqID(), requestInfo, null);
+        sendRequest(requestInfo, removeSenderInfo(requestInfo.getCommandPacket().toJSONObject()));
+      }
+    }
+  }
   
   @SuppressWarnings("deprecation")
 private static CommandPacket removeSenderInfo(JSONObject json) throws JSONException {
@@ -282,16 +450,10 @@ private static CommandPacket removeSenderInfo(JSONObject json) throws JSONExcept
         GNSConfig.getLogger().log(Level.INFO, "{0} about to remove {1}",
                 new Object[]{this, id + ""});
         handler.removeRequestInfo(id);
-        // update cache - if the service name isn't missing (invalid)
-        // and if it is a READ command
-        // FIXME: THIS ISN'T GOING TO WORK WITHOUT MORE INFO ABOUT THE
-        // REQUEST
-        if (!CommandPacket.BOGUS_SERVICE_NAME.equals(serviceName)
-                && sentInfo.getCommandType().isRead()
-                //&& sentInfo.getCommandName().equals(GNSCommandProtocol.READ)
-                && returnPacket != null) {
-          handler.updateCacheEntry(serviceName,
-                  returnPacket.getReturnValue());
+        // The values read before an update finished may be stale
+        if (sentInfo.getCommandType().isUpdate()
+                || sentInfo.getCommandType().isCreateDelete()) {
+          handler.invalidateReadValues(serviceName);
         }
         // send the response back
         GNSConfig.getLogger()
@@ -305,6 +467,18 @@ private static CommandPacket removeSenderInfo(JSONObject json) throws JSONExcept
                 sentInfo.getPort()), json != null ? json
                 : returnPacket != null ? returnPacket.toJSONObject()
                         : error.toJSONObject());
+        if (sentInfo.getReadKey() != null) {
+          finishRead(sentInfo, returnPacket);
+        }
+        // shows us stats every 100 commands, but not more than once every 5
+        // seconds
+        if (responseCount++ % 100 == 0
+                && Config.getGlobalBoolean(RC.ENABLE_INSTRUMENTATION)
+                && System.currentTimeMillis() - lastStatsTime > 5000) {
+          GNSConfig.getLogger().log(Level.INFO, "{0} {1}",
+                  new Object[]{this, DelayProfiler.getStats()});
+          lastStatsTime = System.currentTimeMillis();
+        }
       } else {
         GNSConfig.getLogger().log(Level.SEVERE,
                 "Command response packet mismatch: {0} vs. {1}", 
@@ -59,6 +59,16 @@ public class LNSRequestInfo {
   
   private final InetSocketAddress sender;
 
+  /**
+   * The key of an unsigned read that can be coalesced or cached, null otherwise.
+   */
+  private String readKey = null;
+
+  /**
+   * The generation of the cached values of the guid when the read was sent.
+   */
+  private long readGeneration = 0;
+
   /**
    *
    * @param lnsReqId
@@ -180,6 +190,35 @@ public class LNSRequestInfo {
     this.success = success;
   }
 
+  /**
+   * Sets the key and cache generation of a read.
+   *
+   * @param readKey
+   * @param readGeneration
+   */
+  public synchronized void setRead(String readKey, long readGeneration) {
+    this.readKey = readKey;
+    this.readGeneration = readGeneration;
+  }
+
+  /**
+   * Returns the key of the read.
+   *
+   * @return the key or null if this request isn't a read that can be coalesced or cached
+   */
+  public synchronized String getReadKey() {
+    return readKey;
+  }
+
+  /**
+   * Returns the generation of the cached values of the guid when the read was sent.
+   *
+   * @return the generation
+   */
+  public synchronized long getReadGeneration() {
+    return readGeneration;
+  }
+
   @Override
   public String toString() {
     return this.getCommandType().name() + ":" + this.getServiceName() + ":" + this.lnsReqID;
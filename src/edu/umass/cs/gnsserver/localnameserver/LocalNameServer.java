@@ -26,8 +26,10 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,6 +45,7 @@ import edu.umass.cs.gnscommon.utils.NetworkUtils;
 import edu.umass.cs.gnsserver.gnsapp.packet.Packet;
 import edu.umass.cs.gnsserver.localnameserver.nodeconfig.LNSConsistentReconfigurableNodeConfig;
 import edu.umass.cs.gnsserver.localnameserver.nodeconfig.LNSNodeConfig;
+import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.utils.Shutdownable;
 import edu.umass.cs.nio.AbstractJSONPacketDemultiplexer;
 import edu.umass.cs.nio.JSONMessenger;
@@ -446,6 +449,45 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
     cache.invalidate(name);
   }
 
+  @Override
+  public long getReadGeneration(String name) {
+    try {
+      return cache.get(name, new Callable<CacheEntry>() {
+        @Override
+        public CacheEntry call() {
+          return new CacheEntry(name, (String) null);
+        }
+      }).getReadGeneration();
+    } catch (ExecutionException e) {
+      // can't happen, creating the entry doesn't throw
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void updateReadValue(String name, String readKey, String value, long generation) {
+    CacheEntry cacheEntry = cache.getIfPresent(name);
+    if (cacheEntry != null) {
+      cacheEntry.updateReadValue(readKey, value, generation);
+    }
+  }
+
+  @Override
+  public String getReadValueIfValid(String name, String readKey) {
+    CacheEntry cacheEntry = cache.getIfPresent(name);
+    return cacheEntry != null
+            ? cacheEntry.getReadValueIfValid(readKey, Config.getGlobalInt(GNSConfig.GNSC.LNS_VALUE_CACHE_TTL))
+            : null;
+  }
+
+  @Override
+  public void invalidateReadValues(String name) {
+    CacheEntry cacheEntry = cache.getIfPresent(name);
+    if (cacheEntry != null) {
+      cacheEntry.invalidateReadValues();
+    }
+  }
+
   /**
    * Returns the set of active replicas if they have not timed out.
    *
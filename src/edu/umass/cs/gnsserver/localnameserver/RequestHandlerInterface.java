@@ -146,6 +146,42 @@ public interface RequestHandlerInterface {
    */
   public void invalidateCacheEntry(String name);
   
+  /**
+   * Returns the generation of the read values of the name, creating the
+   * cache entry if there isn't one.
+   * 
+   * @param name
+   * @return the generation
+   */
+  public long getReadGeneration(String name);
+  
+  /**
+   * Caches the value of a read of the name unless the read values have been
+   * dropped since the read was sent.
+   * 
+   * @param name
+   * @param readKey
+   * @param value
+   * @param generation the generation when the read was sent
+   */
+  public void updateReadValue(String name, String readKey, String value, long generation);
+  
+  /**
+   * Retrieves the value of a read of the name if it has not timed out.
+   * 
+   * @param name
+   * @param readKey
+   * @return the value or null
+   */
+  public String getReadValueIfValid(String name, String readKey);
+  
+  /**
+   * Drops the read values of the name.
+   * 
+   * @param name
+   */
+  public void invalidateReadValues(String name);
+  
   /**
    * Retrieves the active replicas associated with the name if they have not timed out.
    * 
@@ -57,6 +57,12 @@ public class GNSConfig {
      * client doesn't currently support this.
      */
     ENABLE_SECRET_KEY(true),
+    /**
+     * The maximum number of decoded public keys (and secret keys when
+     * {@link #ENABLE_SECRET_KEY} is on) that are cached for signature
+     * verification.
+     */
+    VERIFICATION_KEY_CACHE_SIZE(10000),
     /**
      * Uses DiskMapRecords if enabled.
      */
@@ -66,6 +72,16 @@ public class GNSConfig {
      * DiskMap is also enabled.
      */
     IN_MEMORY_DB(false),
+    /**
+     * If enabled, name records are cached in memory in front of the
+     * NoSQL records (see {@link edu.umass.cs.gnsserver.database.CachingNoSQLRecords}).
+     * Updates write through and invalidate the cached record.
+     */
+    ENABLE_RECORD_CACHE(false),
+    /**
+     * The approximate maximum heap used by the record cache.
+     */
+    RECORD_CACHE_SIZE_IN_MB(64),
     /**
      * If enabled, the GNS will cache and return the same value for reads.
      *
@@ -82,6 +98,22 @@ public class GNSConfig {
      * interval ago) will be rejected by the server.
      */
     STALE_COMMAND_INTERVAL_IN_MINUTES(30),
+    /**
+     * If enabled, name servers remember signed messages that have
+     * recently verified and skip RSA verification when a byte-identical
+     * message (same public key, signature and full message) is resent,
+     * as happens with client retries and LNS retransmissions.
+     */
+    ENABLE_VERIFIED_SIGNATURE_CACHE(false),
+    /**
+     * The maximum number of entries in the verified signature cache.
+     */
+    VERIFIED_SIGNATURE_CACHE_SIZE(10000),
+    /**
+     * How long a verified signature is remembered. Always capped at
+     * {@link #STALE_COMMAND_INTERVAL_IN_MINUTES}.
+     */
+    VERIFIED_SIGNATURE_CACHE_TTL_IN_SECONDS(60),
     /**
      * The default port used by mongo. 27017 is the default mongo uses.
      */
@@ -107,6 +139,21 @@ public class GNSConfig {
     /* FIXME: arun: need to determine this timeout systematically, not an ad
 		 * hoc constant. */
     SELECT_REQUEST_TIMEOUT(5000),
+    /**
+     * The most record checks against the context aware groups that can wait
+     * in each of the executors that do them. Checks past this are dropped and
+     * the members are corrected when the group is next set up.
+     */
+    CONTEXT_AWARE_GROUP_QUEUE_SIZE(10000),
+    /**
+     * The most guids that can be read with one ReadMultipleGuids command.
+     */
+    READ_MULTIPLE_GUIDS_MAX_GUIDS(1000),
+    /**
+     * The most reads of guids on other name servers that one ReadMultipleGuids
+     * command has outstanding at once.
+     */
+    READ_MULTIPLE_GUIDS_MAX_IN_FLIGHT(64),
     /**
      *
      */
@@ -179,6 +226,27 @@ public class GNSConfig {
      * The URL path used by the HTTP server.
      */
     HTTP_SERVER_GNS_URL_PATH("GNS"),
+    /**
+     * The most requests the HTTP server works on at once. Requests past this
+     * are turned away with a 503 rather than queued.
+     */
+    HTTP_SERVER_MAX_IN_FLIGHT(10000),
+    /**
+     * How long in ms the HTTP server waits for the response to a request
+     * before answering with a timeout.
+     */
+    HTTP_SERVER_REQUEST_TIMEOUT(10000),
+    /**
+     * How long in ms a request keeps its place in HTTP_SERVER_MAX_IN_FLIGHT
+     * when the work on it hasn't finished, which only happens when the
+     * response from another server is lost.
+     */
+    HTTP_SERVER_WORK_TIMEOUT(60000),
+    /**
+     * The most requests handled by the HTTP server itself that wait for a
+     * thread. Requests past this are answered as busy.
+     */
+    HTTP_SERVER_LOCAL_QUEUE_SIZE(1000),
     //
     // LOCAL NAME SERVER SETUP
     //
@@ -187,6 +255,23 @@ public class GNSConfig {
      * LocalNameServer when the app starts.
      */
     LOCAL_NAME_SERVER_NODES(NONE),
+    /**
+     * If true the LocalNameServer sends identical unsigned reads that arrive
+     * while one of them is outstanding as a single request and answers all
+     * of them with its response.
+     */
+    LNS_COALESCE_READS(true),
+    /**
+     * If true the LocalNameServer answers unsigned reads from the values it
+     * has read in the last {@link GNSC#LNS_VALUE_CACHE_TTL} ms. The values of
+     * a guid are dropped when the LocalNameServer sends an update of it, but
+     * updates sent through other servers aren't seen until the values expire.
+     */
+    LNS_VALUE_CACHE(false),
+    /**
+     * How long in ms the LocalNameServer answers reads from a cached value.
+     */
+    LNS_VALUE_CACHE_TTL(10000),
     //
     // Domain Name Service
     //
@@ -220,6 +305,32 @@ public class GNSConfig {
      * requests to DNS and GNS servers.
      */
     DNS_ONLY(false),
+    /**
+     * The number of threads the DNS server uses to handle queries.
+     */
+    DNS_WORKER_THREADS(16),
+    /**
+     * The number of threads the DNS server uses for the GNS and upstream
+     * DNS lookups that are raced against each other.
+     */
+    DNS_LOOKUP_THREADS(32),
+    /**
+     * The maximum number of DNS queries waiting for a worker. Queries that
+     * arrive when this many are waiting are answered with SERVFAIL right away.
+     */
+    DNS_MAX_PENDING_QUERIES(1000),
+    /**
+     * The maximum number of GNS answers the DNS server keeps ready to send.
+     * Set to 0 to not cache GNS answers. Answers are only cached when
+     * active code is disabled because read code can make the answer depend
+     * on the client.
+     */
+    DNS_ANSWER_CACHE_SIZE(10000),
+    /**
+     * The number of seconds the DNS server remembers that a name or record
+     * type doesn't exist in the GNS.
+     */
+    DNS_NEGATIVE_CACHE_TTL(60),
     //
     // Contect Name Service
     //
@@ -232,6 +343,16 @@ public class GNSConfig {
      * this option should definitely be set.
      */
     CNS_NODE_ADDRESS(NONE),
+    /**
+     * Updates of the same guid within this many ms are coalesced into
+     * one trigger to CNS, the last value of each attribute wins.
+     */
+    CNS_TRIGGER_WINDOW(100),
+    /**
+     * The most guids with triggers waiting to be sent to CNS. When it is full
+     * triggers for other guids are dropped unless they are blocking.
+     */
+    CNS_TRIGGER_QUEUE_SIZE(10000),
     /**
      * The alias of the private key in the java keyStore.
      */
@@ -246,6 +367,15 @@ public class GNSConfig {
      */
     // Make sure this is different than all the other offsets.
     COLLATING_ADMIN_PORT_OFFSET(297),
+    /**
+     * The number of records a name server sends in each response to a dump request.
+     */
+    DUMP_PAGE_SIZE(1000),
+    /**
+     * How long in ms an active remembers a client that caches reads of a guid.
+     * The client is told about updates of the guid for this long after its last read.
+     */
+    CACHED_READER_TTL(60000),
     /**
      * Turn off active code handling. Default is true.
      * Temporary - The use of this will go away at some point.
@@ -0,0 +1,214 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.utils.microbenchmarks;
+
+import edu.umass.cs.gnscommon.CommandType;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnscommon.packets.PacketUtils;
+import edu.umass.cs.gnscommon.utils.Base64;
+import edu.umass.cs.gnscommon.utils.CanonicalJSON;
+import edu.umass.cs.gnscommon.utils.JSONByteConverter;
+import edu.umass.cs.gnscommon.utils.JSONDotNotation;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSAccessSupport;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The microbenchmarks of the pieces of the command path that every request
+ * goes through: parsing and serializing the {@link CommandPacket} (including the
+ * form that carries the string the command was signed over), generating the
+ * canonical JSON and verifying the signature of the command, merging an update
+ * into a record and looking up a field of it with {@link ValuesMap}, the
+ * {@link JSONByteConverter} and {@link PacketUtils#getLengthEstimate}.
+ *
+ * All of them work on the same signed command, shaped like a client's update of a
+ * few user fields, and a record shaped like a guid's.
+ *
+ * The names of the benchmarks are what runs are compared by so don't change them
+ * unless the operation they time changes.
+ *
+ * @author westy
+ */
+public class HotPathBenchmarks {
+
+  private static final String GUID = "CAB372BF40B3DB576786E5CC6AB05B63CC680F4D";
+
+  /**
+   * Creates the benchmarks.
+   *
+   * @return the benchmarks
+   * @throws Exception
+   */
+  public static List<Microbenchmark> create() throws Exception {
+    KeyPair keyPair = KeyPairGenerator.getInstance(GNSProtocol.RSA_ALGORITHM.toString())
+            .generateKeyPair();
+    final String publicKey = Base64.encodeToString(keyPair.getPublic().getEncoded(), false);
+    final JSONObject command = makeCommand();
+    final String message = CanonicalJSON.getCanonicalForm(command);
+    // Same encoding as CryptoUtils.signDigestOfMessage
+    Signature signer = Signature.getInstance(GNSProtocol.SIGNATURE_ALGORITHM.toString());
+    signer.initSign(keyPair.getPrivate());
+    signer.update(message.getBytes("UTF-8"));
+    final String signature = DatatypeConverter.printHexBinary(signer.sign());
+    if (!NSAccessSupport.verifySignature(publicKey, signature, message)) {
+      throw new IllegalStateException("The signature of the benchmark command doesn't verify");
+    }
+    command.put(GNSProtocol.SIGNATURE.toString(), signature);
+    // The same command sent with the string it was signed over
+    JSONObject signedForm = new JSONObject(message)
+            .put(GNSProtocol.SIGNATURE.toString(), signature)
+            .put(GNSProtocol.SIGNED_COMMAND.toString(), message);
+    final String signedPacketString = new CommandPacket(42, signedForm).toJSONObject().toString();
+
+    final CommandPacket packet = new CommandPacket(42, command);
+    final String packetString = packet.toJSONObject().toString();
+    final byte[] packetBytes = packet.toBytes();
+    final byte[] commandBytes = JSONByteConverter.toBytesHardcoded(command);
+    final ValuesMap record = new ValuesMap(makeRecord());
+    final ValuesMap update = new ValuesMap(new JSONObject(
+            command.getString(GNSProtocol.USER_JSON.toString())));
+
+    List<Microbenchmark> benchmarks = new ArrayList<>();
+    benchmarks.add(new Microbenchmark("CommandPacket.parseJSON") {
+      @Override
+      public Object run() throws Exception {
+        return new CommandPacket(new JSONObject(packetString));
+      }
+    });
+    benchmarks.add(new Microbenchmark("CommandPacket.parseSignedJSON") {
+      @Override
+      public Object run() throws Exception {
+        return new CommandPacket(new JSONObject(signedPacketString));
+      }
+    });
+    // Only when the client is configured to send bytes rather than JSON strings
+    if (packetBytes.length > 0 && packetBytes[0] != '{') {
+      benchmarks.add(new Microbenchmark("CommandPacket.parseBytes") {
+        @Override
+        public Object run() throws Exception {
+          return new CommandPacket(packetBytes);
+        }
+      });
+    }
+    benchmarks.add(new Microbenchmark("CommandPacket.toJSONString") {
+      @Override
+      public Object run() throws Exception {
+        return packet.toJSONObject().toString();
+      }
+    });
+    benchmarks.add(new Microbenchmark("CommandPacket.toBytes") {
+      @Override
+      public Object run() throws Exception {
+        return packet.toBytes();
+      }
+    });
+    benchmarks.add(new Microbenchmark("CanonicalJSON.getCanonicalForm") {
+      @Override
+      public Object run() throws Exception {
+        return CanonicalJSON.getCanonicalForm(command);
+      }
+    });
+    benchmarks.add(new Microbenchmark("NSAccessSupport.verifySignature") {
+      @Override
+      public Object run() throws Exception {
+        return NSAccessSupport.verifySignature(publicKey, signature, message);
+      }
+    });
+    benchmarks.add(new Microbenchmark("ValuesMap.merge") {
+      @Override
+      public Object run() throws Exception {
+        // Writing the same values again leaves the record as it was
+        return update.writeToValuesMap(record);
+      }
+    });
+    benchmarks.add(new Microbenchmark("ValuesMap.lookup") {
+      @Override
+      public Object run() throws Exception {
+        return record.has("location.latitude")
+                ? JSONDotNotation.getWithDotNotation("location.latitude", record) : null;
+      }
+    });
+    benchmarks.add(new Microbenchmark("JSONByteConverter.toBytes") {
+      @Override
+      public Object run() throws Exception {
+        return JSONByteConverter.toBytesHardcoded(command);
+      }
+    });
+    benchmarks.add(new Microbenchmark("JSONByteConverter.fromBytes") {
+      @Override
+      public Object run() throws Exception {
+        return JSONByteConverter.fromBytesHardcoded(commandBytes);
+      }
+    });
+    benchmarks.add(new Microbenchmark("PacketUtils.getLengthEstimate") {
+      @Override
+      public Object run() throws Exception {
+        return PacketUtils.getLengthEstimate(command);
+      }
+    });
+    return benchmarks;
+  }
+
+  // An update of some user fields. The values are strings as CommandPacket.toBytes expects.
+  private static JSONObject makeCommand() throws JSONException {
+    JSONObject userJSON = new JSONObject();
+    userJSON.put("location", new JSONObject().put("latitude", 42.3912).put("longitude", -72.5267));
+    userJSON.put("status", "available");
+    userJSON.put("speed", 12);
+    JSONObject command = new JSONObject();
+    command.put(GNSProtocol.COMMAND_INT.toString(), CommandType.ReplaceUserJSON.getInt());
+    command.put(GNSProtocol.GUID.toString(), GUID);
+    command.put(GNSProtocol.USER_JSON.toString(), userJSON.toString());
+    command.put(GNSProtocol.WRITER.toString(), GUID);
+    command.put(GNSProtocol.TIMESTAMP.toString(), "2016-10-01T00:00:00Z");
+    command.put(GNSProtocol.NONCE.toString(), "8367402951");
+    return command;
+  }
+
+  // A guid record with ACLs, a location and some other user fields
+  private static JSONObject makeRecord() throws JSONException {
+    JSONObject record = new JSONObject();
+    JSONObject acl = new JSONObject();
+    for (String access : new String[]{"READ_WHITELIST", "WRITE_WHITELIST"}) {
+      acl.put(access, new JSONObject().put("+ALL+",
+              new JSONObject().put("MD", new JSONArray().put("+ALL+"))));
+    }
+    record.put("_GNS_ACL", acl);
+    record.put("location", new JSONObject().put("latitude", 42.3732).put("longitude", -72.5199));
+    record.put("status", "busy");
+    record.put("speed", 0);
+    for (int i = 0; i < 16; i++) {
+      record.put("field" + i, "value" + i);
+    }
+    return record;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.utils.microbenchmarks;
+
+/**
+ * An operation timed by the {@link MicrobenchmarkRunner}.
+ *
+ * @author westy
+ */
+public abstract class Microbenchmark {
+
+  private final String name;
+
+  /**
+   * Creates a Microbenchmark.
+   *
+   * @param name the name the results are reported under, results of runs are compared by name
+   */
+  public Microbenchmark(String name) {
+    this.name = name;
+  }
+
+  /**
+   *
+   * @return the name of the benchmark
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Runs the operation once. Whatever it computes should be returned so that
+   * the runner can consume it and the JIT can't throw the work away.
+   *
+   * @return the result of the operation
+   * @throws Exception
+   */
+  public abstract Object run() throws Exception;
+}
@@ -0,0 +1,324 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.utils.microbenchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Runs the {@link HotPathBenchmarks} in a single JVM and writes the results as
+ * JSON so that runs can be compared.
+ *
+ * Each benchmark is warmed up and then timed for a number of rounds of a fixed
+ * length. The result of a benchmark is the mean, min and standard deviation of
+ * the ns per operation over the rounds. The results file records the JVM and
+ * machine it was run on along with the settings. If a baseline results file is
+ * given each benchmark is compared with the one of the same name in it and those
+ * that got slower by more than the threshold are reported as regressions, in
+ * which case the exit status is 1.
+ *
+ * Typical incantation:
+ *
+ * ant microbenchmarks -Dmicrobenchmarks.baseline=build/microbenchmarks/previous.json
+ *
+ * or
+ *
+ * java -cp jars/GNS.jar edu.umass.cs.gnsserver.utils.microbenchmarks.MicrobenchmarkRunner -filter CommandPacket
+ *
+ * @author westy
+ */
+public class MicrobenchmarkRunner {
+
+  /**
+   * Bumped when the layout of the results file changes.
+   */
+  public static final int RESULTS_VERSION = 1;
+
+  // Stop growing the batch of operations between reads of the clock past this
+  private static final long MAX_BATCH_NANOS = 10000000;
+
+  // Consumes the results of the operations
+  private static volatile Object blackhole;
+
+  private final long warmupNanos;
+  private final long measureNanos;
+  private final int rounds;
+
+  /**
+   * Creates a MicrobenchmarkRunner.
+   *
+   * @param warmupMillis how long to run each benchmark before timing it
+   * @param measureMillis how long each timed round lasts
+   * @param rounds the number of timed rounds
+   */
+  public MicrobenchmarkRunner(long warmupMillis, long measureMillis, int rounds) {
+    this.warmupNanos = warmupMillis * 1000000;
+    this.measureNanos = measureMillis * 1000000;
+    this.rounds = rounds;
+  }
+
+  /**
+   * Warms up and times a benchmark.
+   *
+   * @param benchmark
+   * @return the result as a JSONObject
+   * @throws Exception
+   */
+  public JSONObject run(Microbenchmark benchmark) throws Exception {
+    runFor(benchmark, warmupNanos);
+    double[] nsPerOp = new double[rounds];
+    long ops = 0;
+    double sum = 0;
+    double min = Double.MAX_VALUE;
+    for (int i = 0; i < rounds; i++) {
+      long[] opsAndNanos = runFor(benchmark, measureNanos);
+      nsPerOp[i] = (double) opsAndNanos[1] / opsAndNanos[0];
+      ops += opsAndNanos[0];
+      sum += nsPerOp[i];
+      min = Math.min(min, nsPerOp[i]);
+    }
+    double mean = sum / rounds;
+    double squares = 0;
+    for (double value : nsPerOp) {
+      squares += (value - mean) * (value - mean);
+    }
+    JSONObject result = new JSONObject();
+    result.put("name", benchmark.getName());
+    result.put("nsPerOp", round(mean));
+    result.put("minNsPerOp", round(min));
+    result.put("stddevNsPerOp", round(Math.sqrt(squares / rounds)));
+    result.put("opsPerSec", round(1000000000 / mean));
+    result.put("ops", ops);
+    return result;
+  }
+
+  /**
+   * Runs the benchmarks whose names match the filter.
+   *
+   * @param benchmarks
+   * @param filter a regular expression, or null to run all of them
+   * @return the results of the run as a JSONObject
+   * @throws Exception
+   */
+  public JSONObject run(List<Microbenchmark> benchmarks, String filter) throws Exception {
+    Pattern pattern = filter != null ? Pattern.compile(filter) : null;
+    JSONArray results = new JSONArray();
+    for (Microbenchmark benchmark : benchmarks) {
+      if (pattern == null || pattern.matcher(benchmark.getName()).find()) {
+        JSONObject result = run(benchmark);
+        System.out.println(String.format("%-40s %12.1f ns/op (min %.1f, stddev %.1f)",
+                benchmark.getName(), result.getDouble("nsPerOp"),
+                result.getDouble("minNsPerOp"), result.getDouble("stddevNsPerOp")));
+        results.put(result);
+      }
+    }
+    JSONObject json = new JSONObject();
+    json.put("version", RESULTS_VERSION);
+    json.put("timestamp", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+    json.put("javaVersion", System.getProperty("java.version"));
+    json.put("javaVM", System.getProperty("java.vm.name"));
+    json.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+    json.put("processors", Runtime.getRuntime().availableProcessors());
+    json.put("warmupMillis", warmupNanos / 1000000);
+    json.put("measureMillis", measureNanos / 1000000);
+    json.put("rounds", rounds);
+    json.put("results", results);
+    return json;
+  }
+
+  /**
+   * Compares the results of a run with a baseline run and prints the change of each benchmark.
+   *
+   * @param results
+   * @param baseline
+   * @param thresholdPercent a benchmark slower than the baseline by more than this is a regression
+   * @return the number of regressions
+   * @throws JSONException
+   */
+  public static int compare(JSONObject results, JSONObject baseline, double thresholdPercent)
+          throws JSONException {
+    JSONObject baselineByName = new JSONObject();
+    JSONArray baselineResults = baseline.getJSONArray("results");
+    for (int i = 0; i < baselineResults.length(); i++) {
+      JSONObject result = baselineResults.getJSONObject(i);
+      baselineByName.put(result.getString("name"), result.getDouble("nsPerOp"));
+    }
+    int regressions = 0;
+    JSONArray currentResults = results.getJSONArray("results");
+    System.out.println("Compared with the run of " + baseline.optString("timestamp"));
+    for (int i = 0; i < currentResults.length(); i++) {
+      JSONObject result = currentResults.getJSONObject(i);
+      String name = result.getString("name");
+      if (!baselineByName.has(name)) {
+        System.out.println(String.format("%-40s not in baseline", name));
+        continue;
+      }
+      double before = baselineByName.getDouble(name);
+      double change = 100 * (result.getDouble("nsPerOp") - before) / before;
+      boolean regression = change > thresholdPercent;
+      if (regression) {
+        regressions++;
+      }
+      System.out.println(String.format("%-40s %12.1f -> %12.1f ns/op %+7.1f%%%s", name, before,
+              result.getDouble("nsPerOp"), change, regression ? " REGRESSION" : ""));
+    }
+    return regressions;
+  }
+
+  // Runs batches of operations until the time is up. The batch grows so that the
+  // clock is read rarely compared to how often the operation is run.
+  private static long[] runFor(Microbenchmark benchmark, long nanos) throws Exception {
+    long ops = 0;
+    int batch = 1;
+    long start = System.nanoTime();
+    long elapsed;
+    do {
+      long batchStart = System.nanoTime();
+      for (int i = 0; i < batch; i++) {
+        blackhole = benchmark.run();
+      }
+      long now = System.nanoTime();
+      ops += batch;
+      elapsed = now - start;
+      if (now - batchStart < MAX_BATCH_NANOS && batch < Integer.MAX_VALUE / 2) {
+        batch *= 2;
+      }
+    } while (elapsed < nanos);
+    return new long[]{ops, elapsed};
+  }
+
+  private static double round(double value) {
+    return Math.round(value * 10) / 10.0;
+  }
+
+  /**
+   * The main routine run from the command line.
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLine parser = initializeOptions(args);
+    if (parser.hasOption("help")) {
+      printUsage();
+      System.exit(1);
+    }
+    MicrobenchmarkRunner runner = new MicrobenchmarkRunner(
+            Long.parseLong(parser.getOptionValue("warmup", "2000")),
+            Long.parseLong(parser.getOptionValue("time", "1000")),
+            Integer.parseInt(parser.getOptionValue("rounds", "5")));
+    JSONObject results = runner.run(HotPathBenchmarks.create(), parser.getOptionValue("filter"));
+
+    File out = new File(parser.getOptionValue("out", "build/microbenchmarks/microbenchmarks-"
+            + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json"));
+    if (out.getAbsoluteFile().getParentFile() != null) {
+      out.getAbsoluteFile().getParentFile().mkdirs();
+    }
+    Files.write(out.toPath(), results.toString(2).getBytes(StandardCharsets.UTF_8));
+    System.out.println("Results written to " + out);
+
+    int regressions = 0;
+    // Empty when run from ant without a baseline
+    String baseline = parser.getOptionValue("baseline");
+    if (baseline != null && !baseline.isEmpty()) {
+      regressions = compare(results, readResults(baseline),
+              Double.parseDouble(parser.getOptionValue("threshold", "10")));
+    }
+    System.exit(regressions > 0 ? 1 : 0);
+  }
+
+  /**
+   * Reads a results file written by an earlier run.
+   *
+   * @param fileName
+   * @return the results
+   * @throws IOException
+   * @throws JSONException
+   */
+  public static JSONObject readResults(String fileName) throws IOException, JSONException {
+    return new JSONObject(new String(Files.readAllBytes(new File(fileName).toPath()),
+            StandardCharsets.UTF_8));
+  }
+
+  // command line arguments
+  // COMMAND LINE STUFF
+  private static HelpFormatter formatter = new HelpFormatter();
+  private static Options commandLineOptions;
+
+  private static CommandLine initializeOptions(String[] args) throws ParseException {
+    Option help = new Option("help", "Prints Usage");
+    Option warmup = OptionBuilder.withArgName("ms").hasArg()
+            .withDescription("how long to warm up each benchmark (default 2000)")
+            .create("warmup");
+    Option time = OptionBuilder.withArgName("ms").hasArg()
+            .withDescription("how long each timed round lasts (default 1000)")
+            .create("time");
+    Option rounds = OptionBuilder.withArgName("rounds").hasArg()
+            .withDescription("number of timed rounds (default 5)")
+            .create("rounds");
+    Option filter = OptionBuilder.withArgName("regex").hasArg()
+            .withDescription("only run the benchmarks whose names match")
+            .create("filter");
+    Option out = OptionBuilder.withArgName("file").hasArg()
+            .withDescription("the results file (default build/microbenchmarks/microbenchmarks-<time>.json)")
+            .create("out");
+    Option baseline = OptionBuilder.withArgName("file").hasArg()
+            .withDescription("a results file of an earlier run to compare with")
+            .create("baseline");
+    Option threshold = OptionBuilder.withArgName("percent").hasArg()
+            .withDescription("slowdown compared with the baseline reported as a regression (default 10)")
+            .create("threshold");
+
+    commandLineOptions = new Options();
+    commandLineOptions.addOption(warmup);
+    commandLineOptions.addOption(time);
+    commandLineOptions.addOption(rounds);
+    commandLineOptions.addOption(filter);
+    commandLineOptions.addOption(out);
+    commandLineOptions.addOption(baseline);
+    commandLineOptions.addOption(threshold);
+    commandLineOptions.addOption(help);
+
+    CommandLineParser parser = new GnuParser();
+    return parser.parse(commandLineOptions, args);
+  }
+
+  private static void printUsage() {
+    formatter.printHelp("java -cp jars/GNS.jar edu.umass.cs.gnsserver.utils.microbenchmarks.MicrobenchmarkRunner <options>", commandLineOptions);
+  }
+}
@@ -38,6 +38,8 @@ import edu.umass.cs.contextservice.client.ContextServiceClient;
 import edu.umass.cs.contextservice.config.ContextServiceConfig.PrivacySchemes;
 import edu.umass.cs.gigapaxos.PaxosConfig;
 import edu.umass.cs.gigapaxos.paxosutil.RequestInstrumenter;
+import edu.umass.cs.gnsclient.client.CommandUtils;
+import edu.umass.cs.gnsclient.client.CryptoUtils;
 import edu.umass.cs.gnsclient.client.GNSClient;
 import edu.umass.cs.gnsclient.client.GNSClientCommands;
 import edu.umass.cs.gnsclient.client.GNSCommand;
@@ -49,12 +51,17 @@ import edu.umass.cs.gnsclient.client.util.SHA1HashFunction;
 import edu.umass.cs.gnsclient.jsonassert.JSONAssert;
 import edu.umass.cs.gnsclient.jsonassert.JSONCompareMode;
 import edu.umass.cs.gnscommon.AclAccessType;
+import edu.umass.cs.gnscommon.CommandType;
 import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.ResponseCode;
 import edu.umass.cs.gnscommon.exceptions.client.ClientException;
 import edu.umass.cs.gnscommon.exceptions.client.EncryptionException;
 import edu.umass.cs.gnscommon.exceptions.client.FieldNotFoundException;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnscommon.packets.commandreply.AccountGuidsPage;
+import edu.umass.cs.gnscommon.packets.commandreply.GuidsReadResult;
 import edu.umass.cs.gnscommon.utils.Base64;
+import edu.umass.cs.gnscommon.utils.CanonicalJSON;
 import edu.umass.cs.gnscommon.utils.RandomString;
 import edu.umass.cs.gnscommon.utils.ThreadUtils;
 import edu.umass.cs.gnsserver.database.MongoRecords;
@@ -563,6 +570,184 @@ public class ServerIntegrationTest extends DefaultGNSTest {
     }
   }
 
+  /**
+   * Checks that a created guid is listed in the pages of the account guids
+   * and in the account record and is gone from them once it is removed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_021_AccountGuidsPages() throws Exception {
+    String testGuidName = "testGUID" + RandomString.randomString(12);
+    GuidEntry testGuid = clientCommands.guidCreate(masterGuid, testGuidName);
+    Assert.assertTrue(lookupAccountGuids(masterGuid).contains(testGuid.getGuid()));
+    Assert.assertTrue(JSONUtils.JSONArrayToHashSet(clientCommands.lookupAccountRecord(masterGuid.getGuid())
+            .getJSONArray(GNSProtocol.ACCOUNT_RECORD_GUIDS.toString())).contains(testGuid.getGuid()));
+
+    clientCommands.guidRemove(masterGuid, testGuid.getGuid());
+    Assert.assertFalse(lookupAccountGuids(masterGuid).contains(testGuid.getGuid()));
+    Assert.assertFalse(JSONUtils.JSONArrayToHashSet(clientCommands.lookupAccountRecord(masterGuid.getGuid())
+            .getJSONArray(GNSProtocol.ACCOUNT_RECORD_GUIDS.toString())).contains(testGuid.getGuid()));
+  }
+
+  private static Set<String> lookupAccountGuids(GuidEntry accountGuid) throws Exception {
+    Set<String> guids = new HashSet<>();
+    AccountGuidsPage page = clientCommands.lookupAccountGuidsFirstPage(accountGuid.getGuid());
+    guids.addAll(JSONUtils.JSONArrayToHashSet(page.getGuids()));
+    while (page.hasMore()) {
+      page = clientCommands.lookupAccountGuidsNextPage(accountGuid.getGuid(), page);
+      guids.addAll(JSONUtils.JSONArrayToHashSet(page.getGuids()));
+    }
+    return guids;
+  }
+
+  /**
+   * Reads a field from several guids with one command and checks that a
+   * guid the reader isn't allowed to read has an error instead of values.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_022_ReadMultipleGuids() throws Exception {
+    GuidEntry readerGuid = clientCommands.guidCreate(masterGuid, "testGUID" + RandomString.randomString(12));
+    GuidEntry otherGuid = clientCommands.guidCreate(masterGuid, "testGUID" + RandomString.randomString(12));
+    GuidEntry privateGuid = clientCommands.guidCreate(masterGuid, "testGUID" + RandomString.randomString(12));
+    clientCommands.fieldUpdate(readerGuid, "multiRead", "reader");
+    clientCommands.fieldUpdate(otherGuid, "multiRead", "other");
+    clientCommands.fieldUpdate(privateGuid, "multiRead", "private");
+    // remove default read access
+    clientCommands.aclRemove(AclAccessType.READ_WHITELIST, privateGuid,
+            GNSProtocol.ENTIRE_RECORD.toString(), GNSProtocol.ALL_GUIDS.toString());
+
+    GuidsReadResult result = clientCommands.fieldReadMultipleGuids(
+            Arrays.asList(readerGuid.getGuid(), otherGuid.getGuid(), privateGuid.getGuid()),
+            new ArrayList<>(Arrays.asList("multiRead")), readerGuid);
+    Assert.assertEquals("reader", result.getValues(readerGuid.getGuid()).getString("multiRead"));
+    Assert.assertEquals("other", result.getValues(otherGuid.getGuid()).getString("multiRead"));
+    Assert.assertNull(result.getValues(privateGuid.getGuid()));
+    Assert.assertEquals(ResponseCode.ACCESS_ERROR, result.getError(privateGuid.getGuid()));
+
+    clientCommands.guidRemove(masterGuid, readerGuid.getGuid());
+    clientCommands.guidRemove(masterGuid, otherGuid.getGuid());
+    clientCommands.guidRemove(masterGuid, privateGuid.getGuid());
+  }
+
+  /**
+   * Reads a field through a client with a read cache and checks that the
+   * second read is a hit and that an update or an ACL change invalidates
+   * the cached value.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_023_ReadCache() throws Exception {
+    GuidEntry testGuid = clientCommands.guidCreate(masterGuid, "testGUID" + RandomString.randomString(12));
+    clientCommands.fieldUpdate(testGuid, "cached", "first");
+    GNSClient cachingClient = new GNSClient().setForcedTimeout(8000).enableReadCache(100, 30000);
+    try {
+      GNSClientCommands cachingCommands = new GNSClientCommands(cachingClient);
+      Assert.assertEquals("first", cachingCommands.fieldRead(testGuid, "cached"));
+      Assert.assertEquals("first", cachingCommands.fieldRead(testGuid, "cached"));
+      Assert.assertEquals(1, cachingClient.getReadCache().getHits());
+
+      clientCommands.fieldUpdate(testGuid, "cached", "second");
+      // the invalidation is sent after the update so give it a moment to get here
+      String value = null;
+      for (int i = 0; i < 10 && !"second".equals(value); i++) {
+        Thread.sleep(200);
+        value = cachingCommands.fieldRead(testGuid, "cached");
+      }
+      Assert.assertEquals("second", value);
+
+      // ACL changes drop every cached field of the guid
+      cachingCommands.fieldRead(testGuid, "cached");
+      long misses = cachingClient.getReadCache().getMisses();
+      clientCommands.aclAdd(AclAccessType.READ_WHITELIST, testGuid, "cached",
+              GNSProtocol.ALL_GUIDS.toString());
+      for (int i = 0; i < 10 && cachingClient.getReadCache().getMisses() == misses; i++) {
+        Thread.sleep(200);
+        Assert.assertEquals("second", cachingCommands.fieldRead(testGuid, "cached"));
+      }
+      Assert.assertTrue(cachingClient.getReadCache().getMisses() > misses);
+    } finally {
+      cachingClient.close();
+      clientCommands.guidRemove(masterGuid, testGuid.getGuid());
+    }
+  }
+
+  /**
+   * Checks that commands signed over the string they are sent as and commands
+   * signed over their canonical JSON, as older clients do, are both accepted.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_024_SignedCommandForms() throws Exception {
+    GuidEntry testGuid = clientCommands.guidCreate(masterGuid, "testGUID" + RandomString.randomString(12));
+    try {
+      CommandPacket signedBytes = GNSCommand.fieldUpdate(testGuid, "signed", "bytes");
+      Assert.assertNotNull(signedBytes.getSignedCommand());
+      client.execute(signedBytes);
+      Assert.assertEquals("bytes", clientCommands.fieldRead(testGuid, "signed"));
+
+      JSONObject command = CommandUtils.createAndSignCommand(CommandType.ReplaceUserJSON, testGuid,
+              GNSProtocol.GUID.toString(), testGuid.getGuid(),
+              GNSProtocol.USER_JSON.toString(), new JSONObject().put("signed", "canonical").toString(),
+              GNSProtocol.WRITER.toString(), testGuid.getGuid());
+      command.remove(GNSProtocol.SIGNED_COMMAND.toString());
+      command.remove(GNSProtocol.SIGNATURE.toString());
+      command.put(GNSProtocol.SIGNATURE.toString(),
+              CryptoUtils.signDigestOfMessage(testGuid, CanonicalJSON.getCanonicalForm(command)));
+      CommandPacket canonical = new CommandPacket((long) (Math.random() * Long.MAX_VALUE), command);
+      Assert.assertNull(canonical.getSignedCommand());
+      client.execute(canonical);
+      Assert.assertEquals("canonical", clientCommands.fieldRead(testGuid, "signed"));
+    } finally {
+      clientCommands.guidRemove(masterGuid, testGuid.getGuid());
+    }
+  }
+
+  /**
+   * Checks that reading many guids as another guid fails without a signature
+   * or with a signature that isn't the reader's.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_025_ReadMultipleGuidsNeedsSignature() throws Exception {
+    GuidEntry victimGuid = clientCommands.guidCreate(masterGuid, "testGUID" + RandomString.randomString(12));
+    GuidEntry privateGuid = clientCommands.guidCreate(masterGuid, "testGUID" + RandomString.randomString(12));
+    GuidEntry attackerGuid = clientCommands.guidCreate(masterGuid, "testGUID" + RandomString.randomString(12));
+    try {
+      clientCommands.fieldUpdate(privateGuid, "multiRead", "private");
+      // only the victim can read the private guid
+      clientCommands.aclRemove(AclAccessType.READ_WHITELIST, privateGuid,
+              GNSProtocol.ENTIRE_RECORD.toString(), GNSProtocol.ALL_GUIDS.toString());
+      clientCommands.aclAdd(AclAccessType.READ_WHITELIST, privateGuid,
+              GNSProtocol.ENTIRE_RECORD.toString(), victimGuid.getGuid());
+      Object[] keysAndValues = {GNSProtocol.GUID.toString(), victimGuid.getGuid(),
+        GNSProtocol.GUIDS.toString(), new JSONArray(Arrays.asList(privateGuid.getGuid())),
+        GNSProtocol.FIELDS.toString(), new JSONArray(Arrays.asList("multiRead"))};
+      JSONObject unsigned = CommandUtils.createCommand(CommandType.ReadMultipleGuids, keysAndValues);
+      JSONObject wronglySigned = CommandUtils.createAndSignCommand(CommandType.ReadMultipleGuids,
+              attackerGuid, keysAndValues);
+      for (JSONObject command : Arrays.asList(unsigned, wronglySigned)) {
+        try {
+          String result = client.execute(new CommandPacket((long) (Math.random() * Long.MAX_VALUE),
+                  command)).getResultString();
+          Assert.fail("Read as another guid returned " + result);
+        } catch (ClientException e) {
+          Assert.assertTrue("Unexpected error " + e.getCode(), e.getCode() == ResponseCode.SIGNATURE_ERROR
+                  || e.getCode() == ResponseCode.ACCESS_ERROR);
+        }
+      }
+    } finally {
+      clientCommands.guidRemove(masterGuid, victimGuid.getGuid());
+      clientCommands.guidRemove(masterGuid, privateGuid.getGuid());
+      clientCommands.guidRemove(masterGuid, attackerGuid.getGuid());
+    }
+  }
+
   /**
    * Removes a guid not using an account guid.
    *
@@ -2702,6 +2887,44 @@ public class ServerIntegrationTest extends DefaultGNSTest {
     }
   }
 
+  /**
+   * Tests that selectQuery with a limit returns no more guids than the limit.
+   */
+  @Test
+  public void test_333_QuerySelectWithLimit() {
+    String fieldName = "testQueryLimit";
+    try {
+      for (int cnt = 0; cnt < 5; cnt++) {
+        GuidEntry testEntry = clientCommands.guidCreate(masterGuid,
+                "queryTest-" + RandomString.randomString(12));
+        CREATED_GUIDS.add(testEntry); // save them so we can delete them later
+        JSONArray array = new JSONArray(Arrays.asList(25));
+        clientCommands.fieldReplaceOrCreateList(testEntry.getGuid(), fieldName,
+                array, testEntry);
+      }
+    } catch (ClientException | IOException e) {
+      failWithStackTrace("Exception while trying to create the guids: ", e);
+    }
+
+    try {
+      waitSettle(SELECT_WAIT); //See comment under the method header for test_320_GeoSpatialSelect
+      String query = "~" + fieldName + " : ($gt: 0)";
+      JSONArray result = clientCommands.selectQuery(masterGuid, query, 2);
+      Assert.assertThat(result.length(), Matchers.equalTo(2));
+    } catch (ClientException | IOException e) {
+      failWithStackTrace("Exception executing selectQuery: ", e);
+    }
+
+    try {
+      for (GuidEntry guid : CREATED_GUIDS) {
+        clientCommands.guidRemove(masterGuid, guid.getGuid());
+      }
+      CREATED_GUIDS.clear();
+    } catch (ClientException | IOException e) {
+      failWithStackTrace("Exception during cleanup: " + e);
+    }
+  }
+
   /**
    * Tests fieldSetNull.
    *
@@ -3314,7 +3537,7 @@ public class ServerIntegrationTest extends DefaultGNSTest {
     }
   }
 
-  private static boolean enable552 = false;
+  private static boolean enable552 = true;
 
   /**
    * Setup some guids for group testing.
@@ -3507,6 +3730,8 @@ public class ServerIntegrationTest extends DefaultGNSTest {
         JSONArray array = new JSONArray(Arrays.asList(0));
         clientCommands.fieldReplaceOrCreateList(entry, groupTestFieldName, array);
       }
+      // the name servers push the changes to the group members after the updates
+      waitSettle(SELECT_WAIT);
     } catch (Exception e) {
       failWithStackTrace("Exception while trying to alter the fields: ", e);
     }
@@ -3648,6 +3873,52 @@ public class ServerIntegrationTest extends DefaultGNSTest {
     clientCommands.setGNSProxy(null);
   }
 
+  /**
+   * Sends identical unsigned reads through the LNS at the same time, which it
+   * may coalesce, and checks that they all get the value and that an update
+   * sent through the LNS is seen by the next read.
+   *
+   * @throws Exception
+   */
+  // This requires that the LOCAL_NAME_SERVER_NODES config option be set.
+  @Test
+  public void test_631_LNSCoalescedReads() throws Exception {
+    final GuidEntry testGuid = clientCommands.guidCreate(masterGuid, "testGUID" + RandomString.randomString(12));
+    //PaxosConfig.getActives() works here because the server and client use the same properties file.
+    InetAddress lnsAddress = PaxosConfig.getActives().values().iterator().next().getAddress();
+    clientCommands.setGNSProxy(new InetSocketAddress(lnsAddress, 24598));
+    try {
+      clientCommands.fieldUpdate(testGuid, "coalesced", "first");
+      final String[] values = new String[10];
+      Thread[] readers = new Thread[values.length];
+      for (int i = 0; i < readers.length; i++) {
+        final int index = i;
+        readers[i] = new Thread() {
+          @Override
+          public void run() {
+            try {
+              values[index] = clientCommands.fieldRead(testGuid.getGuid(), "coalesced", null);
+            } catch (IOException | ClientException e) {
+              values[index] = e.toString();
+            }
+          }
+        };
+        readers[i].start();
+      }
+      for (Thread reader : readers) {
+        reader.join();
+      }
+      for (String value : values) {
+        Assert.assertEquals("first", value);
+      }
+      clientCommands.fieldUpdate(testGuid, "coalesced", "second");
+      Assert.assertEquals("second", clientCommands.fieldRead(testGuid.getGuid(), "coalesced", null));
+    } finally {
+      clientCommands.setGNSProxy(null);
+      clientCommands.guidRemove(masterGuid, testGuid.getGuid());
+    }
+  }
+
   // HELPER STUFF
   private static final String POLYGON = "Polygon";
   private static final String COORDINATES = "coordinates";
@@ -27,6 +27,7 @@ import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.exceptions.client.ClientException;
 import edu.umass.cs.gnscommon.packets.commandreply.NotificationStatsToIssuer;
 import edu.umass.cs.gnscommon.packets.commandreply.SelectHandleInfo;
+import edu.umass.cs.gnscommon.packets.commandreply.SelectPage;
 import edu.umass.cs.gnscommon.utils.RandomString;
 
 import edu.umass.cs.gnscommon.utils.StringUtil;
@@ -445,6 +446,54 @@ public class SelectTest extends DefaultGNSTest {
     return result;
   }
 
+  /**
+   * Check a paged query select reads all the guids a page at a time
+   */
+  @Test
+  public void test_059_QuerySelectPaged() {
+    String fieldName = "testQueryPaged";
+    try {
+      for (int cnt = 0; cnt < 7; cnt++) {
+        String queryTestName = "queryTest-" + RandomString.randomString(12);
+        client.execute(GNSCommand.guidCreate(masterGuid, queryTestName));
+        GuidEntry testEntry = GuidUtils.getGUIDKeys(queryTestName);
+        CREATED_GUIDS.add(testEntry); // save them so we can delete them later
+        JSONArray array = new JSONArray(Arrays.asList(25));
+        client.execute(GNSCommand.fieldReplaceOrCreateList(testEntry.getGuid(), fieldName, array, testEntry));
+      }
+      waitSettle(WAIT_SETTLE);
+    } catch (ClientException | IOException e) {
+      Utils.failWithStackTrace("Exception while trying to create the guids: " + e);
+    }
+
+    try {
+      String query = "~" + fieldName + " : ($gt: 0)";
+      List<String> guids = new ArrayList<>();
+      SelectPage page = SelectPage.fromJSON(client.execute(
+              GNSCommand.selectQueryPaged(query, null, 2, null)).getResultJSONObject());
+      int pages = 1;
+      while (true) {
+        Assert.assertThat(page.getRecords().length(), Matchers.lessThanOrEqualTo(2));
+        for (int i = 0; i < page.getRecords().length(); i++) {
+          guids.add(page.getRecords().getString(i));
+        }
+        if (!page.hasMore()) {
+          break;
+        }
+        page = SelectPage.fromJSON(client.execute(
+                GNSCommand.selectQueryPaged(query, null, 2, page.getAfterName())).getResultJSONObject());
+        pages++;
+      }
+      System.out.println(pages + " pages " + guids);
+      // no guid shows up in two pages
+      Assert.assertEquals(new HashSet<>(guids).size(), guids.size());
+      // best we can do should be at least 7, but possibly more objects in results
+      Assert.assertThat(guids.size(), Matchers.greaterThanOrEqualTo(7));
+    } catch (ClientException | IOException | JSONException e) {
+      Utils.failWithStackTrace("Exception executing selectQueryPaged: " + e);
+    }
+  }
+
   private static String createIndexTestField;
 
   /**
@@ -0,0 +1,118 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.activecode.prototype.unblocking;
+
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
+import javax.script.ScriptException;
+import org.json.JSONException;
+import org.json.JSONObject;
+import static org.junit.Assert.*;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests the caching of evaluated code in the worker's runner.
+ *
+ * The code counts its calls in a global, so the count only goes up
+ * when the runner reuses the context the code was evaluated in.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ActiveNonBlockingRunnerTest {
+
+  private static final String GUID = "testGuid";
+  private static final String READ_CODE = "var calls = 0;\n"
+          + "function run(value, accessor, querier) { calls++; value.reads = calls; return value; }";
+  private static final String WRITE_CODE = "var calls = 0;\n"
+          + "function run(value, accessor, querier) { calls++; value.writes = calls; return value; }";
+
+  private static long id = 0;
+
+  private static int run(ActiveNonBlockingRunner runner, String action, String code,
+          String codeHash, String field) throws ScriptException, NoSuchMethodException, JSONException {
+    return new JSONObject(runner.runCode(GUID, GUID, action, code, codeHash,
+            "{}", 0, id++)).getInt(field);
+  }
+
+  /**
+   * Alternating between the read and write code of a guid reuses the
+   * context of each instead of evaluating the code again.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_ContextPerAction() throws Exception {
+    ActiveNonBlockingRunner runner = new ActiveNonBlockingRunner(null, null);
+    assertEquals(1, run(runner, ActiveCode.READ_ACTION, READ_CODE, "r", "reads"));
+    assertEquals(1, run(runner, ActiveCode.WRITE_ACTION, WRITE_CODE, "w", "writes"));
+    assertEquals(2, run(runner, ActiveCode.READ_ACTION, READ_CODE, "r", "reads"));
+    assertEquals(2, run(runner, ActiveCode.WRITE_ACTION, WRITE_CODE, "w", "writes"));
+  }
+
+  /**
+   * The same code for both actions still gets a context for each.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_02_SameCodeForBothActions() throws Exception {
+    ActiveNonBlockingRunner runner = new ActiveNonBlockingRunner(null, null);
+    assertEquals(1, run(runner, ActiveCode.READ_ACTION, READ_CODE, "r", "reads"));
+    assertEquals(1, run(runner, ActiveCode.WRITE_ACTION, READ_CODE, "r", "reads"));
+    assertEquals(2, run(runner, ActiveCode.READ_ACTION, READ_CODE, "r", "reads"));
+  }
+
+  /**
+   * A request with only the hash of code the runner has already seen is
+   * a hit, one with the hash of unknown code is a miss.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_03_HashOnly() throws Exception {
+    ActiveNonBlockingRunner runner = new ActiveNonBlockingRunner(null, null);
+    assertEquals(1, run(runner, ActiveCode.READ_ACTION, READ_CODE, "r", "reads"));
+    assertEquals(2, run(runner, ActiveCode.READ_ACTION, "", "r", "reads"));
+    try {
+      run(runner, ActiveCode.READ_ACTION, "", "unknown", "reads");
+      fail("Expected a code miss");
+    } catch (ActiveNonBlockingRunner.CodeMissException e) {
+      // the client sends the code again
+    }
+  }
+
+  /**
+   * Changed code is evaluated in a new context.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_04_CodeChanged() throws Exception {
+    ActiveNonBlockingRunner runner = new ActiveNonBlockingRunner(null, null);
+    assertEquals(1, run(runner, ActiveCode.READ_ACTION, READ_CODE, "r", "reads"));
+    assertEquals(2, run(runner, ActiveCode.READ_ACTION, READ_CODE, "r", "reads"));
+    String newCode = READ_CODE + "\n// changed";
+    assertEquals(1, run(runner, ActiveCode.READ_ACTION, newCode, "r2", "reads"));
+    assertEquals(2, run(runner, ActiveCode.READ_ACTION, newCode, "r2", "reads"));
+    // code without a hash is identified by the code itself
+    assertEquals(1, run(runner, ActiveCode.READ_ACTION, READ_CODE, null, "reads"));
+    assertEquals(1, run(runner, ActiveCode.READ_ACTION, newCode, null, "reads"));
+  }
+}
@@ -373,4 +373,79 @@ public class NoSQLTest {
       fail("Problem during LookupEntireRecord: " + e);
     }
   }
+
+  private static String setField = "members";
+
+  /**
+   *
+   */
+  @Test
+  public void test_40_AddToSetField() {
+    try {
+      instance.addToSetField(collection, guid2, NameRecord.VALUES_MAP, setField,
+              new ArrayList<Object>(Arrays.asList("a", "b", "a")));
+      instance.addToSetField(collection, guid2, NameRecord.VALUES_MAP, setField,
+              new ArrayList<Object>(Arrays.asList("b", "c")));
+      assertEquals(3, instance.lookupEntireRecord(collection, guid2)
+              .getJSONObject(NameRecord.VALUES_MAP.getName()).getJSONArray(setField).length());
+    } catch (RecordNotFoundException | FailedDBOperationException | JSONException e) {
+      fail("Problem during addToSetField: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_41_SetFieldContains() {
+    try {
+      assertTrue(instance.setFieldContains(collection, guid2, NameRecord.VALUES_MAP, setField, "a"));
+      assertTrue(instance.setFieldContains(collection, guid2, NameRecord.VALUES_MAP, setField, "c"));
+      assertFalse(instance.setFieldContains(collection, guid2, NameRecord.VALUES_MAP, setField, "d"));
+      assertFalse(instance.setFieldContains(collection, guid2, NameRecord.VALUES_MAP, "missing", "a"));
+      assertFalse(instance.setFieldContains(collection, "missingGuid", NameRecord.VALUES_MAP, setField, "a"));
+    } catch (FailedDBOperationException e) {
+      fail("Problem during setFieldContains: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_42_RemoveFromSetField() {
+    try {
+      instance.removeFromSetField(collection, guid2, NameRecord.VALUES_MAP, setField,
+              new ArrayList<Object>(Arrays.asList("a", "d")));
+      assertFalse(instance.setFieldContains(collection, guid2, NameRecord.VALUES_MAP, setField, "a"));
+      assertTrue(instance.setFieldContains(collection, guid2, NameRecord.VALUES_MAP, setField, "b"));
+      assertEquals(2, instance.lookupEntireRecord(collection, guid2)
+              .getJSONObject(NameRecord.VALUES_MAP.getName()).getJSONArray(setField).length());
+      instance.addToSetField(collection, guid2, NameRecord.VALUES_MAP, setField,
+              new ArrayList<Object>(Arrays.asList("a")));
+      assertTrue(instance.setFieldContains(collection, guid2, NameRecord.VALUES_MAP, setField, "a"));
+    } catch (RecordNotFoundException | FailedDBOperationException | JSONException e) {
+      fail("Problem during removeFromSetField: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_43_SetFieldContainsAfterUpdate() {
+    try {
+      instance.updateIndividualFields(collection, guid2,
+              NameRecord.VALUES_MAP,
+              new ArrayList<>(Arrays.asList(new ColumnField(setField, ColumnFieldType.LIST_STRING))),
+              new ArrayList<Object>(Arrays.asList(new ArrayList<>(Arrays.asList("x", "y")))));
+      assertTrue(instance.setFieldContains(collection, guid2, NameRecord.VALUES_MAP, setField, "x"));
+      assertFalse(instance.setFieldContains(collection, guid2, NameRecord.VALUES_MAP, setField, "a"));
+      instance.removeMapKeys(collection, guid2, NameRecord.VALUES_MAP,
+              new ArrayList<>(Arrays.asList(new ColumnField(setField, ColumnFieldType.LIST_STRING))));
+      assertFalse(instance.setFieldContains(collection, guid2, NameRecord.VALUES_MAP, setField, "x"));
+    } catch (FailedDBOperationException e) {
+      fail("Problem during setFieldContains after update: " + e);
+    }
+  }
 }
@@ -0,0 +1,170 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package edu.umass.cs.gnsserver.database;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import static org.junit.Assert.*;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that the read-only JSON trees the record cache keeps can't be
+ * modified and that the copies it hands out can.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ReadOnlyJSONTest {
+
+  private static JSONObject record() throws JSONException {
+    return new JSONObject().put("name", "testGuid")
+            .put("nr_valuesMap", new JSONObject()
+                    .put("location", new JSONObject().put("lat", 1).put("lon", 2))
+                    .put("list", new JSONArray(Arrays.asList("a", "b"))));
+  }
+
+  private interface Modification {
+
+    void run() throws JSONException;
+  }
+
+  private static void assertReadOnly(Modification modification) throws JSONException {
+    try {
+      modification.run();
+      fail("Expected the modification to throw");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Every way of modifying a frozen JSONObject throws.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_ObjectIsReadOnly() throws Exception {
+    final JSONObject json = ReadOnlyJSON.freeze(record())
+            .getJSONObject("nr_valuesMap").getJSONObject("location");
+    assertReadOnly(new Modification() {
+      @Override
+      public void run() throws JSONException {
+        json.put("lat", 3);
+      }
+    });
+    assertReadOnly(new Modification() {
+      @Override
+      public void run() throws JSONException {
+        json.putOpt("alt", "high");
+      }
+    });
+    assertReadOnly(new Modification() {
+      @Override
+      public void run() throws JSONException {
+        json.accumulate("lat", 3);
+      }
+    });
+    assertReadOnly(new Modification() {
+      @Override
+      public void run() throws JSONException {
+        json.putOnce("alt", "high");
+      }
+    });
+    assertReadOnly(new Modification() {
+      @Override
+      public void run() throws JSONException {
+        json.remove("lat");
+      }
+    });
+    assertReadOnly(new Modification() {
+      @Override
+      public void run() throws JSONException {
+        Iterator<?> keyIter = json.keys();
+        keyIter.next();
+        keyIter.remove();
+      }
+    });
+    assertEquals(1, json.getInt("lat"));
+    assertEquals(2, json.length());
+  }
+
+  /**
+   * Every way of modifying a frozen JSONArray throws.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_02_ArrayIsReadOnly() throws Exception {
+    final JSONArray jarray = ReadOnlyJSON.freeze(record())
+            .getJSONObject("nr_valuesMap").getJSONArray("list");
+    assertReadOnly(new Modification() {
+      @Override
+      public void run() throws JSONException {
+        jarray.put("c");
+      }
+    });
+    assertReadOnly(new Modification() {
+      @Override
+      public void run() throws JSONException {
+        jarray.put(true);
+      }
+    });
+    assertReadOnly(new Modification() {
+      @Override
+      public void run() throws JSONException {
+        jarray.put(0, "c");
+      }
+    });
+    assertReadOnly(new Modification() {
+      @Override
+      public void run() throws JSONException {
+        jarray.put(5, 1);
+      }
+    });
+    assertEquals(2, jarray.length());
+    assertEquals("a", jarray.getString(0));
+  }
+
+  /**
+   * Copies of a frozen tree or of a value in it can be modified without
+   * changing the frozen tree.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_03_MutableCopies() throws Exception {
+    JSONObject frozen = ReadOnlyJSON.freeze(record());
+    JSONObject copy = ReadOnlyJSON.mutableCopy(frozen);
+    copy.getJSONObject("nr_valuesMap").getJSONObject("location").put("lat", 3);
+    copy.getJSONObject("nr_valuesMap").getJSONArray("list").put("c");
+    copy.remove("name");
+
+    JSONObject location = (JSONObject) ReadOnlyJSON.mutableCopyObject(
+            frozen.getJSONObject("nr_valuesMap").get("location"));
+    location.put("alt", "high");
+
+    assertEquals("testGuid", frozen.getString("name"));
+    assertEquals(1, frozen.getJSONObject("nr_valuesMap").getJSONObject("location").getInt("lat"));
+    assertFalse(frozen.getJSONObject("nr_valuesMap").getJSONObject("location").has("alt"));
+    assertEquals(2, frozen.getJSONObject("nr_valuesMap").getJSONArray("list").length());
+    assertEquals("b", ReadOnlyJSON.mutableCopyObject("b"));
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import static org.junit.Assert.*;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+/**
+ * Tests that the answers in the DNS answer cache stay indexed by the
+ * records they were built from.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class GnsAnswerCacheTest {
+
+  private static final String DOMAIN = "test.gns.name.";
+  private static final String GUID = "testGuid";
+
+  private static Message query() throws TextParseException {
+    return Message.newQuery(Record.newRecord(Name.fromString(DOMAIN), Type.A, DClass.IN));
+  }
+
+  private static Message response(Message query, String address)
+          throws TextParseException, UnknownHostException {
+    Message response = new Message(query.getHeader().getID());
+    response.getHeader().setFlag(Flags.QR);
+    response.addRecord(query.getQuestion(), Section.QUESTION);
+    response.addRecord(new ARecord(Name.fromString(DOMAIN), DClass.IN, 60,
+            InetAddress.getByName(address)), Section.ANSWER);
+    return response;
+  }
+
+  private static void put(GnsAnswerCache cache, Message query, String address)
+          throws TextParseException, UnknownHostException {
+    cache.put(DOMAIN, cache.getVersion(DOMAIN), GUID, cache.getVersion(GUID),
+            query, response(query, address));
+  }
+
+  /**
+   * Caching an answer for the same question twice and then invalidating
+   * the HRN record drops the second answer.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_ReplacedAnswerInvalidatedByDomain() throws Exception {
+    GnsAnswerCache cache = new GnsAnswerCache(100, 60);
+    Message query = query();
+    put(cache, query, "10.0.0.1");
+    put(cache, query, "10.0.0.2");
+    assertEquals(1, cache.size());
+    assertNotNull(cache.lookupWire(DOMAIN, query));
+    cache.invalidateRecord(DOMAIN);
+    assertNull(cache.lookupWire(DOMAIN, query));
+  }
+
+  /**
+   * Caching an answer for the same question twice and then invalidating
+   * the guid record drops the second answer.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_02_ReplacedAnswerInvalidatedByGuid() throws Exception {
+    GnsAnswerCache cache = new GnsAnswerCache(100, 60);
+    Message query = query();
+    put(cache, query, "10.0.0.1");
+    put(cache, query, "10.0.0.2");
+    cache.invalidateRecord(GUID);
+    assertNull(cache.lookupWire(DOMAIN, query));
+  }
+}
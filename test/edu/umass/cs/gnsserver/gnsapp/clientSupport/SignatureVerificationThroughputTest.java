@@ -0,0 +1,101 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientSupport;
+
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.utils.Base64;
+import edu.umass.cs.utils.DelayProfiler;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import javax.xml.bind.DatatypeConverter;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Runs {@link NSAccessSupport#verifySignature} from many threads at once and
+ * logs the throughput. With no global lock in the verification path the rate
+ * should grow with the number of threads up to the number of cores.
+ *
+ * The number of threads and how long to run for can be set with the
+ * <code>threads</code> and <code>seconds</code> system properties.
+ */
+public class SignatureVerificationThroughputTest {
+
+  /**
+   * Every signature verifies while many threads verify at once.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_ConcurrentVerification() throws Exception {
+    int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+    int seconds = Integer.getInteger("seconds", 2);
+
+    KeyPair keyPair = KeyPairGenerator.getInstance(GNSProtocol.RSA_ALGORITHM.toString())
+            .generateKeyPair();
+    final String publicKey = Base64.encodeToString(keyPair.getPublic().getEncoded(), false);
+    final String message = "{\"COMMANDINT\":0,\"GUID\":\"CAB372BF40B3DB576786E5CC6AB05B63CC680F4D\","
+            + "\"FIELD\":\"environment\",\"READER\":\"CAB372BF40B3DB576786E5CC6AB05B63CC680F4D\","
+            + "\"TIMESTAMP\":\"2016-10-01T00:00:00Z\"}";
+    // Same encoding as CryptoUtils.signDigestOfMessage
+    Signature signer = Signature.getInstance(GNSProtocol.SIGNATURE_ALGORITHM.toString());
+    signer.initSign(keyPair.getPrivate());
+    signer.update(message.getBytes("UTF-8"));
+    final String signature = DatatypeConverter.printHexBinary(signer.sign());
+
+    final AtomicLong verified = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final long endTime = System.currentTimeMillis() + seconds * 1000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (int i = 0; i < threads; i++) {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            while (System.currentTimeMillis() < endTime) {
+              if (NSAccessSupport.verifySignature(publicKey, signature, message)) {
+                verified.incrementAndGet();
+              } else {
+                failures.incrementAndGet();
+              }
+            }
+          } catch (Exception e) {
+            ClientSupportConfig.getLogger().log(Level.WARNING,
+                    "Verification failed with {0}", e);
+            failures.incrementAndGet();
+          }
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(seconds + 60, TimeUnit.SECONDS));
+    ClientSupportConfig.getLogger().log(Level.INFO, "threads={0} {1} {2}",
+            new Object[]{threads, NSAccessSupport.getVerificationStats(), DelayProfiler.getStats()});
+    assertEquals(0, failures.get());
+    assertTrue(verified.get() > 0);
+  }
+}